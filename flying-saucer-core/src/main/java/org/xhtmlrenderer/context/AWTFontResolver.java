@@ -21,6 +21,7 @@ package org.xhtmlrenderer.context;
 
 import org.xhtmlrenderer.css.constants.IdentValue;
 import org.xhtmlrenderer.css.value.FontSpecification;
+import org.xhtmlrenderer.event.RenderMetricsListener;
 import org.xhtmlrenderer.extend.FontResolver;
 import org.xhtmlrenderer.layout.SharedContext;
 import org.xhtmlrenderer.render.FSFont;
@@ -197,12 +198,14 @@ public class AWTFontResolver implements FontResolver {
         // check if the font instance exists in the hash table
         if (instance_hash.containsKey(font_instance_name)) {
             // if so then return it
+            ctx.getMetricsListener().count(RenderMetricsListener.COUNT_FONT_CACHE_HITS, 1);
             return (Font) instance_hash.get(font_instance_name);
         }
 
         // if not then
         //  does the font exist
         if (available_fonts_hash.containsKey(font)) {
+            ctx.getMetricsListener().count(RenderMetricsListener.COUNT_FONT_CACHE_MISSES, 1);
             Object value = available_fonts_hash.get(font);
             // have we actually allocated the root font object yet?
             Font root_font = null;
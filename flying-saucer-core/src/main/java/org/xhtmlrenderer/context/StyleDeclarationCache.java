@@ -0,0 +1,75 @@
+package org.xhtmlrenderer.context;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.xhtmlrenderer.css.sheet.Ruleset;
+import org.xhtmlrenderer.util.Configuration;
+
+/**
+ * A process wide cache of parsed <code>style</code> attributes (and other
+ * non-CSS styling), keyed by the attribute text and origin.  Generated
+ * documents tend to repeat a small number of distinct declarations, so most
+ * elements can share one {@link Ruleset}.  The rulesets handed out must not
+ * be modified.
+ * <p>
+ * Once the cache holds more than <code>xr.css.style-attribute-cache-size</code>
+ * entries, arbitrary entries are removed.  This avoids a lock around the
+ * cache, which is read for every styled element.
+ */
+class StyleDeclarationCache {
+    private static final int MAX_SIZE =
+        Configuration.valueAsInt("xr.css.style-attribute-cache-size", 1024);
+
+    private static final Map _cache = new ConcurrentHashMap();
+
+    private StyleDeclarationCache() {
+    }
+
+    public static Ruleset get(int origin, boolean supportCMYKColors, String declaration) {
+        if (MAX_SIZE <= 0) {
+            return null;
+        }
+        return (Ruleset) _cache.get(new Key(origin, supportCMYKColors, declaration));
+    }
+
+    public static void put(int origin, boolean supportCMYKColors, String declaration, Ruleset ruleset) {
+        if (MAX_SIZE <= 0) {
+            return;
+        }
+        _cache.put(new Key(origin, supportCMYKColors, declaration), ruleset);
+        if (_cache.size() > MAX_SIZE) {
+            for (Iterator i = _cache.keySet().iterator(); i.hasNext() && _cache.size() > MAX_SIZE; ) {
+                i.next();
+                i.remove();
+            }
+        }
+    }
+
+    private static class Key {
+        private final int _origin;
+        private final boolean _supportCMYKColors;
+        private final String _declaration;
+
+        public Key(int origin, boolean supportCMYKColors, String declaration) {
+            _origin = origin;
+            _supportCMYKColors = supportCMYKColors;
+            _declaration = declaration;
+        }
+
+        public boolean equals(Object o) {
+            if (! (o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return _origin == other._origin &&
+                    _supportCMYKColors == other._supportCMYKColors &&
+                    _declaration.equals(other._declaration);
+        }
+
+        public int hashCode() {
+            return (_declaration.hashCode() * 31 + _origin) * 2 + (_supportCMYKColors ? 1 : 0);
+        }
+    }
+}
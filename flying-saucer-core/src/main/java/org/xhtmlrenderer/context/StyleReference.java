@@ -22,9 +22,18 @@ package org.xhtmlrenderer.context;
 import java.io.StringReader;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 
 import org.w3c.dom.Document;
@@ -38,11 +47,13 @@ import org.xhtmlrenderer.css.newmatch.PageInfo;
 import org.xhtmlrenderer.css.sheet.PropertyDeclaration;
 import org.xhtmlrenderer.css.sheet.Stylesheet;
 import org.xhtmlrenderer.css.sheet.StylesheetInfo;
+import org.xhtmlrenderer.event.RenderMetricsListener;
 import org.xhtmlrenderer.extend.NamespaceHandler;
 import org.xhtmlrenderer.extend.UserAgentCallback;
 import org.xhtmlrenderer.extend.UserInterface;
 import org.xhtmlrenderer.layout.SharedContext;
 import org.xhtmlrenderer.util.XRLog;
+import org.xhtmlrenderer.util.XRRuntimeException;
 
 
 /**
@@ -76,6 +87,11 @@ public class StyleReference {
      */
     private org.xhtmlrenderer.css.newmatch.Matcher _matcher;
 
+    /**
+     * The tree resolver used by the matcher
+     */
+    private DOMTreeResolver _treeResolver;
+
     /** */
     private UserAgentCallback _uac;
     
@@ -103,40 +119,138 @@ public class StyleReference {
         _doc = doc;
         AttributeResolver attRes = new StandardAttributeResolver(_nsh, _uac, ui);
 
+        long start = System.nanoTime();
         List infos = getStylesheets();
-        XRLog.match("media = " + _context.getMedia());
+        XRLog.log(XRLog.MATCH, Level.INFO, "media = {0}", new Object[] { _context.getMedia() });
+        List stylesheets = readAndParseAll(infos, _context.getMedia());
+        _context.getMetricsListener().phaseCompleted(
+                RenderMetricsListener.PHASE_STYLESHEET_LOAD, System.nanoTime() - start);
+        
+        _treeResolver = new DOMTreeResolver();
         _matcher = new org.xhtmlrenderer.css.newmatch.Matcher(
-                new DOMTreeResolver(), 
+                _treeResolver, 
                 attRes, 
                 _stylesheetFactory, 
-                readAndParseAll(infos, _context.getMedia()), 
+                stylesheets, 
                 _context.getMedia());
+        _matcher.setMetricsListener(_context.getMetricsListener());
     }
     
     private List readAndParseAll(List infos, String medium) {
+        Map sheets = loadAll(infos, medium);
         List result = new ArrayList(infos.size() + 15);
+        addAll(infos, medium, sheets, new HashSet(), result);
+        return result;
+    }
+
+    /**
+     * Adds the sheets for <code>infos</code>, each preceded by the sheets
+     * it imports, in cascade order.
+     */
+    private void addAll(List infos, String medium, Map sheets, Set ancestors, List result) {
         for (Iterator i = infos.iterator(); i.hasNext(); ) {
             StylesheetInfo info = (StylesheetInfo)i.next();
             if (info.appliesToMedia(medium)) {
-                Stylesheet sheet = info.getStylesheet();
-                
-                if (sheet == null) {
-                    sheet = _stylesheetFactory.getStylesheet(info);
-                }
-                
+                Stylesheet sheet = (Stylesheet) sheets.get(info);
+
                 if (sheet!=null) {
                     if (sheet.getImportRules().size() > 0) {
-                        result.addAll(readAndParseAll(sheet.getImportRules(), medium));
+                        if (ancestors.add(sheet)) {
+                            addAll(sheet.getImportRules(), medium, sheets, ancestors, result);
+                            ancestors.remove(sheet);
+                        } else {
+                            XRLog.load(Level.WARNING, "Ignoring circular @import in CSS from " + info.getUri());
+                        }
                     }
-                    
+
                     result.add(sheet);
                 } else {
                     XRLog.load(Level.WARNING, "Unable to load CSS from "+info.getUri());
                 }
             }
         }
-        
-        return result;
+    }
+
+    /**
+     * Loads the sheets for <code>infos</code> and everything they import.
+     * The sheets of each level of the @import tree are fetched and parsed
+     * concurrently on the layout executor of the {@link SharedContext}, if
+     * there is one.
+     *
+     * @return StylesheetInfo -> Stylesheet (null if it couldn't be loaded)
+     */
+    private Map loadAll(List infos, String medium) {
+        ExecutorService executor = _context.getLayoutExecutor();
+        Map sheets = new IdentityHashMap();
+        Map loading = new HashMap();
+        Set expanded = new HashSet();
+
+        List level = infos;
+        while (level.size() > 0) {
+            List applicable = new ArrayList(level.size());
+            for (Iterator i = level.iterator(); i.hasNext(); ) {
+                StylesheetInfo info = (StylesheetInfo)i.next();
+                if (info.appliesToMedia(medium)) {
+                    if (info.getStylesheet() == null && ! loading.containsKey(info.getUri())) {
+                        loading.put(info.getUri(), load(executor, info));
+                    }
+                    applicable.add(info);
+                }
+            }
+
+            List next = new ArrayList();
+            for (Iterator i = applicable.iterator(); i.hasNext(); ) {
+                StylesheetInfo info = (StylesheetInfo)i.next();
+                Stylesheet sheet = info.getStylesheet();
+                if (sheet == null) {
+                    sheet = waitFor(loading.get(info.getUri()));
+                    loading.put(info.getUri(), sheet);
+                }
+                sheets.put(info, sheet);
+                if (sheet != null && expanded.add(sheet)) {
+                    next.addAll(sheet.getImportRules());
+                }
+            }
+            level = next;
+        }
+
+        return sheets;
+    }
+
+    /**
+     * Returns the sheet or, if <code>executor</code> isn't
+     * <code>null</code>, a Future for it
+     */
+    private Object load(ExecutorService executor, final StylesheetInfo info) {
+        if (executor == null) {
+            return _stylesheetFactory.getStylesheet(info);
+        }
+        return executor.submit(new Callable() {
+            public Object call() {
+                return _stylesheetFactory.getStylesheet(info);
+            }
+        });
+    }
+
+    private Stylesheet waitFor(Object sheetOrFuture) {
+        if (! (sheetOrFuture instanceof Future)) {
+            return (Stylesheet) sheetOrFuture;
+        }
+        try {
+            return (Stylesheet) ((Future) sheetOrFuture).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new XRRuntimeException("Interrupted while loading stylesheets", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            } else {
+                throw new XRRuntimeException(cause.getMessage(), cause);
+            }
+        }
     }
     
     /**
@@ -204,6 +318,17 @@ public class StyleReference {
         return _matcher.getCascadedStyle(e, restyle);
     }
     
+    /**
+     * Drops what has been cached about the structure of the document (the
+     * positions of elements among their siblings), since the document may
+     * have been modified since it was last styled.
+     */
+    public void invalidateDocumentStructure() {
+        if (_treeResolver != null) {
+            _treeResolver.invalidateSiblingIndexes();
+        }
+    }
+
     public PageInfo getPageStyle(String pageName, String pseudoPage) {
         return _matcher.getPageCascadedStyle(pageName, pseudoPage);
     }
@@ -269,7 +394,7 @@ public class StyleReference {
         // TODO: here we should also get user stylesheet from userAgent
 
         long el = System.currentTimeMillis() - st;
-        XRLog.load("TIME: parse stylesheets  " + el + "ms");
+        XRLog.log(XRLog.LOAD, Level.INFO, "TIME: parse stylesheets  {0,number,#}ms", new Object[] { new Long(el) });
 
         return infos;
     }
@@ -24,6 +24,11 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
 import java.io.UnsupportedEncodingException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 
 import org.xhtmlrenderer.css.extend.StylesheetFactory;
@@ -39,9 +44,11 @@ import org.xhtmlrenderer.util.XRLog;
 import org.xml.sax.InputSource;
 
 /**
- * A Factory class for Cascading Style Sheets. Sheets are parsed using a single
- * parser instance for all sheets. Sheets are cached by URI using a LRU test,
- * but timestamp of file is not checked.
+ * A Factory class for Cascading Style Sheets. Each thread parses with its own
+ * parser instance, so sheets can be loaded concurrently. Sheets are cached by
+ * URI; once the cached sheets hold more than
+ * <code>xr.cache.stylesheets.max-rules</code> rules, the least recently used
+ * ones are removed. The timestamp of the file is not checked.
  *
  * @author Torbjoern Gannholm
  */
@@ -49,35 +56,46 @@ public class StylesheetFactoryImpl implements StylesheetFactory {
     /**
      * the UserAgentCallback to resolve uris
      */
-    private UserAgentCallback _userAgentCallback;
+    private volatile UserAgentCallback _userAgentCallback;
 
-    private int _cacheCapacity = 16;
+    private static final int MAX_CACHED_RULES =
+        Configuration.valueAsInt("xr.cache.stylesheets.max-rules", 10000);
 
     /**
-     * an LRU cache
+     * Key -> CacheEntry; approximately LRU, see {@link #evict()}
      */
-    private java.util.LinkedHashMap _cache =
-            new java.util.LinkedHashMap(_cacheCapacity, 0.75f, true) {
-                private static final long serialVersionUID = 1L;
+    private final ConcurrentHashMap _cache = new ConcurrentHashMap();
 
-                protected boolean removeEldestEntry(java.util.Map.Entry eldest) {
-                    return size() > _cacheCapacity;
-                }
-            };
-    private CSSParser _cssParser;
+    private final AtomicLong _clock = new AtomicLong();
+    private final AtomicInteger _cachedRules = new AtomicInteger();
+
+    private final ThreadLocal _cssParser = new ThreadLocal() {
+        protected Object initialValue() {
+            return new CSSParser(ERROR_HANDLER);
+        }
+    };
+
+    private volatile boolean _supportCMYKColors;
+
+    private static final CSSErrorHandler ERROR_HANDLER = new CSSErrorHandler() {
+        public void error(String uri, String message) {
+            XRLog.cssParse(Level.WARNING, "(" + uri + ") " + message);
+        }
+    };
 
     public StylesheetFactoryImpl(UserAgentCallback userAgentCallback) {
         _userAgentCallback = userAgentCallback;
-        _cssParser = new CSSParser(new CSSErrorHandler() {
-            public void error(String uri, String message) {
-                XRLog.cssParse(Level.WARNING, "(" + uri + ") " + message);
-            }
-        });
     }
 
-    public synchronized Stylesheet parse(Reader reader, StylesheetInfo info) {
+    private CSSParser getParser() {
+        CSSParser parser = (CSSParser) _cssParser.get();
+        parser.setSupportCMYKColors(_supportCMYKColors);
+        return parser;
+    }
+
+    public Stylesheet parse(Reader reader, StylesheetInfo info) {
         try {
-            return _cssParser.parseStylesheet(info.getUri(), info.getOrigin(), reader);
+            return getParser().parseStylesheet(info.getUri(), info.getOrigin(), reader);
         } catch (IOException e) {
             XRLog.cssParse(Level.WARNING, "Couldn't parse stylesheet at URI " + info.getUri() + ": " + e.getMessage(), e);
             return new Stylesheet(info.getUri(), info.getOrigin());
@@ -112,8 +130,21 @@ public class StylesheetFactoryImpl implements StylesheetFactory {
         }
     }
 
-    public synchronized Ruleset parseStyleDeclaration(int origin, String styleDeclaration) {
-        return _cssParser.parseDeclaration(origin, styleDeclaration);
+    /**
+     * Parses the contents of a <code>style</code> attribute.  Results are
+     * shared through a process wide cache keyed by the declaration text, so
+     * the returned ruleset must not be modified.
+     */
+    public Ruleset parseStyleDeclaration(int origin, String styleDeclaration) {
+        boolean supportCMYKColors = _supportCMYKColors;
+        Ruleset result = StyleDeclarationCache.get(origin, supportCMYKColors, styleDeclaration);
+        if (result == null) {
+            CSSParser parser = (CSSParser) _cssParser.get();
+            parser.setSupportCMYKColors(supportCMYKColors);
+            result = parser.parseDeclaration(origin, styleDeclaration);
+            StyleDeclarationCache.put(origin, supportCMYKColors, styleDeclaration, result);
+        }
+        return result;
     }
 
     /**
@@ -124,8 +155,48 @@ public class StylesheetFactoryImpl implements StylesheetFactory {
      *              factory.
      * @param sheet The sheet to cache.
      */
-    public synchronized void putStylesheet(Object key, Stylesheet sheet) {
-        _cache.put(key, sheet);
+    public void putStylesheet(Object key, Stylesheet sheet) {
+        CacheEntry entry = new CacheEntry(sheet, _clock.incrementAndGet());
+        _cachedRules.addAndGet(entry.weight);
+        CacheEntry old = (CacheEntry) _cache.put(key, entry);
+        if (old != null) {
+            _cachedRules.addAndGet(-old.weight);
+        }
+        evict();
+    }
+
+    /**
+     * Removes the least recently used entries until the cached sheets hold
+     * at most {@link #MAX_CACHED_RULES} rules.  The most recently added
+     * sheet is always kept.  Concurrent callers may remove a few more
+     * entries than necessary.
+     */
+    private void evict() {
+        while (_cachedRules.get() > MAX_CACHED_RULES && _cache.size() > 1) {
+            Object eldestKey = null;
+            CacheEntry eldest = null;
+            for (Iterator i = _cache.entrySet().iterator(); i.hasNext(); ) {
+                Map.Entry e = (Map.Entry) i.next();
+                CacheEntry entry = (CacheEntry) e.getValue();
+                if (eldest == null || entry.lastUsed < eldest.lastUsed) {
+                    eldestKey = e.getKey();
+                    eldest = entry;
+                }
+            }
+            if (eldest == null) {
+                return;
+            }
+            removeCachedStylesheet(eldestKey, eldest);
+        }
+    }
+
+    private boolean removeCachedStylesheet(Object key, CacheEntry entry) {
+        if (_cache.remove(key, entry)) {
+            _cachedRules.addAndGet(-entry.weight);
+            return true;
+        } else {
+            return false;
+        }
     }
 
     /**
@@ -134,7 +205,7 @@ public class StylesheetFactoryImpl implements StylesheetFactory {
      *         Note that the Stylesheet may be null.
      */
     //TODO: work out how to handle caching properly, with cache invalidation
-    public synchronized boolean containsStylesheet(Object key) {
+    public boolean containsStylesheet(Object key) {
         return _cache.containsKey(key);
     }
 
@@ -145,8 +216,13 @@ public class StylesheetFactoryImpl implements StylesheetFactory {
      *            putStylesheet();
      * @return The stylesheet
      */
-    public synchronized Stylesheet getCachedStylesheet(Object key) {
-        return (Stylesheet) _cache.get(key);
+    public Stylesheet getCachedStylesheet(Object key) {
+        CacheEntry entry = (CacheEntry) _cache.get(key);
+        if (entry == null) {
+            return null;
+        }
+        entry.lastUsed = _clock.incrementAndGet();
+        return entry.sheet;
     }
 
     /**
@@ -155,12 +231,19 @@ public class StylesheetFactoryImpl implements StylesheetFactory {
      * @param key The key for this sheet; same as key passed to
      *            putStylesheet();
      */
-    public synchronized Object removeCachedStylesheet(Object key) {
-        return _cache.remove(key);
+    public Object removeCachedStylesheet(Object key) {
+        CacheEntry entry = (CacheEntry) _cache.get(key);
+        if (entry != null && removeCachedStylesheet(key, entry)) {
+            return entry.sheet;
+        } else {
+            return null;
+        }
     }
     
-    public synchronized void flushCachedStylesheets() {
-        _cache.clear();
+    public void flushCachedStylesheets() {
+        for (Iterator i = _cache.keySet().iterator(); i.hasNext(); ) {
+            removeCachedStylesheet(i.next());
+        }
     }
 
     /**
@@ -172,7 +255,7 @@ public class StylesheetFactoryImpl implements StylesheetFactory {
      */
     //TODO: this looks a bit odd
     public Stylesheet getStylesheet(StylesheetInfo info) {
-        XRLog.load("Requesting stylesheet: " + info.getUri());
+        XRLog.log(XRLog.LOAD, Level.INFO, "Requesting stylesheet: {0}", new Object[] { info.getUri() });
 
         Stylesheet s = getCachedStylesheet(info.getUri());
         if (s == null && !containsStylesheet(info.getUri())) {
@@ -187,6 +270,18 @@ public class StylesheetFactoryImpl implements StylesheetFactory {
     }
     
     public void setSupportCMYKColors(boolean b) {
-        _cssParser.setSupportCMYKColors(b);
+        _supportCMYKColors = b;
+    }
+
+    private static class CacheEntry {
+        final Stylesheet sheet;
+        final int weight;
+        volatile long lastUsed;
+
+        CacheEntry(Stylesheet sheet, long lastUsed) {
+            this.sheet = sheet;
+            this.weight = sheet == null ? 1 : sheet.getContents().size() + 1;
+            this.lastUsed = lastUsed;
+        }
     }
 }
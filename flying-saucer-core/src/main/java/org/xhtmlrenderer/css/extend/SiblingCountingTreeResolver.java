@@ -0,0 +1,23 @@
+package org.xhtmlrenderer.css.extend;
+
+/**
+ * A {@link TreeResolver} which can also count the siblings of an element,
+ * as needed by <code>:nth-last-child()</code> and <code>:nth-of-type()</code>.
+ * The matcher counts the siblings itself for tree resolvers which don't
+ * implement it.
+ */
+public interface SiblingCountingTreeResolver extends TreeResolver {
+    /**
+     * Returns the number of element children of the parent of the submitted
+     * element (including the element itself).
+     */
+    int getSiblingElementCount(Object element);
+
+    /**
+     * Returns the index of the position of the submitted element among its
+     * element node siblings which have the same name and namespace.
+     * @param element
+     * @return -1 in case of error, 0 indexed position otherwise
+     */
+    int getPositionOfElementOfType(Object element);
+}
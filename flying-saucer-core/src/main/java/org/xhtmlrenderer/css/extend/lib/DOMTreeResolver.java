@@ -19,17 +19,30 @@
  */
 package org.xhtmlrenderer.css.extend.lib;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
+import org.xhtmlrenderer.css.extend.SiblingCountingTreeResolver;
 import org.xhtmlrenderer.css.extend.TreeResolver;
+import org.xhtmlrenderer.dom.CompactElement;
+import org.xhtmlrenderer.dom.CompactParentNode;
 
 /**
  * @author scott
  *         <p/>
  *         works for a w3c DOM tree
  */
-public class DOMTreeResolver implements TreeResolver {
+public class DOMTreeResolver implements SiblingCountingTreeResolver {
+    // parent Node -> SiblingIndex, shared by concurrent cascades and dropped
+    // as a whole by invalidateSiblingIndexes()
+    private volatile Map _siblingIndexes = newSiblingIndexes();
+
     public Object getParentElement(Object element) {
         Node parent = ((org.w3c.dom.Element) element).getParentNode();
         if (parent.getNodeType() != Node.ELEMENT_NODE) parent = null;
@@ -54,6 +67,9 @@ public class DOMTreeResolver implements TreeResolver {
     }
 
     public boolean isFirstChildElement(Object element) {
+        if (element instanceof CompactElement) {
+            return ((CompactElement) element).getElementIndex() == 0;
+        }
         org.w3c.dom.Node parent = ((org.w3c.dom.Element) element).getParentNode();
         Node currentChild = parent.getFirstChild();
         while (currentChild != null && currentChild.getNodeType() != Node.ELEMENT_NODE) {
@@ -63,6 +79,10 @@ public class DOMTreeResolver implements TreeResolver {
     }
 
     public boolean isLastChildElement(Object element) {
+        if (element instanceof CompactElement) {
+            CompactElement e = (CompactElement) element;
+            return e.getElementIndex() == ((CompactParentNode) e.getParentNode()).getElementCount() - 1;
+        }
         org.w3c.dom.Node parent = ((org.w3c.dom.Element) element).getParentNode();
         Node currentChild = parent.getLastChild();
         while (currentChild != null && currentChild.getNodeType() != Node.ELEMENT_NODE) {
@@ -92,23 +112,103 @@ public class DOMTreeResolver implements TreeResolver {
     }
     
     public int getPositionOfElement(Object element) {
-        org.w3c.dom.Node parent = ((org.w3c.dom.Element) element).getParentNode();
-        NodeList nl = parent.getChildNodes();
-
-        int elt_count = 0;
-        int i = 0;
-        while (i < nl.getLength()) {
-            if (nl.item(i).getNodeType() == org.w3c.dom.Node.ELEMENT_NODE) {
-                if(nl.item(i) == element) {
-                    return elt_count;
-                } else {
-                    elt_count++;
+        if (element instanceof CompactElement) {
+            return ((CompactElement) element).getElementIndex();
+        }
+        SiblingIndex index = getSiblingIndex((Node) element);
+        return index == null ? -1 : index.getPosition(element);
+    }
+
+    public int getSiblingElementCount(Object element) {
+        Node parent = ((Element) element).getParentNode();
+        if (parent instanceof CompactParentNode) {
+            return ((CompactParentNode) parent).getElementCount();
+        }
+        SiblingIndex index = getSiblingIndex((Node) element);
+        return index == null ? 0 : index.getElementCount();
+    }
+
+    public int getPositionOfElementOfType(Object element) {
+        SiblingIndex index = getSiblingIndex((Node) element);
+        return index == null ? -1 : index.getPositionOfType(element);
+    }
+
+    /**
+     * Drops the cached positions of elements among their siblings.  Call
+     * this before styling a document which may have been modified since it
+     * was last styled.
+     */
+    public void invalidateSiblingIndexes() {
+        _siblingIndexes = newSiblingIndexes();
+    }
+
+    private static Map newSiblingIndexes() {
+        return Collections.synchronizedMap(new IdentityHashMap());
+    }
+
+    /**
+     * Returns the (cached) index of the element children of the parent of
+     * <code>element</code>.  The cache assumes that the document is not
+     * modified until {@link #invalidateSiblingIndexes()} is called.
+     */
+    private SiblingIndex getSiblingIndex(Node element) {
+        Node parent = element.getParentNode();
+        if (parent == null) {
+            return null;
+        }
+        Map indexes = _siblingIndexes;
+        SiblingIndex result = (SiblingIndex) indexes.get(parent);
+        if (result == null) {
+            // built outside the lock; threads racing for the same parent
+            // build equal indexes
+            result = new SiblingIndex(parent);
+            indexes.put(parent, result);
+        }
+        return result;
+    }
+
+    private static class SiblingIndex {
+        private final Map _positions = new IdentityHashMap();
+        private final int[] _positionsOfType;
+        private final int _elementCount;
+
+        SiblingIndex(Node parent) {
+            List elements = new ArrayList();
+            for (Node n = parent.getFirstChild(); n != null; n = n.getNextSibling()) {
+                if (n.getNodeType() == Node.ELEMENT_NODE) {
+                    _positions.put(n, new Integer(elements.size()));
+                    elements.add(n);
+                }
+            }
+            _elementCount = elements.size();
+
+            _positionsOfType = new int[_elementCount];
+            Map typeCounts = new HashMap();
+            for (int i = 0; i < _elementCount; i++) {
+                Node n = (Node) elements.get(i);
+                String type = n.getNamespaceURI() + ' ' +
+                        (n.getLocalName() == null ? n.getNodeName() : n.getLocalName());
+                int[] count = (int[]) typeCounts.get(type);
+                if (count == null) {
+                    count = new int[1];
+                    typeCounts.put(type, count);
                 }
+                _positionsOfType[i] = count[0]++;
             }
-            i++;
         }
-        
-        //should not happen
-        return -1;
+
+        int getElementCount() {
+            return _elementCount;
+        }
+
+        int getPosition(Object element) {
+            Integer position = (Integer) _positions.get(element);
+            return position == null ? -1 : position.intValue();
+        }
+
+        int getPositionOfType(Object element) {
+            int position = getPosition(element);
+            return position == -1 ? -1 : _positionsOfType[position];
+        }
     }
 }
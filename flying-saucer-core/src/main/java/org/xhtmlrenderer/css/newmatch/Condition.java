@@ -24,9 +24,12 @@ import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import org.w3c.dom.Node;
 import org.xhtmlrenderer.css.extend.AttributeResolver;
+import org.xhtmlrenderer.css.extend.SiblingCountingTreeResolver;
 import org.xhtmlrenderer.css.extend.TreeResolver;
 import org.xhtmlrenderer.css.parser.CSSParseException;
+import org.xhtmlrenderer.dom.CompactElement;
 
 
 /**
@@ -156,6 +159,22 @@ abstract class Condition {
         return NthChildCondition.fromString(number);
     }
 
+    /**
+     * the CSS condition that element has pseudo-class :nth-last-child(an+b)
+     */
+    static Condition createNthLastChildCondition(String number) {
+        int[] ab = NthChildCondition.parse(number, "nth-last-child");
+        return new NthLastChildCondition(ab[0], ab[1]);
+    }
+
+    /**
+     * the CSS condition that element has pseudo-class :nth-of-type(an+b)
+     */
+    static Condition createNthOfTypeCondition(String number) {
+        int[] ab = NthChildCondition.parse(number, "nth-of-type");
+        return new NthOfTypeCondition(ab[0], ab[1]);
+    }
+
     /**
      * the CSS condition that element has pseudo-class :even
      * 
@@ -301,9 +320,11 @@ abstract class Condition {
 
     private static class ClassCondition extends Condition {
 
+        private String _className;
         private String _paddedClassName;
 
         ClassCondition(String className) {
+            _className = className;
             _paddedClassName = " " + className + " ";
         }
 
@@ -316,6 +337,11 @@ abstract class Condition {
                 return false;
             }
 
+            // The compact DOM has already split the class attribute
+            if (e instanceof CompactElement && c == ((CompactElement) e).getClassAttribute()) {
+                return ((CompactElement) e).hasClassName(_className);
+            }
+
             // This is much faster than calling `split()` and comparing individual values in a loop.
             // NOTE: In jQuery, for example, the attribute value first has whitespace normalized to spaces. But
             // in an XML DOM, space normalization in attributes is supposed to have happened already.
@@ -406,8 +432,8 @@ abstract class Condition {
         }
 
         boolean matches(Object e, AttributeResolver attRes, TreeResolver treeRes) {
-            // getPositionOfElement() starts at 0, CSS spec starts at 1
-            int position = treeRes.getPositionOfElement(e)+1;
+            // getPosition() starts at 0, CSS spec starts at 1
+            int position = getPosition(e, treeRes)+1;
 
             position -= b;
 
@@ -420,21 +446,33 @@ abstract class Condition {
             }
         }
 
+        int getPosition(Object e, TreeResolver treeRes) {
+            return treeRes.getPositionOfElement(e);
+        }
+
         static NthChildCondition fromString(String number) {
+            int[] ab = parse(number, "nth-child");
+            return new NthChildCondition(ab[0], ab[1]);
+        }
+
+        /**
+         * Parses an an+b expression, returns { a, b }
+         */
+        static int[] parse(String number, String function) {
             number = number.trim().toLowerCase();
 
             if ("even".equals(number)) {
-                return new NthChildCondition(2, 0);
+                return new int[] { 2, 0 };
             } else if ("odd".equals(number)) {
-                return new NthChildCondition(2, 1);
+                return new int[] { 2, 1 };
             } else {
                 try {
-                    return new NthChildCondition(0, Integer.parseInt(number));
+                    return new int[] { 0, Integer.parseInt(number) };
                 } catch (NumberFormatException e) {
                     Matcher m = pattern.matcher(number);
 
                     if (!m.matches()) {
-                        throw new CSSParseException("Invalid nth-child selector: " + number, -1);
+                        throw new CSSParseException("Invalid " + function + " selector: " + number, -1);
                     } else {
                         int a = m.group(2).equals("") ? 1 : Integer.parseInt(m.group(2));
                         int b = (m.group(5) == null) ? 0 : Integer.parseInt(m.group(5));
@@ -445,13 +483,62 @@ abstract class Condition {
                             b *= -1;
                         }
 
-                        return new NthChildCondition(a, b);
+                        return new int[] { a, b };
                     }
                 }
             }
         }
     }
 
+    private static class NthLastChildCondition extends NthChildCondition {
+
+        NthLastChildCondition(int a, int b) {
+            super(a, b);
+        }
+
+        int getPosition(Object e, TreeResolver treeRes) {
+            int position = treeRes.getPositionOfElement(e);
+            if (position == -1) {
+                return -1;
+            }
+            if (treeRes instanceof SiblingCountingTreeResolver) {
+                return ((SiblingCountingTreeResolver) treeRes).getSiblingElementCount(e) - 1 - position;
+            }
+            if (! (e instanceof Node)) {
+                return -1;
+            }
+            int result = 0;
+            for (Node n = ((Node) e).getNextSibling(); n != null; n = n.getNextSibling()) {
+                if (n.getNodeType() == Node.ELEMENT_NODE) {
+                    result++;
+                }
+            }
+            return result;
+        }
+    }
+
+    private static class NthOfTypeCondition extends NthChildCondition {
+
+        NthOfTypeCondition(int a, int b) {
+            super(a, b);
+        }
+
+        int getPosition(Object e, TreeResolver treeRes) {
+            if (treeRes instanceof SiblingCountingTreeResolver) {
+                return ((SiblingCountingTreeResolver) treeRes).getPositionOfElementOfType(e);
+            }
+            String name = treeRes.getElementName(e);
+            int result = 0;
+            for (Object sibling = treeRes.getPreviousSiblingElement(e); sibling != null;
+                    sibling = treeRes.getPreviousSiblingElement(sibling)) {
+                if (name.equals(treeRes.getElementName(sibling))) {
+                    result++;
+                }
+            }
+            return result;
+        }
+    }
+
     private static class EvenChildCondition extends Condition {
 
         EvenChildCondition() {
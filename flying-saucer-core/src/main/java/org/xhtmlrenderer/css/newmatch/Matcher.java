@@ -30,6 +30,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
 
 import org.xhtmlrenderer.css.extend.AttributeResolver;
 import org.xhtmlrenderer.css.extend.StylesheetFactory;
@@ -38,11 +40,17 @@ import org.xhtmlrenderer.css.sheet.MediaRule;
 import org.xhtmlrenderer.css.sheet.PageRule;
 import org.xhtmlrenderer.css.sheet.Ruleset;
 import org.xhtmlrenderer.css.sheet.Stylesheet;
+import org.xhtmlrenderer.event.DefaultRenderMetricsListener;
+import org.xhtmlrenderer.event.RenderMetricsListener;
 import org.xhtmlrenderer.util.XRLog;
 import org.xhtmlrenderer.util.Util;
 
 
 /**
+ * Matches elements against the selectors of a set of stylesheets.  The
+ * cascaded styles of different elements may be requested concurrently (see
+ * {@link org.xhtmlrenderer.layout.SharedContext#setLayoutExecutor(java.util.concurrent.ExecutorService)}).
+ *
  * @author Torbjoern Gannholm
  */
 public class Matcher {
@@ -63,6 +71,8 @@ public class Matcher {
     private List _pageRules;
     private List _fontFaceRules;
     
+    private RenderMetricsListener _metricsListener = new DefaultRenderMetricsListener();
+    
     public Matcher(
             TreeResolver tr, AttributeResolver ar, StylesheetFactory factory, List stylesheets, String medium) {
         newMaps();
@@ -75,6 +85,14 @@ public class Matcher {
         docMapper = createDocumentMapper(stylesheets, medium);
     }
     
+    /**
+     * Sets the listener notified of the number of elements matched and
+     * selectors tested.
+     */
+    public void setMetricsListener(RenderMetricsListener metricsListener) {
+        _metricsListener = metricsListener;
+    }
+    
     public void removeStyle(Object e) {
         _map.remove(e);
     }
@@ -162,7 +180,8 @@ public class Matcher {
     Mapper createDocumentMapper(List stylesheets, String medium) {
         java.util.TreeMap sorter = new java.util.TreeMap();
         addAllStylesheets(stylesheets, sorter, medium);
-        XRLog.match("Matcher created with " + sorter.size() + " selectors");
+        XRLog.log(XRLog.MATCH, Level.INFO, "Matcher created with {0,number,#} selectors",
+                new Object[] { new Integer(sorter.size()) });
         return new Mapper(sorter.values());
     }
     
@@ -221,11 +240,11 @@ public class Matcher {
     }
 
     private void newMaps() {
-        _map = Collections.synchronizedMap(new java.util.HashMap());
-        _hoverElements = Collections.synchronizedSet(new java.util.HashSet());
-        _activeElements = Collections.synchronizedSet(new java.util.HashSet());
-        _focusElements = Collections.synchronizedSet(new java.util.HashSet());
-        _visitElements = Collections.synchronizedSet(new java.util.HashSet());
+        _map = new ConcurrentHashMap();
+        _hoverElements = Collections.newSetFromMap(new ConcurrentHashMap());
+        _activeElements = Collections.newSetFromMap(new ConcurrentHashMap());
+        _focusElements = Collections.newSetFromMap(new ConcurrentHashMap());
+        _visitElements = Collections.newSetFromMap(new ConcurrentHashMap());
     }
 
     private Mapper getMapper(Object e) {
@@ -285,31 +304,27 @@ public class Matcher {
     }
 
     private org.xhtmlrenderer.css.sheet.Ruleset getElementStyle(Object e) {
-        synchronized (e) {
-            if (_attRes == null || _styleFactory == null) {
-                return null;
-            }
-            
-            String style = _attRes.getElementStyling(e);
-            if (Util.isNullOrEmpty(style)) {
-                return null;
-            }
-            
-            return _styleFactory.parseStyleDeclaration(org.xhtmlrenderer.css.sheet.StylesheetInfo.AUTHOR, style);
+        if (_attRes == null || _styleFactory == null) {
+            return null;
         }
+
+        String style = _attRes.getElementStyling(e);
+        if (Util.isNullOrEmpty(style)) {
+            return null;
+        }
+
+        return _styleFactory.parseStyleDeclaration(org.xhtmlrenderer.css.sheet.StylesheetInfo.AUTHOR, style);
     }
 
     private org.xhtmlrenderer.css.sheet.Ruleset getNonCssStyle(Object e) {
-        synchronized (e) {
-            if (_attRes == null || _styleFactory == null) {
-                return null;
-            }
-            String style = _attRes.getNonCssStyling(e);
-            if (Util.isNullOrEmpty(style)) {
-                return null;
-            }
-            return _styleFactory.parseStyleDeclaration(org.xhtmlrenderer.css.sheet.StylesheetInfo.AUTHOR, style);
+        if (_attRes == null || _styleFactory == null) {
+            return null;
+        }
+        String style = _attRes.getNonCssStyling(e);
+        if (Util.isNullOrEmpty(style)) {
+            return null;
         }
+        return _styleFactory.parseStyleDeclaration(org.xhtmlrenderer.css.sheet.StylesheetInfo.AUTHOR, style);
     }
 
     /**
@@ -393,48 +408,48 @@ public class Matcher {
                     childAxes.add(chain);
                 }
             }
-            if (children == null) children = new HashMap();
-            Mapper childMapper = (Mapper) children.get(key.toString());
-            if (childMapper == null) {
-                childMapper = new Mapper();
-                childMapper.axes = childAxes;
-                childMapper.pseudoSelectors = pseudoSelectors;
-                childMapper.mappedSelectors = mappedSelectors;
-                children.put(key.toString(), childMapper);
+            _metricsListener.count(RenderMetricsListener.COUNT_ELEMENTS, 1);
+            _metricsListener.count(RenderMetricsListener.COUNT_SELECTORS_TESTED, axes.size());
+            Mapper childMapper;
+            // siblings may be matched concurrently
+            synchronized (this) {
+                if (children == null) children = new HashMap();
+                childMapper = (Mapper) children.get(key.toString());
+                if (childMapper == null) {
+                    childMapper = new Mapper();
+                    childMapper.axes = childAxes;
+                    childMapper.pseudoSelectors = pseudoSelectors;
+                    childMapper.mappedSelectors = mappedSelectors;
+                    children.put(key.toString(), childMapper);
+                }
             }
             link(e, childMapper);
             return childMapper;
         }
 
+        // Called with the lock of e held
         CascadedStyle getCascadedStyle(Object e) {
-            CascadedStyle result;
-            synchronized (e) {
-                CascadedStyle cs = null;
-                org.xhtmlrenderer.css.sheet.Ruleset elementStyling = getElementStyle(e);
-                org.xhtmlrenderer.css.sheet.Ruleset nonCssStyling = getNonCssStyle(e);
-                List propList = new LinkedList();
-                //specificity 0,0,0,0
-                if (nonCssStyling != null) {
-                    propList.addAll(nonCssStyling.getPropertyDeclarations());
-                }
-                //these should have been returned in order of specificity
-                for (Iterator i = getMatchedRulesets(mappedSelectors); i.hasNext();) {
-                    org.xhtmlrenderer.css.sheet.Ruleset rs = (org.xhtmlrenderer.css.sheet.Ruleset) i.next();
-                    propList.addAll(rs.getPropertyDeclarations());
-                }
-                //specificity 1,0,0,0
-                if (elementStyling != null) {
-                    propList.addAll(elementStyling.getPropertyDeclarations());
-                }
-                if (propList.size() == 0)
-                    cs = CascadedStyle.emptyCascadedStyle;
-                else {
-                    cs = new CascadedStyle(propList.iterator());
-                }
-
-                result = cs;
+            org.xhtmlrenderer.css.sheet.Ruleset elementStyling = getElementStyle(e);
+            org.xhtmlrenderer.css.sheet.Ruleset nonCssStyling = getNonCssStyle(e);
+            List propList = new LinkedList();
+            //specificity 0,0,0,0
+            if (nonCssStyling != null) {
+                propList.addAll(nonCssStyling.getPropertyDeclarations());
+            }
+            //these should have been returned in order of specificity
+            for (Iterator i = getMatchedRulesets(mappedSelectors); i.hasNext();) {
+                org.xhtmlrenderer.css.sheet.Ruleset rs = (org.xhtmlrenderer.css.sheet.Ruleset) i.next();
+                propList.addAll(rs.getPropertyDeclarations());
+            }
+            //specificity 1,0,0,0
+            if (elementStyling != null) {
+                propList.addAll(elementStyling.getPropertyDeclarations());
+            }
+            if (propList.size() == 0) {
+                return CascadedStyle.emptyCascadedStyle;
+            } else {
+                return new CascadedStyle(propList.iterator());
             }
-            return result;
         }
 
         /**
@@ -177,6 +177,22 @@ public class Selector {
         addCondition(Condition.createNthChildCondition(number));
     }
 
+    /**
+     * the CSS condition that element has pseudo-class :nth-last-child(an+b)
+     */
+    public void addNthLastChildCondition(String number) {
+        _specificityC++;
+        addCondition(Condition.createNthLastChildCondition(number));
+    }
+
+    /**
+     * the CSS condition that element has pseudo-class :nth-of-type(an+b)
+     */
+    public void addNthOfTypeCondition(String number) {
+        _specificityC++;
+        addCondition(Condition.createNthOfTypeCondition(number));
+    }
+
     /**
      * the CSS condition that element has pseudo-class :even
      */
@@ -1201,14 +1201,20 @@ public class CSSParser {
                 push(t);
                 throw new CSSParseException(t, Token.TK_IDENT, getCurrentLine());
             }
-        } else if (f.equals("nth-child")) {
+        } else if (f.equals("nth-child") || f.equals("nth-last-child") || f.equals("nth-of-type")) {
             StringBuilder number = new StringBuilder();
             while ((t = next()) != null && (t == Token.TK_IDENT || t == Token.TK_S || t == Token.TK_NUMBER || t == Token.TK_DIMENSION || t == Token.TK_PLUS || t == Token.TK_MINUS)) {
                 number.append(getTokenValue(t));
             }
 
             try {
-                selector.addNthChildCondition(number.toString());
+                if (f.equals("nth-child")) {
+                    selector.addNthChildCondition(number.toString());
+                } else if (f.equals("nth-last-child")) {
+                    selector.addNthLastChildCondition(number.toString());
+                } else {
+                    selector.addNthOfTypeCondition(number.toString());
+                }
             } catch (CSSParseException e) {
                 e.setLine(getCurrentLine());
                 push(t);
@@ -88,6 +88,9 @@ public class CalculatedStyle {
 
     private BackgroundSize _backgroundSize;
 
+    // see prepareConcurrentUse()
+    private boolean _preparedForConcurrentUse;
+
     /**
      * Cache child styles of this style that have the same cascaded properties
      */
@@ -756,6 +759,31 @@ public class CalculatedStyle {
         return getIdent(CSSName.WHITE_SPACE);
     }
 
+    /**
+     * Resolves everything this style (and its ancestors) computes lazily:
+     * every property value, the font, the line height and the border.
+     * Afterwards the style is only read, so it may be used by several
+     * threads at once, e.g. when the min/max widths of table cells are
+     * calculated concurrently.  Must be called on the layout thread before
+     * the style is handed to other threads.
+     */
+    public void prepareConcurrentUse(CssContext ctx) {
+        if (_preparedForConcurrentUse) {
+            return;
+        }
+        if (_parent != null) {
+            _parent.prepareConcurrentUse(ctx);
+        }
+        for (int i = 0; i < _derivedValuesById.length; i++) {
+            valueByName(CSSName.getByID(i));
+        }
+        getFSFontMetrics(ctx);
+        getLineHeight(ctx);
+        getBorder(ctx);
+        getBackgroundSize();
+        _preparedForConcurrentUse = true;
+    }
+
     public FSFont getFSFont(CssContext cssContext) {
         if (_FSFont == null) {
             _FSFont = cssContext.getFont(getFont(cssContext));
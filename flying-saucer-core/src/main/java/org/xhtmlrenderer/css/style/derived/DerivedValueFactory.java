@@ -52,12 +52,14 @@ public class DerivedValueFactory {
             case PropertyValue.VALUE_TYPE_NUMBER:
                 return new NumberValue(cssName, value);
             case PropertyValue.VALUE_TYPE_COLOR:
-                FSDerivedValue color = (FSDerivedValue)CACHED_COLORS.get(value.getCssText());
-                if (color == null) {
-                    color = new ColorValue(cssName, value);
-                    CACHED_COLORS.put(value.getCssText(), color);
+                synchronized (CACHED_COLORS) {
+                    FSDerivedValue color = (FSDerivedValue)CACHED_COLORS.get(value.getCssText());
+                    if (color == null) {
+                        color = new ColorValue(cssName, value);
+                        CACHED_COLORS.put(value.getCssText(), color);
+                    }
+                    return color;
                 }
-                return color;
             case PropertyValue.VALUE_TYPE_LIST:
                 return new ListValue(cssName, value);
             case PropertyValue.VALUE_TYPE_FUNCTION:
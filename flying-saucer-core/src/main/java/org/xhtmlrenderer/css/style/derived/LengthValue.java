@@ -183,7 +183,7 @@ public class LengthValue extends DerivedValue {
         }
         //assert (new Float(absVal).intValue() >= 0);
 
-        if (XRLog.isLoggingEnabled()) {
+        if (XRLog.isLoggable(XRLog.CASCADE, Level.FINEST)) {
             if (cssName == CSSName.FONT_SIZE) {
                 XRLog.cascade(Level.FINEST, cssName + ", relative= " +
                         relVal + " (" + stringValue + "), absolute= "
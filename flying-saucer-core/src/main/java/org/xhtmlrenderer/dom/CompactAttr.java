@@ -0,0 +1,91 @@
+package org.xhtmlrenderer.dom;
+
+import org.w3c.dom.Attr;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.TypeInfo;
+
+/**
+ * A view of one attribute of a {@link CompactElement}.  These are created
+ * on demand and are not part of the tree.
+ */
+public class CompactAttr extends CompactNode implements Attr {
+    private final CompactElement _owner;
+    private final int _attrIndex;
+
+    CompactAttr(CompactElement owner, int attrIndex) {
+        super(owner.getDocument());
+        _owner = owner;
+        _attrIndex = attrIndex;
+    }
+
+    public short getNodeType() {
+        return ATTRIBUTE_NODE;
+    }
+
+    public String getNodeName() {
+        return _owner.getAttributeField(_attrIndex, 0);
+    }
+
+    public String getName() {
+        return getNodeName();
+    }
+
+    public String getLocalName() {
+        return _owner.getAttributeField(_attrIndex, 1);
+    }
+
+    public String getNamespaceURI() {
+        return _owner.getAttributeField(_attrIndex, 2);
+    }
+
+    public String getPrefix() {
+        String name = getNodeName();
+        int colon = name.indexOf(':');
+        return colon == -1 ? null : name.substring(0, colon);
+    }
+
+    public String getValue() {
+        return _owner.getAttributeField(_attrIndex, 3);
+    }
+
+    public String getNodeValue() {
+        return getValue();
+    }
+
+    public boolean getSpecified() {
+        return true;
+    }
+
+    public Element getOwnerElement() {
+        return _owner;
+    }
+
+    public boolean isId() {
+        return false;
+    }
+
+    public TypeInfo getSchemaTypeInfo() {
+        return null;
+    }
+
+    public void setValue(String value) {
+        throw readOnly();
+    }
+
+    public boolean isSameNode(Node other) {
+        return equals(other);
+    }
+
+    public boolean equals(Object o) {
+        if (! (o instanceof CompactAttr)) {
+            return false;
+        }
+        CompactAttr other = (CompactAttr)o;
+        return _owner == other._owner && _attrIndex == other._attrIndex;
+    }
+
+    public int hashCode() {
+        return System.identityHashCode(_owner) * 31 + _attrIndex;
+    }
+}
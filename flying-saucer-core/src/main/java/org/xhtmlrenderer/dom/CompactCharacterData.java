@@ -0,0 +1,55 @@
+package org.xhtmlrenderer.dom;
+
+import org.w3c.dom.CharacterData;
+import org.w3c.dom.DOMException;
+
+/**
+ * Common base of text and comment nodes.
+ */
+public abstract class CompactCharacterData extends CompactNode implements CharacterData {
+    private final String _data;
+
+    CompactCharacterData(CompactDocument document, String data) {
+        super(document);
+        _data = data;
+    }
+
+    public String getData() {
+        return _data;
+    }
+
+    public String getNodeValue() {
+        return _data;
+    }
+
+    public int getLength() {
+        return _data.length();
+    }
+
+    public String substringData(int offset, int count) {
+        if (offset < 0 || offset > _data.length() || count < 0) {
+            throw new DOMException(DOMException.INDEX_SIZE_ERR, "Offset or count out of range");
+        }
+        return _data.substring(offset, Math.min(_data.length(), offset + count));
+    }
+
+    public void setData(String data) {
+        throw readOnly();
+    }
+
+    public void appendData(String arg) {
+        throw readOnly();
+    }
+
+    public void insertData(int offset, String arg) {
+        throw readOnly();
+    }
+
+    public void deleteData(int offset, int count) {
+        throw readOnly();
+    }
+
+    public void replaceData(int offset, int count, String arg) {
+        throw readOnly();
+    }
+}
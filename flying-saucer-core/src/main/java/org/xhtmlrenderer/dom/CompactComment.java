@@ -0,0 +1,17 @@
+package org.xhtmlrenderer.dom;
+
+import org.w3c.dom.Comment;
+
+public class CompactComment extends CompactCharacterData implements Comment {
+    CompactComment(CompactDocument document, String data) {
+        super(document, data);
+    }
+
+    public short getNodeType() {
+        return COMMENT_NODE;
+    }
+
+    public String getNodeName() {
+        return "#comment";
+    }
+}
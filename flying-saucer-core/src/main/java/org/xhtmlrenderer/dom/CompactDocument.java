@@ -0,0 +1,238 @@
+package org.xhtmlrenderer.dom;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.w3c.dom.Attr;
+import org.w3c.dom.CDATASection;
+import org.w3c.dom.Comment;
+import org.w3c.dom.DOMException;
+import org.w3c.dom.DOMConfiguration;
+import org.w3c.dom.DOMImplementation;
+import org.w3c.dom.Document;
+import org.w3c.dom.DocumentFragment;
+import org.w3c.dom.DocumentType;
+import org.w3c.dom.Element;
+import org.w3c.dom.EntityReference;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.w3c.dom.ProcessingInstruction;
+import org.w3c.dom.Text;
+import org.w3c.dom.traversal.DocumentTraversal;
+import org.w3c.dom.traversal.NodeFilter;
+import org.w3c.dom.traversal.NodeIterator;
+import org.w3c.dom.traversal.TreeWalker;
+
+/**
+ * A read-only DOM document which needs much less memory than the default
+ * implementation and is faster to navigate.  Instances are created by
+ * {@link CompactDocumentBuilder}; <code>XMLResource</code> uses it when
+ * <code>xr.load.compact-dom</code> is set to <code>true</code>.
+ * <p>
+ * Only the reading part of the DOM API is implemented.  Methods which would
+ * create or modify nodes throw a <code>DOMException</code>.  The document
+ * has no <code>DocumentType</code> and no <code>DOMImplementation</code>,
+ * and supports <code>NodeIterator</code> but not <code>TreeWalker</code>.
+ * {@link #getElementById(String)} returns the first element with a matching
+ * <code>id</code> attribute.
+ */
+public class CompactDocument extends CompactParentNode implements Document, DocumentTraversal {
+    private Map _elementsById;
+    private final String _documentURI;
+    private CompactElement _documentElement;
+
+    CompactDocument(String documentURI) {
+        super(null);
+        _documentURI = documentURI;
+    }
+
+    CompactDocument getDocument() {
+        return this;
+    }
+
+    void addChild(CompactNode child) {
+        super.addChild(child);
+        if (_documentElement == null && child instanceof CompactElement) {
+            _documentElement = (CompactElement)child;
+        }
+    }
+
+    public short getNodeType() {
+        return DOCUMENT_NODE;
+    }
+
+    public String getNodeName() {
+        return "#document";
+    }
+
+    public String getTextContent() {
+        return null;
+    }
+
+    public String getBaseURI() {
+        return _documentURI;
+    }
+
+    public DocumentType getDoctype() {
+        return null;
+    }
+
+    public DOMImplementation getImplementation() {
+        return null;
+    }
+
+    public Element getDocumentElement() {
+        return _documentElement;
+    }
+
+    public synchronized Element getElementById(String elementId) {
+        if (_elementsById == null) {
+            _elementsById = new HashMap();
+            NodeList elements = getElementsByTagName("*");
+            for (int i = 0; i < elements.getLength(); i++) {
+                CompactElement element = (CompactElement)elements.item(i);
+                String id = element.getId();
+                if (id != null && ! _elementsById.containsKey(id)) {
+                    _elementsById.put(id, element);
+                }
+            }
+        }
+        return (Element)_elementsById.get(elementId);
+    }
+
+    public NodeList getElementsByTagName(String tagname) {
+        CompactNodeList result = new CompactNodeList();
+        collectElementsByTagName(tagname, "*".equals(tagname), result);
+        return result;
+    }
+
+    public NodeList getElementsByTagNameNS(String namespaceURI, String localName) {
+        CompactNodeList result = new CompactNodeList();
+        collectElementsByTagNameNS(namespaceURI, localName, result);
+        return result;
+    }
+
+    public String lookupNamespaceURI(String prefix) {
+        return _documentElement == null ? null : _documentElement.lookupNamespaceURI(prefix);
+    }
+
+    public String lookupPrefix(String namespaceURI) {
+        return _documentElement == null ? null : _documentElement.lookupPrefix(namespaceURI);
+    }
+
+    public boolean isDefaultNamespace(String namespaceURI) {
+        return _documentElement != null && _documentElement.isDefaultNamespace(namespaceURI);
+    }
+
+    public NodeIterator createNodeIterator(Node root, int whatToShow, NodeFilter filter,
+                                           boolean entityReferenceExpansion) {
+        if (root == null) {
+            throw new DOMException(DOMException.NOT_SUPPORTED_ERR, "Root node is null");
+        }
+        return new CompactNodeIterator(root, whatToShow, filter, entityReferenceExpansion);
+    }
+
+    public TreeWalker createTreeWalker(Node root, int whatToShow, NodeFilter filter,
+                                       boolean entityReferenceExpansion) {
+        throw notSupported();
+    }
+
+    public String getInputEncoding() {
+        return null;
+    }
+
+    public String getXmlEncoding() {
+        return null;
+    }
+
+    public boolean getXmlStandalone() {
+        return false;
+    }
+
+    public String getXmlVersion() {
+        return "1.0";
+    }
+
+    public boolean getStrictErrorChecking() {
+        return true;
+    }
+
+    public String getDocumentURI() {
+        return _documentURI;
+    }
+
+    public DOMConfiguration getDomConfig() {
+        return null;
+    }
+
+    public void normalizeDocument() {
+    }
+
+    public void setXmlStandalone(boolean xmlStandalone) {
+        throw readOnly();
+    }
+
+    public void setXmlVersion(String xmlVersion) {
+        throw readOnly();
+    }
+
+    public void setStrictErrorChecking(boolean strictErrorChecking) {
+        throw readOnly();
+    }
+
+    public void setDocumentURI(String documentURI) {
+        throw readOnly();
+    }
+
+    public Element createElement(String tagName) {
+        throw readOnly();
+    }
+
+    public DocumentFragment createDocumentFragment() {
+        throw readOnly();
+    }
+
+    public Text createTextNode(String data) {
+        throw readOnly();
+    }
+
+    public Comment createComment(String data) {
+        throw readOnly();
+    }
+
+    public CDATASection createCDATASection(String data) {
+        throw readOnly();
+    }
+
+    public ProcessingInstruction createProcessingInstruction(String target, String data) {
+        throw readOnly();
+    }
+
+    public Attr createAttribute(String name) {
+        throw readOnly();
+    }
+
+    public EntityReference createEntityReference(String name) {
+        throw readOnly();
+    }
+
+    public Node importNode(Node importedNode, boolean deep) {
+        throw readOnly();
+    }
+
+    public Element createElementNS(String namespaceURI, String qualifiedName) {
+        throw readOnly();
+    }
+
+    public Attr createAttributeNS(String namespaceURI, String qualifiedName) {
+        throw readOnly();
+    }
+
+    public Node adoptNode(Node source) {
+        throw readOnly();
+    }
+
+    public Node renameNode(Node n, String namespaceURI, String qualifiedName) {
+        throw readOnly();
+    }
+}
@@ -0,0 +1,305 @@
+package org.xhtmlrenderer.dom;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXNotRecognizedException;
+import org.xml.sax.SAXNotSupportedException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.ext.DefaultHandler2;
+
+/**
+ * Builds a {@link CompactDocument} from SAX events.  The resulting tree has
+ * the same shape as the one the identity transformer creates: adjacent text
+ * and CDATA sections are merged into one text node, ignorable whitespace is
+ * dropped, comments and processing instructions are kept and namespace
+ * declarations become <code>xmlns</code> attributes.  Unlike the identity
+ * transformer, comments from the DTD are not added to the document.
+ * <p>
+ * A builder can be reused but not shared between threads.
+ */
+public class CompactDocumentBuilder extends DefaultHandler2 {
+    private static final String LEXICAL_HANDLER = "http://xml.org/sax/properties/lexical-handler";
+
+    private static final String[] NO_CLASS_NAMES = new String[0];
+
+    // The number of distinct attribute values and whitespace strings which
+    // are shared between nodes of one document
+    private static final int SHARED_VALUE_LIMIT = 4096;
+
+    private CompactDocument _document;
+    private CompactParentNode _current;
+    private final StringBuffer _text = new StringBuffer();
+
+    private String[] _prefixMappings = new String[8];
+    private int _prefixMappingCount;
+
+    private String[] _attributes = new String[8 * CompactElement.ATTR_SIZE];
+
+    private final Map _sharedValues = new HashMap();
+    private final Map _sharedClassNames = new HashMap();
+
+    private boolean _inDTD;
+    private String _documentURI;
+
+    /**
+     * Parses <code>source</code> with <code>xmlReader</code>.  This replaces
+     * the content and lexical handlers of the reader.
+     */
+    public CompactDocument parse(XMLReader xmlReader, InputSource source)
+            throws IOException, SAXException {
+        _documentURI = source.getSystemId();
+        xmlReader.setContentHandler(this);
+        try {
+            xmlReader.setProperty(LEXICAL_HANDLER, this);
+        } catch (SAXNotRecognizedException e) {
+            // comments will be missing
+        } catch (SAXNotSupportedException e) {
+            // comments will be missing
+        }
+        try {
+            xmlReader.parse(source);
+            return _document;
+        } finally {
+            _document = null;
+            _current = null;
+            _text.setLength(0);
+            _prefixMappingCount = 0;
+            _sharedValues.clear();
+            _sharedClassNames.clear();
+            _inDTD = false;
+        }
+    }
+
+    public void startDocument() throws SAXException {
+        _document = new CompactDocument(_documentURI);
+        _current = _document;
+    }
+
+    public void endDocument() throws SAXException {
+        flushText();
+        _document.trimChildren();
+    }
+
+    public void startPrefixMapping(String prefix, String uri) throws SAXException {
+        if (_prefixMappingCount * 2 == _prefixMappings.length) {
+            String[] prefixMappings = new String[_prefixMappings.length * 2];
+            System.arraycopy(_prefixMappings, 0, prefixMappings, 0, _prefixMappings.length);
+            _prefixMappings = prefixMappings;
+        }
+        _prefixMappings[_prefixMappingCount * 2] = prefix;
+        _prefixMappings[_prefixMappingCount * 2 + 1] = uri;
+        _prefixMappingCount++;
+    }
+
+    public void startElement(String uri, String localName, String qName, Attributes atts)
+            throws SAXException {
+        flushText();
+
+        int count = 0;
+        for (int i = 0; i < _prefixMappingCount; i++) {
+            String prefix = _prefixMappings[i * 2];
+            String mappedURI = _prefixMappings[i * 2 + 1];
+            String name = prefix.length() == 0 ? "xmlns" : "xmlns:" + prefix;
+            if (isDeclared(prefix.length() == 0 ? null : prefix, mappedURI)) {
+                // The identity transformer adds redundant declarations
+                // (e.g. xmlns defaulted by the DTD) as DOM Level 1 attributes
+                count = addAttribute(count, name, null, null, mappedURI);
+            } else {
+                count = addAttribute(count, name, prefix.length() == 0 ? "xmlns" : prefix,
+                        CompactElement.XMLNS_NAMESPACE_URI, mappedURI);
+            }
+        }
+        _prefixMappingCount = 0;
+
+        int length = atts.getLength();
+        for (int i = 0; i < length; i++) {
+            count = addAttribute(count, atts.getQName(i), atts.getLocalName(i), atts.getURI(i), atts.getValue(i));
+        }
+
+        String[] attributes = new String[count * CompactElement.ATTR_SIZE];
+        System.arraycopy(_attributes, 0, attributes, 0, attributes.length);
+
+        CompactElement element = new CompactElement(
+                _document, qName.intern(), toLocalName(localName, qName), toNamespaceURI(uri),
+                attributes, getClassNames(attributes));
+        _current.addChild(element);
+        _current = element;
+    }
+
+    private String[] getClassNames(String[] attributes) {
+        for (int i = 0; i < attributes.length; i += CompactElement.ATTR_SIZE) {
+            if ("class".equals(attributes[i])) {
+                String value = attributes[i + 3];
+                String[] result = (String[])_sharedClassNames.get(value);
+                if (result == null) {
+                    result = splitClassNames(value);
+                    if (_sharedClassNames.size() < SHARED_VALUE_LIMIT) {
+                        _sharedClassNames.put(value, result);
+                    }
+                }
+                return result;
+            }
+        }
+        return NO_CLASS_NAMES;
+    }
+
+    private static String[] splitClassNames(String value) {
+        int count = 0;
+        int length = value.length();
+        for (int i = 0; i < length; i++) {
+            if (! isSpace(value.charAt(i)) && (i == 0 || isSpace(value.charAt(i - 1)))) {
+                count++;
+            }
+        }
+        if (count == 0) {
+            return NO_CLASS_NAMES;
+        }
+        String[] result = new String[count];
+        int n = 0;
+        int start = -1;
+        for (int i = 0; i <= length; i++) {
+            boolean space = i == length || isSpace(value.charAt(i));
+            if (space && start != -1) {
+                result[n++] = value.substring(start, i).intern();
+                start = -1;
+            } else if (! space && start == -1) {
+                start = i;
+            }
+        }
+        return result;
+    }
+
+    private static boolean isSpace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f';
+    }
+
+    private String share(String value) {
+        String result = (String)_sharedValues.get(value);
+        if (result == null) {
+            result = value;
+            if (_sharedValues.size() < SHARED_VALUE_LIMIT) {
+                _sharedValues.put(value, value);
+            }
+        }
+        return result;
+    }
+
+    private boolean isDeclared(String prefix, String uri) {
+        return _current instanceof CompactElement &&
+                uri.equals(_current.lookupNamespaceURI(prefix));
+    }
+
+    /**
+     * Inserts an attribute, keeping the attributes sorted by qualified name.
+     * Returns the new number of attributes.
+     */
+    private int addAttribute(int count, String qName, String localName, String uri, String value) {
+        int size = CompactElement.ATTR_SIZE;
+        int pos = count;
+        while (pos > 0) {
+            int cmp = _attributes[(pos - 1) * size].compareTo(qName);
+            if (cmp == 0) {
+                // e.g. an xmlns attribute reported both as a prefix mapping
+                // and as an attribute
+                setAttribute(pos - 1, qName, localName, uri, value);
+                return count;
+            } else if (cmp < 0) {
+                break;
+            }
+            pos--;
+        }
+        if ((count + 1) * size > _attributes.length) {
+            String[] attributes = new String[_attributes.length * 2];
+            System.arraycopy(_attributes, 0, attributes, 0, count * size);
+            _attributes = attributes;
+        }
+        System.arraycopy(_attributes, pos * size, _attributes, (pos + 1) * size, (count - pos) * size);
+        setAttribute(pos, qName, localName, uri, value);
+        return count + 1;
+    }
+
+    private void setAttribute(int index, String qName, String localName, String uri, String value) {
+        int offset = index * CompactElement.ATTR_SIZE;
+        _attributes[offset] = qName.intern();
+        if (localName == null || localName.length() == 0) {
+            _attributes[offset + 1] = null;
+            _attributes[offset + 2] = null;
+        } else {
+            _attributes[offset + 1] = localName.intern();
+            _attributes[offset + 2] = toNamespaceURI(uri);
+        }
+        // ids are unique, other values often repeat (class, style, ...)
+        _attributes[offset + 3] = qName.equals("id") ? value : share(value);
+    }
+
+    private static String toLocalName(String localName, String qName) {
+        if (localName == null || localName.length() == 0) {
+            localName = qName.substring(qName.indexOf(':') + 1);
+        }
+        return localName.intern();
+    }
+
+    private static String toNamespaceURI(String uri) {
+        return uri == null || uri.length() == 0 ? null : uri.intern();
+    }
+
+    public void endElement(String uri, String localName, String qName) throws SAXException {
+        flushText();
+        _current.trimChildren();
+        _current = _current._parent;
+    }
+
+    public void characters(char[] ch, int start, int length) throws SAXException {
+        _text.append(ch, start, length);
+    }
+
+    public void ignorableWhitespace(char[] ch, int start, int length) throws SAXException {
+    }
+
+    public void processingInstruction(String target, String data) throws SAXException {
+        flushText();
+        _current.addChild(new CompactProcessingInstruction(_document, target, data));
+    }
+
+    public void comment(char[] ch, int start, int length) throws SAXException {
+        if (_inDTD || _current == null) {
+            return;
+        }
+        flushText();
+        _current.addChild(new CompactComment(_document, new String(ch, start, length)));
+    }
+
+    public void startDTD(String name, String publicId, String systemId) throws SAXException {
+        _inDTD = true;
+    }
+
+    public void endDTD() throws SAXException {
+        _inDTD = false;
+    }
+
+    private void flushText() {
+        if (_text.length() > 0) {
+            String text = _text.toString();
+            if (isWhitespace(text)) {
+                // e.g. indentation
+                text = share(text);
+            }
+            _current.addChild(new CompactText(_document, text));
+            _text.setLength(0);
+        }
+    }
+
+    private static boolean isWhitespace(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            if (! isSpace(text.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
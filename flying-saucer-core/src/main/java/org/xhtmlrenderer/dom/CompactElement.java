@@ -0,0 +1,277 @@
+package org.xhtmlrenderer.dom;
+
+import org.w3c.dom.Attr;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.NodeList;
+import org.w3c.dom.TypeInfo;
+
+/**
+ * An element of a {@link CompactDocument}.  Names are interned and
+ * attributes are kept in a single array, sorted by name as in the default
+ * DOM.  The <code>id</code> attribute and the tokens of the
+ * <code>class</code> attribute are looked up when the element is created.
+ */
+public class CompactElement extends CompactParentNode implements Element {
+    static final String XMLNS_NAMESPACE_URI = "http://www.w3.org/2000/xmlns/";
+
+    // Each attribute takes ATTR_SIZE slots: qualified name, local name,
+    // namespace URI, value
+    static final int ATTR_SIZE = 4;
+
+    private final String _name;
+    private final String _localName;
+    private final String _namespaceURI;
+    private final String[] _attributes;
+    private final String _id;
+    private final String[] _classNames;
+    int _elementIndex;
+
+    CompactElement(CompactDocument document, String name, String localName,
+                   String namespaceURI, String[] attributes, String[] classNames) {
+        super(document);
+        _name = name;
+        _localName = localName;
+        _namespaceURI = namespaceURI;
+        _attributes = attributes;
+        _id = getAttributeOrNull("id");
+        _classNames = classNames;
+    }
+
+    /**
+     * Returns the index of this element among the element children of its
+     * parent.
+     */
+    public int getElementIndex() {
+        return _elementIndex;
+    }
+
+    /**
+     * Returns the value of the <code>id</code> attribute or <code>null</code>
+     * if there isn't one.
+     */
+    public String getId() {
+        return _id;
+    }
+
+    /**
+     * Returns the value of the <code>class</code> attribute or
+     * <code>null</code> if there isn't one.  This is the same
+     * <code>String</code> instance returned by <code>getAttribute("class")</code>.
+     */
+    public String getClassAttribute() {
+        return getAttributeOrNull("class");
+    }
+
+    public String[] getClassNames() {
+        return (String[])_classNames.clone();
+    }
+
+    public boolean hasClassName(String className) {
+        String[] classNames = _classNames;
+        for (int i = 0; i < classNames.length; i++) {
+            if (classNames[i].equals(className)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    int getAttributeCount() {
+        return _attributes.length / ATTR_SIZE;
+    }
+
+    String getAttributeField(int index, int field) {
+        return _attributes[index * ATTR_SIZE + field];
+    }
+
+    int indexOfAttribute(String name) {
+        String[] attributes = _attributes;
+        for (int i = 0; i < attributes.length; i += ATTR_SIZE) {
+            if (attributes[i] == name || attributes[i].equals(name)) {
+                return i / ATTR_SIZE;
+            }
+        }
+        return -1;
+    }
+
+    int indexOfAttributeNS(String namespaceURI, String localName) {
+        if (namespaceURI != null && namespaceURI.length() == 0) {
+            namespaceURI = null;
+        }
+        String[] attributes = _attributes;
+        for (int i = 0; i < attributes.length; i += ATTR_SIZE) {
+            String ns = attributes[i + 2];
+            if (localName.equals(attributes[i + 1]) &&
+                    (namespaceURI == null ? ns == null : namespaceURI.equals(ns))) {
+                return i / ATTR_SIZE;
+            }
+        }
+        return -1;
+    }
+
+    private String getAttributeOrNull(String name) {
+        int index = indexOfAttribute(name);
+        return index == -1 ? null : _attributes[index * ATTR_SIZE + 3];
+    }
+
+    public short getNodeType() {
+        return ELEMENT_NODE;
+    }
+
+    public String getNodeName() {
+        return _name;
+    }
+
+    public String getTagName() {
+        return _name;
+    }
+
+    public String getLocalName() {
+        return _localName;
+    }
+
+    public String getNamespaceURI() {
+        return _namespaceURI;
+    }
+
+    public String getPrefix() {
+        int colon = _name.indexOf(':');
+        return colon == -1 ? null : _name.substring(0, colon);
+    }
+
+    public boolean hasAttributes() {
+        return _attributes.length > 0;
+    }
+
+    public NamedNodeMap getAttributes() {
+        return new CompactNamedNodeMap(this);
+    }
+
+    public String getAttribute(String name) {
+        String result = getAttributeOrNull(name);
+        return result == null ? "" : result;
+    }
+
+    public String getAttributeNS(String namespaceURI, String localName) {
+        int index = indexOfAttributeNS(namespaceURI, localName);
+        return index == -1 ? "" : _attributes[index * ATTR_SIZE + 3];
+    }
+
+    public boolean hasAttribute(String name) {
+        return indexOfAttribute(name) != -1;
+    }
+
+    public boolean hasAttributeNS(String namespaceURI, String localName) {
+        return indexOfAttributeNS(namespaceURI, localName) != -1;
+    }
+
+    public Attr getAttributeNode(String name) {
+        int index = indexOfAttribute(name);
+        return index == -1 ? null : new CompactAttr(this, index);
+    }
+
+    public Attr getAttributeNodeNS(String namespaceURI, String localName) {
+        int index = indexOfAttributeNS(namespaceURI, localName);
+        return index == -1 ? null : new CompactAttr(this, index);
+    }
+
+    public NodeList getElementsByTagName(String name) {
+        CompactNodeList result = new CompactNodeList();
+        collectElementsByTagName(name, "*".equals(name), result);
+        return result;
+    }
+
+    public NodeList getElementsByTagNameNS(String namespaceURI, String localName) {
+        CompactNodeList result = new CompactNodeList();
+        collectElementsByTagNameNS(namespaceURI, localName, result);
+        return result;
+    }
+
+    public TypeInfo getSchemaTypeInfo() {
+        return null;
+    }
+
+    public String lookupNamespaceURI(String prefix) {
+        if (_namespaceURI != null) {
+            String ownPrefix = getPrefix();
+            if (prefix == null ? ownPrefix == null : prefix.equals(ownPrefix)) {
+                return _namespaceURI;
+            }
+        }
+        String[] attributes = _attributes;
+        for (int i = 0; i < attributes.length; i += ATTR_SIZE) {
+            if (XMLNS_NAMESPACE_URI.equals(attributes[i + 2])) {
+                String declared = "xmlns".equals(attributes[i]) ? null : attributes[i + 1];
+                if (prefix == null ? declared == null : prefix.equals(declared)) {
+                    String value = attributes[i + 3];
+                    return value.length() == 0 ? null : value;
+                }
+            }
+        }
+        return _parent instanceof CompactElement ? _parent.lookupNamespaceURI(prefix) : null;
+    }
+
+    public boolean isDefaultNamespace(String namespaceURI) {
+        String uri = lookupNamespaceURI(null);
+        return uri == null ? namespaceURI == null : uri.equals(namespaceURI);
+    }
+
+    public String lookupPrefix(String namespaceURI) {
+        if (namespaceURI == null) {
+            return null;
+        }
+        String ownPrefix = getPrefix();
+        if (ownPrefix != null && namespaceURI.equals(_namespaceURI)) {
+            return ownPrefix;
+        }
+        String[] attributes = _attributes;
+        for (int i = 0; i < attributes.length; i += ATTR_SIZE) {
+            if (XMLNS_NAMESPACE_URI.equals(attributes[i + 2]) && ! "xmlns".equals(attributes[i]) &&
+                    namespaceURI.equals(attributes[i + 3])) {
+                return attributes[i + 1];
+            }
+        }
+        return _parent instanceof CompactElement ? _parent.lookupPrefix(namespaceURI) : null;
+    }
+
+    public void setAttribute(String name, String value) {
+        throw readOnly();
+    }
+
+    public void removeAttribute(String name) {
+        throw readOnly();
+    }
+
+    public Attr setAttributeNode(Attr newAttr) {
+        throw readOnly();
+    }
+
+    public Attr removeAttributeNode(Attr oldAttr) {
+        throw readOnly();
+    }
+
+    public void setAttributeNS(String namespaceURI, String qualifiedName, String value) {
+        throw readOnly();
+    }
+
+    public void removeAttributeNS(String namespaceURI, String localName) {
+        throw readOnly();
+    }
+
+    public Attr setAttributeNodeNS(Attr newAttr) {
+        throw readOnly();
+    }
+
+    public void setIdAttribute(String name, boolean isId) {
+        throw readOnly();
+    }
+
+    public void setIdAttributeNS(String namespaceURI, String localName, boolean isId) {
+        throw readOnly();
+    }
+
+    public void setIdAttributeNode(Attr idAttr, boolean isId) {
+        throw readOnly();
+    }
+}
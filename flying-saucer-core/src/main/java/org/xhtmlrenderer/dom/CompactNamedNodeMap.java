@@ -0,0 +1,50 @@
+package org.xhtmlrenderer.dom;
+
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+/**
+ * The attributes of a {@link CompactElement}.
+ */
+class CompactNamedNodeMap implements NamedNodeMap {
+    private final CompactElement _element;
+
+    CompactNamedNodeMap(CompactElement element) {
+        _element = element;
+    }
+
+    public int getLength() {
+        return _element.getAttributeCount();
+    }
+
+    public Node item(int index) {
+        if (index < 0 || index >= _element.getAttributeCount()) {
+            return null;
+        }
+        return new CompactAttr(_element, index);
+    }
+
+    public Node getNamedItem(String name) {
+        return _element.getAttributeNode(name);
+    }
+
+    public Node getNamedItemNS(String namespaceURI, String localName) {
+        return _element.getAttributeNodeNS(namespaceURI, localName);
+    }
+
+    public Node setNamedItem(Node arg) {
+        throw CompactNode.readOnly();
+    }
+
+    public Node removeNamedItem(String name) {
+        throw CompactNode.readOnly();
+    }
+
+    public Node setNamedItemNS(Node arg) {
+        throw CompactNode.readOnly();
+    }
+
+    public Node removeNamedItemNS(String namespaceURI, String localName) {
+        throw CompactNode.readOnly();
+    }
+}
@@ -0,0 +1,180 @@
+package org.xhtmlrenderer.dom;
+
+import org.w3c.dom.DOMException;
+import org.w3c.dom.Document;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.w3c.dom.UserDataHandler;
+
+/**
+ * Base class of the nodes of a {@link CompactDocument}.  A node knows its
+ * parent and its index in the parent's child array, so sibling navigation
+ * is a simple array access.  All methods which would modify the tree throw
+ * a <code>DOMException</code>.
+ */
+public abstract class CompactNode implements Node {
+    static final NodeList EMPTY_NODE_LIST = new CompactNodeList(new Node[0], 0);
+
+    private final CompactDocument _document;
+    CompactParentNode _parent;
+    int _index;
+
+    CompactNode(CompactDocument document) {
+        _document = document;
+    }
+
+    static DOMException readOnly() {
+        return new DOMException(DOMException.NO_MODIFICATION_ALLOWED_ERR,
+                "This document is read only");
+    }
+
+    static DOMException notSupported() {
+        return new DOMException(DOMException.NOT_SUPPORTED_ERR,
+                "Not supported by this document");
+    }
+
+    CompactDocument getDocument() {
+        return _document;
+    }
+
+    public Document getOwnerDocument() {
+        return _document;
+    }
+
+    public Node getParentNode() {
+        return _parent;
+    }
+
+    public Node getPreviousSibling() {
+        return _parent == null || _index == 0 ? null : _parent._children[_index - 1];
+    }
+
+    public Node getNextSibling() {
+        return _parent == null || _index == _parent._childCount - 1 ?
+                null : _parent._children[_index + 1];
+    }
+
+    public NodeList getChildNodes() {
+        return EMPTY_NODE_LIST;
+    }
+
+    public Node getFirstChild() {
+        return null;
+    }
+
+    public Node getLastChild() {
+        return null;
+    }
+
+    public boolean hasChildNodes() {
+        return false;
+    }
+
+    public NamedNodeMap getAttributes() {
+        return null;
+    }
+
+    public boolean hasAttributes() {
+        return false;
+    }
+
+    public String getNamespaceURI() {
+        return null;
+    }
+
+    public String getPrefix() {
+        return null;
+    }
+
+    public String getLocalName() {
+        return null;
+    }
+
+    public String getNodeValue() {
+        return null;
+    }
+
+    public String getTextContent() {
+        return getNodeValue();
+    }
+
+    public String getBaseURI() {
+        return getDocument().getDocumentURI();
+    }
+
+    public void setNodeValue(String nodeValue) {
+        throw readOnly();
+    }
+
+    public void setPrefix(String prefix) {
+        throw readOnly();
+    }
+
+    public void setTextContent(String textContent) {
+        throw readOnly();
+    }
+
+    public Node insertBefore(Node newChild, Node refChild) {
+        throw readOnly();
+    }
+
+    public Node replaceChild(Node newChild, Node oldChild) {
+        throw readOnly();
+    }
+
+    public Node removeChild(Node oldChild) {
+        throw readOnly();
+    }
+
+    public Node appendChild(Node newChild) {
+        throw readOnly();
+    }
+
+    public Node cloneNode(boolean deep) {
+        throw notSupported();
+    }
+
+    public void normalize() {
+    }
+
+    public boolean isSupported(String feature, String version) {
+        return false;
+    }
+
+    public short compareDocumentPosition(Node other) {
+        throw notSupported();
+    }
+
+    public boolean isSameNode(Node other) {
+        return this == other;
+    }
+
+    public boolean isEqualNode(Node arg) {
+        return this == arg;
+    }
+
+    public String lookupPrefix(String namespaceURI) {
+        return _parent == null ? null : _parent.lookupPrefix(namespaceURI);
+    }
+
+    public boolean isDefaultNamespace(String namespaceURI) {
+        return _parent != null && _parent.isDefaultNamespace(namespaceURI);
+    }
+
+    public String lookupNamespaceURI(String prefix) {
+        return _parent == null ? null : _parent.lookupNamespaceURI(prefix);
+    }
+
+    public Object getFeature(String feature, String version) {
+        return null;
+    }
+
+    public Object setUserData(String key, Object data, UserDataHandler handler) {
+        throw notSupported();
+    }
+
+    public Object getUserData(String key) {
+        return null;
+    }
+}
@@ -0,0 +1,135 @@
+package org.xhtmlrenderer.dom;
+
+import org.w3c.dom.DOMException;
+import org.w3c.dom.Node;
+import org.w3c.dom.traversal.NodeFilter;
+import org.w3c.dom.traversal.NodeIterator;
+
+/**
+ * A <code>NodeIterator</code> over a {@link CompactDocument}.  Since the
+ * document cannot change, the iterator just walks the tree in document
+ * order from its reference node.
+ */
+class CompactNodeIterator implements NodeIterator {
+    private final Node _root;
+    private final int _whatToShow;
+    private final NodeFilter _filter;
+    private final boolean _expandEntityReferences;
+
+    private Node _reference;
+    private boolean _beforeReference = true;
+    private boolean _detached;
+
+    CompactNodeIterator(Node root, int whatToShow, NodeFilter filter, boolean expandEntityReferences) {
+        _root = root;
+        _whatToShow = whatToShow;
+        _filter = filter;
+        _expandEntityReferences = expandEntityReferences;
+        _reference = root;
+    }
+
+    public Node getRoot() {
+        return _root;
+    }
+
+    public int getWhatToShow() {
+        return _whatToShow;
+    }
+
+    public NodeFilter getFilter() {
+        return _filter;
+    }
+
+    public boolean getExpandEntityReferences() {
+        return _expandEntityReferences;
+    }
+
+    public Node nextNode() {
+        checkDetached();
+        Node node = _reference;
+        boolean before = _beforeReference;
+        while (true) {
+            if (before) {
+                before = false;
+            } else {
+                node = following(node);
+                if (node == null) {
+                    return null;
+                }
+            }
+            if (accept(node)) {
+                _reference = node;
+                _beforeReference = false;
+                return node;
+            }
+        }
+    }
+
+    public Node previousNode() {
+        checkDetached();
+        Node node = _reference;
+        boolean before = _beforeReference;
+        while (true) {
+            if (! before) {
+                before = true;
+            } else {
+                node = preceding(node);
+                if (node == null) {
+                    return null;
+                }
+            }
+            if (accept(node)) {
+                _reference = node;
+                _beforeReference = true;
+                return node;
+            }
+        }
+    }
+
+    public void detach() {
+        _detached = true;
+        _reference = null;
+    }
+
+    private void checkDetached() {
+        if (_detached) {
+            throw new DOMException(DOMException.INVALID_STATE_ERR, "NodeIterator has been detached");
+        }
+    }
+
+    private boolean accept(Node node) {
+        if ((_whatToShow & (1 << (node.getNodeType() - 1))) == 0) {
+            return false;
+        }
+        return _filter == null || _filter.acceptNode(node) == NodeFilter.FILTER_ACCEPT;
+    }
+
+    private Node following(Node node) {
+        Node result = node.getFirstChild();
+        if (result != null) {
+            return result;
+        }
+        while (node != _root) {
+            result = node.getNextSibling();
+            if (result != null) {
+                return result;
+            }
+            node = node.getParentNode();
+        }
+        return null;
+    }
+
+    private Node preceding(Node node) {
+        if (node == _root) {
+            return null;
+        }
+        Node result = node.getPreviousSibling();
+        if (result == null) {
+            return node.getParentNode();
+        }
+        while (result.getLastChild() != null) {
+            result = result.getLastChild();
+        }
+        return result;
+    }
+}
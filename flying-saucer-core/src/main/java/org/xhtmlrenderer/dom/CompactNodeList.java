@@ -0,0 +1,39 @@
+package org.xhtmlrenderer.dom;
+
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+/**
+ * An unsynchronized <code>NodeList</code> over (a prefix of) an array.  The
+ * lists returned for child nodes share the parent's array.
+ */
+class CompactNodeList implements NodeList {
+    private Node[] _nodes;
+    private int _length;
+
+    CompactNodeList(Node[] nodes, int length) {
+        _nodes = nodes;
+        _length = length;
+    }
+
+    CompactNodeList() {
+        this(new Node[8], 0);
+    }
+
+    void add(Node node) {
+        if (_length == _nodes.length) {
+            Node[] nodes = new Node[_length * 2];
+            System.arraycopy(_nodes, 0, nodes, 0, _length);
+            _nodes = nodes;
+        }
+        _nodes[_length++] = node;
+    }
+
+    public Node item(int index) {
+        return index < 0 || index >= _length ? null : _nodes[index];
+    }
+
+    public int getLength() {
+        return _length;
+    }
+}
@@ -0,0 +1,110 @@
+package org.xhtmlrenderer.dom;
+
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+/**
+ * A node which has children, i.e. the document or an element.  Children
+ * are kept in an array which is trimmed to size once the node has been
+ * completely parsed.
+ */
+public abstract class CompactParentNode extends CompactNode {
+    private static final CompactNode[] NO_CHILDREN = new CompactNode[0];
+
+    CompactNode[] _children = NO_CHILDREN;
+    int _childCount;
+    private int _elementCount;
+
+    CompactParentNode(CompactDocument document) {
+        super(document);
+    }
+
+    void addChild(CompactNode child) {
+        if (_childCount == _children.length) {
+            CompactNode[] children = new CompactNode[Math.max(4, _childCount * 2)];
+            System.arraycopy(_children, 0, children, 0, _childCount);
+            _children = children;
+        }
+        child._parent = this;
+        child._index = _childCount;
+        _children[_childCount++] = child;
+        if (child instanceof CompactElement) {
+            ((CompactElement)child)._elementIndex = _elementCount++;
+        }
+    }
+
+    void trimChildren() {
+        if (_childCount < _children.length) {
+            CompactNode[] children = new CompactNode[_childCount];
+            System.arraycopy(_children, 0, children, 0, _childCount);
+            _children = children;
+        }
+    }
+
+    /**
+     * Returns the number of child elements of this node.
+     */
+    public int getElementCount() {
+        return _elementCount;
+    }
+
+    public NodeList getChildNodes() {
+        return _childCount == 0 ? EMPTY_NODE_LIST : new CompactNodeList(_children, _childCount);
+    }
+
+    public Node getFirstChild() {
+        return _childCount == 0 ? null : _children[0];
+    }
+
+    public Node getLastChild() {
+        return _childCount == 0 ? null : _children[_childCount - 1];
+    }
+
+    public boolean hasChildNodes() {
+        return _childCount > 0;
+    }
+
+    public String getTextContent() {
+        StringBuffer result = new StringBuffer();
+        appendTextContent(result);
+        return result.toString();
+    }
+
+    private void appendTextContent(StringBuffer result) {
+        for (int i = 0; i < _childCount; i++) {
+            CompactNode child = _children[i];
+            if (child instanceof CompactText) {
+                result.append(((CompactText)child).getData());
+            } else if (child instanceof CompactParentNode) {
+                ((CompactParentNode)child).appendTextContent(result);
+            }
+        }
+    }
+
+    void collectElementsByTagName(String name, boolean any, CompactNodeList result) {
+        for (int i = 0; i < _childCount; i++) {
+            CompactNode child = _children[i];
+            if (child instanceof CompactElement) {
+                if (any || name.equals(child.getNodeName())) {
+                    result.add(child);
+                }
+                ((CompactElement)child).collectElementsByTagName(name, any, result);
+            }
+        }
+    }
+
+    void collectElementsByTagNameNS(String namespaceURI, String localName, CompactNodeList result) {
+        for (int i = 0; i < _childCount; i++) {
+            CompactNode child = _children[i];
+            if (child instanceof CompactElement) {
+                String ns = child.getNamespaceURI();
+                if (("*".equals(namespaceURI) ||
+                            (namespaceURI == null ? ns == null : namespaceURI.equals(ns))) &&
+                        ("*".equals(localName) || localName.equals(child.getLocalName()))) {
+                    result.add(child);
+                }
+                ((CompactElement)child).collectElementsByTagNameNS(namespaceURI, localName, result);
+            }
+        }
+    }
+}
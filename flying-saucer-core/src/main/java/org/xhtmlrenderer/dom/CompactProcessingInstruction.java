@@ -0,0 +1,38 @@
+package org.xhtmlrenderer.dom;
+
+import org.w3c.dom.ProcessingInstruction;
+
+public class CompactProcessingInstruction extends CompactNode implements ProcessingInstruction {
+    private final String _target;
+    private final String _data;
+
+    CompactProcessingInstruction(CompactDocument document, String target, String data) {
+        super(document);
+        _target = target;
+        _data = data;
+    }
+
+    public short getNodeType() {
+        return PROCESSING_INSTRUCTION_NODE;
+    }
+
+    public String getNodeName() {
+        return _target;
+    }
+
+    public String getNodeValue() {
+        return _data;
+    }
+
+    public String getTarget() {
+        return _target;
+    }
+
+    public String getData() {
+        return _data;
+    }
+
+    public void setData(String data) {
+        throw readOnly();
+    }
+}
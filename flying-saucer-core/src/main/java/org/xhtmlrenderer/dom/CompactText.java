@@ -0,0 +1,37 @@
+package org.xhtmlrenderer.dom;
+
+import org.w3c.dom.Text;
+
+/**
+ * A text node.  As with the DOM built by the identity transformer, CDATA
+ * sections are merged into the surrounding text.
+ */
+public class CompactText extends CompactCharacterData implements Text {
+    CompactText(CompactDocument document, String data) {
+        super(document, data);
+    }
+
+    public short getNodeType() {
+        return TEXT_NODE;
+    }
+
+    public String getNodeName() {
+        return "#text";
+    }
+
+    public boolean isElementContentWhitespace() {
+        return false;
+    }
+
+    public String getWholeText() {
+        return getData();
+    }
+
+    public Text splitText(int offset) {
+        throw readOnly();
+    }
+
+    public Text replaceWholeText(String content) {
+        throw readOnly();
+    }
+}
@@ -0,0 +1,114 @@
+package org.xhtmlrenderer.event;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A {@link RenderMetricsListener} which sums up the events it receives.
+ * Totals accumulate across documents until {@link #reset()} is called, so
+ * use one instance per document for per-document figures.  All methods
+ * are thread safe.
+ */
+public class AggregatingRenderMetricsListener implements RenderMetricsListener {
+    private final Map _phaseNanos = new LinkedHashMap();
+    private final Map _counts = new LinkedHashMap();
+    private final Map _bytesByUri = new LinkedHashMap();
+    private final List _slowResources = new ArrayList();
+
+    public synchronized void phaseCompleted(String phase, long elapsedNanos) {
+        add(_phaseNanos, phase, elapsedNanos);
+    }
+
+    public synchronized void count(String counter, long delta) {
+        add(_counts, counter, delta);
+    }
+
+    public synchronized void resourceLoaded(String uri, long bytes, long elapsedMillis) {
+        add(_bytesByUri, uri, bytes);
+    }
+
+    public synchronized void slowResource(String uri, long elapsedMillis) {
+        _slowResources.add(uri);
+    }
+
+    private static void add(Map totals, String key, long value) {
+        long[] total = (long[])totals.get(key);
+        if (total == null) {
+            total = new long[1];
+            totals.put(key, total);
+        }
+        total[0] += value;
+    }
+
+    private static long get(Map totals, String key) {
+        long[] total = (long[])totals.get(key);
+        return total == null ? 0 : total[0];
+    }
+
+    /**
+     * Returns the total time spent in <code>phase</code> in nanoseconds.
+     */
+    public synchronized long getPhaseNanos(String phase) {
+        return get(_phaseNanos, phase);
+    }
+
+    public long getPhaseMillis(String phase) {
+        return getPhaseNanos(phase) / 1000000;
+    }
+
+    public synchronized long getCount(String counter) {
+        return get(_counts, counter);
+    }
+
+    /**
+     * Returns the number of bytes read from <code>uri</code>.
+     */
+    public synchronized long getBytesLoaded(String uri) {
+        return get(_bytesByUri, uri);
+    }
+
+    public synchronized long getTotalBytesLoaded() {
+        long result = 0;
+        for (Iterator i = _bytesByUri.values().iterator(); i.hasNext(); ) {
+            result += ((long[])i.next())[0];
+        }
+        return result;
+    }
+
+    /**
+     * Returns the URIs of resources which were loaded slowly, in the order
+     * they were reported.
+     */
+    public synchronized List getSlowResources() {
+        return new ArrayList(_slowResources);
+    }
+
+    public synchronized void reset() {
+        _phaseNanos.clear();
+        _counts.clear();
+        _bytesByUri.clear();
+        _slowResources.clear();
+    }
+
+    public synchronized String toString() {
+        StringBuffer result = new StringBuffer();
+        for (Iterator i = _phaseNanos.entrySet().iterator(); i.hasNext(); ) {
+            Map.Entry entry = (Map.Entry)i.next();
+            long nanos = ((long[])entry.getValue())[0];
+            result.append(entry.getKey()).append(": ").append(nanos / 1000000).append("ms\n");
+        }
+        for (Iterator i = _counts.entrySet().iterator(); i.hasNext(); ) {
+            Map.Entry entry = (Map.Entry)i.next();
+            result.append(entry.getKey()).append(": ").append(((long[])entry.getValue())[0]).append('\n');
+        }
+        result.append("bytes loaded: ").append(getTotalBytesLoaded())
+            .append(" (").append(_bytesByUri.size()).append(" resources)\n");
+        if (_slowResources.size() > 0) {
+            result.append("slow resources: ").append(_slowResources).append('\n');
+        }
+        return result.toString();
+    }
+}
@@ -0,0 +1,19 @@
+package org.xhtmlrenderer.event;
+
+/**
+ * A {@link RenderMetricsListener} which ignores all events.  This is the
+ * listener used when no other has been registered.
+ */
+public class DefaultRenderMetricsListener implements RenderMetricsListener {
+    public void phaseCompleted(String phase, long elapsedNanos) {
+    }
+
+    public void count(String counter, long delta) {
+    }
+
+    public void resourceLoaded(String uri, long bytes, long elapsedMillis) {
+    }
+
+    public void slowResource(String uri, long elapsedMillis) {
+    }
+}
@@ -0,0 +1,84 @@
+package org.xhtmlrenderer.event;
+
+/**
+ * Receives timing and counting events while a document is parsed, styled,
+ * laid out and painted.  Register an implementation with
+ * {@link org.xhtmlrenderer.layout.SharedContext#setMetricsListener(RenderMetricsListener)}.
+ * <p>
+ * Phases which run interleaved with others (cascade and box building happen
+ * on demand during layout) are reported many times per document and their
+ * durations are also included in the enclosing phase (layout).  Implementations
+ * should therefore sum the values they receive.  Methods may be called from
+ * more than one thread and should return quickly.
+ */
+public interface RenderMetricsListener {
+    /** Parsing the document source into a DOM. */
+    public static final String PHASE_PARSE = "parse";
+    /** Loading and parsing the stylesheets of a document. */
+    public static final String PHASE_STYLESHEET_LOAD = "stylesheet-load";
+    /** Matching selectors and deriving the computed style of elements. */
+    public static final String PHASE_CASCADE = "cascade";
+    /** Creating the child boxes of block boxes. */
+    public static final String PHASE_BOX_BUILD = "box-build";
+    /** Laying out the document (includes cascade and box building). */
+    public static final String PHASE_LAYOUT = "layout";
+    /** Creating and laying out the pages of a paged document. */
+    public static final String PHASE_PAGE_LAYOUT = "page-layout";
+    /** Painting the document or a single page. */
+    public static final String PHASE_PAINT = "paint";
+    /** Writing a PDF document (includes painting its pages). */
+    public static final String PHASE_PDF_WRITE = "pdf-write";
+
+    public static final String COUNT_ELEMENTS = "elements";
+    public static final String COUNT_BOXES = "boxes";
+    public static final String COUNT_LINE_BOXES = "line-boxes";
+    public static final String COUNT_PAGES = "pages";
+    public static final String COUNT_SELECTORS_TESTED = "selectors-tested";
+    public static final String COUNT_STYLE_CACHE_HITS = "style-cache-hits";
+    public static final String COUNT_STYLE_CACHE_MISSES = "style-cache-misses";
+    public static final String COUNT_FONT_CACHE_HITS = "font-cache-hits";
+    public static final String COUNT_FONT_CACHE_MISSES = "font-cache-misses";
+    public static final String COUNT_IMAGE_CACHE_HITS = "image-cache-hits";
+    public static final String COUNT_IMAGE_CACHE_MISSES = "image-cache-misses";
+    /** Resources read from the resource cache without a request. */
+    public static final String COUNT_RESOURCE_CACHE_HITS = "resource-cache-hits";
+    /** Stale resources the server confirmed to be unchanged. */
+    public static final String COUNT_RESOURCE_CACHE_REVALIDATIONS = "resource-cache-revalidations";
+    /** Resources downloaded although a resource cache was set. */
+    public static final String COUNT_RESOURCE_CACHE_MISSES = "resource-cache-misses";
+    /** Boxes laid out again to satisfy page break rules. */
+    public static final String COUNT_RELAYOUTS = "relayouts";
+    /** Boxes moved to a new page without being laid out again. */
+    public static final String COUNT_TRANSLATED_RELAYOUTS = "translated-relayouts";
+    /** Page break rules dropped because <code>xr.layout.max-relayouts</code> was reached. */
+    public static final String COUNT_SKIPPED_RELAYOUTS = "skipped-relayouts";
+
+    /**
+     * Called when a phase (one of the <code>PHASE_*</code> constants) or
+     * a part of it has completed.
+     */
+    public void phaseCompleted(String phase, long elapsedNanos);
+
+    /**
+     * Called to increase a counter (one of the <code>COUNT_*</code>
+     * constants).
+     */
+    public void count(String counter, long delta);
+
+    /**
+     * Called when a resource has been read by the user agent.
+     *
+     * @param uri The resolved URI of the resource
+     * @param bytes The number of bytes read
+     * @param elapsedMillis The time from opening the resource until it was
+     * closed
+     */
+    public void resourceLoaded(String uri, long bytes, long elapsedMillis);
+
+    /**
+     * Called in addition to {@link #resourceLoaded(String, long, long)} when
+     * loading a resource took longer than
+     * <code>xr.metrics.slow-resource-threshold</code> milliseconds.
+     */
+    public void slowResource(String uri, long elapsedMillis);
+}
@@ -0,0 +1,14 @@
+package org.xhtmlrenderer.extend;
+
+/**
+ * A {@link FontContext} which can provide an independent copy of itself for
+ * use on another thread.  Font contexts which do not implement this interface
+ * confine all text measurement to the thread which performs layout.
+ */
+public interface ForkableFontContext extends FontContext {
+    /**
+     * Returns a font context which measures text exactly like this one, but
+     * which may be used on a different thread than this one.
+     */
+    public FontContext fork();
+}
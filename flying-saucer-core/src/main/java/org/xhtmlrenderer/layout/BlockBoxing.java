@@ -40,7 +40,10 @@ import org.xhtmlrenderer.render.PageBox;
  * If we're in a paged media environment, the various page break related
  * properties are also handled here.  If a rule is violated, the affected run
  * of boxes will be layed out again.  If the rule still cannot be satisfied,
- * the rule will be dropped.
+ * the rule will be dropped.  Boxes of a run whose layout does not depend on
+ * their position on the page are moved instead of being layed out again.
+ * Rules are also dropped once <code>xr.layout.max-relayouts</code> has been
+ * reached.
  */
 public class BlockBoxing {
     private static final int NO_PAGE_TRIM = -1;
@@ -74,7 +77,8 @@ public class BlockBoxing {
             boolean mayCheckKeepTogether = false;
             if (c.isPrint()) {
                 relayoutData = relayoutDataList.get(offset);
-                relayoutData.setLayoutState(c.copyStateForRelayout());
+                // No need for a snapshot once relayouts are no longer allowed
+                relayoutData.setLayoutState(c.isRelayoutAllowed() ? c.copyStateForRelayout() : null);
                 relayoutData.setChildOffset(childOffset);
                 pageCount = c.getRootLayer().getPages().size();
 
@@ -87,6 +91,8 @@ public class BlockBoxing {
                 }
             }
 
+            int positionDependentContentCount = c.getPositionDependentContentCount();
+
             layoutBlockChild(
                     c, block, child, false, childOffset, NO_PAGE_TRIM,
                     relayoutData == null ? null : relayoutData.getLayoutState());
@@ -98,20 +104,14 @@ public class BlockBoxing {
                     boolean tryToAvoidPageBreak = child.getStyle().isAvoidPageBreakInside() && child.crossesPageBreak(c);
                     boolean keepWithInline = child.isNeedsKeepWithInline(c);
                     if (tryToAvoidPageBreak || needPageClear || keepWithInline) {
-                        c.restoreStateForRelayout(relayoutData.getLayoutState());
-                        child.reset(c);
-                        layoutBlockChild(
-                                c, block, child, true, childOffset, pageCount, relayoutData.getLayoutState());
-
-                        if (tryToAvoidPageBreak && child.crossesPageBreak(c) && ! keepWithInline) {
-                            c.restoreStateForRelayout(relayoutData.getLayoutState());
-                            child.reset(c);
-                            layoutBlockChild(
-                                    c, block, child, false, childOffset, pageCount, relayoutData.getLayoutState());
-                        }
+                        relayoutToAvoidPageBreak(
+                                c, block, child, childOffset, pageCount, relayoutData.getLayoutState(),
+                                tryToAvoidPageBreak, keepWithInline);
                     }
                 }
                 c.getRootLayer().ensureHasPage(c, child);
+                relayoutData.setPositionDependent(
+                        positionDependentContentCount != c.getPositionDependentContentCount());
             }
 
             Dimension relativeOffset = child.getRelativeOffset();
@@ -174,12 +174,19 @@ public class BlockBoxing {
             if (mightNeedRelayout) {
                 int runStart = relayoutDataList.getRunStart(runEnd);
                 if ( isPageBreakBetweenChildBoxes(relayoutDataList, runStart, runEnd, c, block) ) {
+                    if (! c.isRelayoutAllowed()) {
+                        c.countSkippedRelayout();
+                        return result;
+                    }
                     result.setChanged(true);
-                    block.resetChildren(c, runStart, offset);
                     result.setChildOffset(relayoutRun(c, localChildren, block,
                             relayoutDataList, runStart, offset, true));
                     if ( isPageBreakBetweenChildBoxes(relayoutDataList, runStart, runEnd, c, block) ) {
-                        block.resetChildren(c, runStart, offset);
+                        // the run stays on the new page if the budget is used up
+                        if (! c.isRelayoutAllowed()) {
+                            c.countSkippedRelayout();
+                            return result;
+                        }
                         result.setChildOffset(relayoutRun(c, localChildren, block,
                                 relayoutDataList, runStart, offset, false));
                     }
@@ -229,16 +236,44 @@ public class BlockBoxing {
         // reset height of parent as it is used for Y-setting of children
         block.setHeight(childOffset);
 
+        // Boxes which don't depend on their position on the page are moved
+        // instead of being laid out again (see translateChild()).  Boxes
+        // with floats, layers or tables are reset up front since they could
+        // otherwise affect the layout of the boxes before them.
+        for (int i = start; i <= end; i++) {
+            if (relayoutDataList.get(i).isPositionDependent()) {
+                block.getChild(i).reset(c);
+            }
+        }
 
+        LayoutState endState = null;
+        boolean translated = false;
         for (int i = start; i <= end; i++) {
             BlockBox child = (BlockBox) localChildren.get(i);
 
             RelayoutData relayoutData = relayoutDataList.get(i);
 
+            translated = translateChild(c, child, relayoutData, childOffset);
+            if (translated) {
+                childOffset = getChildOffsetAfter(c, block, child);
+                continue;
+            }
+
+            if (endState == null) {
+                // The state after the last box of the run in case it isn't
+                // laid out again
+                endState = c.copyStateForRelayout();
+            }
+
+            if (! relayoutData.isPositionDependent()) {
+                child.reset(c);
+            }
+
             int pageCount = c.getRootLayer().getPages().size();
 
             //TODO:handle run-ins. For now, treat them as blocks
 
+            c.countRelayout();
             c.restoreStateForRelayout(relayoutData.getLayoutState());
             relayoutData.setChildOffset(childOffset);
             boolean mayCheckKeepTogether = false;
@@ -247,6 +282,7 @@ public class BlockBoxing {
                 mayCheckKeepTogether = true;
                 c.setMayCheckKeepTogether(false);
             }
+            int positionDependentContentCount = c.getPositionDependentContentCount();
             layoutBlockChild(
                     c, block, child, false, childOffset, NO_PAGE_TRIM, relayoutData.getLayoutState());
 
@@ -257,48 +293,141 @@ public class BlockBoxing {
                 boolean needPageClear = child.isNeedPageClear();
                 boolean keepWithInline = child.isNeedsKeepWithInline(c);
                 if (tryToAvoidPageBreak || needPageClear || keepWithInline) {
-                    c.restoreStateForRelayout(relayoutData.getLayoutState());
-                    child.reset(c);
-                    layoutBlockChild(
-                            c, block, child, true, childOffset, pageCount, relayoutData.getLayoutState());
-
-                    if (tryToAvoidPageBreak && child.crossesPageBreak(c) && ! keepWithInline) {
-                        c.restoreStateForRelayout(relayoutData.getLayoutState());
-                        child.reset(c);
-                        layoutBlockChild(
-                                c, block, child, false, childOffset, pageCount, relayoutData.getLayoutState());
-                    }
+                    relayoutToAvoidPageBreak(
+                            c, block, child, childOffset, pageCount, relayoutData.getLayoutState(),
+                            tryToAvoidPageBreak, keepWithInline);
                 }
             }
 
-            c.getRootLayer().ensureHasPage(c, child);
+            relayoutData.setPositionDependent(
+                    positionDependentContentCount != c.getPositionDependentContentCount());
 
-            Dimension relativeOffset = child.getRelativeOffset();
-            if (relativeOffset == null) {
-                childOffset = child.getY() + child.getHeight();
-            } else {
-                childOffset = child.getY() - relativeOffset.height + child.getHeight();
-            }
+            childOffset = getChildOffsetAfter(c, block, child);
+        }
 
-            if (childOffset > block.getHeight()) {
-                block.setHeight(childOffset);
-            }
+        if (translated && endState != null) {
+            c.restoreStateForRelayout(endState);
+        }
 
-            if (child.getStyle().isForcePageBreakAfter()) {
-                block.forcePageBreakAfter(c, child.getStyle().getIdent(CSSName.PAGE_BREAK_AFTER));
-                childOffset = block.getHeight();
-            }
+        return childOffset;
+    }
+
+    private static int getChildOffsetAfter(LayoutContext c, BlockBox block, BlockBox child) {
+        c.getRootLayer().ensureHasPage(c, child);
+
+        int childOffset;
+        Dimension relativeOffset = child.getRelativeOffset();
+        if (relativeOffset == null) {
+            childOffset = child.getY() + child.getHeight();
+        } else {
+            childOffset = child.getY() - relativeOffset.height + child.getHeight();
+        }
+
+        if (childOffset > block.getHeight()) {
+            block.setHeight(childOffset);
+        }
+
+        if (child.getStyle().isForcePageBreakAfter()) {
+            block.forcePageBreakAfter(c, child.getStyle().getIdent(CSSName.PAGE_BREAK_AFTER));
+            childOffset = block.getHeight();
         }
 
         return childOffset;
     }
 
+    /**
+     * Lays out <code>child</code> again, starting on a new page.  If it
+     * still crosses a page break and was moved to avoid that, it is laid out
+     * at its original position once more.
+     */
+    private static void relayoutToAvoidPageBreak(
+            LayoutContext c, BlockBox block, BlockBox child, int childOffset, int pageCount,
+            LayoutState layoutState, boolean tryToAvoidPageBreak, boolean keepWithInline) {
+        if (! c.isRelayoutAllowed()) {
+            c.countSkippedRelayout();
+            return;
+        }
+
+        c.countRelayout();
+        c.restoreStateForRelayout(layoutState);
+        child.reset(c);
+        layoutBlockChild(c, block, child, true, childOffset, pageCount, layoutState);
+
+        if (tryToAvoidPageBreak && child.crossesPageBreak(c) && ! keepWithInline) {
+            c.countRelayout();
+            c.restoreStateForRelayout(layoutState);
+            child.reset(c);
+            layoutBlockChild(c, block, child, false, childOffset, pageCount, layoutState);
+        }
+    }
+
+    /**
+     * Moves an already laid out <code>child</code> so that it starts at
+     * <code>childOffset</code>.  This is only done if laying it out again
+     * would give the same result, i.e. if it contains no floats, layers or
+     * tables, no float next to it could change its lines and both its old
+     * and new position are well inside a single page (so no line or block
+     * was moved by a page break).  Returns
+     * <code>false</code> if the child must be laid out again.
+     */
+    private static boolean translateChild(
+            LayoutContext c, BlockBox child, RelayoutData relayoutData, int childOffset) {
+        int delta = childOffset - relayoutData.getChildOffset();
+        if (relayoutData.isPositionDependent() ||
+                c.getBlockFormattingContext().getFloatManager().hasFloatsBelow(
+                        Math.min(child.getAbsY(), child.getAbsY() + delta)) ||
+                ! isWithinPage(c, child)) {
+            return false;
+        }
+
+        moveVertically(child, delta);
+        if (! isWithinPage(c, child)) {
+            moveVertically(child, -delta);
+            return false;
+        }
+
+        relayoutData.setChildOffset(childOffset);
+        c.countTranslatedRelayout();
+        return true;
+    }
+
+    private static void moveVertically(BlockBox child, int delta) {
+        if (delta != 0) {
+            child.setY(child.getY() + delta);
+            child.calcCanvasLocation();
+            child.calcChildLocations();
+        }
+    }
+
+    private static boolean isWithinPage(LayoutContext c, Box box) {
+        PageBox page = c.getRootLayer().getFirstPage(c, box);
+        return page != null && isWithinPage(
+                box, page.getTop() + c.getExtraSpaceTop(), page.getBottom() - c.getExtraSpaceBottom());
+    }
+
+    private static boolean isWithinPage(Box box, int top, int bottom) {
+        if (box.getAbsY() <= top || box.getAbsY() + box.getHeight() >= bottom) {
+            return false;
+        }
+        if (! (box instanceof LineBox)) {
+            for (int i = 0; i < box.getChildCount(); i++) {
+                if (! isWithinPage(box.getChild(i), top, bottom)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
     private static void layoutBlockChild(
             LayoutContext c, BlockBox parent, BlockBox child,
             boolean needPageClear, int childOffset, int trimmedPageCount, LayoutState layoutState) {
         layoutBlockChild0(c, parent, child, needPageClear, childOffset, trimmedPageCount);
         BreakAtLineContext bContext = child.calcBreakAtLineContext(c);
-        if (bContext != null) {
+        if (bContext != null && ! c.isRelayoutAllowed()) {
+            c.countSkippedRelayout();
+        } else if (bContext != null) {
+            c.countRelayout();
             c.setBreakAtLineContext(bContext);
             c.restoreStateForRelayout(layoutState);
             child.reset(c);
@@ -439,6 +568,8 @@ public class BlockBoxing {
 
         private int _childOffset;
 
+        private boolean _positionDependent;
+
         public RelayoutData() {
         }
 
@@ -458,6 +589,14 @@ public class BlockBoxing {
             _inRun = inRun;
         }
 
+        public boolean isPositionDependent() {
+            return _positionDependent;
+        }
+
+        public void setPositionDependent(boolean positionDependent) {
+            _positionDependent = positionDependent;
+        }
+
         public LayoutState getLayoutState() {
             return _layoutState;
         }
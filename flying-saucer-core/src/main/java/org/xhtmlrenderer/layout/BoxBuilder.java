@@ -48,6 +48,7 @@ import org.xhtmlrenderer.css.sheet.StylesheetInfo;
 import org.xhtmlrenderer.css.style.CalculatedStyle;
 import org.xhtmlrenderer.css.style.EmptyStyle;
 import org.xhtmlrenderer.css.style.FSDerivedValue;
+import org.xhtmlrenderer.event.RenderMetricsListener;
 import org.xhtmlrenderer.newtable.TableBox;
 import org.xhtmlrenderer.newtable.TableCellBox;
 import org.xhtmlrenderer.newtable.TableColumn;
@@ -82,6 +83,8 @@ public class BoxBuilder {
     public static BlockBox createRootBox(LayoutContext c, Document document) {
         Element root = document.getDocumentElement();
 
+        c.getCss().invalidateDocumentStructure();
+        c.getSharedContext().precomputeStyles(root);
         CalculatedStyle style = c.getSharedContext().getStyle(root);
 
         BlockBox result;
@@ -108,24 +111,37 @@ public class BoxBuilder {
     }
 
     public static void createChildren(LayoutContext c, BlockBox parent) {
+        long start = System.nanoTime();
+        c.setBoxBuildDepth(c.getBoxBuildDepth() + 1);
+        try {
+            List children = new ArrayList();
 
-		List children = new ArrayList();
+            ChildBoxInfo info = new ChildBoxInfo();
 
-        ChildBoxInfo info = new ChildBoxInfo();
-
-        createChildren(c, parent, parent.getElement(), children, info, false);
+            createChildren(c, parent, parent.getElement(), children, info, false);
 
-        boolean parentIsNestingTableContent = isNestingTableContent(parent.getStyle().getIdent(
-                CSSName.DISPLAY));
-        if (!parentIsNestingTableContent && !info.isContainsTableContent()) {
-            resolveChildren(c, parent, children, info);
-        } else {
-            stripAllWhitespace(children);
-            if (parentIsNestingTableContent) {
-                resolveTableContent(c, parent, children, info);
+            boolean parentIsNestingTableContent = isNestingTableContent(parent.getStyle().getIdent(
+                    CSSName.DISPLAY));
+            if (!parentIsNestingTableContent && !info.isContainsTableContent()) {
+                resolveChildren(c, parent, children, info);
             } else {
-                resolveChildTableContent(c, parent, children, info, IdentValue.TABLE_CELL);
+                stripAllWhitespace(children);
+                if (parentIsNestingTableContent) {
+                    resolveTableContent(c, parent, children, info);
+                } else {
+                    resolveChildTableContent(c, parent, children, info, IdentValue.TABLE_CELL);
+                }
             }
+        } finally {
+            c.setBoxBuildDepth(c.getBoxBuildDepth() - 1);
+        }
+
+        RenderMetricsListener metrics = c.getSharedContext().getMetricsListener();
+        metrics.count(RenderMetricsListener.COUNT_BOXES,
+                parent.getChildrenContentType() == BlockBox.CONTENT_INLINE ?
+                        parent.getInlineContent().size() : parent.getChildCount());
+        if (c.getBoxBuildDepth() == 0) {
+            metrics.phaseCompleted(RenderMetricsListener.PHASE_BOX_BUILD, System.nanoTime() - start);
         }
     }
 
@@ -25,6 +25,7 @@ import java.util.List;
 
 import org.xhtmlrenderer.css.style.CssContext;
 import org.xhtmlrenderer.newtable.TableBox;
+import org.xhtmlrenderer.newtable.TableSectionBox;
 import org.xhtmlrenderer.render.BlockBox;
 import org.xhtmlrenderer.render.Box;
 import org.xhtmlrenderer.render.InlineLayoutBox;
@@ -134,7 +135,16 @@ public class BoxCollector {
 
             if (container.getPaintingInfo() == null || intersectsAggregateBounds) {
                 if (container.getLayer() == null || container == layer.getMaster()) {
-                    for (int i = 0; i < container.getChildCount(); i++) {
+                    int start = 0;
+                    int end = container.getChildCount();
+                    if (clip != null && container instanceof TableSectionBox) {
+                        // Don't visit every row of a long table for every page
+                        TableSectionBox section = (TableSectionBox)container;
+                        Rectangle bounds = clip.getBounds();
+                        start = section.findFirstRowIntersecting(bounds);
+                        end = section.findEndRowIntersecting(bounds);
+                    }
+                    for (int i = start; i < end; i++) {
                         Box child = container.getChild(i);
                         collect(c, clip, layer, child, blockContent, inlineContent, rangeLists);
                     }
@@ -267,6 +267,23 @@ public class FloatManager {
         }
     }
 
+    /**
+     * Returns <code>true</code> if a float ends below <code>absY</code>.
+     */
+    public boolean hasFloatsBelow(int absY) {
+        return hasFloatsBelow(absY, _leftFloats) || hasFloatsBelow(absY, _rightFloats);
+    }
+
+    private boolean hasFloatsBelow(int absY, List floats) {
+        for (Iterator i = floats.iterator(); i.hasNext();) {
+            BlockBox floater = ((BoxOffset) i.next()).getBox();
+            if (floater.getAbsY() + floater.getHeight() > absY) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     public void removeFloat(BlockBox floater) {
         removeFloat(floater, getFloats(LEFT));
         removeFloat(floater, getFloats(RIGHT));
@@ -0,0 +1,374 @@
+package org.xhtmlrenderer.layout;
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.xhtmlrenderer.css.style.CssContext;
+import org.xhtmlrenderer.render.AnonymousBlockBox;
+import org.xhtmlrenderer.render.Box;
+import org.xhtmlrenderer.render.InlineLayoutBox;
+import org.xhtmlrenderer.render.LineBox;
+
+/**
+ * A spatial index over the boxes searched by {@link Layer#find(CssContext, int, int, boolean)}
+ * for the floats and the master box of a layer (the child layers have
+ * indexes of their own).  It returns the same box as walking the box tree
+ * would: of all boxes whose content area contains the point, the one
+ * {@link Box#find(CssContext, int, int, boolean)} visits first wins,
+ * provided the painting bounds of all boxes on the way there contain the
+ * point, too.
+ * <p>
+ * The content areas are kept in a packed R-tree (sort-tile-recursive
+ * bulk loading), so a lookup takes logarithmic time instead of visiting
+ * every box.  Painting bounds are still checked as the query runs since
+ * they are recomputed on paint.  Boxes of fixed layers move on every
+ * paint, so their subtrees are not indexed but searched directly.
+ * <p>
+ * An index is only valid as long as the box tree and the styles of its
+ * boxes don't change; see {@link Layer#invalidateHitTestIndexes()} and
+ * {@link Layer#invalidateHitTestIndex()}.
+ */
+class HitTestIndex {
+    private static final int NODE_SIZE = 16;
+
+    private final CssContext _cssCtx;
+
+    // Per entry, in the order the boxes were reached
+    private Box[] _boxes;
+    private int[] _parents;
+    private int[] _ranks;
+    private int _size;
+
+    // Rank -> entry
+    private int[] _entriesByRank;
+
+    // Entries whose subtree is searched directly
+    private int[] _dynamicEntries;
+    private boolean[] _dynamic;
+
+    // The indexed content areas and their entries, in leaf order
+    private int[] _leafX0;
+    private int[] _leafY0;
+    private int[] _leafX1;
+    private int[] _leafY1;
+    private int[] _leafEntries;
+
+    // _levels[0] are the leaves; each level holds x0, y0, x1, y1, start and
+    // end of its nodes, the children of a leaf are entries and the children
+    // of any other node are the nodes of the level below
+    private int[][][] _levels;
+
+    private int _nextRank;
+
+    private HitTestIndex(CssContext cssCtx) {
+        _cssCtx = cssCtx;
+    }
+
+    public static HitTestIndex build(CssContext cssCtx, List floats, Box master) {
+        HitTestIndex result = new HitTestIndex(cssCtx);
+        result.init(floats, master);
+        return result;
+    }
+
+    public boolean isValidFor(CssContext cssCtx) {
+        return _cssCtx == cssCtx;
+    }
+
+    private void init(List floats, Box master) {
+        _boxes = new Box[64];
+        _parents = new int[64];
+        _ranks = new int[64];
+
+        Map visited = new IdentityHashMap();
+        List dynamicEntries = new ArrayList();
+        List rects = new ArrayList();
+        List rectEntries = new ArrayList();
+
+        // Floats are searched before the master box
+        for (int i = 0; i < floats.size(); i++) {
+            add((Box)floats.get(i), -1, visited, dynamicEntries, rects, rectEntries);
+        }
+        add(master, -1, visited, dynamicEntries, rects, rectEntries);
+
+        _entriesByRank = new int[_nextRank];
+        for (int i = 0; i < _size; i++) {
+            _entriesByRank[_ranks[i]] = i;
+        }
+
+        _dynamicEntries = new int[dynamicEntries.size()];
+        _dynamic = new boolean[_size];
+        for (int i = 0; i < _dynamicEntries.length; i++) {
+            _dynamicEntries[i] = ((Integer)dynamicEntries.get(i)).intValue();
+            _dynamic[_dynamicEntries[i]] = true;
+        }
+
+        buildTree(rects, rectEntries);
+    }
+
+    private void add(Box box, int parent, Map visited,
+            List dynamicEntries, List rects, List rectEntries) {
+        // A box which was already reached from a float can't be found through
+        // the master box either since more painting bounds must contain the
+        // point on that path
+        if (visited.put(box, Boolean.TRUE) != null) {
+            return;
+        }
+
+        int entry = addEntry(box, parent);
+
+        if (box.getLayer() != null && box.getStyle().isFixed()) {
+            dynamicEntries.add(new Integer(entry));
+            _ranks[entry] = _nextRank++;
+            return;
+        }
+
+        if (box instanceof InlineLayoutBox) {
+            InlineLayoutBox iB = (InlineLayoutBox)box;
+            for (int i = 0; i < iB.getInlineChildCount(); i++) {
+                Object child = iB.getInlineChild(i);
+                if (child instanceof Box) {
+                    add((Box)child, entry, visited, dynamicEntries, rects, rectEntries);
+                }
+            }
+        } else {
+            for (int i = 0; i < box.getChildCount(); i++) {
+                add(box.getChild(i), entry, visited, dynamicEntries, rects, rectEntries);
+            }
+        }
+
+        // A box is only returned if none of its children is
+        _ranks[entry] = _nextRank++;
+
+        if (! (box instanceof LineBox) && box.getStyle().isVisible()) {
+            Rectangle edge = box.getContentAreaEdge(box.getAbsX(), box.getAbsY(), _cssCtx);
+            if (edge.width > 0 && edge.height > 0) {
+                rects.add(edge);
+                rectEntries.add(new Integer(entry));
+            }
+        }
+    }
+
+    private int addEntry(Box box, int parent) {
+        if (_size == _boxes.length) {
+            int capacity = _size * 2;
+            Box[] boxes = new Box[capacity];
+            System.arraycopy(_boxes, 0, boxes, 0, _size);
+            _boxes = boxes;
+            int[] parents = new int[capacity];
+            System.arraycopy(_parents, 0, parents, 0, _size);
+            _parents = parents;
+            int[] ranks = new int[capacity];
+            System.arraycopy(_ranks, 0, ranks, 0, _size);
+            _ranks = ranks;
+        }
+        _boxes[_size] = box;
+        _parents[_size] = parent;
+        return _size++;
+    }
+
+    private void buildTree(List rects, List rectEntries) {
+        int count = rects.size();
+        int[][] items = new int[5][count];
+        for (int i = 0; i < count; i++) {
+            Rectangle r = (Rectangle)rects.get(i);
+            items[0][i] = r.x;
+            items[1][i] = r.y;
+            items[2][i] = r.x + r.width;
+            items[3][i] = r.y + r.height;
+            items[4][i] = ((Integer)rectEntries.get(i)).intValue();
+        }
+        items = pack(items, count);
+        _leafX0 = items[0];
+        _leafY0 = items[1];
+        _leafX1 = items[2];
+        _leafY1 = items[3];
+        _leafEntries = items[4];
+
+        // Packing reorders the nodes of a level, but their child ranges
+        // move along with them
+        List levels = new ArrayList();
+        int[][] nodes = group(items, count);
+        while (nodes[0].length > 1) {
+            nodes = pack(nodes, nodes[0].length);
+            levels.add(nodes);
+            nodes = group(nodes, nodes[0].length);
+        }
+        levels.add(nodes);
+        _levels = (int[][][])levels.toArray(new int[levels.size()][][]);
+    }
+
+    /**
+     * Sorts the first <code>count</code> items (columns x0, y0, x1, y1,
+     * ...) into tiles of <code>NODE_SIZE</code> items each, and returns the
+     * sorted items.
+     */
+    private static int[][] pack(int[][] items, int count) {
+        Integer[] order = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = new Integer(i);
+        }
+        Arrays.sort(order, new CenterComparator(items[0], items[2]));
+        int nodeCount = (count + NODE_SIZE - 1) / NODE_SIZE;
+        int sliceSize = (int)Math.ceil(Math.sqrt(nodeCount)) * NODE_SIZE;
+        Comparator byY = new CenterComparator(items[1], items[3]);
+        for (int i = 0; i < count; i += sliceSize) {
+            Arrays.sort(order, i, Math.min(i + sliceSize, count), byY);
+        }
+
+        int[][] result = new int[items.length][count];
+        for (int i = 0; i < count; i++) {
+            int item = order[i].intValue();
+            for (int j = 0; j < items.length; j++) {
+                result[j][i] = items[j][item];
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the nodes (columns x0, y0, x1, y1, start, end) holding
+     * consecutive runs of <code>NODE_SIZE</code> of the given items.
+     */
+    private static int[][] group(int[][] items, int count) {
+        int nodeCount = Math.max(1, (count + NODE_SIZE - 1) / NODE_SIZE);
+        int[][] result = new int[6][nodeCount];
+        for (int n = 0; n < nodeCount; n++) {
+            int from = n * NODE_SIZE;
+            int to = Math.min(from + NODE_SIZE, count);
+            int x0 = Integer.MAX_VALUE;
+            int y0 = Integer.MAX_VALUE;
+            int x1 = Integer.MIN_VALUE;
+            int y1 = Integer.MIN_VALUE;
+            for (int i = from; i < to; i++) {
+                x0 = Math.min(x0, items[0][i]);
+                y0 = Math.min(y0, items[1][i]);
+                x1 = Math.max(x1, items[2][i]);
+                y1 = Math.max(y1, items[3][i]);
+            }
+            result[0][n] = x0;
+            result[1][n] = y0;
+            result[2][n] = x1;
+            result[3][n] = y1;
+            result[4][n] = from;
+            result[5][n] = to;
+        }
+        return result;
+    }
+
+    public Box find(CssContext cssCtx, int absX, int absY, boolean findAnonymous) {
+        Candidates candidates = new Candidates();
+        for (int i = 0; i < _dynamicEntries.length; i++) {
+            candidates.add(_ranks[_dynamicEntries[i]]);
+        }
+        collect(_levels.length - 1, 0, absX, absY, candidates);
+        candidates.sort();
+
+        for (int i = 0; i < candidates.size; i++) {
+            int entry = _entriesByRank[candidates.ranks[i]];
+            Box box = _boxes[entry];
+            Box result;
+            if (_dynamic[entry]) {
+                if (! containsPoint(_parents[entry], absX, absY)) {
+                    continue;
+                }
+                result = box.find(cssCtx, absX, absY, findAnonymous);
+                if (result == null) {
+                    continue;
+                }
+            } else {
+                if (! containsPoint(entry, absX, absY)) {
+                    continue;
+                }
+                result = box;
+                if (! findAnonymous && box instanceof InlineLayoutBox && box.getElement() == null) {
+                    result = box.getParent().getParent();
+                }
+            }
+            if (! findAnonymous) {
+                // Anonymous block boxes return their parent instead of themselves
+                for (int p = entry; p != -1; p = _parents[p]) {
+                    if (_boxes[p] == result && result instanceof AnonymousBlockBox) {
+                        result = result.getParent();
+                    }
+                }
+            }
+            return result;
+        }
+        return null;
+    }
+
+    /**
+     * Returns true if the painting bounds of the entry and its parents (if
+     * known) contain the point.
+     */
+    private boolean containsPoint(int entry, int absX, int absY) {
+        for (int e = entry; e != -1; e = _parents[e]) {
+            PaintingInfo pI = _boxes[e].getPaintingInfo();
+            if (pI != null && ! pI.getAggregateBounds().contains(absX, absY)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void collect(int level, int node, int x, int y, Candidates candidates) {
+        int[][] nodes = _levels[level];
+        if (x < nodes[0][node] || y < nodes[1][node] || x >= nodes[2][node] || y >= nodes[3][node]) {
+            return;
+        }
+        int from = nodes[4][node];
+        int to = nodes[5][node];
+        if (level > 0) {
+            for (int i = from; i < to; i++) {
+                collect(level - 1, i, x, y, candidates);
+            }
+        } else {
+            for (int i = from; i < to; i++) {
+                if (x >= _leafX0[i] && y >= _leafY0[i] && x < _leafX1[i] && y < _leafY1[i]) {
+                    candidates.add(_ranks[_leafEntries[i]]);
+                }
+            }
+        }
+    }
+
+    private static class Candidates {
+        int[] ranks = new int[16];
+        int size;
+
+        public void add(int rank) {
+            if (size == ranks.length) {
+                int[] result = new int[size * 2];
+                System.arraycopy(ranks, 0, result, 0, size);
+                ranks = result;
+            }
+            ranks[size++] = rank;
+        }
+
+        public void sort() {
+            Arrays.sort(ranks, 0, size);
+        }
+    }
+
+    private static class CenterComparator implements Comparator {
+        private final int[] _min;
+        private final int[] _max;
+
+        public CenterComparator(int[] min, int[] max) {
+            _min = min;
+            _max = max;
+        }
+
+        public int compare(Object o1, Object o2) {
+            int i1 = ((Integer)o1).intValue();
+            int i2 = ((Integer)o2).intValue();
+            long c1 = (long)_min[i1] + _max[i1];
+            long c2 = (long)_min[i2] + _max[i2];
+            return c1 < c2 ? -1 : (c1 == c2 ? 0 : 1);
+        }
+    }
+}
@@ -32,6 +32,7 @@ import org.xhtmlrenderer.css.style.CalculatedStyle;
 import org.xhtmlrenderer.css.style.CssContext;
 import org.xhtmlrenderer.css.style.derived.BorderPropertySet;
 import org.xhtmlrenderer.css.style.derived.RectPropertySet;
+import org.xhtmlrenderer.event.RenderMetricsListener;
 import org.xhtmlrenderer.layout.breaker.Breaker;
 import org.xhtmlrenderer.render.AnonymousBlockBox;
 import org.xhtmlrenderer.render.BlockBox;
@@ -860,6 +861,7 @@ public class InlineBoxing {
             LayoutContext c, LineBox current, BlockBox block,
             int available, List pendingFloats) {
         int result = 0;
+        c.markPositionDependentContent();
         CalculatedStyle style = block.getStyle();
         if (style.isAbsolute() || style.isFixed()) {
             LayoutUtil.layoutAbsolute(c, current, block);
@@ -920,6 +922,9 @@ public class InlineBoxing {
     }
 
     private static LineBox newLine(LayoutContext c, int y, Box box) {
+        c.getSharedContext().getMetricsListener().count(
+                RenderMetricsListener.COUNT_LINE_BOXES, 1);
+
         LineBox result = new LineBox();
         result.setStyle(box.getStyle().createAnonymousStyle(IdentValue.BLOCK));
         result.setParent(box);
@@ -46,6 +46,7 @@ import org.xhtmlrenderer.render.InlineLayoutBox;
 import org.xhtmlrenderer.render.PageBox;
 import org.xhtmlrenderer.render.RenderingContext;
 import org.xhtmlrenderer.render.ViewportBox;
+import org.xhtmlrenderer.util.Configuration;
 
 /**
  * All positioned content as well as content with an overflow value other
@@ -61,6 +62,9 @@ import org.xhtmlrenderer.render.ViewportBox;
 public class Layer {
     public static final short PAGED_MODE_SCREEN = 1;
     public static final short PAGED_MODE_PRINT = 2;
+
+    private static final boolean USE_HIT_TEST_INDEX =
+        Configuration.isTrue("xr.layout.hit-test-index", true);
     
     private Layer _parent;
     private boolean _stackingContext;
@@ -92,6 +96,11 @@ public class Layer {
     
     private int _selectionEndX;
     private int _selectionEndY;
+
+    // See find(); the generation is only counted by the root layer
+    private HitTestIndex _hitTestIndex;
+    private int _hitTestIndexGeneration;
+    private int _hitTestGeneration;
     
     public Layer(Box master) {
         this(null, master);
@@ -342,7 +351,7 @@ public class Layer {
         }
     }
     
-    private List getFloats() {
+    List getFloats() {
         return _floats == null ? Collections.EMPTY_LIST : _floats;
     }
     
@@ -365,17 +374,24 @@ public class Layer {
             }
         }
         
-        for (int i = 0; i < getFloats().size(); i++) {
-            Box floater = (Box)getFloats().get(i);
-            result = floater.find(cssCtx, absX, absY, findAnonymous);
+        if (USE_HIT_TEST_INDEX) {
+            result = getHitTestIndex(cssCtx).find(cssCtx, absX, absY, findAnonymous);
+            if (result != null) {
+                return result;
+            }
+        } else {
+            for (int i = 0; i < getFloats().size(); i++) {
+                Box floater = (Box)getFloats().get(i);
+                result = floater.find(cssCtx, absX, absY, findAnonymous);
+                if (result != null) {
+                    return result;
+                }
+            }
+
+            result = getMaster().find(cssCtx, absX, absY, findAnonymous);
             if (result != null) {
                 return result;
             }
-        }
-        
-        result = getMaster().find(cssCtx, absX, absY, findAnonymous);
-        if (result != null) {
-            return result;
         }
         
         if (isRootLayer() || isStackingContext()) {
@@ -388,6 +404,44 @@ public class Layer {
         return null;
     }
     
+    HitTestIndex getHitTestIndex(CssContext cssCtx) {
+        int generation = getRoot()._hitTestGeneration;
+        if (_hitTestIndex == null || _hitTestIndexGeneration != generation ||
+                ! _hitTestIndex.isValidFor(cssCtx)) {
+            _hitTestIndex = HitTestIndex.build(cssCtx, getFloats(), getMaster());
+            _hitTestIndexGeneration = generation;
+        }
+        return _hitTestIndex;
+    }
+
+    /**
+     * Discards the indexes used by {@link #find(CssContext, int, int, boolean)}
+     * for all layers of this layer tree.  Must be called when boxes are added
+     * to or restyled in a tree which may have been searched already.
+     */
+    public void invalidateHitTestIndexes() {
+        getRoot()._hitTestGeneration++;
+    }
+
+    /**
+     * Discards the index of this layer and those of its ancestors, which
+     * search the boxes of this layer, too.  Must be called when the content
+     * area or the visibility of a box in this layer changes.
+     */
+    public void invalidateHitTestIndex() {
+        for (Layer l = this; l != null; l = l.getParent()) {
+            l._hitTestIndex = null;
+        }
+    }
+
+    private Layer getRoot() {
+        Layer result = this;
+        while (result.getParent() != null) {
+            result = result.getParent();
+        }
+        return result;
+    }
+
     private Box find(CssContext cssCtx, int absX, int absY, List layers, boolean findAnonymous) {
         Box result = null;
         // Work backwards since layers are painted forwards and we're looking
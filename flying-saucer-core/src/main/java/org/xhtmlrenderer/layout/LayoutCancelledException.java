@@ -0,0 +1,14 @@
+package org.xhtmlrenderer.layout;
+
+/**
+ * Thrown by a {@link LayoutProgressListener} to abort a layout whose result
+ * is no longer needed, e.g. because a newer document has been set.  The
+ * partially laid out boxes must be discarded.
+ */
+public class LayoutCancelledException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public LayoutCancelledException() {
+        super("Layout cancelled");
+    }
+}
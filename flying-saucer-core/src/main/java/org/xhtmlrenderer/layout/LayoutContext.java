@@ -26,6 +26,7 @@ import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.logging.Level;
 
 import org.xhtmlrenderer.context.ContentFunctionFactory;
 import org.xhtmlrenderer.context.StyleReference;
@@ -35,8 +36,10 @@ import org.xhtmlrenderer.css.parser.CounterData;
 import org.xhtmlrenderer.css.style.CalculatedStyle;
 import org.xhtmlrenderer.css.style.CssContext;
 import org.xhtmlrenderer.css.value.FontSpecification;
+import org.xhtmlrenderer.event.RenderMetricsListener;
 import org.xhtmlrenderer.extend.FSCanvas;
 import org.xhtmlrenderer.extend.FontContext;
+import org.xhtmlrenderer.extend.ForkableFontContext;
 import org.xhtmlrenderer.extend.NamespaceHandler;
 import org.xhtmlrenderer.extend.ReplacedElementFactory;
 import org.xhtmlrenderer.extend.TextRenderer;
@@ -46,6 +49,8 @@ import org.xhtmlrenderer.render.FSFont;
 import org.xhtmlrenderer.render.FSFontMetrics;
 import org.xhtmlrenderer.render.MarkerData;
 import org.xhtmlrenderer.render.PageBox;
+import org.xhtmlrenderer.util.Configuration;
+import org.xhtmlrenderer.util.XRLog;
 
 /**
  * This class tracks state which changes over the course of a layout run.
@@ -54,6 +59,9 @@ import org.xhtmlrenderer.render.PageBox;
  * {@link SharedContext}.
  */
 public class LayoutContext implements CssContext {
+    private static final int MAX_RELAYOUTS =
+        Configuration.valueAsInt("xr.layout.max-relayouts", 10000);
+
     private SharedContext _sharedContext;
 
     private Layer _rootLayer;
@@ -86,6 +94,24 @@ public class LayoutContext implements CssContext {
 
     private BreakAtLineContext _breakAtLineContext;
 
+    private boolean _concurrentMeasure;
+
+    // Box building recurses into block children, so only the outermost
+    // call is timed
+    private int _boxBuildDepth;
+
+    // Boxes which are laid out again to satisfy page break rules (see
+    // BlockBoxing)
+    private int _relayoutCount;
+    private boolean _relayoutLimitReported;
+
+    // Incremented when content is laid out whose position depends on more
+    // than its containing block (layers, floats, paginated tables, etc.)
+    private int _positionDependentContentCount;
+
+    private LayoutProgressListener _layoutProgressListener;
+    private ReplacedElementFactory _replacedElementFactory;
+
     public TextRenderer getTextRenderer() {
         return _sharedContext.getTextRenderer();
     }
@@ -116,6 +142,42 @@ public class LayoutContext implements CssContext {
         _firstLetters = new StyleTracker();
     }
 
+    /**
+     * Returns a context which may be used on another thread to calculate the
+     * min/max widths of boxes which have been prepared on this one (see
+     * {@link org.xhtmlrenderer.render.BlockBox#prepareConcurrentMinMaxWidth(LayoutContext)}).
+     * Returns <code>null</code> if the current font context cannot be used
+     * from more than one thread.
+     */
+    public LayoutContext newConcurrentMeasureContext() {
+        if (! (_fontContext instanceof ForkableFontContext)) {
+            return null;
+        }
+
+        LayoutContext result = new LayoutContext(_sharedContext);
+        result.setFontContext(((ForkableFontContext)_fontContext).fork());
+        result._concurrentMeasure = true;
+
+        return result;
+    }
+
+    /**
+     * Whether this context was created by {@link #newConcurrentMeasureContext()}.
+     * Such a context never creates replaced elements and serializes all font
+     * lookups.
+     */
+    public boolean isConcurrentMeasure() {
+        return _concurrentMeasure;
+    }
+
+    int getBoxBuildDepth() {
+        return _boxBuildDepth;
+    }
+
+    void setBoxBuildDepth(int boxBuildDepth) {
+        _boxBuildDepth = boxBuildDepth;
+    }
+
     public void reInit(boolean keepLayers) {
         _firstLines = new StyleTracker();
         _firstLetters = new StyleTracker();
@@ -205,6 +267,8 @@ public class LayoutContext implements CssContext {
     }
 
     public void pushLayer(Box master) {
+        markPositionDependentContent();
+
         Layer layer = null;
 
         if (_rootLayer == null) {
@@ -267,14 +331,24 @@ public class LayoutContext implements CssContext {
     }
 
     public float getFontSize2D(FontSpecification font) {
-        return _sharedContext.getFont(font).getSize2D();
+        return getFont(font).getSize2D();
     }
 
     public float getXHeight(FontSpecification parentFont) {
+        if (_concurrentMeasure) {
+            synchronized (_sharedContext) {
+                return _sharedContext.getXHeight(getFontContext(), parentFont);
+            }
+        }
         return _sharedContext.getXHeight(getFontContext(), parentFont);
     }
 
     public FSFont getFont(FontSpecification font) {
+        if (_concurrentMeasure) {
+            synchronized (_sharedContext) {
+                return _sharedContext.getFont(font);
+            }
+        }
         return _sharedContext.getFont(font);
     }
 
@@ -303,9 +377,20 @@ public class LayoutContext implements CssContext {
     }
 
     public ReplacedElementFactory getReplacedElementFactory() {
+        if (_replacedElementFactory != null) {
+            return _replacedElementFactory;
+        }
         return _sharedContext.getReplacedElementFactory();
     }
 
+    /**
+     * Sets the factory used by this layout instead of the one of the shared
+     * context, e.g. to create replaced elements on another thread.
+     */
+    public void setReplacedElementFactory(ReplacedElementFactory replacedElementFactory) {
+        _replacedElementFactory = replacedElementFactory;
+    }
+
     public FontContext getFontContext() {
         return _fontContext;
     }
@@ -353,6 +438,11 @@ public class LayoutContext implements CssContext {
     }
 
     public FSFontMetrics getFSFontMetrics(FSFont font) {
+        if (_concurrentMeasure) {
+            synchronized (_sharedContext) {
+                return getTextRenderer().getFSFontMetrics(getFontContext(), font, "");
+            }
+        }
         return getTextRenderer().getFSFontMetrics(getFontContext(), font, "");
     }
 
@@ -536,4 +626,60 @@ public class LayoutContext implements CssContext {
     public void setBreakAtLineContext(BreakAtLineContext breakAtLineContext) {
         _breakAtLineContext = breakAtLineContext;
     }
+
+    /**
+     * Returns <code>true</code> if a box may still be laid out again to
+     * satisfy a page break rule.  The number of relayouts per layout run is
+     * limited by <code>xr.layout.max-relayouts</code>.
+     */
+    public boolean isRelayoutAllowed() {
+        return MAX_RELAYOUTS <= 0 || _relayoutCount < MAX_RELAYOUTS;
+    }
+
+    public void countRelayout() {
+        _relayoutCount++;
+        _sharedContext.getMetricsListener().count(RenderMetricsListener.COUNT_RELAYOUTS, 1);
+    }
+
+    /**
+     * Called when a box has been moved to its new position instead of being
+     * laid out again.
+     */
+    public void countTranslatedRelayout() {
+        _sharedContext.getMetricsListener().count(RenderMetricsListener.COUNT_TRANSLATED_RELAYOUTS, 1);
+    }
+
+    /**
+     * Called when a page break rule is dropped because
+     * {@link #isRelayoutAllowed()} returned <code>false</code>.
+     */
+    public void countSkippedRelayout() {
+        _sharedContext.getMetricsListener().count(RenderMetricsListener.COUNT_SKIPPED_RELAYOUTS, 1);
+        if (! _relayoutLimitReported) {
+            _relayoutLimitReported = true;
+            XRLog.layout(Level.WARNING, "Laid out boxes again " + _relayoutCount +
+                    " times, ignoring remaining page-break-inside, page-break-before/after: avoid, " +
+                    "widows and orphans rules (see xr.layout.max-relayouts)");
+        }
+    }
+
+    public int getPositionDependentContentCount() {
+        return _positionDependentContentCount;
+    }
+
+    public void markPositionDependentContent() {
+        _positionDependentContentCount++;
+    }
+
+    public LayoutProgressListener getLayoutProgressListener() {
+        return _layoutProgressListener;
+    }
+
+    /**
+     * Sets a listener which is notified after each block box has been laid
+     * out, e.g. to cancel a layout running in the background.
+     */
+    public void setLayoutProgressListener(LayoutProgressListener layoutProgressListener) {
+        _layoutProgressListener = layoutProgressListener;
+    }
 }
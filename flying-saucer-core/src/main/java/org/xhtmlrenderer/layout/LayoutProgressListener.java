@@ -0,0 +1,15 @@
+package org.xhtmlrenderer.layout;
+
+import org.xhtmlrenderer.render.BlockBox;
+
+/**
+ * Notified after each block box has been laid out (see
+ * {@link LayoutContext#setLayoutProgressListener(LayoutProgressListener)}).
+ * Between these calls the box tree is in a consistent, if incomplete, state,
+ * so a listener may e.g. let a partially laid out document be painted.  A
+ * listener can abort the layout by throwing a
+ * {@link LayoutCancelledException}.
+ */
+public interface LayoutProgressListener {
+    public void blockLaidOut(LayoutContext c, BlockBox box);
+}
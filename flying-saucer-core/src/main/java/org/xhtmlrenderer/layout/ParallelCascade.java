@@ -0,0 +1,215 @@
+package org.xhtmlrenderer.layout;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.xhtmlrenderer.context.StyleReference;
+import org.xhtmlrenderer.css.style.CalculatedStyle;
+import org.xhtmlrenderer.event.RenderMetricsListener;
+import org.xhtmlrenderer.util.Configuration;
+import org.xhtmlrenderer.util.XRRuntimeException;
+
+/**
+ * Computes the styles of the elements of a large document on the executor
+ * returned by {@link SharedContext#getLayoutExecutor()} before the box tree
+ * is built.  The document is split into subtrees of similar size; the
+ * styles of the elements above them are computed on the calling thread and
+ * each batch of subtrees is then styled concurrently, top down.  The
+ * results are added to the style cache of the {@link SharedContext}, so
+ * {@link SharedContext#getStyle(Element)} returns the same styles it would
+ * have computed itself.
+ * <p>
+ * The document is traversed once on the calling thread first.  This
+ * expands the nodes of lazily built DOMs (e.g. Xerces' deferred DOM), which
+ * are not safe for concurrent reads otherwise.
+ */
+class ParallelCascade {
+    private static final int ELEMENT_THRESHOLD =
+        Configuration.valueAsInt("xr.layout.parallel-cascade-threshold", 4096);
+
+    // Below this, handing a batch to another thread costs more than it saves
+    private static final int MIN_BATCH_SIZE = 256;
+
+    private final SharedContext _sharedContext;
+
+    // Element -> Integer, the number of elements in its subtree
+    private final Map _subtreeSizes = new IdentityHashMap();
+
+    public ParallelCascade(SharedContext sharedContext) {
+        _sharedContext = sharedContext;
+    }
+
+    public void cascade(Element root) {
+        ExecutorService executor = _sharedContext.getLayoutExecutor();
+        if (executor == null || ELEMENT_THRESHOLD <= 0) {
+            return;
+        }
+
+        long start = System.nanoTime();
+        int total = countElements(root);
+        int batchCount = Math.min(
+                total / MIN_BATCH_SIZE,
+                Runtime.getRuntime().availableProcessors() * 4);
+        if (total < ELEMENT_THRESHOLD || batchCount < 2) {
+            return;
+        }
+
+        List subtrees = new ArrayList();
+        split(root, total / batchCount, subtrees);
+
+        List futures = new ArrayList(batchCount);
+        StyleReference css = _sharedContext.getCss();
+        int batchSize = (total + batchCount - 1) / batchCount;
+        int size = 0;
+        List batch = new ArrayList();
+        for (Iterator i = subtrees.iterator(); i.hasNext(); ) {
+            Element subtree = (Element) i.next();
+            batch.add(subtree);
+            size += getSubtreeSize(subtree);
+            if (size >= batchSize || ! i.hasNext()) {
+                futures.add(executor.submit(new CascadeTask(css, batch, getParentStyles(batch))));
+                batch = new ArrayList();
+                size = 0;
+            }
+        }
+
+        int count = 0;
+        for (Iterator i = waitFor(futures).iterator(); i.hasNext(); ) {
+            Map styles = (Map) i.next();
+            _sharedContext.cacheStyles(styles);
+            count += styles.size();
+        }
+
+        RenderMetricsListener metricsListener = _sharedContext.getMetricsListener();
+        metricsListener.count(RenderMetricsListener.COUNT_STYLE_CACHE_MISSES, count);
+        metricsListener.phaseCompleted(RenderMetricsListener.PHASE_CASCADE, System.nanoTime() - start);
+    }
+
+    private int countElements(Element e) {
+        // hasAttributes() makes deferred DOMs expand the attributes, too
+        e.hasAttributes();
+        int result = 1;
+        for (Node n = e.getFirstChild(); n != null; n = n.getNextSibling()) {
+            if (n.getNodeType() == Node.ELEMENT_NODE) {
+                result += countElements((Element) n);
+            }
+        }
+        _subtreeSizes.put(e, new Integer(result));
+        return result;
+    }
+
+    private int getSubtreeSize(Element e) {
+        return ((Integer) _subtreeSizes.get(e)).intValue();
+    }
+
+    /**
+     * Collects the subtrees with at most <code>maxSize</code> elements,
+     * in document order.  The styles of the elements above them are
+     * computed here.
+     */
+    private void split(Element e, int maxSize, List subtrees) {
+        if (getSubtreeSize(e) <= maxSize) {
+            subtrees.add(e);
+            return;
+        }
+        if (_sharedContext.getStyle(e).isDisplayNone()) {
+            return;
+        }
+        for (Node n = e.getFirstChild(); n != null; n = n.getNextSibling()) {
+            if (n.getNodeType() == Node.ELEMENT_NODE) {
+                split((Element) n, maxSize, subtrees);
+            }
+        }
+    }
+
+    private List getParentStyles(List subtrees) {
+        List result = new ArrayList(subtrees.size());
+        for (Iterator i = subtrees.iterator(); i.hasNext(); ) {
+            Node parent = ((Element) i.next()).getParentNode();
+            result.add(parent instanceof Element ?
+                    _sharedContext.getStyle((Element) parent) : null);
+        }
+        return result;
+    }
+
+    private List waitFor(List futures) {
+        List result = new ArrayList(futures.size());
+        try {
+            for (Iterator i = futures.iterator(); i.hasNext(); ) {
+                result.add(((Future) i.next()).get());
+            }
+        } catch (InterruptedException e) {
+            cancel(futures);
+            Thread.currentThread().interrupt();
+            throw new XRRuntimeException("Interrupted while computing styles", e);
+        } catch (ExecutionException e) {
+            cancel(futures);
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            } else {
+                throw new XRRuntimeException(cause.getMessage(), cause);
+            }
+        }
+        return result;
+    }
+
+    private void cancel(List futures) {
+        for (Iterator i = futures.iterator(); i.hasNext(); ) {
+            ((Future) i.next()).cancel(true);
+        }
+    }
+
+    private static class CascadeTask implements Callable {
+        private final StyleReference _css;
+        private final List _subtrees;
+        private final List _parentStyles;
+        private final Map _styles = new HashMap();
+
+        public CascadeTask(StyleReference css, List subtrees, List parentStyles) {
+            _css = css;
+            _subtrees = subtrees;
+            _parentStyles = parentStyles;
+        }
+
+        public Object call() {
+            for (int i = 0; i < _subtrees.size(); i++) {
+                if (Thread.currentThread().isInterrupted()) {
+                    break;
+                }
+                Element subtree = (Element) _subtrees.get(i);
+                CalculatedStyle parentStyle = (CalculatedStyle) _parentStyles.get(i);
+                if (parentStyle != null) {
+                    cascade(subtree, parentStyle);
+                }
+            }
+            return _styles;
+        }
+
+        private void cascade(Element e, CalculatedStyle parentStyle) {
+            CalculatedStyle style = parentStyle.deriveStyle(_css.getCascadedStyle(e, false));
+            _styles.put(e, style);
+            if (style.isDisplayNone()) {
+                // the box tree doesn't need the styles of these
+                return;
+            }
+            for (Node n = e.getFirstChild(); n != null; n = n.getNextSibling()) {
+                if (n.getNodeType() == Node.ELEMENT_NODE) {
+                    cascade((Element) n, style);
+                }
+            }
+        }
+    }
+}
@@ -23,8 +23,10 @@ import java.awt.Font;
 import java.awt.HeadlessException;
 import java.awt.Rectangle;
 import java.awt.Toolkit;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
 
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
@@ -35,6 +37,8 @@ import org.xhtmlrenderer.context.StyleReference;
 import org.xhtmlrenderer.css.style.CalculatedStyle;
 import org.xhtmlrenderer.css.style.EmptyStyle;
 import org.xhtmlrenderer.css.value.FontSpecification;
+import org.xhtmlrenderer.event.DefaultRenderMetricsListener;
+import org.xhtmlrenderer.event.RenderMetricsListener;
 import org.xhtmlrenderer.extend.FSCanvas;
 import org.xhtmlrenderer.extend.FontContext;
 import org.xhtmlrenderer.extend.FontResolver;
@@ -50,6 +54,7 @@ import org.xhtmlrenderer.render.FSFontMetrics;
 import org.xhtmlrenderer.render.RenderingContext;
 import org.xhtmlrenderer.simple.extend.FormSubmissionListener;
 import org.xhtmlrenderer.swing.Java2DTextRenderer;
+import org.xhtmlrenderer.swing.NaiveUserAgent;
 import org.xhtmlrenderer.swing.SwingReplacedElementFactory;
 import org.xhtmlrenderer.util.XRLog;
 
@@ -65,7 +70,7 @@ public class SharedContext {
 
     private boolean interactive = true;
 
-    private Map idMap;
+    private volatile Map idMap;
 
     /*
      * used to adjust fonts, ems, points, into screen resolution
@@ -92,13 +97,17 @@ public class SharedContext {
 
     private int dotsPerPixel = 1;
 
-    private Map styleMap;
+    private volatile Map styleMap;
 
     private ReplacedElementFactory replacedElementFactory;
     private Rectangle temp_canvas;
     
     private LineBreakingStrategy lineBreakingStrategy = new DefaultLineBreakingStrategy();
 
+    private ExecutorService layoutExecutor;
+
+    private RenderMetricsListener metricsListener = new DefaultRenderMetricsListener();
+
     public SharedContext() {
     }
 
@@ -318,14 +327,14 @@ public class SharedContext {
 
     public void addBoxId(String id, Box box) {
         if (idMap == null) {
-            idMap = new HashMap();
+            idMap = Collections.synchronizedMap(new HashMap());
         }
         idMap.put(id, box);
     }
 
     public Box getBoxById(String id) {
         if (idMap == null) {
-            idMap = new HashMap();
+            idMap = Collections.synchronizedMap(new HashMap());
         }
         return (Box) idMap.get(id);
     }
@@ -383,6 +392,9 @@ public class SharedContext {
             styleReference.setUserAgentCallback(userAgentCallback);
         }
         uac = userAgentCallback;
+        if (uac instanceof NaiveUserAgent) {
+            ((NaiveUserAgent)uac).setMetricsListener(metricsListener);
+        }
     }
 
     /**
@@ -554,12 +566,15 @@ public class SharedContext {
 
     public CalculatedStyle getStyle(Element e, boolean restyle) {
         if (styleMap == null) {
-            styleMap = new HashMap(1024, 0.75f);
+            styleMap = Collections.synchronizedMap(new HashMap(1024, 0.75f));
         }
 
         CalculatedStyle result = null;
         if (! restyle) {
             result = (CalculatedStyle)styleMap.get(e);
+            metricsListener.count(result == null ?
+                    RenderMetricsListener.COUNT_STYLE_CACHE_MISSES :
+                    RenderMetricsListener.COUNT_STYLE_CACHE_HITS, 1);
         }
         if (result == null) {
             Node parent = e.getParentNode();
@@ -570,7 +585,10 @@ public class SharedContext {
                 parentCalculatedStyle = getStyle((Element)parent, false);
             }
 
+            long start = System.nanoTime();
             result = parentCalculatedStyle.deriveStyle(getCss().getCascadedStyle(e, restyle));
+            metricsListener.phaseCompleted(
+                    RenderMetricsListener.PHASE_CASCADE, System.nanoTime() - start);
 
             styleMap.put(e, result);
         }
@@ -578,6 +596,27 @@ public class SharedContext {
         return result;
     }
 
+    /**
+     * Computes the styles of the elements of a large document concurrently
+     * on the layout executor (see {@link #setLayoutExecutor(ExecutorService)}),
+     * so later calls to {@link #getStyle(Element)} find them in the cache.
+     * Does nothing if there is no executor, if the document has fewer
+     * elements than <code>xr.layout.parallel-cascade-threshold</code> or if
+     * the styles have been computed already.
+     */
+    public void precomputeStyles(Element root) {
+        if (layoutExecutor != null && (styleMap == null || ! styleMap.containsKey(root))) {
+            new ParallelCascade(this).cascade(root);
+        }
+    }
+
+    void cacheStyles(Map styles) {
+        if (styleMap == null) {
+            styleMap = Collections.synchronizedMap(new HashMap(Math.max(1024, styles.size() * 2), 0.75f));
+        }
+        styleMap.putAll(styles);
+    }
+
     public void reset() {
        styleMap = null;
        idMap = null;
@@ -630,6 +669,46 @@ public class SharedContext {
 	public void setLineBreakingStrategy(LineBreakingStrategy lineBreakingStrategy) {
 		this.lineBreakingStrategy = lineBreakingStrategy;
 	}
+
+    public ExecutorService getLayoutExecutor() {
+        return layoutExecutor;
+    }
+
+    /**
+     * Sets the executor used to run independent parts of layout concurrently
+     * (e.g. the min/max width calculation of the cells of large auto layout
+     * tables).  If <code>null</code> (the default), layout runs entirely on
+     * the calling thread.  The executor is not shut down by this class.
+     * <p>
+     * Linked and imported stylesheets are loaded on this executor, too, so
+     * the <code>UserAgentCallback</code> must be thread safe when one is
+     * set.
+     */
+    public void setLayoutExecutor(ExecutorService layoutExecutor) {
+        this.layoutExecutor = layoutExecutor;
+    }
+
+    public RenderMetricsListener getMetricsListener() {
+        return metricsListener;
+    }
+
+    /**
+     * Sets the listener which receives timing and counting events for the
+     * documents rendered with this context.  If the user agent is a
+     * {@link NaiveUserAgent} it reports the resources it loads to the same
+     * listener.  Passing <code>null</code> restores the default listener,
+     * which ignores all events.  The listener should be set before the
+     * document is set.
+     */
+    public void setMetricsListener(RenderMetricsListener metricsListener) {
+        if (metricsListener == null) {
+            metricsListener = new DefaultRenderMetricsListener();
+        }
+        this.metricsListener = metricsListener;
+        if (uac instanceof NaiveUserAgent) {
+            ((NaiveUserAgent)uac).setMetricsListener(metricsListener);
+        }
+    }
 }
 
 /*
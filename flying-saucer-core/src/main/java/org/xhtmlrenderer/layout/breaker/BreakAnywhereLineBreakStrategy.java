@@ -36,4 +36,13 @@ public class BreakAnywhereLineBreakStrategy implements BreakPointsProvider {
 		return new BreakPoint(position++);
 	}
 
+	/**
+	 * Adds the points {@link #next()} returns to <code>result</code>.
+	 */
+	public static void fillBreakPoints(String currentString, BreakPoints result) {
+		for (int i = 0; i < currentString.length(); i++) {
+			result.add(i);
+		}
+	}
+
 }
@@ -0,0 +1,137 @@
+package org.xhtmlrenderer.layout.breaker;
+
+import java.text.BreakIterator;
+import java.util.Arrays;
+
+/**
+ * The break points of a text, as an array of positions in ascending order
+ * and, for each of them, the hyphen to insert when the line is broken there
+ * (<code>null</code> if none).  Instances are meant to be reused: they are
+ * filled by {@link FillingLineBreakingStrategy#fillBreakPoints} after
+ * {@link #clear()}, so breaking a text doesn't allocate an object per word.
+ * Strategies which only provide a {@link BreakPointsProvider} are copied in
+ * with {@link #addAll(BreakPointsProvider)}.
+ */
+public class BreakPoints {
+
+	public static final String DEFAULT_HYPHEN = "-";
+
+	private int[] positions = new int[32];
+	private String[] hyphens = new String[32];
+	private int size;
+
+	// scratch space of sort()
+	private long[] sortKeys;
+
+	public void clear() {
+		Arrays.fill(hyphens, 0, size, null);
+		size = 0;
+	}
+
+	public void add(int position) {
+		add(position, null);
+	}
+
+	/**
+	 * Adds a position at which <code>hyphen</code> has to be inserted, none
+	 * if it is <code>null</code> or empty.
+	 */
+	public void add(int position, String hyphen) {
+		if (size == positions.length) {
+			positions = Arrays.copyOf(positions, size * 2);
+			hyphens = Arrays.copyOf(hyphens, size * 2);
+		}
+		positions[size] = position;
+		hyphens[size] = hyphen == null || hyphen.isEmpty() ? null : hyphen;
+		size++;
+	}
+
+	/**
+	 * Adds a position at which a {@link #DEFAULT_HYPHEN} has to be inserted.
+	 */
+	public void addHyphenated(int position) {
+		add(position, DEFAULT_HYPHEN);
+	}
+
+	/**
+	 * Adds the points returned by <code>provider</code> until it is done.
+	 */
+	public void addAll(BreakPointsProvider provider) {
+		BreakPoint point;
+		while ((point = provider.next()).getPosition() != BreakIterator.DONE) {
+			add(point.getPosition(), point.getHyphen());
+		}
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public int getPosition(int index) {
+		return positions[index];
+	}
+
+	public boolean isHyphenated(int index) {
+		return hyphens[index] != null;
+	}
+
+	/**
+	 * Returns the text to insert when the line is broken at the given point,
+	 * the empty string if it isn't hyphenated.
+	 */
+	public String getHyphen(int index) {
+		return hyphens[index] == null ? "" : hyphens[index];
+	}
+
+	/**
+	 * Sorts the positions, for strategies which collect them from several
+	 * sources.  Of several points at the same position the one added first is
+	 * kept.
+	 */
+	public void sort() {
+		boolean sorted = true;
+		for (int i = 1; i < size && sorted; i++) {
+			sorted = positions[i - 1] < positions[i];
+		}
+		if (sorted) {
+			return;
+		}
+
+		// position in the high bits and the order of addition in the low ones
+		if (sortKeys == null || sortKeys.length < size) {
+			sortKeys = new long[positions.length];
+		}
+		for (int i = 0; i < size; i++) {
+			sortKeys[i] = ((long) positions[i] << 32) | i;
+		}
+		Arrays.sort(sortKeys, 0, size);
+
+		String[] oldHyphens = Arrays.copyOf(hyphens, size);
+		int count = 0;
+		for (int i = 0; i < size; i++) {
+			int position = (int) (sortKeys[i] >> 32);
+			if (count > 0 && positions[count - 1] == position) {
+				continue;
+			}
+			hyphens[count] = oldHyphens[(int) sortKeys[i]];
+			positions[count++] = position;
+		}
+		Arrays.fill(hyphens, count, size, null);
+		size = count;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder result = new StringBuilder("BreakPoints [");
+		for (int i = 0; i < size; i++) {
+			if (i > 0) {
+				result.append(", ");
+			}
+			result.append(positions[i]);
+			if (hyphens[i] != null) {
+				result.append(hyphens[i]);
+			}
+		}
+		return result.append(']').toString();
+	}
+}
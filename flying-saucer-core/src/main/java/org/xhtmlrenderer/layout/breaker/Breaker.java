@@ -20,8 +20,6 @@
  */
 package org.xhtmlrenderer.layout.breaker;
 
-import java.text.BreakIterator;
-
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 import org.w3c.dom.Text;
@@ -42,6 +40,13 @@ public class Breaker {
 
     private static final String DEFAULT_LANGUAGE = System.getProperty("org.xhtmlrenderer.layout.breaker.default-language", "en");
 
+    private static final ThreadLocal<BreakPoints> BREAK_POINTS = new ThreadLocal<BreakPoints>() {
+        @Override
+        protected BreakPoints initialValue() {
+            return new BreakPoints();
+        }
+    };
+
 	public static void breakFirstLetter(LayoutContext c, LineBreakContext context,
             int avail, CalculatedStyle style) {
         FSFont font = style.getFSFont(c);
@@ -125,6 +130,37 @@ public class Breaker {
     	return c.getSharedContext().getLineBreakingStrategy().getBreakPointsProvider(text, getLanguage(c, textNode), style);
     }
     
+    /**
+     * Returns the break points of <code>text</code>.  The result is reused by
+     * the current thread, so it is only valid until the next call.
+     */
+    public static BreakPoints getBreakPoints(String text, LayoutContext c, Element element, CalculatedStyle style) {
+        BreakPoints result = BREAK_POINTS.get();
+        result.clear();
+        fillBreakPoints(c.getSharedContext().getLineBreakingStrategy(), text, getLanguage(c, element), style, result);
+        return result;
+    }
+
+    /**
+     * Returns the break points of <code>text</code>.  The result is reused by
+     * the current thread, so it is only valid until the next call.
+     */
+    public static BreakPoints getBreakPoints(String text, LayoutContext c, Text textNode, CalculatedStyle style) {
+        BreakPoints result = BREAK_POINTS.get();
+        result.clear();
+        fillBreakPoints(c.getSharedContext().getLineBreakingStrategy(), text, getLanguage(c, textNode), style, result);
+        return result;
+    }
+
+    private static void fillBreakPoints(
+            LineBreakingStrategy strategy, String text, String lang, CalculatedStyle style, BreakPoints result) {
+        if (strategy instanceof FillingLineBreakingStrategy) {
+            ((FillingLineBreakingStrategy) strategy).fillBreakPoints(text, lang, style, result);
+        } else {
+            result.addAll(strategy.getBreakPointsProvider(text, lang, style));
+        }
+    }
+
     private static String getLanguage(LayoutContext c, Element element) {
     	String language = c.getNamespaceHandler().getLang(element);
     	if (language == null || language.isEmpty()) {
@@ -148,30 +184,41 @@ public class Breaker {
             boolean tryToBreakAnywhere) {
         FSFont f = style.getFSFont(c);
         String currentString = context.getStartSubstring();
-        BreakPointsProvider iterator = getBreakPointsProvider(currentString, c, context.getTextNode(), style);
+        BreakPoints points;
         if (tryToBreakAnywhere) {
-        	iterator = new BreakAnywhereLineBreakStrategy(currentString);
+            points = BREAK_POINTS.get();
+            points.clear();
+            BreakAnywhereLineBreakStrategy.fillBreakPoints(currentString, points);
+        } else {
+            points = getBreakPoints(currentString, c, context.getTextNode(), style);
         }
-        BreakPoint bp = iterator.next();
-        BreakPoint lastBreakPoint = null;
+        int count = points.size();
+        int i = 0;
+        int lastBreakPoint = -1;
         int right = -1;
-        while (bp != null && bp.getPosition() != BreakIterator.DONE) {
-        	int widthWithHyphen = getWidth(c, f, currentString.substring(0, bp.getPosition()) + bp.getHyphen());
-        	if (widthWithHyphen > avail) break;
-        	right = bp.getPosition();
-        	lastBreakPoint = bp;
-        	bp = iterator.next();
-        };
-        
+        while (i < count) {
+            int position = points.getPosition(i);
+            String line = currentString.substring(0, position);
+            if (points.isHyphenated(i)) {
+                line += points.getHyphen(i);
+            }
+            int widthWithHyphen = getWidth(c, f, line);
+            if (widthWithHyphen > avail) break;
+            right = position;
+            lastBreakPoint = i;
+            i++;
+        }
+
         // add hyphen if needed
-        if (bp != null && bp.getPosition() != BreakIterator.DONE // it fits 
-        		&& right >= 0 // some break point found
-        		&& !lastBreakPoint.getHyphen().isEmpty()) {
-        	context.setMaster(new StringBuilder(context.getMaster()).insert(context.getStart() + right, lastBreakPoint.getHyphen()).toString());
-        	right += lastBreakPoint.getHyphen().length();
+        if (i < count // it fits
+                && right >= 0 // some break point found
+                && points.isHyphenated(lastBreakPoint)) {
+            String hyphen = points.getHyphen(lastBreakPoint);
+            context.setMaster(new StringBuilder(context.getMaster()).insert(context.getStart() + right, hyphen).toString());
+            right += hyphen.length();
         }
-        
-        if (bp != null && bp.getPosition() == BreakIterator.DONE) {
+
+        if (i == count) {
             context.setWidth(getWidth(c, f, currentString));
             context.setEnd(context.getMaster().length());
             //It fits!
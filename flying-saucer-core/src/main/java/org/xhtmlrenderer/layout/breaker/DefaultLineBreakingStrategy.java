@@ -25,7 +25,15 @@ import org.xhtmlrenderer.css.style.CalculatedStyle;
 /**
  * @author Lukas Zaruba, lukas.zaruba@gmail.com
  */
-public class DefaultLineBreakingStrategy implements LineBreakingStrategy {
+public class DefaultLineBreakingStrategy implements FillingLineBreakingStrategy {
+
+	// creating a line instance is expensive, so every thread reuses one
+	private static final ThreadLocal<UrlAwareLineBreakIterator> ITERATOR = new ThreadLocal<UrlAwareLineBreakIterator>() {
+		@Override
+		protected UrlAwareLineBreakIterator initialValue() {
+			return new UrlAwareLineBreakIterator();
+		}
+	};
 
 	@Override
 	public BreakPointsProvider getBreakPointsProvider(String text, String lang, CalculatedStyle style) {
@@ -42,7 +50,15 @@ public class DefaultLineBreakingStrategy implements LineBreakingStrategy {
 			}
 		};
 	}
-	
-	
+
+	@Override
+	public void fillBreakPoints(String text, String lang, CalculatedStyle style, BreakPoints result) {
+		BreakIterator i = ITERATOR.get();
+		i.setText(text);
+		int next;
+		while ((next = i.next()) >= 0) {
+			result.add(next);
+		}
+	}
 
 }
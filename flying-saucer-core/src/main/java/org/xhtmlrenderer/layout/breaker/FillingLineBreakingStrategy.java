@@ -0,0 +1,19 @@
+package org.xhtmlrenderer.layout.breaker;
+
+import org.xhtmlrenderer.css.style.CalculatedStyle;
+
+/**
+ * A {@link LineBreakingStrategy} which can add the break points of a text to
+ * a reused {@link BreakPoints} instead of returning an object per break
+ * point.  Layout uses this when the strategy implements it; the points of
+ * other strategies are copied from their {@link BreakPointsProvider}.
+ */
+public interface FillingLineBreakingStrategy extends LineBreakingStrategy {
+
+	/**
+	 * Adds the break points of <code>text</code> to <code>result</code>, in
+	 * the same order as {@link #getBreakPointsProvider} returns them.
+	 */
+	void fillBreakPoints(String text, String lang, CalculatedStyle style, BreakPoints result);
+
+}
@@ -0,0 +1,149 @@
+package org.xhtmlrenderer.newtable;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.xhtmlrenderer.layout.LayoutContext;
+import org.xhtmlrenderer.util.Configuration;
+import org.xhtmlrenderer.util.XRRuntimeException;
+
+/**
+ * Calculates the min/max widths of the cells of an auto layout table on the
+ * executor returned by {@link org.xhtmlrenderer.layout.SharedContext#getLayoutExecutor()}.
+ * Cells are prepared on the layout thread in the same order
+ * <code>AutoTableLayout</code> visits them and are then measured
+ * concurrently in contiguous batches.  The results are stored on the cells
+ * themselves, so the (sequential) reduction into the column layout structs
+ * which follows is unchanged and the result is deterministic.
+ */
+class CellMinMaxWidthCalculator {
+    private static final int CELL_THRESHOLD =
+        Configuration.valueAsInt("xr.layout.table.parallel-cell-threshold", 256);
+
+    // Below this, handing a batch to another thread costs more than it saves
+    private static final int MIN_BATCH_SIZE = 32;
+
+    private final TableBox _table;
+
+    public CellMinMaxWidthCalculator(TableBox table) {
+        _table = table;
+    }
+
+    public void calcMinMaxWidths(LayoutContext c) {
+        ExecutorService executor = c.getSharedContext().getLayoutExecutor();
+        if (executor == null || c.isConcurrentMeasure()) {
+            return;
+        }
+
+        List cells = collectCells();
+        if (cells.size() < CELL_THRESHOLD) {
+            return;
+        }
+
+        List prepared = new ArrayList(cells.size());
+        for (Iterator i = cells.iterator(); i.hasNext(); ) {
+            TableCellBox cell = (TableCellBox) i.next();
+            if (cell.prepareConcurrentMinMaxWidth(c)) {
+                prepared.add(cell);
+            } else {
+                // Finish it now so boxes are still created in document
+                // (column) order
+                cell.calcMinMaxWidth(c);
+            }
+        }
+
+        int batchCount = Math.min(
+                prepared.size() / MIN_BATCH_SIZE,
+                Runtime.getRuntime().availableProcessors() * 4);
+        if (batchCount < 2) {
+            return;
+        }
+
+        int batchSize = (prepared.size() + batchCount - 1) / batchCount;
+        List futures = new ArrayList(batchCount);
+        for (int start = 0; start < prepared.size(); start += batchSize) {
+            LayoutContext measureContext = c.newConcurrentMeasureContext();
+            if (measureContext == null) {
+                break;
+            }
+            int end = Math.min(start + batchSize, prepared.size());
+            futures.add(executor.submit(
+                    new MeasureTask(measureContext, prepared.subList(start, end))));
+        }
+
+        waitFor(futures);
+    }
+
+    private List collectCells() {
+        List result = new ArrayList();
+        int nEffCols = _table.numEffCols();
+        for (int effCol = 0; effCol < nEffCols; effCol++) {
+            for (Iterator j = _table.getChildIterator(); j.hasNext(); ) {
+                TableSectionBox section = (TableSectionBox) j.next();
+                int numRows = section.numRows();
+                for (int i = 0; i < numRows; i++) {
+                    TableCellBox cell = section.cellAt(i, effCol);
+                    if (cell == TableCellBox.SPANNING_CELL || cell == null) {
+                        continue;
+                    }
+                    if (cell.getStyle().getColSpan() == 1) {
+                        result.add(cell);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    private void waitFor(List futures) {
+        try {
+            for (Iterator i = futures.iterator(); i.hasNext(); ) {
+                ((Future) i.next()).get();
+            }
+        } catch (InterruptedException e) {
+            cancel(futures);
+            Thread.currentThread().interrupt();
+            throw new XRRuntimeException("Interrupted while measuring table cells", e);
+        } catch (ExecutionException e) {
+            cancel(futures);
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            } else {
+                throw new XRRuntimeException(cause.getMessage(), cause);
+            }
+        }
+    }
+
+    private void cancel(List futures) {
+        for (Iterator i = futures.iterator(); i.hasNext(); ) {
+            ((Future) i.next()).cancel(true);
+        }
+    }
+
+    private static class MeasureTask implements Runnable {
+        private final LayoutContext _context;
+        private final List _cells;
+
+        public MeasureTask(LayoutContext context, List cells) {
+            _context = context;
+            _cells = cells;
+        }
+
+        public void run() {
+            for (Iterator i = _cells.iterator(); i.hasNext(); ) {
+                TableCellBox cell = (TableCellBox) i.next();
+                if (Thread.currentThread().isInterrupted()) {
+                    return;
+                }
+                cell.calcMinMaxWidth(_context);
+            }
+        }
+    }
+}
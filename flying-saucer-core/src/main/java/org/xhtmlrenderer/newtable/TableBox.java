@@ -160,6 +160,13 @@ public class TableBox extends BlockBox {
         }
     }
 
+    /**
+     * Nested tables are always measured on the layout thread.
+     */
+    public boolean prepareConcurrentMinMaxWidth(LayoutContext c) {
+        return false;
+    }
+
     public void splitColumn(int pos, int firstSpan) {
         ColumnData newColumn = new ColumnData();
         newColumn.setSpan(firstSpan);
@@ -218,6 +225,11 @@ public class TableBox extends BlockBox {
     }
 
     public void layout(LayoutContext c) {
+        if (c.isPrint()) {
+            // Rows are positioned and split per page
+            c.markPositionDependentContent();
+        }
+
         calcMinMaxWidth(c);
         calcDimensions(c);
         calcWidth();
@@ -1210,6 +1222,8 @@ public class TableBox extends BlockBox {
 
             }
 
+            new CellMinMaxWidthCalculator(table).calcMinMaxWidths(c);
+
             for (int i = 0; i < nEffCols; i++) {
                 recalcColumn(c, i);
             }
@@ -391,6 +391,10 @@ public class TableCellBox extends BlockBox {
     
     protected boolean isSkipWhenCollapsingMargins() {
         return true;
+    }
+
+    protected boolean isMayCollapseMarginsWithSiblings() {
+        return false;
     } 
 
     // The following rules apply for resolving conflicts and figuring out which
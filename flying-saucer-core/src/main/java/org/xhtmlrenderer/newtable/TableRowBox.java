@@ -45,6 +45,8 @@ public class TableRowBox extends BlockBox {
     private int _extraSpaceTop;
     private int _extraSpaceBottom;
     
+    private boolean _needCellWidthCalc;
+    
     public TableRowBox() {
     }
     
@@ -195,6 +197,10 @@ public class TableRowBox extends BlockBox {
         if (section.isNeedCellWidthCalc()) {
             section.setCellWidths(c);
             section.setNeedCellWidthCalc(false);
+            setNeedCellWidthCalc(false);
+        } else if (isNeedCellWidthCalc()) {
+            section.setCellWidths(c, getIndex());
+            setNeedCellWidthCalc(false);
         }
         
         if (getChildrenContentType() != CONTENT_EMPTY) {
@@ -471,6 +477,10 @@ public class TableRowBox extends BlockBox {
     protected boolean isSkipWhenCollapsingMargins() {
         return true;
     }
+
+    protected boolean isMayCollapseMarginsWithSiblings() {
+        return false;
+    }
     
     public void paintBorder(RenderingContext c) {
         // rows never have borders
@@ -483,7 +493,8 @@ public class TableRowBox extends BlockBox {
     public void reset(LayoutContext c) {
         super.reset(c);
         setHaveBaseline(false);
-        getSection().setNeedCellWidthCalc(true);
+        setNeedCellWidthCalc(true);
+        getSection().invalidateRowIndex();
         setContentLimitContainer(null);
     }
 
@@ -491,6 +502,14 @@ public class TableRowBox extends BlockBox {
         return _haveBaseline;
     }
 
+    private boolean isNeedCellWidthCalc() {
+        return _needCellWidthCalc;
+    }
+
+    private void setNeedCellWidthCalc(boolean needCellWidthCalc) {
+        _needCellWidthCalc = needCellWidthCalc;
+    }
+
     public void setHaveBaseline(boolean haveBaseline) {
         _haveBaseline = haveBaseline;
     }
@@ -19,11 +19,13 @@
  */
 package org.xhtmlrenderer.newtable;
 
+import java.awt.Rectangle;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 
 import org.xhtmlrenderer.layout.LayoutContext;
+import org.xhtmlrenderer.layout.PaintingInfo;
 import org.xhtmlrenderer.render.BlockBox;
 import org.xhtmlrenderer.render.RenderingContext;
 
@@ -39,6 +41,13 @@ public class TableSectionBox extends BlockBox {
     private boolean _capturedOriginalAbsY;
     private int _originalAbsY;
     
+    // Running max of row bottoms / min of row tops (aggregate bounds) used to
+    // find the rows which can intersect a clip region.  Valid as long as
+    // _rowIndexPaintingInfo is our current painting info.
+    private PaintingInfo _rowIndexPaintingInfo;
+    private int[] _rowMaxBottoms;
+    private int[] _rowMinTops;
+    
     public TableSectionBox() {
     }
     
@@ -84,6 +93,7 @@ public class TableSectionBox extends BlockBox {
                 addCell(row, cell, cRow);
             }
         }
+        setNeedCellRecalc(false);
     }
     
     public void calcBorders(LayoutContext c) {
@@ -128,7 +138,6 @@ public class TableSectionBox extends BlockBox {
     protected void layoutChildren(LayoutContext c, int contentStart) {
         if (isNeedCellRecalc()) {
             recalcCells(c);
-            setNeedCellRecalc(false);
         }
         
         if (isNeedCellWidthCalc()) {
@@ -189,34 +198,53 @@ public class TableSectionBox extends BlockBox {
         setNeedCellWidthCalc(true);
         setNeedCellRecalc(true);
         setCapturedOriginalAbsY(false);
+        invalidateRowIndex();
     }
     
     void setCellWidths(LayoutContext c)
     {
         int[] columnPos = getTable().getColumnPos();
+        int hspacing = getTable().getStyle().getBorderHSpacing(c);
         
         for (Iterator i = _grid.iterator(); i.hasNext(); ) {
             RowData row = (RowData)i.next();
-            List cols = row.getRow();
-            int hspacing = getTable().getStyle().getBorderHSpacing(c);
-            for (int j = 0; j < cols.size(); j++) {
-                TableCellBox cell = (TableCellBox)cols.get(j);
-                
-                if (cell == null || cell == TableCellBox.SPANNING_CELL) {
-                    continue;
-                }
-                
-                int endCol = j;
-                int cspan = cell.getStyle().getColSpan();
-                while (cspan > 0 && endCol < cols.size()) {
-                    cspan -= getTable().spanOfEffCol(endCol);
-                    endCol++;
-                }
-                
-                int w = columnPos[endCol] - columnPos[j] - hspacing;
-                cell.setLayoutWidth(c, w);
-                cell.setX(columnPos[j] + hspacing);
+            setCellWidths(c, row, columnPos, hspacing);
+        }
+    }
+    
+    /**
+     * Sets the cell widths of a single grid row.  Used when a row is laid
+     * out again (e.g. after being moved to the next page) so the cost does not
+     * depend on the size of the row group.
+     */
+    void setCellWidths(LayoutContext c, int cRow)
+    {
+        if (cRow < _grid.size()) {
+            setCellWidths(c, (RowData)_grid.get(cRow), 
+                    getTable().getColumnPos(), getTable().getStyle().getBorderHSpacing(c));
+        }
+    }
+    
+    private void setCellWidths(LayoutContext c, RowData row, int[] columnPos, int hspacing)
+    {
+        List cols = row.getRow();
+        for (int j = 0; j < cols.size(); j++) {
+            TableCellBox cell = (TableCellBox)cols.get(j);
+            
+            if (cell == null || cell == TableCellBox.SPANNING_CELL) {
+                continue;
+            }
+            
+            int endCol = j;
+            int cspan = cell.getStyle().getColSpan();
+            while (cspan > 0 && endCol < cols.size()) {
+                cspan -= getTable().spanOfEffCol(endCol);
+                endCol++;
             }
+            
+            int w = columnPos[endCol] - columnPos[j] - hspacing;
+            cell.setLayoutWidth(c, w);
+            cell.setX(columnPos[j] + hspacing);
         }
     }
     
@@ -232,6 +260,10 @@ public class TableSectionBox extends BlockBox {
     protected boolean isSkipWhenCollapsingMargins() {
         return true;
     }
+
+    protected boolean isMayCollapseMarginsWithSiblings() {
+        return false;
+    }
     
     public void paintBorder(RenderingContext c) {
         // row groups never have borders
@@ -241,6 +273,99 @@ public class TableSectionBox extends BlockBox {
         // painted at the cell level
     }
     
+    /**
+     * Returns the index of the first row whose aggregate bounds may
+     * intersect <code>bounds</code>.  All rows before it are known not to.
+     */
+    public int findFirstRowIntersecting(Rectangle bounds) {
+        if (! ensureRowIndex()) {
+            return 0;
+        }
+        int low = 0;
+        int high = _rowMaxBottoms.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (_rowMaxBottoms[mid] < bounds.y) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+    
+    /**
+     * Returns the index following the last row whose aggregate bounds may
+     * intersect <code>bounds</code>.  All rows from this index on are known
+     * not to.
+     */
+    public int findEndRowIntersecting(Rectangle bounds) {
+        if (! ensureRowIndex()) {
+            return getChildCount();
+        }
+        int limit = bounds.y + bounds.height;
+        int low = 0;
+        int high = _rowMinTops.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (_rowMinTops[mid] <= limit) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+    
+    private boolean ensureRowIndex() {
+        PaintingInfo info = getPaintingInfo();
+        if (info == null) {
+            return false;
+        }
+        if (info == _rowIndexPaintingInfo && _rowMaxBottoms.length == getChildCount()) {
+            return true;
+        }
+        
+        int count = getChildCount();
+        int[] maxBottoms = new int[count];
+        int[] minTops = new int[count];
+        
+        int max = Integer.MIN_VALUE;
+        for (int i = 0; i < count; i++) {
+            PaintingInfo rowInfo = getChild(i).getPaintingInfo();
+            if (rowInfo == null) {
+                max = Integer.MAX_VALUE;
+            } else {
+                Rectangle r = rowInfo.getAggregateBounds();
+                max = Math.max(max, r.y + r.height);
+            }
+            maxBottoms[i] = max;
+        }
+        
+        int min = Integer.MAX_VALUE;
+        for (int i = count - 1; i >= 0; i--) {
+            PaintingInfo rowInfo = getChild(i).getPaintingInfo();
+            if (rowInfo == null) {
+                min = Integer.MIN_VALUE;
+            } else {
+                min = Math.min(min, rowInfo.getAggregateBounds().y);
+            }
+            minTops[i] = min;
+        }
+        
+        _rowMaxBottoms = maxBottoms;
+        _rowMinTops = minTops;
+        _rowIndexPaintingInfo = info;
+        
+        return true;
+    }
+    
+    void invalidateRowIndex() {
+        _rowIndexPaintingInfo = null;
+        _rowMaxBottoms = null;
+        _rowMinTops = null;
+    }
+    
     public TableRowBox getLastRow() {
         if (getChildCount() > 0) {
             return (TableRowBox)getChild(getChildCount()-1);
@@ -0,0 +1,126 @@
+package org.xhtmlrenderer.protocols.data;
+
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Decodes base 64 text as it is read, directly from the characters of a
+ * <code>CharSequence</code> (e.g. the value of a <code>src</code> attribute),
+ * so neither the encoded text nor the decoded content has to be copied first.
+ * Characters which aren't part of the base 64 alphabet, like white space, are
+ * skipped and the first <code>=</code> ends the content.  Both the standard
+ * and the URL safe alphabet are accepted.
+ */
+public class Base64InputStream extends InputStream {
+
+    // character -> 6 bits, or -1
+    private static final byte[] DECODE = new byte[128];
+
+    static {
+        Arrays.fill(DECODE, (byte) -1);
+        String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+        for (int i = 0; i < alphabet.length(); i++) {
+            DECODE[alphabet.charAt(i)] = (byte) i;
+        }
+        DECODE['-'] = 62;
+        DECODE['_'] = 63;
+    }
+
+    private final CharSequence _chars;
+    private final int _end;
+    private int _pos;
+
+    // the 24 bits of the last decoded group of four characters
+    private int _bits;
+    // the number of bytes in _bits, and how many of them were read
+    private int _count;
+    private int _read;
+
+    public Base64InputStream(CharSequence chars) {
+        this(chars, 0, chars.length());
+    }
+
+    /**
+     * Creates a stream decoding the characters from <code>start</code>
+     * (inclusive) to <code>end</code> (exclusive).
+     */
+    public Base64InputStream(CharSequence chars, int start, int end) {
+        _chars = chars;
+        _pos = start;
+        _end = end;
+    }
+
+    /**
+     * Decodes the characters from <code>start</code> (inclusive) to
+     * <code>end</code> (exclusive).
+     */
+    public static byte[] decode(CharSequence chars, int start, int end) {
+        byte[] result = new byte[(end - start) / 4 * 3 + 2];
+        Base64InputStream in = new Base64InputStream(chars, start, end);
+        int length = 0;
+        int n;
+        while ((n = in.read(result, length, result.length - length)) > 0) {
+            length += n;
+        }
+        return length == result.length ? result : Arrays.copyOf(result, length);
+    }
+
+    public int read() {
+        if (_read == _count && ! decodeGroup()) {
+            return -1;
+        }
+        return (_bits >> (16 - 8 * _read++)) & 0xFF;
+    }
+
+    public int read(byte[] b, int off, int len) {
+        if (len == 0) {
+            return 0;
+        }
+        int start = off;
+        int end = off + len;
+        while (off < end) {
+            if (_read == _count && ! decodeGroup()) {
+                break;
+            }
+            b[off++] = (byte) (_bits >> (16 - 8 * _read++));
+        }
+        return off == start ? -1 : off - start;
+    }
+
+    public int available() {
+        return _count - _read;
+    }
+
+    public long skip(long n) {
+        long skipped = 0;
+        while (skipped < n && read() != -1) {
+            skipped++;
+        }
+        return skipped;
+    }
+
+    private boolean decodeGroup() {
+        int bits = 0;
+        int n = 0;
+        while (n < 4 && _pos < _end) {
+            char c = _chars.charAt(_pos++);
+            int value = c < 128 ? DECODE[c] : -1;
+            if (value >= 0) {
+                bits = bits << 6 | value;
+                n++;
+            } else if (c == '=') {
+                _pos = _end;
+            }
+        }
+        // a single character doesn't make a byte
+        if (n < 2) {
+            _pos = _end;
+            _count = _read = 0;
+            return false;
+        }
+        _bits = bits << 6 * (4 - n);
+        _count = n - 1;
+        _read = 0;
+        return true;
+    }
+}
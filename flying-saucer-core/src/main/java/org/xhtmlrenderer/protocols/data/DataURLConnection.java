@@ -79,7 +79,6 @@ public class DataURLConnection extends URLConnection {
         }
         
         String meta = sub.substring(0, comma);
-        String data = sub.substring(comma + 1);
 
         boolean isBase64 = false;
         Map properties = new HashMap();
@@ -123,9 +122,9 @@ public class DataURLConnection extends URLConnection {
         
         // Now we parse the data
         if (isBase64) {
-            _data = Base64.decode(data);
+            _data = Base64InputStream.decode(sub, comma + 1, sub.length());
         } else {
-            _data = URLByteDecoder.decode(data);
+            _data = URLByteDecoder.decode(sub.substring(comma + 1));
         }
     }
 }
@@ -168,53 +167,3 @@ class URLByteDecoder {
     }
     
 }
-
-class Base64 {
-    
-    private static String _map = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/=";
-    
-    public static byte [] decode(String s) {
-
-        if (s == null || s.length() < 4)
-            return new byte [] {};
-        
-        s = s.replaceAll("[^A-Za-z0-9\\+\\/\\=]+", "");
-        
-        if (s.length() < 4)
-            return new byte [] {};
-        
-        int padding = 0;
-
-        if (s.charAt(s.length() - 1) == '=')
-            padding++;
-        if (s.charAt(s.length() - 2) == '=')
-            padding++;
-
-        byte [] input = s.getBytes();
-        byte [] output = new byte [((s.length() / 4) * 3) - padding];
-        
-        int outputIndex = 0;
-
-        for (int i = 0; i < input.length; i += 4) {
-
-            int e =
-                _map.indexOf(input[i])     << 18 |
-                _map.indexOf(input[i + 1]) << 12 |
-                _map.indexOf(input[i + 2]) << 6  |
-                _map.indexOf(input[i + 3]);
-            
-            output[outputIndex++] = (byte) ((e >> 16) & 0xFF);
-            
-            if (input[i + 2] != '=') {
-                output[outputIndex++] = (byte) ((e >> 8)  & 0xFF);
-
-                if (input[i + 3] != '=') {
-                    output[outputIndex++] = (byte) (e & 0xFF);
-                }
-            }
-        }
-
-        return output;
-    }
-
-}
@@ -0,0 +1,106 @@
+package org.xhtmlrenderer.protocols.data;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.xhtmlrenderer.util.Configuration;
+
+/**
+ * A cache of the decoded content of <code>data:</code> URIs, shared by all
+ * user agents, so a data URI referenced many times (e.g. an icon embedded in
+ * every row of a table) is only decoded once.  The content is keyed by the
+ * URI itself: a <code>String</code> caches its hash code and
+ * <code>equals()</code> compares the references first, so looking up the
+ * same attribute value again is cheap.  User agents key what they create
+ * from the content (e.g. images) by the URI, too.
+ * <p>
+ * The least recently used content is dropped once the total size of the
+ * content and the URIs exceeds <code>xr.cache.data-uri.max-kb</code>.
+ */
+public class DataUriCache {
+    private static final String SCHEME = "data:";
+
+    private static final long MAX_SIZE =
+            Configuration.valueAsInt("xr.cache.data-uri.max-kb", 8192) * 1024L;
+
+    // URI -> byte[], least recently used first
+    private static final Map _cache = new LinkedHashMap(16, 0.75f, true);
+    private static long _size;
+
+    private DataUriCache() {
+    }
+
+    public static boolean isDataUri(String uri) {
+        return uri != null && uri.regionMatches(true, 0, SCHEME, 0, SCHEME.length());
+    }
+
+    /**
+     * Returns the decoded content of a data URI, either base 64 or percent
+     * encoded.  The array is shared and must not be modified.
+     *
+     * @return The content, or null if <code>uri</code> isn't a data URI
+     */
+    public static byte[] getData(String uri) {
+        if (! isDataUri(uri)) {
+            return null;
+        }
+        int comma = uri.indexOf(',');
+        if (comma < 0) {
+            return null;
+        }
+
+        synchronized (DataUriCache.class) {
+            byte[] data = (byte[]) _cache.get(uri);
+            if (data != null) {
+                return data;
+            }
+        }
+
+        byte[] data;
+        if (isBase64(uri, comma)) {
+            data = Base64InputStream.decode(uri, comma + 1, uri.length());
+        } else {
+            data = URLByteDecoder.decode(uri.substring(comma + 1));
+        }
+
+        synchronized (DataUriCache.class) {
+            if (sizeOf(uri, data) <= MAX_SIZE && ! _cache.containsKey(uri)) {
+                _cache.put(uri, data);
+                _size += sizeOf(uri, data);
+                for (Iterator i = _cache.entrySet().iterator(); _size > MAX_SIZE && i.hasNext(); ) {
+                    Map.Entry entry = (Map.Entry) i.next();
+                    _size -= sizeOf((String) entry.getKey(), (byte[]) entry.getValue());
+                    i.remove();
+                }
+            }
+        }
+        return data;
+    }
+
+    /**
+     * Returns a stream over the decoded content of a data URI, or null if
+     * <code>uri</code> isn't a data URI.
+     */
+    public static InputStream openStream(String uri) {
+        byte[] data = getData(uri);
+        return data == null ? null : new ByteArrayInputStream(data);
+    }
+
+    public static synchronized void clear() {
+        _cache.clear();
+        _size = 0;
+    }
+
+    private static long sizeOf(String uri, byte[] data) {
+        return uri.length() * 2L + data.length;
+    }
+
+    private static boolean isBase64(String uri, int comma) {
+        String suffix = ";base64";
+        int start = comma - suffix.length();
+        return start >= SCHEME.length() && uri.regionMatches(true, start, suffix, 0, suffix.length());
+    }
+}
@@ -51,6 +51,12 @@ public abstract class AbstractOutputDevice implements OutputDevice {
 
     private FontSpecification _fontSpec;
 
+    private final boolean _drawBackgrounds =
+        Configuration.isTrue("xr.renderer.draw.backgrounds", true);
+
+    private final boolean _tiledBackgrounds =
+        Configuration.isTrue("xr.renderer.draw.tiled-backgrounds", true);
+
     protected abstract void drawLine(int x1, int y1, int x2, int y2);
     
     public void drawText(RenderingContext c, InlineText inlineText) {
@@ -203,7 +209,7 @@ public abstract class AbstractOutputDevice implements OutputDevice {
             RenderingContext c, CalculatedStyle style,
             Rectangle backgroundBounds, Rectangle bgImageContainer,
             BorderPropertySet border) {
-        if (!Configuration.isTrue("xr.renderer.draw.backgrounds", true)) {
+        if (!_drawBackgrounds) {
             return;
         }
 
@@ -323,6 +329,10 @@ public abstract class AbstractOutputDevice implements OutputDevice {
         int width = image.getWidth();
         int height = image.getHeight();
 
+        if (fillTiled(image, left, top, new Rectangle(left, top, right - left, bottom - top))) {
+            return;
+        }
+
         for (int x = left; x < right; x+= width) {
             for (int y = top; y < bottom; y+= height) {
                 drawImage(image, x, y);
@@ -333,6 +343,10 @@ public abstract class AbstractOutputDevice implements OutputDevice {
     private void paintVerticalBand(FSImage image, int left, int top, int bottom) {
         int height = image.getHeight();
 
+        if (fillTiled(image, left, top, new Rectangle(left, top, image.getWidth(), bottom - top))) {
+            return;
+        }
+
         for (int y = top; y < bottom; y+= height) {
             drawImage(image, left, y);
         }
@@ -341,11 +355,34 @@ public abstract class AbstractOutputDevice implements OutputDevice {
     private void paintHorizontalBand(FSImage image, int left, int top, int right) {
         int width = image.getWidth();
 
+        if (fillTiled(image, left, top, new Rectangle(left, top, right - left, image.getHeight()))) {
+            return;
+        }
+
         for (int x = left; x < right; x+= width) {
             drawImage(image, x, top);
         }
     }
 
+    private boolean fillTiled(FSImage image, int x, int y, Rectangle bounds) {
+        return _tiledBackgrounds &&
+                (bounds.width > image.getWidth() || bounds.height > image.getHeight()) &&
+                fillWithTiles(image, x, y, bounds);
+    }
+
+    /**
+     * Fills <code>bounds</code> with copies of <code>image</code>, laid out
+     * edge to edge so that one of them is at <code>(x, y)</code>, as a single
+     * operation (e.g. a pattern fill).  Returns <code>false</code> if the
+     * device can't do that for this image, in which case each copy is drawn
+     * with {@link #drawImage(FSImage, int, int)}, e.g. if there are too few
+     * copies to make up for the cost of setting up the fill.  The default
+     * implementation always returns <code>false</code>.
+     */
+    protected boolean fillWithTiles(FSImage image, int x, int y, Rectangle bounds) {
+        return false;
+    }
+
     private int calcOffset(CssContext c, CalculatedStyle style, PropertyValue value, float boundsDim, float imageDim) {
         if (value.getPrimitiveType() == CSSPrimitiveValue.CSS_PERCENTAGE) {
             float percent = value.getFloatValue() / 100.0f;
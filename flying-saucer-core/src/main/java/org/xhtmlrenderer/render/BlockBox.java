@@ -888,6 +888,10 @@ public class BlockBox extends Box implements InlinePaintable {
         if (pushedLayer) {
             c.popLayer();
         }
+
+        if (c.getLayoutProgressListener() != null) {
+            c.getLayoutProgressListener().blockLaidOut(c, this);
+        }
     }
 
     protected boolean isAllowHeightToShrink() {
@@ -1095,6 +1099,12 @@ public class BlockBox extends Box implements InlinePaintable {
         return (! isRoot()) && getStyle().isMayCollapseMarginsWithChildren();
     }
 
+    // Overridden by table rows, row groups and cells, which never have
+    // margins and whose siblings are always boxes of the same kind
+    protected boolean isMayCollapseMarginsWithSiblings() {
+        return true;
+    }
+
     // This will require a rethink if we ever truly layout incrementally
     // Should only ever collapse top margin and pick up collapsable
     // bottom margins by looking back up the tree.
@@ -1133,7 +1143,7 @@ public class BlockBox extends Box implements InlinePaintable {
 
     private void setCollapsedBottomMargin(LayoutContext c, RectPropertySet margin, MarginCollapseResult collapsedMargin) {
         BlockBox next = null;
-        if (! isInline()) {
+        if (! isInline() && isMayCollapseMarginsWithSiblings()) {
             next = getNextCollapsableSibling(collapsedMargin);
         }
         if (! (next == null || next instanceof AnonymousBlockBox) &&
@@ -1494,17 +1504,13 @@ public class BlockBox extends Box implements InlinePaintable {
             int width = getCSSWidth(c, true);
 
             if (width == -1) {
+                // Replaced elements are resolved up front when measuring
+                // concurrently (see prepareConcurrentMinMaxWidth())
+                if (! isReplaced() && ! c.isConcurrentMeasure()) {
+                    createReplacedElementForMinMax(c);
+                }
                 if (isReplaced()) {
                     width = getReplacedElement().getIntrinsicWidth();
-                } else {
-                    int height = getCSSHeight(c);
-                    ReplacedElement re = c.getReplacedElementFactory().createReplacedElement(
-                            c, this, c.getUac(), width, height);
-                    if (re != null) {
-                        re = fitReplacedElement(c, re);
-                        setReplacedElement(re);
-                        width = getReplacedElement().getIntrinsicWidth();
-                    }
                 }
             }
 
@@ -1563,6 +1569,78 @@ public class BlockBox extends Box implements InlinePaintable {
         }
     }
 
+    private void createReplacedElementForMinMax(LayoutContext c) {
+        int height = getCSSHeight(c);
+        ReplacedElement re = c.getReplacedElementFactory().createReplacedElement(
+                c, this, c.getUac(), -1, height);
+        if (re != null) {
+            re = fitReplacedElement(c, re);
+            setReplacedElement(re);
+        }
+    }
+
+    /**
+     * Performs the parts of {@link #calcMinMaxWidth(LayoutContext)} which must
+     * run on the layout thread (box creation, replaced element creation and
+     * resolving the lazily computed values of styles, see
+     * {@link CalculatedStyle#prepareConcurrentUse(CssContext)}) for this box
+     * and its descendants.  Once this method has
+     * returned <code>true</code>, <code>calcMinMaxWidth()</code> may be called
+     * for this box on another thread using a context obtained from
+     * {@link LayoutContext#newConcurrentMeasureContext()}.  Returns
+     * <code>false</code> if the box contains content (e.g. replaced elements,
+     * nested tables or list markers) which must be measured on the layout
+     * thread.
+     */
+    public boolean prepareConcurrentMinMaxWidth(LayoutContext c) {
+        if (isMinMaxCalculated()) {
+            return true;
+        }
+
+        if (getStyle().isListItem()) {
+            return false;
+        }
+
+        getMargin(c);
+        getBorder(c);
+        getPadding(c);
+        getStyle().prepareConcurrentUse(c);
+
+        if (! isReplaced() && getCSSWidth(c, true) == -1) {
+            createReplacedElementForMinMax(c);
+        }
+        if (isReplaced()) {
+            return false;
+        }
+
+        ensureChildren(c);
+
+        if (getChildrenContentType() == CONTENT_BLOCK) {
+            for (Iterator i = getChildIterator(); i.hasNext(); ) {
+                BlockBox child = (BlockBox) i.next();
+                if (! child.prepareConcurrentMinMaxWidth(c)) {
+                    return false;
+                }
+            }
+        } else if (getChildrenContentType() == CONTENT_INLINE) {
+            for (Iterator i = _inlineContent.iterator(); i.hasNext(); ) {
+                Styleable child = (Styleable) i.next();
+                if (child.getStyle().isAbsolute() || child.getStyle().isFixed() || child.getStyle().isRunning()) {
+                    continue;
+                }
+                if (child instanceof BlockBox) {
+                    if (! ((BlockBox) child).prepareConcurrentMinMaxWidth(c)) {
+                        return false;
+                    }
+                } else {
+                    child.getStyle().prepareConcurrentUse(c);
+                }
+            }
+        }
+
+        return true;
+    }
+
     private ReplacedElement fitReplacedElement(LayoutContext c,
             ReplacedElement re)
     {
@@ -27,12 +27,15 @@ import java.awt.geom.AffineTransform;
 import java.awt.geom.Arc2D;
 import java.awt.geom.Area;
 import java.awt.geom.Path2D;
+import java.awt.geom.Rectangle2D;
 
 import org.xhtmlrenderer.css.constants.IdentValue;
+import org.xhtmlrenderer.css.parser.FSColor;
 import org.xhtmlrenderer.css.parser.FSRGBColor;
 import org.xhtmlrenderer.css.style.BorderRadiusCorner;
 import org.xhtmlrenderer.css.style.derived.BorderPropertySet;
 import org.xhtmlrenderer.extend.OutputDevice;
+import org.xhtmlrenderer.util.Configuration;
 
 
 public class BorderPainter {
@@ -41,6 +44,9 @@ public class BorderPainter {
     public static final int BOTTOM = 4;
     public static final int RIGHT = 8;
     public static final int ALL = TOP + LEFT + BOTTOM + RIGHT;
+
+    private static final boolean RECTILINEAR_BORDERS =
+            Configuration.isTrue("xr.renderer.draw.rectilinear-borders", true);
     
     /**
      * Generates a full round rectangle that is made of bounds and border
@@ -266,6 +272,11 @@ public class BorderPainter {
             sides -= BorderPainter.RIGHT;
         }
 
+        if (isRectilinear(border, sides, bevel)) {
+            paintRectilinear(ctx.getOutputDevice(), bounds, sides, border);
+            return;
+        }
+
         //Now paint!
         if ((sides & BorderPainter.TOP) == BorderPainter.TOP && border.topColor() != FSRGBColor.TRANSPARENT) {
             paintBorderSide(ctx.getOutputDevice(), 
@@ -285,6 +296,80 @@ public class BorderPainter {
         }
     }
 
+    /**
+     * Whether the sides of a border can be filled as plain rectangles instead
+     * of shapes with mitered corners.  That's the case when the border has no
+     * radius and all sides with a width are solid and of the same color, so
+     * the corners get that color however they are split.  Unless the border
+     * is a collapsed table border (<code>bevel</code> is false), whose other
+     * sides are painted separately, the sides must also all be painted now.
+     */
+    private static boolean isRectilinear(BorderPropertySet border, int sides, boolean bevel) {
+        if (! RECTILINEAR_BORDERS || border.hasBorderRadius()) {
+            return false;
+        }
+        return isRectilinearSide(border.top(), border.topStyle(), border.topColor(), border, sides, TOP, bevel) &&
+                isRectilinearSide(border.right(), border.rightStyle(), border.rightColor(), border, sides, RIGHT, bevel) &&
+                isRectilinearSide(border.bottom(), border.bottomStyle(), border.bottomColor(), border, sides, BOTTOM, bevel) &&
+                isRectilinearSide(border.left(), border.leftStyle(), border.leftColor(), border, sides, LEFT, bevel);
+    }
+
+    private static boolean isRectilinearSide(
+            float width, IdentValue style, FSColor color,
+            BorderPropertySet border, int sides, int side, boolean bevel) {
+        if (width == 0) {
+            return true;
+        }
+        return style == IdentValue.SOLID &&
+                (! bevel || (sides & side) == side) &&
+                color.equals(getColor(border, sides));
+    }
+
+    private static FSColor getColor(BorderPropertySet border, int sides) {
+        if ((sides & TOP) == TOP) {
+            return border.topColor();
+        } else if ((sides & BOTTOM) == BOTTOM) {
+            return border.bottomColor();
+        } else if ((sides & LEFT) == LEFT) {
+            return border.leftColor();
+        } else {
+            return border.rightColor();
+        }
+    }
+
+    /**
+     * Fills the sides of a border accepted by
+     * {@link #isRectilinear(BorderPropertySet, int, boolean)}.  The top and
+     * bottom sides include the corners.
+     */
+    private static void paintRectilinear(
+            OutputDevice outputDevice, Rectangle bounds, int sides, BorderPropertySet border) {
+        FSColor color = getColor(border, sides);
+        if (sides == 0 || color == FSRGBColor.TRANSPARENT) {
+            return;
+        }
+        outputDevice.setStroke(new BasicStroke(1f));
+        outputDevice.setColor(color);
+
+        float innerHeight = bounds.height - border.top() - border.bottom();
+        if ((sides & TOP) == TOP) {
+            outputDevice.fill(new Rectangle2D.Float(
+                    bounds.x, bounds.y, bounds.width, border.top()));
+        }
+        if ((sides & BOTTOM) == BOTTOM) {
+            outputDevice.fill(new Rectangle2D.Float(
+                    bounds.x, bounds.y + bounds.height - border.bottom(), bounds.width, border.bottom()));
+        }
+        if ((sides & LEFT) == LEFT && innerHeight > 0) {
+            outputDevice.fill(new Rectangle2D.Float(
+                    bounds.x, bounds.y + border.top(), border.left(), innerHeight));
+        }
+        if ((sides & RIGHT) == RIGHT && innerHeight > 0) {
+            outputDevice.fill(new Rectangle2D.Float(
+                    bounds.x + bounds.width - border.right(), bounds.y + border.top(), border.right(), innerHeight));
+        }
+    }
+
     private static void paintBorderSide(OutputDevice outputDevice, 
             final BorderPropertySet border, final Rectangle bounds, final int sides, 
             int currentSide, final IdentValue borderSideStyle, int xOffset, boolean bevel) {
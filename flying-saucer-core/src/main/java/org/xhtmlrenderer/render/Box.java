@@ -876,7 +876,18 @@ public abstract class Box implements Styleable {
         }
 
         if (style != null) {
+            // the hit test indexes only depend on the content area and the
+            // visibility, which hover styles usually leave alone
+            boolean visible = getStyle().isVisible();
+            Rectangle edge = getContentAreaEdge(getAbsX(), getAbsY(), c);
+
             setStyle(style);
+
+            Layer layer = getContainingLayer();
+            if (layer != null && (visible != style.isVisible() ||
+                    ! edge.equals(getContentAreaEdge(getAbsX(), getAbsY(), c)))) {
+                layer.invalidateHitTestIndex();
+            }
         }
 
         restyleChildren(c);
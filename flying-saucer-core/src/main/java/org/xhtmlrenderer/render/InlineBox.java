@@ -18,8 +18,6 @@
  */
 package org.xhtmlrenderer.render;
 
-import java.text.BreakIterator;
-
 import org.w3c.dom.Element;
 import org.w3c.dom.Text;
 import org.xhtmlrenderer.css.constants.IdentValue;
@@ -30,7 +28,7 @@ import org.xhtmlrenderer.layout.LayoutContext;
 import org.xhtmlrenderer.layout.Styleable;
 import org.xhtmlrenderer.layout.TextUtil;
 import org.xhtmlrenderer.layout.WhitespaceStripper;
-import org.xhtmlrenderer.layout.breaker.BreakPointsProvider;
+import org.xhtmlrenderer.layout.breaker.BreakPoints;
 import org.xhtmlrenderer.layout.breaker.Breaker;
 
 /**
@@ -230,10 +228,11 @@ public class InlineBox implements Styleable {
 
         String text = getText(trimLeadingSpace);
         
-        BreakPointsProvider breakIterator = Breaker.getBreakPointsProvider(text, c, getElement(), getStyle());
+        BreakPoints breakPoints = Breaker.getBreakPoints(text, c, getElement(), getStyle());
 
         // Breaker should be used
-        while ( (current = breakIterator.next().getPosition()) != BreakIterator.DONE) {
+        for (int b = 0; b < breakPoints.size(); b++) {
+            current = breakPoints.getPosition(b);
             String currentWord = text.substring(last, current);
             int wordWidth = getTextWidth(c, currentWord);
             int minWordWidth;
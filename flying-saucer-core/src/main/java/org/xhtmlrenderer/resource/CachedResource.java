@@ -0,0 +1,141 @@
+package org.xhtmlrenderer.resource;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URLConnection;
+import java.util.StringTokenizer;
+
+/**
+ * Describes a response stored in a {@link ResourceCache}: the validators
+ * sent with it (<code>ETag</code> and <code>Last-Modified</code>) and the
+ * time until which it can be used without asking the server again.
+ */
+public class CachedResource {
+    private final String _uri;
+    private final String _etag;
+    private final String _lastModified;
+    private final long _expires;
+    private final long _length;
+
+    /**
+     * @param uri The resolved URI of the resource
+     * @param etag The value of the <code>ETag</code> header or <code>null</code>
+     * @param lastModified The value of the <code>Last-Modified</code> header or
+     * <code>null</code>
+     * @param expires The time (in milliseconds since the epoch) until which
+     * the response is fresh
+     * @param length The length of the stored body or -1 if it isn't known yet
+     */
+    public CachedResource(String uri, String etag, String lastModified, long expires, long length) {
+        _uri = uri;
+        _etag = etag;
+        _lastModified = lastModified;
+        _expires = expires;
+        _length = length;
+    }
+
+    /**
+     * Describes the response to <code>connection</code>.  Returns
+     * <code>null</code> if the response must not be stored (e.g.
+     * <code>Cache-Control: no-store</code>) or could never be used again
+     * because it neither stays fresh nor can be revalidated.
+     */
+    public static CachedResource fromConnection(String uri, URLConnection connection, long now)
+            throws IOException {
+        if (connection instanceof HttpURLConnection &&
+                ((HttpURLConnection)connection).getResponseCode() != HttpURLConnection.HTTP_OK) {
+            return null;
+        }
+        String cacheControl = connection.getHeaderField("Cache-Control");
+        if (cacheControl != null && cacheControl.toLowerCase().indexOf("no-store") != -1) {
+            return null;
+        }
+        String etag = connection.getHeaderField("ETag");
+        String lastModified = connection.getHeaderField("Last-Modified");
+        long expires = getExpires(connection, now);
+        if (etag == null && lastModified == null && expires <= now) {
+            return null;
+        }
+        return new CachedResource(uri, etag, lastModified, expires, -1);
+    }
+
+    /**
+     * Returns the time until which the response to <code>connection</code>
+     * is fresh.  <code>Cache-Control: max-age</code> (less the
+     * <code>Age</code> of the response) takes precedence over
+     * <code>Expires</code>; <code>no-cache</code> and responses with
+     * neither header must always be revalidated.
+     */
+    public static long getExpires(URLConnection connection, long now) {
+        String cacheControl = connection.getHeaderField("Cache-Control");
+        if (cacheControl != null) {
+            StringTokenizer tokens = new StringTokenizer(cacheControl.toLowerCase(), ",");
+            long maxAge = -1;
+            while (tokens.hasMoreTokens()) {
+                String token = tokens.nextToken().trim();
+                if (token.equals("no-cache")) {
+                    return now;
+                } else if (token.startsWith("max-age=")) {
+                    maxAge = parseSeconds(token.substring("max-age=".length()));
+                }
+            }
+            if (maxAge != -1) {
+                long age = parseSeconds(connection.getHeaderField("Age"));
+                return now + Math.max(0, maxAge - Math.max(0, age)) * 1000;
+            }
+        }
+        long expiration = connection.getExpiration();
+        return expiration == 0 ? now : expiration;
+    }
+
+    private static long parseSeconds(String value) {
+        if (value == null) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    public String getUri() {
+        return _uri;
+    }
+
+    public String getETag() {
+        return _etag;
+    }
+
+    public String getLastModified() {
+        return _lastModified;
+    }
+
+    public long getExpires() {
+        return _expires;
+    }
+
+    public long getLength() {
+        return _length;
+    }
+
+    public boolean isFresh(long now) {
+        return now < _expires;
+    }
+
+    /**
+     * Returns true if the response can be revalidated with a conditional
+     * request.
+     */
+    public boolean hasValidators() {
+        return _etag != null || _lastModified != null;
+    }
+
+    public CachedResource withExpires(long expires) {
+        return new CachedResource(_uri, _etag, _lastModified, expires, _length);
+    }
+
+    public CachedResource withLength(long length) {
+        return new CachedResource(_uri, _etag, _lastModified, _expires, length);
+    }
+}
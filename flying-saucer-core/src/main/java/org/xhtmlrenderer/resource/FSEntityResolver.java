@@ -24,8 +24,13 @@ import org.xhtmlrenderer.util.GeneralUtil;
 import org.xhtmlrenderer.util.XRLog;
 import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.ext.DefaultHandler2;
 import org.xml.sax.ext.EntityResolver2;
+import org.xml.sax.helpers.XMLReaderFactory;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.StringReader;
@@ -48,6 +53,11 @@ import java.util.logging.Level;
  * http://www.cafeconleche.org/books/xmljava/chapters/ch07s02.html
  * </p>
  * <p>
+ * The content of the local copies is read once and shared by all parses.
+ * The entities of the HTML 5 entity set are also available, already parsed,
+ * through {@link #getHTMLEntity(String)}.
+ * </p>
+ * <p>
  * This class is a Singleton; use {@link #instance} to retrieve it.
  * </p>
  *
@@ -61,6 +71,12 @@ public class FSEntityResolver implements EntityResolver2 {
 
     private final Map entities = new HashMap();
 
+    // local URL -> byte[]
+    private static final Map contents = new HashMap();
+
+    // entity name -> replacement text
+    private static Map htmlEntities;
+
     // fill the list of URLs
     /**
      * Constructor for the FSEntityResolver object
@@ -99,15 +115,10 @@ public class FSEntityResolver implements EntityResolver2 {
             throws SAXException {
 
         InputSource local = null;
-        String url = (String) getEntities().get(publicID);
+        String url = (String) entities.get(publicID);
         if (url != null) {
             URL realUrl = GeneralUtil.getURLFromClasspath(this, url);
-            InputStream is = null;
-            try {
-                is = realUrl.openStream();
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
+            InputStream is = realUrl == null ? null : openLocalCopy(realUrl);
 
             if (is == null) {
                 XRLog.xmlEntities(Level.WARNING,
@@ -119,7 +130,9 @@ public class FSEntityResolver implements EntityResolver2 {
                         "this case.");
             }
             local = new InputSource(is);
-            local.setSystemId(realUrl.toExternalForm());
+            if (realUrl != null) {
+                local.setSystemId(realUrl.toExternalForm());
+            }
             XRLog.xmlEntities(Level.FINE, "Entity public: " + publicID + " -> " + url +
                     (local == null ? ", NOT FOUND" : " (local)"));
         } else if ("about:legacy-compat".equals(systemID)) {
@@ -152,7 +165,87 @@ public class FSEntityResolver implements EntityResolver2 {
             throw new IllegalStateException("Could not find " +
                     "/resources/schema/html5/entities.dtd on the classpath");
         }
-        return new InputSource(dtd.toExternalForm());
+        InputSource source = new InputSource(dtd.toExternalForm());
+        source.setByteStream(openLocalCopy(dtd));
+        return source;
+    }
+
+    /**
+     * Returns a stream over the content of a bundled DTD or entity file.
+     * The content is read the first time it is requested.
+     */
+    private static InputStream openLocalCopy(URL url) {
+        String key = url.toExternalForm();
+        byte[] content;
+        synchronized (contents) {
+            content = (byte[]) contents.get(key);
+        }
+        if (content == null) {
+            InputStream is = null;
+            try {
+                is = url.openStream();
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                byte[] buf = new byte[8192];
+                int i;
+                while ((i = is.read(buf)) != -1) {
+                    out.write(buf, 0, i);
+                }
+                content = out.toByteArray();
+            } catch (IOException e) {
+                XRLog.xmlEntities(Level.WARNING, "Can't read " + key + ": " + e.getMessage());
+                return null;
+            } finally {
+                if (is != null) {
+                    try {
+                        is.close();
+                    } catch (IOException e) {
+                        // ignore
+                    }
+                }
+            }
+            synchronized (contents) {
+                contents.put(key, content);
+            }
+        }
+        return new ByteArrayInputStream(content);
+    }
+
+    /**
+     * Returns the replacement text of a named character reference of the
+     * HTML 5 entity set (a superset of the HTML 4 and XHTML 1 sets), or
+     * <code>null</code> if <code>name</code> isn't part of it.  The entity
+     * set is parsed once, the first time this method is called.
+     */
+    public String getHTMLEntity(String name) {
+        return (String) getHTMLEntities().get(name);
+    }
+
+    private static synchronized Map getHTMLEntities() {
+        if (htmlEntities == null) {
+            final Map result = new HashMap();
+            try {
+                XMLReader xmlReader = XMLReaderFactory.createXMLReader();
+                xmlReader.setProperty("http://xml.org/sax/properties/declaration-handler", new DefaultHandler2() {
+                    public void internalEntityDecl(String name, String value) {
+                        if (! name.startsWith("%")) {
+                            result.put(name, value);
+                        }
+                    }
+                });
+                xmlReader.setEntityResolver(new DefaultHandler2() {
+                    public InputSource resolveEntity(String name, String publicId,
+                                                     String baseURI, String systemId) {
+                        return newHTML5DoctypeSource();
+                    }
+                });
+                xmlReader.parse(new InputSource(new StringReader(
+                        "<!DOCTYPE html SYSTEM \"about:legacy-compat\"><html/>")));
+            } catch (Exception e) {
+                XRLog.xmlEntities(Level.WARNING, "Can't parse the HTML 5 entity set: " + e.getMessage());
+            }
+            htmlEntities = result;
+        }
+        return htmlEntities;
     }
 
     private static InputSource newEmptySource() {
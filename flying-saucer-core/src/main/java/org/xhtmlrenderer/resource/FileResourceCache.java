@@ -0,0 +1,435 @@
+package org.xhtmlrenderer.resource;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.logging.Level;
+
+import org.xhtmlrenderer.util.XRLog;
+import org.xhtmlrenderer.util.XRRuntimeException;
+
+/**
+ * A {@link ResourceCache} which keeps each response in two files of a
+ * directory: the body and a properties file describing it.  Entries are
+ * read back when the cache is created, so the cache survives restarts.
+ * <p>
+ * The total size of the bodies is kept below a maximum by removing the
+ * least recently used entries; a body larger than the maximum is not
+ * stored at all.  The modification time of a body file records when it was
+ * last read, so the order of use survives restarts too.  Small bodies are
+ * read into memory at once, so no file stays open while an entry may be
+ * replaced or removed.
+ * <p>
+ * A directory must not be used by more than one instance at a time.
+ */
+public class FileResourceCache implements ResourceCache {
+    private static final String BODY_SUFFIX = ".body";
+    private static final String META_SUFFIX = ".meta";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    // bodies up to this size are read into memory by openStream()
+    private static final int MAX_BUFFERED_BODY = 256 * 1024;
+
+    private final File _directory;
+    private final long _maxSize;
+
+    // key -> CachedResource, least recently used first
+    private final Map _entries = new LinkedHashMap(16, 0.75f, true);
+    private long _size;
+
+    /**
+     * @param directory The directory holding the entries; it is created if
+     * necessary
+     * @param maxSize The maximum total size of the stored bodies in bytes
+     */
+    public FileResourceCache(File directory, long maxSize) {
+        _directory = directory;
+        _maxSize = maxSize;
+        if (! directory.isDirectory() && ! directory.mkdirs()) {
+            XRLog.load(Level.WARNING, "Can't create resource cache directory " + directory);
+        }
+        load();
+    }
+
+    public File getDirectory() {
+        return _directory;
+    }
+
+    public long getMaxSize() {
+        return _maxSize;
+    }
+
+    /**
+     * Returns the total size of the stored bodies.
+     */
+    public synchronized long getSize() {
+        return _size;
+    }
+
+    public synchronized CachedResource get(String uri) {
+        CachedResource resource = (CachedResource)_entries.get(toKey(uri));
+        return resource != null && resource.getUri().equals(uri) ? resource : null;
+    }
+
+    public InputStream openStream(CachedResource resource) throws IOException {
+        File body;
+        synchronized (this) {
+            String key = toKey(resource.getUri());
+            if (_entries.get(key) == null) {
+                throw new FileNotFoundException("No cached body for " + resource.getUri());
+            }
+            body = getBodyFile(key);
+            body.setLastModified(System.currentTimeMillis());
+        }
+        FileInputStream in = new FileInputStream(body);
+        long size = body.length();
+        if (size > MAX_BUFFERED_BODY) {
+            return in;
+        }
+        try {
+            byte[] data = new byte[(int)size];
+            int length = 0;
+            int count;
+            while (length < data.length && (count = in.read(data, length, data.length - length)) != -1) {
+                length += count;
+            }
+            return new ByteArrayInputStream(data, 0, length);
+        } finally {
+            in.close();
+        }
+    }
+
+    public InputStream put(CachedResource resource, InputStream body) throws IOException {
+        File temp;
+        try {
+            temp = File.createTempFile("put", TEMP_SUFFIX, _directory);
+        } catch (IOException e) {
+            XRLog.load(Level.WARNING, "Can't store " + resource.getUri() + " in resource cache: " + e.getMessage());
+            return body;
+        }
+        return new StoringInputStream(body, resource, temp);
+    }
+
+    public synchronized void update(CachedResource resource) {
+        String key = toKey(resource.getUri());
+        CachedResource old = (CachedResource)_entries.get(key);
+        if (old != null && old.getUri().equals(resource.getUri())) {
+            resource = resource.withLength(old.getLength());
+            if (writeMeta(key, resource)) {
+                _entries.put(key, resource);
+            } else {
+                removeEntry(key);
+            }
+        }
+    }
+
+    public synchronized void remove(String uri) {
+        removeEntry(toKey(uri));
+    }
+
+    private synchronized void commit(CachedResource resource, File temp) {
+        String key = toKey(resource.getUri());
+        removeEntry(key);
+        File body = getBodyFile(key);
+        if (! temp.renameTo(body) || ! writeMeta(key, resource)) {
+            XRLog.load(Level.WARNING, "Can't store " + resource.getUri() + " in resource cache");
+            temp.delete();
+            body.delete();
+            getMetaFile(key).delete();
+            return;
+        }
+        _entries.put(key, resource);
+        _size += resource.getLength();
+        evict();
+    }
+
+    private void removeEntry(String key) {
+        CachedResource resource = (CachedResource)_entries.remove(key);
+        if (resource != null) {
+            _size -= resource.getLength();
+        }
+        getMetaFile(key).delete();
+        getBodyFile(key).delete();
+    }
+
+    private void evict() {
+        Iterator i = _entries.entrySet().iterator();
+        while (_size > _maxSize && i.hasNext()) {
+            Map.Entry entry = (Map.Entry)i.next();
+            String key = (String)entry.getKey();
+            i.remove();
+            _size -= ((CachedResource)entry.getValue()).getLength();
+            getMetaFile(key).delete();
+            getBodyFile(key).delete();
+        }
+    }
+
+    private void load() {
+        File[] files = _directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        List entries = new ArrayList();
+        for (int i = 0; i < files.length; i++) {
+            File file = files[i];
+            String name = file.getName();
+            if (name.endsWith(META_SUFFIX)) {
+                String key = name.substring(0, name.length() - META_SUFFIX.length());
+                File body = getBodyFile(key);
+                CachedResource resource = readMeta(file);
+                if (resource == null || ! body.isFile() || ! key.equals(toKey(resource.getUri()))) {
+                    file.delete();
+                    body.delete();
+                } else {
+                    entries.add(new Object[] {
+                            key, resource.withLength(body.length()), new Long(body.lastModified()) });
+                }
+            } else if (name.endsWith(BODY_SUFFIX)) {
+                String key = name.substring(0, name.length() - BODY_SUFFIX.length());
+                if (! getMetaFile(key).isFile()) {
+                    file.delete();
+                }
+            } else if (name.endsWith(TEMP_SUFFIX)) {
+                // left over from an interrupted put()
+                file.delete();
+            }
+        }
+
+        Object[] sorted = entries.toArray();
+        Arrays.sort(sorted, new Comparator() {
+            public int compare(Object o1, Object o2) {
+                return ((Long)((Object[])o1)[2]).compareTo((Long)((Object[])o2)[2]);
+            }
+        });
+        synchronized (this) {
+            for (int i = 0; i < sorted.length; i++) {
+                Object[] entry = (Object[])sorted[i];
+                CachedResource resource = (CachedResource)entry[1];
+                _entries.put(entry[0], resource);
+                _size += resource.getLength();
+            }
+            evict();
+        }
+    }
+
+    private CachedResource readMeta(File file) {
+        Properties properties = new Properties();
+        InputStream in = null;
+        try {
+            in = new FileInputStream(file);
+            properties.load(in);
+            String uri = properties.getProperty("uri");
+            String expires = properties.getProperty("expires");
+            if (uri == null || expires == null) {
+                return null;
+            }
+            return new CachedResource(uri, properties.getProperty("etag"),
+                    properties.getProperty("last-modified"), Long.parseLong(expires), -1);
+        } catch (IOException e) {
+            return null;
+        } catch (NumberFormatException e) {
+            return null;
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    // ignore
+                }
+            }
+        }
+    }
+
+    private boolean writeMeta(String key, CachedResource resource) {
+        Properties properties = new Properties();
+        properties.setProperty("uri", resource.getUri());
+        properties.setProperty("expires", Long.toString(resource.getExpires()));
+        if (resource.getETag() != null) {
+            properties.setProperty("etag", resource.getETag());
+        }
+        if (resource.getLastModified() != null) {
+            properties.setProperty("last-modified", resource.getLastModified());
+        }
+        OutputStream out = null;
+        try {
+            out = new FileOutputStream(getMetaFile(key));
+            properties.store(out, null);
+            return true;
+        } catch (IOException e) {
+            return false;
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    // ignore
+                }
+            }
+        }
+    }
+
+    private File getBodyFile(String key) {
+        return new File(_directory, key + BODY_SUFFIX);
+    }
+
+    private File getMetaFile(String key) {
+        return new File(_directory, key + META_SUFFIX);
+    }
+
+    private static String toKey(String uri) {
+        byte[] digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1").digest(uri.getBytes("UTF-8"));
+        } catch (NoSuchAlgorithmException e) {
+            throw new XRRuntimeException("SHA-1 is not available", e);
+        } catch (UnsupportedEncodingException e) {
+            throw new XRRuntimeException("UTF-8 is not available", e);
+        }
+        StringBuffer result = new StringBuffer(digest.length * 2);
+        for (int i = 0; i < digest.length; i++) {
+            int b = digest[i] & 0xff;
+            if (b < 0x10) {
+                result.append('0');
+            }
+            result.append(Integer.toHexString(b));
+        }
+        return result.toString();
+    }
+
+    /**
+     * Copies what is read to a temporary file which becomes the body of the
+     * entry when the stream is closed after it has been read to the end.
+     * Copying stops (and nothing is stored) if the body grows beyond the
+     * size of the cache, or if the stream is closed early.
+     */
+    private class StoringInputStream extends FilterInputStream {
+        private final CachedResource _resource;
+        private final File _temp;
+        private OutputStream _out;
+        private long _length;
+        private boolean _eof;
+        private boolean _closed;
+
+        public StoringInputStream(InputStream in, CachedResource resource, File temp)
+                throws FileNotFoundException {
+            super(in);
+            _resource = resource;
+            _temp = temp;
+            _out = new BufferedOutputStream(new FileOutputStream(temp));
+        }
+
+        public int read() throws IOException {
+            int result = super.read();
+            if (result == -1) {
+                _eof = true;
+            } else if (_out != null) {
+                store(new byte[] { (byte)result }, 0, 1);
+            }
+            return result;
+        }
+
+        public int read(byte[] b, int off, int len) throws IOException {
+            int result = super.read(b, off, len);
+            if (result == -1) {
+                _eof = true;
+            } else if (result > 0 && _out != null) {
+                store(b, off, result);
+            }
+            return result;
+        }
+
+        public long skip(long n) throws IOException {
+            // skipped bytes are part of the body, too
+            byte[] buf = new byte[(int)Math.min(n, 8192)];
+            long skipped = 0;
+            while (skipped < n) {
+                int count = read(buf, 0, (int)Math.min(n - skipped, buf.length));
+                if (count == -1) {
+                    break;
+                }
+                skipped += count;
+            }
+            return skipped;
+        }
+
+        public boolean markSupported() {
+            return false;
+        }
+
+        public void mark(int readlimit) {
+        }
+
+        public void reset() throws IOException {
+            throw new IOException("mark/reset not supported");
+        }
+
+        private void store(byte[] b, int off, int len) {
+            if (_length + len > _maxSize) {
+                discard();
+                return;
+            }
+            try {
+                _out.write(b, off, len);
+                _length += len;
+            } catch (IOException e) {
+                XRLog.load(Level.WARNING, "Can't store " + _resource.getUri() + " in resource cache: " + e.getMessage());
+                discard();
+            }
+        }
+
+        private void discard() {
+            if (_out == null) {
+                return;
+            }
+            try {
+                _out.close();
+            } catch (IOException e) {
+                // ignore
+            }
+            _out = null;
+            _temp.delete();
+        }
+
+        public void close() throws IOException {
+            if (_closed) {
+                return;
+            }
+            _closed = true;
+            try {
+                super.close();
+            } finally {
+                if (! _eof) {
+                    // the rest of the body isn't downloaded just to store it
+                    discard();
+                }
+            }
+            if (_out != null) {
+                try {
+                    _out.close();
+                    _out = null;
+                    commit(_resource.withLength(_length), _temp);
+                } catch (IOException e) {
+                    discard();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package org.xhtmlrenderer.resource;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * A store for the bodies of HTTP responses which is kept between renders.
+ * <code>NaiveUserAgent</code> uses it to answer requests for fresh
+ * resources without going to the network and to revalidate stale ones with
+ * conditional requests.  Implementations must be thread safe.
+ *
+ * @see FileResourceCache
+ */
+public interface ResourceCache {
+    /**
+     * Returns the stored response for <code>uri</code> or <code>null</code>
+     * if there is none.
+     */
+    public CachedResource get(String uri);
+
+    /**
+     * Opens the body of a stored response.  Throws an
+     * <code>IOException</code> if the body is no longer available, e.g.
+     * because it was evicted after {@link #get(String)} returned.
+     */
+    public InputStream openStream(CachedResource resource) throws IOException;
+
+    /**
+     * Returns a stream which reads <code>body</code> and stores what it
+     * read as the body of <code>resource</code> when it is closed.  The
+     * remainder of <code>body</code> is read on close, so callers need not
+     * read it to the end.
+     */
+    public InputStream put(CachedResource resource, InputStream body) throws IOException;
+
+    /**
+     * Replaces the description of a stored response, e.g. with a new
+     * expiration time after the server answered a conditional request with
+     * <code>304 Not Modified</code>.  Does nothing if the response is no
+     * longer stored.
+     */
+    public void update(CachedResource resource);
+
+    public void remove(String uri);
+}
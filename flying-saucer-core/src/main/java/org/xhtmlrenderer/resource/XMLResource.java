@@ -22,6 +22,7 @@ package org.xhtmlrenderer.resource;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.Reader;
+import java.io.StringReader;
 import java.lang.ref.Reference;
 import java.lang.ref.SoftReference;
 import java.util.Queue;
@@ -39,6 +40,7 @@ import javax.xml.transform.dom.DOMResult;
 import javax.xml.transform.sax.SAXSource;
 
 import org.w3c.dom.Document;
+import org.xhtmlrenderer.dom.CompactDocumentBuilder;
 import org.xhtmlrenderer.util.Configuration;
 import org.xhtmlrenderer.util.XRLog;
 import org.xhtmlrenderer.util.XRRuntimeException;
@@ -163,7 +165,8 @@ public class XMLResource extends AbstractResource {
                     "The name of the class to use should have been read from the org.xml.sax.driver System " +
                     "property, which is set to: "/*CHECK: is this meaningful? + System.getProperty("org.xml.sax.driver")*/);
         }
-        XRLog.load("SAX XMLReader in use (parser): " + xmlReader.getClass().getName());
+        XRLog.log(XRLog.LOAD, Level.INFO, "SAX XMLReader in use (parser): {0}",
+                new Object[] { xmlReader.getClass().getName() });
         return xmlReader;
     }
 
@@ -171,6 +174,7 @@ public class XMLResource extends AbstractResource {
 
         private final XMLReaderPool parserPool = new XMLReaderPool();
         private final IdentityTransformerPool traxPool = new IdentityTransformerPool();
+        private final boolean compactDom = Configuration.isTrue("xr.load.compact-dom", false);
 
         XMLResource createXMLResource(XMLResource target) {
             Document document;
@@ -178,7 +182,11 @@ public class XMLResource extends AbstractResource {
             long st = System.currentTimeMillis();
             XMLReader xmlReader = parserPool.get();
             try {
-                document = transform(new SAXSource(xmlReader, target.getResourceInputSource()));
+                if (compactDom) {
+                    document = buildCompactDocument(xmlReader, target.getResourceInputSource());
+                } else {
+                    document = transform(new SAXSource(xmlReader, target.getResourceInputSource()));
+                }
             } finally {
                 parserPool.release(xmlReader);
             }
@@ -187,7 +195,8 @@ public class XMLResource extends AbstractResource {
 
             target.setElapsedLoadTime(end - st);
 
-            XRLog.load("Loaded document in ~" + target.getElapsedLoadTime() + "ms");
+            XRLog.log(XRLog.LOAD, Level.INFO, "Loaded document in ~{0,number,#}ms",
+                    new Object[] { new Long(target.getElapsedLoadTime()) });
 
             target.setDocument(document);
             return target;
@@ -207,7 +216,8 @@ public class XMLResource extends AbstractResource {
 
             target.setElapsedLoadTime(end - st);
 
-            XRLog.load("Loaded document in ~" + target.getElapsedLoadTime() + "ms");
+            XRLog.log(XRLog.LOAD, Level.INFO, "Loaded document in ~{0,number,#}ms",
+                    new Object[] { new Long(target.getElapsedLoadTime()) });
 
             target.setDocument(document);
             return target;
@@ -226,6 +236,14 @@ public class XMLResource extends AbstractResource {
             return (Document) result.getNode();
         }
 
+        private Document buildCompactDocument(XMLReader xmlReader, InputSource source) {
+            try {
+                return new CompactDocumentBuilder().parse(xmlReader, source);
+            } catch (Exception ex) {
+                throw new XRRuntimeException("Can't load the XML resource (using compact DOM builder). " + ex.getMessage(), ex);
+            }
+        }
+
     } // class XMLResourceBuilder
 
 
@@ -234,6 +252,9 @@ public class XMLResource extends AbstractResource {
         private final boolean preserveElementContentWhitespace = Configuration
                 .isFalse("xr.load.ignore-element-content-whitespace", true);
 
+        private final boolean fastHTMLEntities = Configuration
+                .isTrue("xr.load.fast-html-entities", false);
+
         XMLReaderPool() {
             this(Configuration.valueAsInt("xr.load.parser-pool-capacity", 3));
         }
@@ -248,6 +269,9 @@ public class XMLResource extends AbstractResource {
             if (preserveElementContentWhitespace) {
                 xmlReader = new WhitespacePreservingFilter(xmlReader);
             }
+            if (fastHTMLEntities) {
+                xmlReader = new HTMLEntityFilter(xmlReader);
+            }
             addHandlers(xmlReader);
             setParserFeatures(xmlReader);
             return xmlReader;
@@ -379,6 +403,91 @@ public class XMLResource extends AbstractResource {
     } // class SpacePreservingFilter
 
 
+    /**
+     * Keeps the parser from reading the XHTML 1.x DTDs and expands the named
+     * character references the parser skips as a consequence from the HTML
+     * entity set of {@link FSEntityResolver#getHTMLEntity(String)}.  Only
+     * documents declaring one of these DTDs are affected; other DTDs (e.g.
+     * HTML 4 or DocBook), documents without a DOCTYPE and entities declared
+     * in the internal subset are handled by the parser as usual.
+     * <p>
+     * The parser drops undeclared entities in attribute values without
+     * telling us, so only references in text are expanded.  The default
+     * attribute values the DTD declares (e.g. <code>xmlns</code> on
+     * <code>html</code>) are not added either.
+     */
+    static class HTMLEntityFilter
+            extends XMLFilterImpl implements EntityResolver2
+    {
+
+        HTMLEntityFilter(XMLReader parent) {
+            super(parent);
+        }
+
+        private static boolean isXHTMLDTD(String publicId) {
+            return publicId != null && publicId.startsWith("-//W3C//DTD XHTML ");
+        }
+
+        private static InputSource newEmptySource() {
+            return new InputSource(new StringReader(""));
+        }
+
+        @Override
+        public void skippedEntity(String name) throws SAXException
+        {
+            String value = FSEntityResolver.instance().getHTMLEntity(name);
+            if (value != null) {
+                getContentHandler().characters(value.toCharArray(), 0, value.length());
+            } else {
+                super.skippedEntity(name);
+            }
+        }
+
+        @Override
+        public InputSource getExternalSubset(String name, String baseURI)
+                throws SAXException, IOException
+        {
+            // no DOCTYPE, so no XHTML DTD
+            EntityResolver resolver = getEntityResolver();
+            if (resolver instanceof EntityResolver2) {
+                return ((EntityResolver2) resolver).getExternalSubset(name, baseURI);
+            }
+            return null;
+        }
+
+        @Override
+        public InputSource resolveEntity(String publicId, String systemId)
+                throws SAXException, IOException
+        {
+            // an empty DTD makes undeclared entities skipped entities rather
+            // than fatal errors
+            if (isXHTMLDTD(publicId)) {
+                return newEmptySource();
+            }
+            return super.resolveEntity(publicId, systemId);
+        }
+
+        @Override
+        public InputSource resolveEntity(String name,
+                                         String publicId,
+                                         String baseURI,
+                                         String systemId)
+                throws SAXException, IOException
+        {
+            if (isXHTMLDTD(publicId)) {
+                return newEmptySource();
+            }
+            EntityResolver resolver = getEntityResolver();
+            if (resolver instanceof EntityResolver2) {
+                return ((EntityResolver2) resolver)
+                        .resolveEntity(name, publicId, baseURI, systemId);
+            }
+            return super.resolveEntity(publicId, systemId);
+        }
+
+    } // class HTMLEntityFilter
+
+
     private static class IdentityTransformerPool extends ObjectPool<Transformer> {
 
         private final TransformerFactory traxFactory;
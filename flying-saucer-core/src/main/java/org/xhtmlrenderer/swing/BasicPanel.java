@@ -28,6 +28,7 @@ import java.awt.LayoutManager;
 import java.awt.Point;
 import java.awt.Rectangle;
 import java.awt.Shape;
+import java.awt.geom.AffineTransform;
 import java.awt.print.PrinterGraphics;
 import java.io.BufferedReader;
 import java.io.InputStream;
@@ -43,6 +44,7 @@ import javax.swing.JScrollPane;
 import org.w3c.dom.Document;
 import org.xhtmlrenderer.css.style.CalculatedStyle;
 import org.xhtmlrenderer.css.style.derived.RectPropertySet;
+import org.xhtmlrenderer.event.RenderMetricsListener;
 import org.xhtmlrenderer.extend.NamespaceHandler;
 import org.xhtmlrenderer.extend.UserAgentCallback;
 import org.xhtmlrenderer.layout.Layer;
@@ -121,14 +123,54 @@ public abstract class BasicPanel extends RootPanel implements FormSubmissionList
             //queue.dispatchLayoutEvent(new ReflowEvent(ReflowEvent.CANVAS_RESIZED, this.getSize()));
             XRLog.render(Level.FINE, "skipping the actual painting");
         } else {
-            RenderingContext c = newRenderingContext((Graphics2D) g.create());
-            long start = System.currentTimeMillis();
-            doRender(c, root);
+            lockPartialLayout();
+            long start;
+            try {
+                start = System.currentTimeMillis();
+                TileCache tileCache = getTileCache();
+                if (tileCache != null && isTileCacheUsable((Graphics2D) g, root)) {
+                    paintTiles(tileCache, (Graphics2D) g, root);
+                } else {
+                    RenderingContext c = newRenderingContext((Graphics2D) g.create());
+                    doRender(c, root);
+                }
+            } finally {
+                unlockPartialLayout();
+            }
             long end = System.currentTimeMillis();
             XRLog.render(Level.FINE, "RENDERING TOOK " + (end - start) + " ms");
+            updateImageLoadViewport();
         }
     }
 
+    /**
+     * Returns true if the document can be painted from the tile cache
+     * (see {@link #setTileCacheEnabled(boolean)}).  Fixed content moves
+     * with the viewport, so it can't be cached.
+     */
+    protected boolean isTileCacheUsable(Graphics2D g, Layer root) {
+        int transformType = g.getTransform().getType() &
+                ~(AffineTransform.TYPE_TRANSLATION | AffineTransform.TYPE_UNIFORM_SCALE);
+        return transformType == 0 && !(g instanceof PrinterGraphics) && !getSharedContext().isPrint() &&
+                !isShowingPartialLayout() && !root.containsFixedContent();
+    }
+
+    private void paintTiles(TileCache tileCache, final Graphics2D g, final Layer root) {
+        Rectangle clip = g.getClipBounds();
+        if (clip == null) {
+            clip = new Rectangle(0, 0, getWidth(), getHeight());
+        }
+        tileCache.paint(g, clip, getSize(), new TileCache.TileRenderer() {
+            public void renderTile(Graphics2D tileGraphics, Rectangle bounds) {
+                tileGraphics.setRenderingHints(g.getRenderingHints());
+                // tiles may reach beyond the panel
+                tileGraphics.setColor(getBackground());
+                tileGraphics.fillRect(bounds.x, bounds.y, bounds.width, bounds.height);
+                doRender(newRenderingContext(tileGraphics), root);
+            }
+        });
+    }
+
     protected void doRender(RenderingContext c, Layer root) {
         try {
             // paint the normal swing background first
@@ -143,20 +185,25 @@ public abstract class BasicPanel extends RootPanel implements FormSubmissionList
                 g.translate(insets.left, insets.top);
             }
 
-            long start = System.currentTimeMillis();
+            long start = System.nanoTime();
             if (!c.isPrint()) {
                 root.paint(c);
             } else {
                 paintPagedView(c, root);
             }
-            long after = System.currentTimeMillis();
+            long after = System.nanoTime();
+            getSharedContext().getMetricsListener().phaseCompleted(
+                    RenderMetricsListener.PHASE_PAINT, after - start);
             if (Configuration.isTrue("xr.incremental.repaint.print-timing", false)) {
-                Uu.p("repaint took ms: " + (after - start));
+                Uu.p("repaint took ms: " + (after - start) / 1000000);
             }
         } catch (ThreadDeath t) {
             throw t;
         } catch (Throwable t) {
-            if (hasDocumentListeners()) {
+            if (isShowingPartialLayout()) {
+                // the rest of the document is still being laid out
+                XRLog.render(Level.FINE, "Couldn't paint partial layout: " + t.getMessage());
+            } else if (hasDocumentListeners()) {
                 fireOnRenderException(t);
             } else {
                 if (t instanceof Error) {
@@ -451,7 +498,10 @@ public abstract class BasicPanel extends RootPanel implements FormSubmissionList
     }
 
     protected Document loadDocument(final String uri) {
+        long start = System.nanoTime();
         XMLResource xmlResource = sharedContext.getUac().getXMLResource(uri);
+        sharedContext.getMetricsListener().phaseCompleted(
+                RenderMetricsListener.PHASE_PARSE, System.nanoTime() - start);
         return xmlResource.getDocument();
     }
     
@@ -42,8 +42,8 @@ import java.io.IOException;
 import java.util.Map;
 
 /**
- * <p>Renders an XML files, formatted with CSS, as an Box. Input is a document in the form of file or URL,
- * and output is the root of the Box model. A BoxRenderer is not intended to be re-used for multiple document
+ * <p>Renders an XML files, formatted with CSS, as an Box. Input is a document in the form of file, URL or
+ * an already loaded DOM, and output is the root of the Box model. A BoxRenderer is not intended to be re-used for multiple document
  * sources; just create new BoxRenderers for each one you need. BoxRenderer is not thread-safe.
  * Standard usage pattern is</p>
  *
@@ -81,8 +81,9 @@ public class BoxRenderer {
 
 
     /**
-	 * Whether we've completed rendering; image will only be rendered once.
+	 * Whether we've completed layout and rendering; each will only be done once.
 	 */
+	private boolean laidOut;
 	private boolean rendered;
 	private String sourceDocument;
 	private String sourceDocumentBase;
@@ -192,6 +193,22 @@ public class BoxRenderer {
 		this(url, url, width, height);
 	}
 
+	/**
+	 * Renderer for an already loaded document and a specified width; height is calculated automatically.
+	 *
+	 * @param doc The document to be rendered.
+	 * @param baseUrl The base url for the document, against which  relative paths are resolved.
+	 * @param width Target width, in pixels, for the image; required to provide horizontal bounds for the layout.
+	 */
+	public BoxRenderer(Document doc, String baseUrl, int width) {
+		this(DEFAULT_DOTS_PER_POINT, DEFAULT_DOTS_PER_PIXEL);
+
+		this.doc = doc;
+		this.sourceDocumentBase = baseUrl;
+		this.width = width;
+		this.height = NO_HEIGHT;
+	}
+
 	/**
 	 * Sets the rendering hints to apply to the Graphics2D instance used by the renderer; see
 	 * {@link java.awt.Graphics2D#setRenderingHints(java.util.Map)}. The Map need not specify values for all
@@ -232,35 +249,63 @@ public class BoxRenderer {
 	 */
 	public Box render() {
 		if (!rendered) {
-			setDocument(loadDocument(sourceDocument), sourceDocumentBase, new XhtmlNamespaceHandler());
+			paint();
+			rendered = true;
+		}
+
+		return root;
+	}
+
+	/**
+	 * Loads and lays out the XML document if necessary and returns the root Box, without painting it. If already
+	 * laid out, same Box reference will be returned.
+	 *
+	 * @return The XML laid out as a Box.
+	 */
+	public Box layout() {
+		if (!laidOut) {
+			Document document = sourceDocument == null ? doc : loadDocument(sourceDocument);
+			setDocument(document, sourceDocumentBase, new XhtmlNamespaceHandler());
 
 			layout(this.width);
 
 			height = this.height == -1 ? root.getHeight() : this.height;
-			BufferedImage outputImage = createBufferedImage(this.width, height);
-			outputDevice = new Java2DOutputDevice(outputImage);
-			Graphics2D newG = (Graphics2D) outputImage.getGraphics();
-            try {
-                if ( renderingHints != null ) {
-                    newG.getRenderingHints().putAll(renderingHints);
-                }
-
-                RenderingContext rc = sharedContext.newRenderingContextInstance();
-                rc.setFontContext(new Java2DFontContext(newG));
-                rc.setOutputDevice(outputDevice);
-                sharedContext.getTextRenderer().setup(rc.getFontContext());
-
-                root.getLayer().paint(rc);
-            } finally {
-                if (newG != null) newG.dispose();
-            }
-
-			rendered = true;
+			laidOut = true;
 		}
 
 		return root;
 	}
 
+	/**
+	 * Paints the document onto a new image, laying it out first if necessary. Each call paints the same root Box
+	 * again; the document is not reloaded.
+	 *
+	 * @return The XML rendered as a BufferedImage.
+	 */
+	public BufferedImage paint() {
+		layout();
+
+		BufferedImage outputImage = createBufferedImage(this.width, height);
+		outputDevice = new Java2DOutputDevice(outputImage);
+		Graphics2D newG = (Graphics2D) outputImage.getGraphics();
+        try {
+            if ( renderingHints != null ) {
+                newG.getRenderingHints().putAll(renderingHints);
+            }
+
+            RenderingContext rc = sharedContext.newRenderingContextInstance();
+            rc.setFontContext(new Java2DFontContext(newG));
+            rc.setOutputDevice(outputDevice);
+            sharedContext.getTextRenderer().setup(rc.getFontContext());
+
+            root.getLayer().paint(rc);
+        } finally {
+            if (newG != null) newG.dispose();
+        }
+
+		return outputImage;
+	}
+
 	/**
 	 * Returns a BufferedImage using the specified width and height. By default this returns an image compatible
 	 * with the screen (if not in "headless" mode) formatted for RGB.
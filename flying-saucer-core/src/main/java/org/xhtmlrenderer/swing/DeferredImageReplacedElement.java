@@ -106,6 +106,15 @@ public class DeferredImageReplacedElement extends ImageReplacedElement {
     /** {@inheritDoc} */
     public void setLocation(int x, int y) {
         _location = new Point(x, y);
+        if (!_loaded && _imageResource.getImage() instanceof MutableFSImage) {
+            // lets the image be loaded before others further from the viewport
+            ((MutableFSImage) _imageResource.getImage()).addBounds(
+                    new Rectangle(x, y, getIntrinsicWidth(), getIntrinsicHeight()));
+        }
+    }
+
+    ImageResource getImageResource() {
+        return _imageResource;
     }
 
     /**
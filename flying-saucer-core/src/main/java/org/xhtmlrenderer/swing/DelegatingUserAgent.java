@@ -21,6 +21,7 @@ package org.xhtmlrenderer.swing;
 
 import org.xhtmlrenderer.event.DocumentListener;
 import org.xhtmlrenderer.extend.UserAgentCallback;
+import org.xhtmlrenderer.protocols.data.DataUriCache;
 import org.xhtmlrenderer.resource.CSSResource;
 import org.xhtmlrenderer.resource.ImageResource;
 import org.xhtmlrenderer.resource.XMLResource;
@@ -138,6 +139,10 @@ public class DelegatingUserAgent implements UserAgentCallback, DocumentListener
     }
 
     public byte[] getBinaryResource(String uri) {
+        if (DataUriCache.isDataUri(uri)) {
+            byte[] data = DataUriCache.getData(uri);
+            return data == null ? null : (byte[]) data.clone();
+        }
         String ruri = _uriResolver.resolve(uri);
         StreamResource sr = new StreamResource(ruri);
         try {
@@ -56,8 +56,6 @@ public class HoverListener extends DefaultFSMouseListener {
             return;
         }
 
-        boolean needRepaint = false;
-
         Element currentlyHovered = getHoveredElement(c.getCss(), box);
 
         if (currentlyHovered == panel.hovered_element) {
@@ -66,56 +64,41 @@ public class HoverListener extends DefaultFSMouseListener {
 
         panel.hovered_element = currentlyHovered;
 
-        boolean targetedRepaint = true;
         Rectangle repaintRegion = null;
 
         // If we moved out of the old block then unstyle it
         if (_previouslyHovered != null) {
-            needRepaint = true;
             _previouslyHovered.restyle(c);
-
-            PaintingInfo paintInfo = _previouslyHovered.getPaintingInfo();
-
-            if (paintInfo == null) {
-                targetedRepaint = false;
-            } else {
-                repaintRegion = new Rectangle(paintInfo.getAggregateBounds());
-            }
-
+            repaintRegion = addPaintingBounds(c, _previouslyHovered, repaintRegion);
             _previouslyHovered = null;
         }
 
         if (currentlyHovered != null) {
-            needRepaint = true;
             Box target = box.getRestyleTarget();
             target.restyle(c);
-
-            if (targetedRepaint) {
-                PaintingInfo paintInfo = target.getPaintingInfo();
-
-                if (paintInfo == null) {
-                    targetedRepaint = false;
-                } else {
-                    if (repaintRegion == null) {
-                        repaintRegion = new Rectangle(paintInfo.getAggregateBounds());
-                    } else {
-                        repaintRegion.add(paintInfo.getAggregateBounds());
-                    }
-                }
-            }
-
+            repaintRegion = addPaintingBounds(c, target, repaintRegion);
             _previouslyHovered = target;
         }
 
-        if (needRepaint) {
-            if (targetedRepaint) {
-                panel.repaint(repaintRegion);
-            } else {
-                panel.repaint();
-            }
+        if (repaintRegion != null) {
+            // coalesced with other hover changes until the next frame
+            panel.repaintDocumentRegion(repaintRegion);
         }
     }
-    
+
+    private Rectangle addPaintingBounds(LayoutContext c, Box box, Rectangle region) {
+        // Boxes which don't keep painting info (e.g. inline content) can
+        // still compute their bounds, so there is no need to repaint the
+        // whole panel
+        PaintingInfo paintInfo = box.calcPaintingInfo(c, true);
+        if (region == null) {
+            return new Rectangle(paintInfo.getAggregateBounds());
+        } else {
+            region.add(paintInfo.getAggregateBounds());
+            return region;
+        }
+    }
+
     // look up the Element that corresponds to the Box we are hovering over
     private Element getHoveredElement(StyleReference style, Box ib) {
         if (ib == null) {
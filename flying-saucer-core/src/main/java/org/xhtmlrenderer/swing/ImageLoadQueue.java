@@ -19,45 +19,72 @@
  */
 package org.xhtmlrenderer.swing;
 
+import org.xhtmlrenderer.util.Configuration;
 import org.xhtmlrenderer.util.XRLog;
 
+import java.awt.Rectangle;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
 import java.util.logging.Level;
 
+import javax.swing.Timer;
 
 
 /**
  * A thread-safe queue containing BackgroundImageLoaderItem, each of which represents one image (identified by a URI)
  * which needs to be loaded.
+ * <p>
+ * Items are handed out nearest to the viewport (see {@link #setViewport(Rectangle)}) first, using the document
+ * bounds recorded by {@link MutableFSImage#addBounds(Rectangle)}. Items whose bounds are not known yet come last,
+ * in the order they were queued. Items further than <code>xr.image.background.max-distance</code> pixels from the
+ * viewport are held back until the viewport comes closer. Loaded images are handed to their
+ * {@link MutableFSImage}s in batches, with one repaint request per listener and batch.
  */
 class ImageLoadQueue {
     // marker queue item which, if read, means the reading threads should simply stop their polling
     // introduced by kill()
     private static final ImageLoadItem KILL_SWITCH = new ImageLoadItem(null, null, null, -1, -1);
 
+    // loaded images are published at most this often
+    private static final int PUBLISH_INTERVAL_MS = 50;
+
     // list of items to be loaded
     private final java.util.LinkedList _loadQueue;
 
+    private final int _maxDistance;
+
+    private Rectangle _viewport;
+
+    private boolean _killed;
+
+    // items loaded but not yet published, and the images loaded for them
+    private List _loaded = new ArrayList();
+    private List _loadedImages = new ArrayList();
+    private List _loadedScaled = new ArrayList();
+
+    private final Timer _publishTimer;
+
     /**
      * Intantiates a new queue.
      */
     public ImageLoadQueue() {
         this._loadQueue = new LinkedList();
+        this._maxDistance = Configuration.valueAsInt("xr.image.background.max-distance", 4000);
+        this._publishTimer = new Timer(PUBLISH_INTERVAL_MS, new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                publishLoaded();
+            }
+        });
+        this._publishTimer.setRepeats(false);
     }
 
-    /**
-     * Queues a new item to be loaded. Thread-safe.
-     *
-     * @param uri URI of the item to be loaded. As there is no good way of reporting failures, you should ensure
-     *            the URI is a proper URL before calling this method.
-     * @param re  container for the image to be loaded; will be updated via
-     *            {@link MutableFSImage#setImage(String,java.awt.Image,boolean)} once image is loaded
-    public synchronized void addToQueue(String uri, MutableFSImage re) {
-        this.addToQueue(uri, re, -1, -1);
-    }
-     */
-
-
     /**
      * Queues a new item to be loaded. Thread-safe.
      *
@@ -72,34 +99,116 @@ class ImageLoadQueue {
     }
 
     /**
-     * Returns the next available task from the queue, or blocks if there are no more; items are returned in FIFO order.
+     * Returns the next available task from the queue, or blocks if there are no more; items nearest to the
+     * viewport are returned first.
      * If none are available, the method will block until the next items is pushed into the queue.
      *
      * @return an ImageLoadItem
      * @throws InterruptedException if the wait (block) was interrupted externally
      */
     public synchronized ImageLoadItem getTask() throws InterruptedException {
-        while (_loadQueue.isEmpty()) {
+        while (true) {
+            if (_killed) {
+                XRLog.general(Level.FINE, "Thread " + Thread.currentThread().getName() +
+                        " requested item, but queue is shutting down; returning kill switch.");
+                return KILL_SWITCH;
+            }
+            ImageLoadItem item = removeNearest();
+            if (item != null) {
+                XRLog.general(Level.FINE, "Thread " + Thread.currentThread().getName() +
+                        " pulled item " + item._uri + " from queue, " + _loadQueue.size() + " remaining");
+                return item;
+            }
             wait();
         }
-        if (_loadQueue.getLast() == KILL_SWITCH) {
-            XRLog.general(Level.FINE, "Thread " + Thread.currentThread().getName() +
-                    " requested item, but queue is shutting down; returning kill switch.");
-            return KILL_SWITCH;
-        } else {
-            ImageLoadItem item = (ImageLoadItem) _loadQueue.removeLast();
-
-            XRLog.general(Level.FINE, "Thread " + Thread.currentThread().getName() +
-                    " pulled item " + item._uri + " from queue, " + (_loadQueue.size() - 1) + " remaining");
-            return item;
+    }
+
+    private ImageLoadItem removeNearest() {
+        int nearest = -1;
+        long nearestDistance = Long.MAX_VALUE;
+        int index = 0;
+        for (Iterator i = _loadQueue.iterator(); i.hasNext(); index++) {
+            ImageLoadItem item = (ImageLoadItem) i.next();
+            Rectangle bounds = item._mfsImage.getBounds();
+            long distance;
+            if (bounds == null) {
+                // after everything we know the position of
+                distance = Long.MAX_VALUE - 1;
+            } else {
+                distance = getDistance(bounds);
+                if (_viewport != null && _maxDistance > 0 && distance > _maxDistance) {
+                    continue;
+                }
+            }
+            if (distance < nearestDistance) {
+                nearest = index;
+                nearestDistance = distance;
+                if (distance == 0) {
+                    break;
+                }
+            }
+        }
+        return nearest == -1 ? null : (ImageLoadItem) _loadQueue.remove(nearest);
+    }
+
+    private long getDistance(Rectangle bounds) {
+        Rectangle viewport = _viewport == null ? new Rectangle() : _viewport;
+        long dx = Math.max(0L, Math.max((long) bounds.x - (viewport.x + viewport.width),
+                (long) viewport.x - (bounds.x + bounds.width)));
+        long dy = Math.max(0L, Math.max((long) bounds.y - (viewport.y + viewport.height),
+                (long) viewport.y - (bounds.y + bounds.height)));
+        return dx + dy;
+    }
+
+    /**
+     * Sets the visible part of the document, in document coordinates.
+     */
+    public synchronized void setViewport(Rectangle viewport) {
+        if (! viewport.equals(_viewport)) {
+            _viewport = new Rectangle(viewport);
+            notifyAll();
+        }
+    }
+
+    /**
+     * Forgets the recorded positions of the images still waiting to be loaded, see
+     * {@link MutableFSImage#resetBounds()}.
+     */
+    public synchronized void resetBounds() {
+        for (Iterator i = _loadQueue.iterator(); i.hasNext(); ) {
+            ((ImageLoadItem) i.next())._mfsImage.resetBounds();
+        }
+    }
+
+    /**
+     * Removes the pending item for an image, if any.
+     *
+     * @return true if an item was removed, false if the image is loading or has been loaded already
+     */
+    public synchronized boolean cancel(MutableFSImage mfsi) {
+        boolean result = false;
+        for (Iterator i = _loadQueue.iterator(); i.hasNext(); ) {
+            ImageLoadItem item = (ImageLoadItem) i.next();
+            if (item._mfsImage == mfsi) {
+                i.remove();
+                result = true;
+            }
         }
+        return result;
     }
 
     /**
      * Removes all items currently in the queue.
+     *
+     * @return the images of the items removed
      */
-    public synchronized void reset() {
+    public synchronized List reset() {
+        List result = new ArrayList(_loadQueue.size());
+        for (Iterator i = _loadQueue.iterator(); i.hasNext(); ) {
+            result.add(((ImageLoadItem) i.next())._mfsImage);
+        }
         _loadQueue.clear();
+        return result;
     }
 
     /**
@@ -107,10 +216,55 @@ class ImageLoadQueue {
      * and that worker threads polling this queue should shut down.
      */
     public synchronized void kill() {
-        _loadQueue.addLast(KILL_SWITCH);
+        _killed = true;
         notifyAll();
     }
 
+    /**
+     * Hands a loaded image to the item's {@link MutableFSImage} on the event dispatch thread, together with the
+     * other images loaded at about the same time.
+     */
+    public synchronized void loaded(ImageLoadItem item, BufferedImage image, boolean wasScaled) {
+        _loaded.add(item);
+        _loadedImages.add(image);
+        _loadedScaled.add(Boolean.valueOf(wasScaled));
+        if (! _publishTimer.isRunning()) {
+            _publishTimer.start();
+        }
+    }
+
+    // runs on the EDT
+    private void publishLoaded() {
+        List loaded;
+        List images;
+        List scaled;
+        synchronized (this) {
+            loaded = _loaded;
+            images = _loadedImages;
+            scaled = _loadedScaled;
+            _loaded = new ArrayList();
+            _loadedImages = new ArrayList();
+            _loadedScaled = new ArrayList();
+        }
+
+        // RepaintListener -> Boolean, whether a relayout is needed
+        Map listeners = new IdentityHashMap();
+        for (int i = 0; i < loaded.size(); i++) {
+            ImageLoadItem item = (ImageLoadItem) loaded.get(i);
+            boolean wasScaled = ((Boolean) scaled.get(i)).booleanValue();
+            item._mfsImage.setLoadedImage(item._uri, (BufferedImage) images.get(i));
+            RepaintListener listener = item._mfsImage.getRepaintListener();
+            if (wasScaled || ! listeners.containsKey(listener)) {
+                listeners.put(listener, Boolean.valueOf(wasScaled));
+            }
+        }
+        XRLog.general(Level.FINE, "Published " + loaded.size() + " loaded images, repaint requested");
+        for (Iterator i = listeners.entrySet().iterator(); i.hasNext(); ) {
+            Map.Entry entry = (Map.Entry) i.next();
+            ((RepaintListener) entry.getKey()).repaintRequested(((Boolean) entry.getValue()).booleanValue());
+        }
+    }
+
     /**
      * Returns true if the item, retrieved from the queue via {@link #getTask()}, is a kill switch, meaning the worker
      * that retrieved it should stop polling.
@@ -123,7 +277,7 @@ class ImageLoadQueue {
         return queueItem == KILL_SWITCH;
     }
 
-    public int size() {
+    public synchronized int size() {
         return _loadQueue.size();
     }
 }
@@ -24,7 +24,6 @@ import org.xhtmlrenderer.resource.ImageResource;
 import org.xhtmlrenderer.util.ImageUtil;
 import org.xhtmlrenderer.util.XRLog;
 
-import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.util.logging.Level;
 
@@ -72,13 +71,8 @@ class ImageLoadWorker extends Thread {
                     wasScaled = false;
                 }
 
-                // msfImage belongs to the Swing AWT thread
-                final BufferedImage newImg1 = newImg;
-                EventQueue.invokeLater(new Runnable() {
-                    public void run() {
-                        loadItem._mfsImage.setImage(loadItem._uri, newImg1, wasScaled);
-                    }
-                });
+                // msfImage belongs to the Swing AWT thread; the queue hands it over there
+                queue.loaded(loadItem, newImg, wasScaled);
             }
         } catch (InterruptedException e) {
             //
@@ -1,11 +1,15 @@
 package org.xhtmlrenderer.swing;
 
+import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.logging.Level;
 
@@ -127,8 +131,16 @@ public class ImageResourceLoader {
 
     public synchronized ImageResource get(final String uri, final int width, final int height) {
         if (ImageUtil.isEmbeddedBase64Image(uri)) {
-            ImageResource resource = loadEmbeddedBase64ImageResource(uri);
-            resource.getImage().scale(width, height);
+            // cached per target size, images are scaled in place
+            CacheKey key = new CacheKey(uri, width, height);
+            ImageResource resource = (ImageResource) _imageCache.get(key);
+            if (resource == null) {
+                resource = loadEmbeddedBase64ImageResource(uri);
+                if (resource.getImage() != null) {
+                    resource.getImage().scale(width, height);
+                }
+                _imageCache.put(key, resource);
+            }
             return resource;
         } else {
             CacheKey key = new CacheKey(uri, width, height);
@@ -202,7 +214,58 @@ public class ImageResourceLoader {
     public void stopLoading() {
         if (_loadQueue != null) {
             XRLog.load("By request, clearing pending items from load queue: " + _loadQueue.size());
-            _loadQueue.reset();
+            uncache(_loadQueue.reset());
+        }
+    }
+
+    /**
+     * Stops a pending background load of an image, e.g. because the document showing it has been replaced.
+     * The image is removed from the cache, so it is loaded again if it is requested later on.
+     *
+     * @return true if the load was stopped, false if the image is not waiting to be loaded
+     */
+    public boolean cancel(final ImageResource ir) {
+        if (_loadQueue != null && ir.getImage() instanceof MutableFSImage &&
+                _loadQueue.cancel((MutableFSImage) ir.getImage())) {
+            uncache(Collections.singletonList(ir.getImage()));
+            return true;
+        }
+        return false;
+    }
+
+    // drops the cache entries of images which will never be loaded
+    private synchronized void uncache(final List images) {
+        if (images.isEmpty()) {
+            return;
+        }
+        Map cancelled = new IdentityHashMap();
+        for (Iterator it = images.iterator(); it.hasNext(); ) {
+            cancelled.put(it.next(), Boolean.TRUE);
+        }
+        for (Iterator it = _imageCache.values().iterator(); it.hasNext(); ) {
+            if (cancelled.containsKey(((ImageResource) it.next()).getImage())) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Sets the part of the document which is currently visible, in document coordinates. Background loads of the
+     * images nearest to it are started first.
+     */
+    public void setViewport(final Rectangle viewport) {
+        if (_loadQueue != null) {
+            _loadQueue.setViewport(viewport);
+        }
+    }
+
+    /**
+     * Forgets where the images waiting to be loaded are shown; called before the document is laid out again, which
+     * records their new positions.
+     */
+    public void resetImageBounds() {
+        if (_loadQueue != null) {
+            _loadQueue.resetBounds();
         }
     }
 
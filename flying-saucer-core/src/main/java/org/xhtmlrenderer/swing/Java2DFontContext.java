@@ -22,8 +22,9 @@ package org.xhtmlrenderer.swing;
 import java.awt.Graphics2D;
 
 import org.xhtmlrenderer.extend.FontContext;
+import org.xhtmlrenderer.extend.ForkableFontContext;
 
-public class Java2DFontContext implements FontContext {
+public class Java2DFontContext implements ForkableFontContext {
     private Graphics2D _graphics;
     
     public Java2DFontContext(Graphics2D graphics) {
@@ -33,4 +34,8 @@ public class Java2DFontContext implements FontContext {
     public Graphics2D getGraphics() {
         return _graphics;
     }
+
+    public FontContext fork() {
+        return new Java2DFontContext((Graphics2D) _graphics.create());
+    }
 }
@@ -22,10 +22,12 @@ package org.xhtmlrenderer.swing;
 import java.awt.Color;
 import java.awt.Graphics2D;
 import java.awt.Image;
+import java.awt.Paint;
 import java.awt.Point;
 import java.awt.Rectangle;
 import java.awt.Shape;
 import java.awt.Stroke;
+import java.awt.TexturePaint;
 import java.awt.RenderingHints.Key;
 import java.awt.font.GlyphVector;
 import java.awt.geom.Point2D;
@@ -274,6 +276,18 @@ public class Java2DOutputDevice extends AbstractOutputDevice implements OutputDe
     public void drawImage(FSImage image, int x, int y) {
         _graphics.drawImage(((AWTFSImage)image).getImage(), x, y, null);
     }
+
+    protected boolean fillWithTiles(FSImage image, int x, int y, Rectangle bounds) {
+        BufferedImage img = ((AWTFSImage)image).getImage();
+        if (img.getWidth() != image.getWidth() || img.getHeight() != image.getHeight()) {
+            return false;
+        }
+        Paint oldPaint = _graphics.getPaint();
+        _graphics.setPaint(new TexturePaint(img, new Rectangle(x, y, img.getWidth(), img.getHeight())));
+        _graphics.fill(bounds);
+        _graphics.setPaint(oldPaint);
+        return true;
+    }
     
     public boolean isSupportsSelection() {
         return true;
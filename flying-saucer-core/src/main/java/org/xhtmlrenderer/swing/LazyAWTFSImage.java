@@ -0,0 +1,71 @@
+package org.xhtmlrenderer.swing;
+
+import java.awt.image.BufferedImage;
+
+import org.xhtmlrenderer.extend.FSImage;
+
+/**
+ * An image whose size is known (e.g. from the image header) but whose pixels
+ * are only decoded when {@link #getImage()} is first called, which usually is
+ * when it is painted.  Until then, scaling only changes the size the image
+ * will be scaled to once it is decoded.
+ */
+abstract class LazyAWTFSImage extends AWTFSImage {
+    private int _width;
+    private int _height;
+    private boolean _scaled;
+
+    private AWTFSImage _image;
+
+    protected LazyAWTFSImage(int width, int height) {
+        _width = width;
+        _height = height;
+    }
+
+    /**
+     * Decodes the image.  Returns an image without pixels (see
+     * {@link AWTFSImage#createImage}) if that fails.
+     */
+    protected abstract FSImage decode();
+
+    public synchronized int getWidth() {
+        return _image == null ? _width : _image.getWidth();
+    }
+
+    public synchronized int getHeight() {
+        return _image == null ? _height : _image.getHeight();
+    }
+
+    public synchronized void scale(int width, int height) {
+        if (_image != null) {
+            _image.scale(width, height);
+        } else if (width > 0 || height > 0) {
+            int targetWidth = width;
+            int targetHeight = height;
+
+            if (targetWidth == -1) {
+                targetWidth = (int)(_width * ((double)targetHeight / _height));
+            }
+
+            if (targetHeight == -1) {
+                targetHeight = (int)(_height * ((double)targetWidth / _width));
+            }
+
+            if (_width != targetWidth || _height != targetHeight) {
+                _width = targetWidth;
+                _height = targetHeight;
+                _scaled = true;
+            }
+        }
+    }
+
+    public synchronized BufferedImage getImage() {
+        if (_image == null) {
+            _image = (AWTFSImage) decode();
+            if (_scaled) {
+                _image.scale(_width, _height);
+            }
+        }
+        return _image.getImage();
+    }
+}
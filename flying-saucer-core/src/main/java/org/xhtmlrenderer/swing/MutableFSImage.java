@@ -39,6 +39,10 @@ public class MutableFSImage extends AWTFSImage {
     private final RepaintListener repaintListener;
     private volatile boolean loaded;
 
+    // document bounds of the elements showing this image while it loads,
+    // see ImageLoadQueue
+    private Rectangle bounds;
+
     public MutableFSImage(RepaintListener repaintListener) {
         this.repaintListener = repaintListener;
         img = ImageUtil.createTransparentImage(10, 10);
@@ -61,12 +65,54 @@ public class MutableFSImage extends AWTFSImage {
     }
 
     public synchronized void setImage(String uri, BufferedImage newImg, final boolean wasScaled) {
+        setLoadedImage(uri, newImg);
+        XRLog.general(Level.FINE, "Mutable image " + uri + " loaded, repaint requested");
+        repaintListener.repaintRequested(wasScaled);
+    }
+
+    /**
+     * Like {@link #setImage(String, BufferedImage, boolean)}, but leaves the repaint request to the caller.
+     */
+    synchronized void setLoadedImage(String uri, BufferedImage newImg) {
         assert EventQueue.isDispatchThread() : "setImage() must be called on EDT";
-        
+
         img = newImg;
         loaded = true;
-        XRLog.general(Level.FINE, "Mutable image " + uri + " loaded, repaint requested");
-        repaintListener.repaintRequested(wasScaled);
+        bounds = null;
+    }
+
+    RepaintListener getRepaintListener() {
+        return repaintListener;
+    }
+
+    /**
+     * Records that the image is shown at the given position in the document, so it can be loaded before images
+     * further from the viewport.
+     */
+    public synchronized void addBounds(Rectangle r) {
+        if (loaded) {
+            return;
+        }
+        if (bounds == null) {
+            bounds = new Rectangle(r);
+        } else {
+            bounds.add(r);
+        }
+    }
+
+    /**
+     * Forgets the positions recorded with {@link #addBounds(Rectangle)}, e.g. because the document is laid out
+     * again and the elements showing the image may have moved.
+     */
+    public synchronized void resetBounds() {
+        bounds = null;
+    }
+
+    /**
+     * Returns the bounds of all positions recorded with {@link #addBounds(Rectangle)}, or null if there are none.
+     */
+    public synchronized Rectangle getBounds() {
+        return bounds == null ? null : new Rectangle(bounds);
     }
 
     public boolean isLoaded() {
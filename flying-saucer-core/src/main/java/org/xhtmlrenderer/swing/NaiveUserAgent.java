@@ -19,11 +19,14 @@
  */
 package org.xhtmlrenderer.swing;
 
+import java.awt.Dimension;
 import java.awt.Image;
 import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.HttpURLConnection;
@@ -34,12 +37,21 @@ import java.net.URL;
 import java.net.URLConnection;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.logging.Level;
 import javax.imageio.ImageIO;
+import org.xhtmlrenderer.event.DefaultRenderMetricsListener;
 import org.xhtmlrenderer.event.DocumentListener;
+import org.xhtmlrenderer.event.RenderMetricsListener;
+import org.xhtmlrenderer.extend.FSImage;
 import org.xhtmlrenderer.extend.UserAgentCallback;
+import org.xhtmlrenderer.protocols.data.DataUriCache;
 import org.xhtmlrenderer.resource.CSSResource;
+import org.xhtmlrenderer.resource.CachedResource;
+import org.xhtmlrenderer.resource.FileResourceCache;
 import org.xhtmlrenderer.resource.ImageResource;
+import org.xhtmlrenderer.resource.ResourceCache;
 import org.xhtmlrenderer.resource.XMLResource;
+import org.xhtmlrenderer.util.Configuration;
 import org.xhtmlrenderer.util.ImageUtil;
 import org.xhtmlrenderer.util.XRLog;
 
@@ -55,6 +67,10 @@ import org.xhtmlrenderer.util.XRLog;
  * source of document events (like the panel hierarchy), it will respond to the
  * {@link org.xhtmlrenderer.event.DocumentListener#documentStarted()} call and attempt to shrink its cache.
  *
+ * <p>HTTP(S) resources can also be kept in a persistent {@link ResourceCache}, see
+ * {@link #setResourceCache(ResourceCache)}.  By default the cache configured with
+ * <code>xr.load.resource-cache.directory</code> is used, if any.
+ *
  * <p>This class is meant as a starting point--it will work out of the box, but you should really implement your
  * own, tuned to your application's needs.
  *
@@ -63,12 +79,21 @@ import org.xhtmlrenderer.util.XRLog;
 public class NaiveUserAgent implements UserAgentCallback, DocumentListener {
 
     private static final int DEFAULT_IMAGE_CACHE_SIZE = 16;
+    private static final long SLOW_RESOURCE_THRESHOLD =
+        Configuration.valueAsInt("xr.metrics.slow-resource-threshold", 1000);
     /**
      * a (simple) LRU cache
      */
     protected LinkedHashMap _imageCache;
     private int _imageCacheCapacity;
     private String _baseURL;
+    private RenderMetricsListener _metricsListener = new DefaultRenderMetricsListener();
+    private ResourceCache _resourceCache = getDefaultResourceCache();
+    // the stale cached copy openConnection() adds the validators of
+    private final ThreadLocal _revalidated = new ThreadLocal();
+
+    private static ResourceCache _defaultResourceCache;
+    private static boolean _defaultResourceCacheCreated;
 
     /**
      * Creates a new instance of NaiveUserAgent with a max image cache of 16 images.
@@ -95,11 +120,13 @@ public class NaiveUserAgent implements UserAgentCallback, DocumentListener {
      * be dropped from cache until it reaches the desired size.
      */
     public void shrinkImageCache() {
-        int ovr = _imageCache.size() - _imageCacheCapacity;
-        Iterator it = _imageCache.keySet().iterator();
-        while (it.hasNext() && ovr-- > 0) {
-            it.next();
-            it.remove();
+        synchronized (_imageCache) {
+            int ovr = _imageCache.size() - _imageCacheCapacity;
+            Iterator it = _imageCache.keySet().iterator();
+            while (it.hasNext() && ovr-- > 0) {
+                it.next();
+                it.remove();
+            }
         }
     }
 
@@ -107,7 +134,40 @@ public class NaiveUserAgent implements UserAgentCallback, DocumentListener {
      * Empties the image cache entirely.
      */
     public void clearImageCache() {
-        _imageCache.clear();
+        synchronized (_imageCache) {
+            _imageCache.clear();
+        }
+    }
+
+    /**
+     * Returns the cache configured with <code>xr.load.resource-cache.directory</code>
+     * and <code>xr.load.resource-cache.max-size</code> (in megabytes), or
+     * <code>null</code> if there is none.  It is shared by all instances.
+     */
+    private static synchronized ResourceCache getDefaultResourceCache() {
+        if (! _defaultResourceCacheCreated) {
+            _defaultResourceCacheCreated = true;
+            String directory = Configuration.valueFor("xr.load.resource-cache.directory", "").trim();
+            if (directory.length() > 0) {
+                long maxSize = Configuration.valueAsInt("xr.load.resource-cache.max-size", 64) * 1024L * 1024L;
+                _defaultResourceCache = new FileResourceCache(new File(directory), maxSize);
+            }
+        }
+        return _defaultResourceCache;
+    }
+
+    public ResourceCache getResourceCache() {
+        return _resourceCache;
+    }
+
+    /**
+     * Sets the cache used for HTTP(S) resources, or <code>null</code> to
+     * always download them.  Fresh responses are read from the cache; stale
+     * ones are revalidated with <code>If-None-Match</code> and
+     * <code>If-Modified-Since</code>.
+     */
+    public void setResourceCache(ResourceCache resourceCache) {
+        _resourceCache = resourceCache;
     }
 
     /**
@@ -121,7 +181,11 @@ public class NaiveUserAgent implements UserAgentCallback, DocumentListener {
         java.io.InputStream is = null;
         String resolvedUri = resolveURI(uri);
         try {
+            long start = System.currentTimeMillis();
             is = openStream(resolvedUri);
+            if (is != null) {
+                is = new MetricsInputStream(is, resolvedUri, start);
+            }
         } catch (java.net.MalformedURLException e) {
             XRLog.exception("bad URL given: " + resolvedUri, e);
         } catch (java.io.FileNotFoundException e) {
@@ -133,13 +197,82 @@ public class NaiveUserAgent implements UserAgentCallback, DocumentListener {
     }
     
     protected InputStream openStream(String uri) throws MalformedURLException, IOException {
+        ResourceCache cache = _resourceCache;
+        if (cache != null && (uri.startsWith("http:") || uri.startsWith("https:"))) {
+            return openCachedStream(cache, uri);
+        }
         return openConnection(uri).getInputStream();
     }
 
+    /**
+     * Opens uri through cache.  The connection is made by
+     * {@link #openConnection(String)}, which adds the validators of a stale
+     * cached copy, if any, before it connects.
+     */
+    private InputStream openCachedStream(ResourceCache cache, String uri) throws IOException {
+        long now = System.currentTimeMillis();
+        CachedResource cached = cache.get(uri);
+        if (cached != null && cached.isFresh(now)) {
+            InputStream is = openCachedBody(cache, cached);
+            if (is != null) {
+                _metricsListener.count(RenderMetricsListener.COUNT_RESOURCE_CACHE_HITS, 1);
+                return is;
+            }
+        }
+        if (cached != null && ! cached.hasValidators()) {
+            cached = null;
+        }
+
+        URLConnection connection;
+        _revalidated.set(cached);
+        try {
+            connection = openConnection(uri);
+        } finally {
+            _revalidated.set(null);
+        }
+        if (cached != null && connection instanceof HttpURLConnection) {
+            HttpURLConnection http = (HttpURLConnection) connection;
+            if (http.getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                cached = cached.withExpires(CachedResource.getExpires(http, now));
+                cache.update(cached);
+                InputStream is = openCachedBody(cache, cached);
+                if (is != null) {
+                    _metricsListener.count(RenderMetricsListener.COUNT_RESOURCE_CACHE_REVALIDATIONS, 1);
+                    return is;
+                }
+                // evicted in the meantime
+                return openConnection(uri).getInputStream();
+            }
+        }
+
+        _metricsListener.count(RenderMetricsListener.COUNT_RESOURCE_CACHE_MISSES, 1);
+        CachedResource resource = CachedResource.fromConnection(uri, connection, now);
+        InputStream is = connection.getInputStream();
+        if (resource == null) {
+            if (cached != null) {
+                cache.remove(uri);
+            }
+            return is;
+        }
+        return cache.put(resource, is);
+    }
+
+    private InputStream openCachedBody(ResourceCache cache, CachedResource resource) {
+        try {
+            return cache.openStream(resource);
+        } catch (IOException e) {
+            XRLog.load(Level.FINE, "Can't read cached body of " + resource.getUri() + ": " + e.getMessage());
+            return null;
+        }
+    }
+
     /**
      * Opens a connections to uri.
      * 
      * This can be overwritten to customize handling of connections by type.
+     * When a stale copy of uri is revalidated, this implementation adds the
+     * conditional request headers before it connects; an overriding method
+     * which doesn't call it always gets the full resource.
      * 
      * @param uri the uri to connect to
      * @return URLConnection opened connection to uri
@@ -147,6 +280,15 @@ public class NaiveUserAgent implements UserAgentCallback, DocumentListener {
      */
     protected URLConnection openConnection(String uri) throws IOException {
         URLConnection connection = new URL(uri).openConnection();
+        CachedResource cached = (CachedResource) _revalidated.get();
+        if (cached != null && cached.getUri().equals(uri)) {
+            if (cached.getETag() != null) {
+                connection.setRequestProperty("If-None-Match", cached.getETag());
+            }
+            if (cached.getLastModified() != null) {
+                connection.setRequestProperty("If-Modified-Since", cached.getLastModified());
+            }
+        }
         if (connection instanceof HttpURLConnection) {
             connection = onHttpConnection((HttpURLConnection) connection);
         }
@@ -223,22 +365,39 @@ public class NaiveUserAgent implements UserAgentCallback, DocumentListener {
     public ImageResource getImageResource(String uri) {
         ImageResource ir;
         if (ImageUtil.isEmbeddedBase64Image(uri)) {
-            BufferedImage image = ImageUtil.loadEmbeddedBase64Image(uri);
-            ir = createImageResource(null, image);
+            ir = getCachedImageResource(uri);
+            _metricsListener.count(ir == null ?
+                    RenderMetricsListener.COUNT_IMAGE_CACHE_MISSES :
+                    RenderMetricsListener.COUNT_IMAGE_CACHE_HITS, 1);
+            if (ir == null) {
+                BufferedImage image = ImageUtil.loadEmbeddedBase64Image(uri);
+                ir = createImageResource(null, image);
+                putCachedImageResource(uri, ir);
+            }
+            ir = copyOf(ir);
         } else {
             uri = resolveURI(uri);
-            ir = (ImageResource) _imageCache.get(uri);
+            ir = getCachedImageResource(uri);
             //TODO: check that cached image is still valid
+            _metricsListener.count(ir == null ?
+                    RenderMetricsListener.COUNT_IMAGE_CACHE_MISSES :
+                    RenderMetricsListener.COUNT_IMAGE_CACHE_HITS, 1);
             if (ir == null) {
                 InputStream is = resolveAndOpenStream(uri);
                 if (is != null) {
                     try {
-                        BufferedImage img = ImageIO.read(is);
-                        if (img == null) {
-                            throw new IOException("ImageIO.read() returned null");
+                        byte[] data = readBytes(is);
+                        Dimension size = ImageUtil.readImageSize(data);
+                        if (size != null) {
+                            ir = new ImageResource(uri, createLazyImage(uri, data, size));
+                        } else {
+                            BufferedImage img = ImageIO.read(new ByteArrayInputStream(data));
+                            if (img == null) {
+                                throw new IOException("ImageIO.read() returned null");
+                            }
+                            ir = createImageResource(uri, img);
                         }
-                        ir = createImageResource(uri, img);
-                        _imageCache.put(uri, ir);
+                        putCachedImageResource(uri, ir);
                     } catch (FileNotFoundException e) {
                         XRLog.exception("Can't read image file; image at URI '" + uri + "' not found");
                     } catch (IOException e) {
@@ -259,6 +418,77 @@ public class NaiveUserAgent implements UserAgentCallback, DocumentListener {
         return ir;
     }
 
+    /**
+     * Returns a resource with an image of its own, sharing the pixels of
+     * the cached one, since painting a background image scales it in place.
+     */
+    private static ImageResource copyOf(ImageResource ir) {
+        FSImage image = ir.getImage();
+        if (image instanceof AWTFSImage.NewAWTFSImage) {
+            image = new AWTFSImage.NewAWTFSImage(((AWTFSImage) image).getImage());
+            return new ImageResource(ir.getImageUri(), image);
+        }
+        return ir;
+    }
+
+    // the cache is access ordered, so even a lookup modifies it; a RootPanel
+    // may lay out in the background while the event dispatch thread paints
+    private ImageResource getCachedImageResource(String key) {
+        synchronized (_imageCache) {
+            return (ImageResource) _imageCache.get(key);
+        }
+    }
+
+    private void putCachedImageResource(String key, ImageResource ir) {
+        synchronized (_imageCache) {
+            _imageCache.put(key, ir);
+        }
+    }
+
+    /**
+     * Returns an image of the given size which is only decoded, through
+     * {@link #createImageResource(String, Image)}, when it is painted.  Layout
+     * only needs the size of an image: the resolution recorded in the file
+     * isn't used by Java2D output, and the colour model only matters once the
+     * pixels are painted, so neither is read before.
+     */
+    private FSImage createLazyImage(String uri, byte[] data, Dimension size) {
+        return new LazyImage(uri, data, size);
+    }
+
+    private class LazyImage extends LazyAWTFSImage {
+        private final String _uri;
+        private byte[] _data;
+
+        LazyImage(String uri, byte[] data, Dimension size) {
+            super(size.width, size.height);
+            _uri = uri;
+            _data = data;
+        }
+
+        protected FSImage decode() {
+            BufferedImage img = null;
+            try {
+                img = ImageIO.read(new ByteArrayInputStream(_data));
+            } catch (IOException e) {
+                XRLog.exception("Can't read image file; unexpected problem for URI '" + _uri + "'", e);
+            }
+            // the file isn't needed any more, only the decoded pixels
+            _data = null;
+            return createImageResource(_uri, img).getImage();
+        }
+    }
+
+    private static byte[] readBytes(InputStream is) throws IOException {
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        byte[] buf = new byte[10240];
+        int i;
+        while ((i = is.read(buf)) != -1) {
+            result.write(buf, 0, i);
+        }
+        return result.toByteArray();
+    }
+
     /**
      * Factory method to generate ImageResources from a given Image. May be overridden in subclass. 
      *
@@ -297,19 +527,18 @@ public class NaiveUserAgent implements UserAgentCallback, DocumentListener {
     }
 
     public byte[] getBinaryResource(String uri) {
+        if (DataUriCache.isDataUri(uri)) {
+            byte[] data = DataUriCache.getData(uri);
+            return data == null ? null : (byte[]) data.clone();
+        }
         InputStream is = resolveAndOpenStream(uri);
         if (is==null) return null;
         try {
-            ByteArrayOutputStream result = new ByteArrayOutputStream();
-            byte[] buf = new byte[10240];
-            int i;
-            while ((i = is.read(buf)) != -1) {
-                result.write(buf, 0, i);
-            }
+            byte[] result = readBytes(is);
             is.close();
             is = null;
 
-            return result.toByteArray();
+            return result;
         } catch (IOException e) {
             return null;
         } finally {
@@ -405,6 +634,19 @@ public class NaiveUserAgent implements UserAgentCallback, DocumentListener {
         return _baseURL;
     }
 
+    public RenderMetricsListener getMetricsListener() {
+        return _metricsListener;
+    }
+
+    /**
+     * Sets the listener notified of image cache hits and misses and of the
+     * resources loaded by this user agent.  This is normally done by
+     * {@link org.xhtmlrenderer.layout.SharedContext#setMetricsListener(RenderMetricsListener)}.
+     */
+    public void setMetricsListener(RenderMetricsListener metricsListener) {
+        _metricsListener = metricsListener;
+    }
+
     public void documentStarted() {
         shrinkImageCache();
     }
@@ -414,6 +656,58 @@ public class NaiveUserAgent implements UserAgentCallback, DocumentListener {
     public void onLayoutException(Throwable t) { /* ignore*/ }
 
     public void onRenderException(Throwable t) { /* ignore*/ }
+
+    /**
+     * Counts the bytes read from a resource and reports them (and the time
+     * since the resource was opened) when the stream is closed.
+     */
+    private class MetricsInputStream extends FilterInputStream {
+        private final String _uri;
+        private final long _start;
+        private long _bytes;
+        private boolean _closed;
+
+        public MetricsInputStream(InputStream in, String uri, long start) {
+            super(in);
+            _uri = uri;
+            _start = start;
+        }
+
+        public int read() throws IOException {
+            int result = super.read();
+            if (result != -1) {
+                _bytes++;
+            }
+            return result;
+        }
+
+        public int read(byte[] b, int off, int len) throws IOException {
+            int result = super.read(b, off, len);
+            if (result > 0) {
+                _bytes += result;
+            }
+            return result;
+        }
+
+        public long skip(long n) throws IOException {
+            long result = super.skip(n);
+            _bytes += result;
+            return result;
+        }
+
+        public void close() throws IOException {
+            super.close();
+            if (! _closed) {
+                _closed = true;
+                long elapsed = System.currentTimeMillis() - _start;
+                _metricsListener.resourceLoaded(_uri, _bytes, elapsed);
+                if (elapsed > SLOW_RESOURCE_THRESHOLD) {
+                    XRLog.load(Level.WARNING, "Loading " + _uri + " took " + elapsed + "ms");
+                    _metricsListener.slowResource(_uri, elapsed);
+                }
+            }
+        }
+    }
 }
 
 /*
@@ -20,6 +20,7 @@
 package org.xhtmlrenderer.swing;
 
 import java.awt.Color;
+import java.awt.Component;
 import java.awt.Container;
 import java.awt.Dimension;
 import java.awt.EventQueue;
@@ -28,9 +29,23 @@ import java.awt.Graphics2D;
 import java.awt.Insets;
 import java.awt.Rectangle;
 import java.awt.event.MouseEvent;
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Level;
 import javax.swing.CellRendererPane;
 import javax.swing.JPanel;
@@ -51,18 +66,25 @@ import org.xhtmlrenderer.css.style.derived.ColorValue;
 import org.xhtmlrenderer.css.style.derived.LengthValue;
 import org.xhtmlrenderer.css.style.derived.StringValue;
 import org.xhtmlrenderer.event.DocumentListener;
+import org.xhtmlrenderer.event.RenderMetricsListener;
 import org.xhtmlrenderer.extend.FSCanvas;
 import org.xhtmlrenderer.extend.NamespaceHandler;
+import org.xhtmlrenderer.extend.ReplacedElement;
+import org.xhtmlrenderer.extend.ReplacedElementFactory;
+import org.xhtmlrenderer.extend.UserAgentCallback;
 import org.xhtmlrenderer.extend.UserInterface;
 import org.xhtmlrenderer.layout.BoxBuilder;
 import org.xhtmlrenderer.layout.Layer;
+import org.xhtmlrenderer.layout.LayoutCancelledException;
 import org.xhtmlrenderer.layout.LayoutContext;
+import org.xhtmlrenderer.layout.LayoutProgressListener;
 import org.xhtmlrenderer.layout.SharedContext;
 import org.xhtmlrenderer.render.BlockBox;
 import org.xhtmlrenderer.render.Box;
 import org.xhtmlrenderer.render.PageBox;
 import org.xhtmlrenderer.render.RenderingContext;
 import org.xhtmlrenderer.render.ViewportBox;
+import org.xhtmlrenderer.simple.extend.FormSubmissionListener;
 import org.xhtmlrenderer.util.Configuration;
 import org.xhtmlrenderer.util.XRLog;
 
@@ -72,6 +94,16 @@ public class RootPanel extends JPanel implements Scrollable, UserInterface, FSCa
 
     private Box rootBox = null;
     private boolean needRelayout = false;
+    private boolean asyncLayout = Configuration.isTrue("xr.layout.async", false);
+    private boolean showFirstScreen = Configuration.isTrue("xr.layout.async.show-first-screen", false);
+
+    // rendered tiles of the document, if enabled; see setTileCacheEnabled()
+    private volatile TileCache tileCache =
+        Configuration.isTrue("xr.swing.tile-cache", false) ? newTileCache() : null;
+    private volatile LayoutJob layoutJob;
+    private ExecutorService layoutExecutor;
+    private volatile boolean showingPartialLayout;
+    private final ReentrantLock partialLayoutLock = new ReentrantLock(true);
     private CellRendererPane cellRendererPane;
     private final Set<DocumentListener> documentListeners = new HashSet<DocumentListener>();
     private boolean defaultFontFromComponent;
@@ -92,11 +124,27 @@ public class RootPanel extends JPanel implements Scrollable, UserInterface, FSCa
     public Element active_element = null;
     public Element focus_element = null;
 
-    // On-demand repaint requests for async image loading
-    private long lastRepaintRunAt = System.currentTimeMillis();
-    private final long maxRepaintRequestWaitMs = 50;
-    private boolean repaintRequestPending = false;
-    private long pendingRepaintCount = 0;
+    // On-demand repaint requests for async image loading and hover
+    // changes; see repaintRequested() and repaintDocumentRegion()
+    protected static final long REPAINT_INTERVAL_MS = 50;
+    private static final ScheduledExecutorService REPAINT_SCHEDULER =
+        Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread result = new Thread(r, "Flying Saucer repaint scheduler");
+                result.setDaemon(true);
+                return result;
+            }
+        });
+    private final Object repaintLock = new Object();
+    private long lastRepaintRunAt;
+    private boolean repaintScheduled;
+    private boolean pendingRelayout;
+    private Rectangle pendingRegion;
+    private final Runnable repaintTask = new Runnable() {
+        public void run() {
+            runScheduledRepaint();
+        }
+    };
 
     public RootPanel() {
     }
@@ -110,9 +158,11 @@ public class RootPanel extends JPanel implements Scrollable, UserInterface, FSCa
     }
 
     public void setDocument(Document doc, String url, NamespaceHandler nsh) {
+        cancelAsyncLayout();
         fireDocumentStarted();
         resetScrollPosition();
         setRootBox(null);
+        invalidateTiles();
         this.doc = doc;
 
         //have to do this first
@@ -222,6 +272,11 @@ public class RootPanel extends JPanel implements Scrollable, UserInterface, FSCa
     public void removeNotify() {
         super.removeNotify();
         setEnclosingScrollPane(null);
+        cancelAsyncLayout();
+        if (layoutExecutor != null) {
+            layoutExecutor.shutdown();
+            layoutExecutor = null;
+        }
     }
 
     protected void init() {
@@ -301,6 +356,10 @@ public class RootPanel extends JPanel implements Scrollable, UserInterface, FSCa
     }
 
     public void doDocumentLayout(Graphics g) {
+        if (isAsyncLayout() && EventQueue.isDispatchThread()) {
+            startAsyncLayout(g);
+            return;
+        }
         try {
             this.removeAll();
             if (g == null) {
@@ -315,8 +374,6 @@ public class RootPanel extends JPanel implements Scrollable, UserInterface, FSCa
                 this.layoutContext = c;
             }
 
-            long start = System.currentTimeMillis();
-
             BlockBox root = (BlockBox)getRootBox();
             if (root != null && isNeedRelayout()) {
                 root.reset(c);
@@ -330,86 +387,512 @@ public class RootPanel extends JPanel implements Scrollable, UserInterface, FSCa
             Rectangle initialExtents = getInitialExtents(c);
             root.setContainingBlock(new ViewportBox(initialExtents));
 
-            root.layout(c);
+            Dimension intrinsic_size = layoutRoot(c, root);
+            publishLayout(root, initialExtents, intrinsic_size);
+        } catch (ThreadDeath t) {
+            throw t;
+        } catch (Throwable t) {
+            handleLayoutException(t);
+        }
+    }
+
+    /**
+     * Lays out <code>root</code>, and its pages in print view.
+     *
+     * @return the size the laid out document needs
+     */
+    private Dimension layoutRoot(LayoutContext c, BlockBox root) {
+        resetImageBounds();
+
+        long start = System.nanoTime();
 
-            long end = System.currentTimeMillis();
+        root.layout(c);
 
-            XRLog.layout(Level.INFO, "Layout took " + (end - start) + "ms");
+        long end = System.nanoTime();
+        RenderMetricsListener metrics = getSharedContext().getMetricsListener();
+        metrics.phaseCompleted(RenderMetricsListener.PHASE_LAYOUT, end - start);
 
-            /*
-            System.out.println(root.dump(c, "", BlockBox.DUMP_LAYOUT));
-            */
+        XRLog.layout(Level.INFO, "Layout took " + (end - start) / 1000000 + "ms");
 
-            // if there is a fixed child then we need to set opaque to false
-            // so that the entire viewport will be repainted. this is slower
-            // but that's the hit you get from using fixed layout
-            if (root.getLayer().containsFixedContent()) {
-                super.setOpaque(false);
-            } else {
-                super.setOpaque(true);
-            }
+        /*
+        System.out.println(root.dump(c, "", BlockBox.DUMP_LAYOUT));
+        */
+
+        XRLog.layout(Level.FINEST, "after layout: " + root);
+
+        Dimension intrinsic_size = root.getLayer().getPaintingDimension(c);
+
+        if (c.isPrint()) {
+            root.getLayer().trimEmptyPages(c, intrinsic_size.height);
+            root.getLayer().layoutPages(c);
+            metrics.phaseCompleted(
+                    RenderMetricsListener.PHASE_PAGE_LAYOUT, System.nanoTime() - end);
+            metrics.count(RenderMetricsListener.COUNT_PAGES, root.getLayer().getPages().size());
+        }
+
+        return intrinsic_size;
+    }
 
-            XRLog.layout(Level.FINEST, "after layout: " + root);
+    /**
+     * Sizes the panel to a newly laid out document and notifies the document
+     * listeners.  Must be called on the event dispatch thread.
+     */
+    private void publishLayout(BlockBox root, Rectangle initialExtents, Dimension intrinsic_size) {
+        invalidateTiles();
+
+        // if there is a fixed child then we need to set opaque to false
+        // so that the entire viewport will be repainted. this is slower
+        // but that's the hit you get from using fixed layout
+        if (root.getLayer().containsFixedContent()) {
+            super.setOpaque(false);
+        } else {
+            super.setOpaque(true);
+        }
 
-            Dimension intrinsic_size = root.getLayer().getPaintingDimension(c);
+        // If the initial size we fed into the layout matches the width
+        // of the layout generated then we can set the scrollable property
+        // that matches width of the view pane to the width of this panel.
+        // Otherwise, if the intrinsic width is different then we can't
+        // couple the width of the view pane to the width of this panel
+        // (we hit the minimum size threshold).
+        viewportMatchWidth = (initialExtents.width == intrinsic_size.width);
 
-            if (c.isPrint()) {
-                root.getLayer().trimEmptyPages(c, intrinsic_size.height);
-                root.getLayer().layoutPages(c);
+        setPreferredSize(intrinsic_size);
+        revalidate();
+
+        if (enclosingScrollPane != null) {
+            JViewport viewPort = enclosingScrollPane.getViewport();
+            if(viewPort != null) {
+                // turn on simple scrolling mode if there's any fixed elements
+                if (root.getLayer().containsFixedContent()) {
+                    // Uu.p("is fixed");
+                    viewPort.setScrollMode(JViewport.SIMPLE_SCROLL_MODE);
+                }
+                else {
+                    // Uu.p("is not fixed");
+                    viewPort.setScrollMode(default_scroll_mode);
+                }
+            }
+        }
+
+        this.fireDocumentLoaded();
+        /* FIXME
+        if (Configuration.isTrue("xr.image.background.greedy", false)) {
+            EventQueue.invokeLater(new Runnable() {
+                public void run() {
+                    XRLog.load("loading images in document and css greedily");
+                    requestBGImages(getRootBox());
+                }
+            });
+        }*/
+    }
+
+    private void handleLayoutException(Throwable t) {
+        if (hasDocumentListeners()) {
+            fireOnLayoutException(t);
+        } else {
+            if (t instanceof Error) {
+                throw (Error)t;
+            }
+            if (t instanceof RuntimeException) {
+                throw (RuntimeException)t;
             }
 
-            // If the initial size we fed into the layout matches the width
-            // of the layout generated then we can set the scrollable property
-            // that matches width of the view pane to the width of this panel.
-            // Otherwise, if the intrinsic width is different then we can't
-            // couple the width of the view pane to the width of this panel
-            // (we hit the minimum size threshold).
-            viewportMatchWidth = (initialExtents.width == intrinsic_size.width);
+            // "Shouldn't" happen
+            XRLog.exception(t.getMessage(), t);
+        }
+    }
+
+    /**
+     * Returns true if documents are laid out on a background thread (see
+     * {@link #setAsyncLayout(boolean)}).
+     */
+    public boolean isAsyncLayout() {
+        return asyncLayout;
+    }
+
+    /**
+     * If set, {@link #doDocumentLayout(Graphics)} lays out the document on a
+     * background thread instead of the event dispatch thread.  Until the
+     * layout has finished, the panel keeps painting the previous layout (or
+     * nothing, for a new document).  A layout in progress is cancelled when
+     * a new document is set or the panel is resized.  Defaults to
+     * <code>xr.layout.async</code>.
+     * <p>
+     * Styles and boxes are still built on the event dispatch thread before
+     * the layout starts, and replaced elements (images and form controls)
+     * are created on it while the layout waits.
+     * <p>
+     * The document must not be modified while it is laid out.
+     */
+    public void setAsyncLayout(boolean asyncLayout) {
+        this.asyncLayout = asyncLayout;
+    }
+
+    public boolean isTileCacheEnabled() {
+        return tileCache != null;
+    }
+
+    /**
+     * If set, the rendered document is kept in tiles of
+     * {@link TileCache#TILE_SIZE} pixels, so scrolling and exposing the
+     * panel only copies the tiles which are already rendered.  Anything
+     * which changes the rendering of the document without a relayout must
+     * call {@link #invalidateTiles()} or {@link #invalidateTiles(Rectangle)}
+     * then; the panel does so itself for its own repaint requests.  The
+     * cache isn't used for documents with fixed content and while a partial
+     * layout is shown.  Defaults to <code>xr.swing.tile-cache</code>; at
+     * most <code>xr.swing.tile-cache.max-tiles</code> tiles are kept.
+     */
+    public void setTileCacheEnabled(boolean enabled) {
+        if (enabled != isTileCacheEnabled()) {
+            tileCache = enabled ? newTileCache() : null;
+            repaint();
+        }
+    }
+
+    private static TileCache newTileCache() {
+        return new TileCache(Configuration.valueAsInt("xr.swing.tile-cache.max-tiles", 64));
+    }
+
+    TileCache getTileCache() {
+        return tileCache;
+    }
+
+    /**
+     * Discards all rendered tiles, see {@link #setTileCacheEnabled(boolean)}.
+     */
+    public void invalidateTiles() {
+        TileCache cache = tileCache;
+        if (cache != null) {
+            cache.invalidate();
+        }
+    }
+
+    /**
+     * Discards the rendered tiles intersecting the given region of the
+     * panel, see {@link #setTileCacheEnabled(boolean)}.
+     */
+    public void invalidateTiles(Rectangle region) {
+        TileCache cache = tileCache;
+        if (cache != null) {
+            cache.invalidate(region);
+        }
+    }
+
+    public boolean isShowFirstScreen() {
+        return showFirstScreen;
+    }
+
+    /**
+     * If set (and layout is asynchronous), the document is shown as soon as
+     * the first screenful has been laid out, while the rest of it is still
+     * being laid out.  Defaults to <code>xr.layout.async.show-first-screen</code>.
+     */
+    public void setShowFirstScreen(boolean showFirstScreen) {
+        this.showFirstScreen = showFirstScreen;
+    }
+
+    private void startAsyncLayout(Graphics g) {
+        if (layoutJob != null && ! isNeedRelayout()) {
+            // still working on it
+            return;
+        }
+        cancelAsyncLayout();
+        if (g == null || doc == null) {
+            return;
+        }
+
+        LayoutContext c = newLayoutContext((Graphics2D) g);
+        Rectangle initialExtents = getInitialExtents(c);
+
+        // styles and boxes are built here, only the layout itself runs in
+        // the background
+        BlockBox root;
+        try {
+            root = BoxBuilder.createRootBox(c, doc);
+            initFontFromComponent(root);
+            root.setContainingBlock(new ViewportBox(initialExtents));
+        } catch (ThreadDeath t) {
+            throw t;
+        } catch (Throwable t) {
+            handleLayoutException(t);
+            return;
+        }
+
+        LayoutJob job = new LayoutJob(c, root, initialExtents);
+        layoutJob = job;
+        if (layoutExecutor == null) {
+            layoutExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread result = new Thread(r, "Flying Saucer layout");
+                    result.setDaemon(true);
+                    return result;
+                }
+            });
+        }
+        job.future = layoutExecutor.submit(job);
+    }
+
+    /**
+     * Cancels a layout running in the background and waits until it has
+     * stopped, so it no longer uses the shared context.  It stops after the
+     * block it is laying out, or while it waits for a replaced element.
+     */
+    protected void cancelAsyncLayout() {
+        LayoutJob job = layoutJob;
+        if (job == null) {
+            return;
+        }
+        layoutJob = null;
+        job.cancelled = true;
+        try {
+            job.future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            // reported by the job
+        } catch (CancellationException e) {
+            // never started
+        }
+        if (showingPartialLayout) {
+            showingPartialLayout = false;
+            setRootBox(null);
+        }
+    }
+
+    protected void addImpl(Component comp, Object constraints, int index) {
+        LayoutJob job = layoutJob;
+        if (job != null && job.creatingReplacedElement) {
+            // form controls created by a background layout are added when
+            // it is published
+            job.components.add(comp);
+        } else {
+            super.addImpl(comp, constraints, index);
+        }
+    }
+
+    /**
+     * Must be held while a partially laid out document is painted or
+     * searched, see {@link #setShowFirstScreen(boolean)}.
+     */
+    protected void lockPartialLayout() {
+        if (showingPartialLayout) {
+            partialLayoutLock.lock();
+        }
+    }
+
+    protected void unlockPartialLayout() {
+        if (partialLayoutLock.isHeldByCurrentThread()) {
+            partialLayoutLock.unlock();
+        }
+    }
+
+    /**
+     * Returns true while a partially laid out document is shown.
+     */
+    protected boolean isShowingPartialLayout() {
+        return showingPartialLayout;
+    }
+
+    private class LayoutJob implements Runnable, LayoutProgressListener {
+        private final LayoutContext c;
+        private final BlockBox root;
+        private final Rectangle initialExtents;
+        // only used on the event dispatch thread
+        private final List components = new ArrayList();
+        private boolean creatingReplacedElement;
+
+        private volatile boolean cancelled;
+        private Future future;
+        private boolean partialLayoutShown;
+
+        public LayoutJob(LayoutContext c, BlockBox root, Rectangle initialExtents) {
+            this.c = c;
+            this.root = root;
+            this.initialExtents = initialExtents;
+        }
 
-            setPreferredSize(intrinsic_size);
-            revalidate();
+        public void run() {
+            partialLayoutLock.lock();
+            try {
+                if (cancelled) {
+                    return;
+                }
+                c.setLayoutProgressListener(this);
+                c.setReplacedElementFactory(new EventDispatchReplacedElementFactory(
+                        this, getSharedContext().getReplacedElementFactory()));
+
+                final Dimension intrinsic_size;
+                try {
+                    intrinsic_size = layoutRoot(c, root);
+                } finally {
+                    c.setLayoutProgressListener(null);
+                    c.setReplacedElementFactory(null);
+                }
 
-            if (enclosingScrollPane != null) {
-                JViewport viewPort = enclosingScrollPane.getViewport();
-                if(viewPort != null) {
-                    // turn on simple scrolling mode if there's any fixed elements
-                    if (root.getLayer().containsFixedContent()) {
-                        // Uu.p("is fixed");
-                        viewPort.setScrollMode(JViewport.SIMPLE_SCROLL_MODE);
+                EventQueue.invokeLater(new Runnable() {
+                    public void run() {
+                        if (layoutJob != LayoutJob.this || cancelled) {
+                            return;
+                        }
+                        layoutJob = null;
+                        showingPartialLayout = false;
+                        publish(root);
+                        publishLayout(root, initialExtents, intrinsic_size);
+                        repaint();
                     }
-                    else {
-                        // Uu.p("is not fixed");
-                        viewPort.setScrollMode(default_scroll_mode);
+                });
+            } catch (LayoutCancelledException e) {
+                // a newer layout has been started
+            } catch (final Throwable t) {
+                EventQueue.invokeLater(new Runnable() {
+                    public void run() {
+                        if (layoutJob == LayoutJob.this && ! cancelled) {
+                            layoutJob = null;
+                            handleLayoutException(t);
+                        }
                     }
+                });
+            } finally {
+                partialLayoutLock.unlock();
+            }
+        }
+
+        /**
+         * Runs <code>task</code> on the event dispatch thread and waits for
+         * it.  The lock on the partial layout is released meanwhile, so the
+         * event dispatch thread can't wait for it in turn.
+         */
+        private Object invokeAndWait(final Callable task) {
+            FutureTask future = new FutureTask(new Callable() {
+                public Object call() throws Exception {
+                    creatingReplacedElement = true;
+                    try {
+                        return task.call();
+                    } finally {
+                        creatingReplacedElement = false;
+                    }
+                }
+            });
+            EventQueue.invokeLater(future);
+
+            int holds = partialLayoutLock.getHoldCount();
+            for (int i = 0; i < holds; i++) {
+                partialLayoutLock.unlock();
+            }
+            try {
+                while (true) {
+                    if (cancelled) {
+                        future.cancel(false);
+                        throw new LayoutCancelledException();
+                    }
+                    try {
+                        return future.get(20, TimeUnit.MILLISECONDS);
+                    } catch (TimeoutException e) {
+                        // check whether we've been cancelled
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new LayoutCancelledException();
+                    } catch (ExecutionException e) {
+                        Throwable cause = e.getCause();
+                        if (cause instanceof RuntimeException) {
+                            throw (RuntimeException) cause;
+                        } else if (cause instanceof Error) {
+                            throw (Error) cause;
+                        }
+                        throw new RuntimeException(cause);
+                    }
+                }
+            } finally {
+                for (int i = 0; i < holds; i++) {
+                    partialLayoutLock.lock();
+                }
+                if (partialLayoutShown) {
+                    // the event dispatch thread may have searched the
+                    // incomplete box tree
+                    root.getLayer().invalidateHitTestIndexes();
                 }
             }
+        }
 
-            this.fireDocumentLoaded();
-            /* FIXME
-            if (Configuration.isTrue("xr.image.background.greedy", false)) {
+        private void publish(BlockBox root) {
+            RootPanel.this.removeAll();
+            for (Iterator i = components.iterator(); i.hasNext(); ) {
+                RootPanel.this.add((Component) i.next());
+            }
+            synchronized (RootPanel.this) {
+                layoutContext = c;
+            }
+            setRootBox(root);
+        }
+
+        public void blockLaidOut(LayoutContext c, BlockBox box) {
+            if (cancelled) {
+                throw new LayoutCancelledException();
+            }
+            if (partialLayoutShown) {
+                if (partialLayoutLock.hasQueuedThreads()) {
+                    // let the event dispatch thread paint what we've got so far
+                    partialLayoutLock.unlock();
+                    partialLayoutLock.lock();
+                    // it may have searched the incomplete box tree, too
+                    root.getLayer().invalidateHitTestIndexes();
+                }
+            } else if (isShowFirstScreen() && ! c.isPrint() &&
+                    box.getAbsY() + box.getHeight() >= initialExtents.height) {
+                partialLayoutShown = true;
                 EventQueue.invokeLater(new Runnable() {
                     public void run() {
-                        XRLog.load("loading images in document and css greedily");
-                        requestBGImages(getRootBox());
+                        if (layoutJob != LayoutJob.this || cancelled) {
+                            return;
+                        }
+                        showingPartialLayout = true;
+                        synchronized (RootPanel.this) {
+                            layoutContext = LayoutJob.this.c;
+                        }
+                        setRootBox(root);
+                        repaint();
                     }
                 });
-            }*/
-        } catch (ThreadDeath t) {
-            throw t;
-        } catch (Throwable t) {
-            if (hasDocumentListeners()) {
-                fireOnLayoutException(t);
-            } else {
-                if (t instanceof Error) {
-                    throw (Error)t;
-                }
-                if (t instanceof RuntimeException) {
-                    throw (RuntimeException)t;
+            }
+        }
+    }
+
+    /**
+     * Creates the replaced elements of a background layout on the event
+     * dispatch thread, as the factory creates Swing components and isn't
+     * thread safe.
+     */
+    private static class EventDispatchReplacedElementFactory implements ReplacedElementFactory {
+        private final LayoutJob job;
+        private final ReplacedElementFactory delegate;
+
+        public EventDispatchReplacedElementFactory(LayoutJob job, ReplacedElementFactory delegate) {
+            this.job = job;
+            this.delegate = delegate;
+        }
+
+        public ReplacedElement createReplacedElement(
+                final LayoutContext c, final BlockBox box,
+                final UserAgentCallback uac, final int cssWidth, final int cssHeight) {
+            return (ReplacedElement) job.invokeAndWait(new Callable() {
+                public Object call() {
+                    return delegate.createReplacedElement(c, box, uac, cssWidth, cssHeight);
                 }
+            });
+        }
 
-                // "Shouldn't" happen
-                XRLog.exception(t.getMessage(), t);
-            }
+        public void reset() {
+            delegate.reset();
+        }
+
+        public void remove(Element e) {
+            delegate.remove(e);
+        }
+
+        public void setFormSubmissionListener(FormSubmissionListener listener) {
+            delegate.setFormSubmissionListener(listener);
         }
     }
 
@@ -565,6 +1048,33 @@ public class RootPanel extends JPanel implements Scrollable, UserInterface, FSCa
         return getRootBox() == null ? null : getRootBox().getLayer();
     }
 
+    /**
+     * Tells the image loader of the replaced element factory which part of
+     * the document is visible, so images near it are loaded first.
+     */
+    protected void updateImageLoadViewport() {
+        ReplacedElementFactory ref = getSharedContext().getReplacedElementFactory();
+        if (ref instanceof SwingReplacedElementFactory) {
+            Rectangle viewport = getVisibleRect();
+            if (enclosingScrollPane == null) {
+                Insets insets = getInsets();
+                viewport.translate(-insets.left, -insets.top);
+            }
+            ((SwingReplacedElementFactory) ref).getImageResourceLoader().setViewport(viewport);
+        }
+    }
+
+    /**
+     * Drops the positions of the images still loading, so the layout which
+     * follows doesn't add their new positions to stale ones.
+     */
+    private void resetImageBounds() {
+        ReplacedElementFactory ref = getSharedContext().getReplacedElementFactory();
+        if (ref instanceof SwingReplacedElementFactory) {
+            ((SwingReplacedElementFactory) ref).getImageResourceLoader().resetImageBounds();
+        }
+    }
+
     public Box find(MouseEvent e) {
         return find(e.getX(), e.getY());
     }
@@ -572,7 +1082,12 @@ public class RootPanel extends JPanel implements Scrollable, UserInterface, FSCa
     public Box find(int x, int y) {
         Layer l = getRootLayer();
         if (l != null) {
-            return l.find(layoutContext, x, y, false);
+            lockPartialLayout();
+            try {
+                return l.find(layoutContext, x, y, false);
+            } finally {
+                unlockPartialLayout();
+            }
         }
         return null;
     }
@@ -613,43 +1128,81 @@ public class RootPanel extends JPanel implements Scrollable, UserInterface, FSCa
         this.needRelayout = needRelayout;
     }
 
+    /**
+     * Requests a repaint, and a relayout if <code>doLayout</code> is set
+     * (e.g. because an image has finished loading and its size is now known).
+     * Relayouts requested within {@link #REPAINT_INTERVAL_MS} of each other
+     * are merged into one.  May be called from any thread.
+     */
     public void repaintRequested(final boolean doLayout) {
-        final long now = System.currentTimeMillis();
-        final long el = now - lastRepaintRunAt;
-        if (!doLayout || el > maxRepaintRequestWaitMs || pendingRepaintCount > 5) {
-            XRLog.general(Level.FINE, "*** Repainting panel, by request, el: " + el + " pending " + pendingRepaintCount);
-            if (doLayout) {
-                relayout();
+        // e.g. an image has been loaded, somewhere
+        invalidateTiles();
+        if (!doLayout) {
+            repaint();
+            return;
+        }
+        synchronized (repaintLock) {
+            pendingRelayout = true;
+            scheduleRepaint();
+        }
+    }
+
+    /**
+     * Repaints the given region of the document (in document coordinates),
+     * e.g. the bounds of boxes whose style changed on hover.  Regions
+     * requested within {@link #REPAINT_INTERVAL_MS} of each other are merged
+     * and repainted together.  May be called from any thread.
+     */
+    public void repaintDocumentRegion(Rectangle region) {
+        synchronized (repaintLock) {
+            if (pendingRegion == null) {
+                pendingRegion = new Rectangle(region);
             } else {
-                repaint();
+                pendingRegion.add(region);
             }
-            lastRepaintRunAt = System.currentTimeMillis();
-            repaintRequestPending = false;
-            pendingRepaintCount = 0;
+            scheduleRepaint();
+        }
+    }
+
+    // must be called with repaintLock held
+    private void scheduleRepaint() {
+        if (repaintScheduled) {
+            return;
+        }
+        repaintScheduled = true;
+        long delay = lastRepaintRunAt + REPAINT_INTERVAL_MS - System.currentTimeMillis();
+        if (delay <= 0) {
+            EventQueue.invokeLater(repaintTask);
         } else {
-            if (!repaintRequestPending) {
-                XRLog.general(Level.FINE, "... Queueing new repaint request, el: " + el + " < " + maxRepaintRequestWaitMs);
-                repaintRequestPending = true;
-                new Thread(new Runnable() {
-                    public void run() {
-                        try {
-                            Thread.currentThread().sleep(Math.min(maxRepaintRequestWaitMs, Math.abs(maxRepaintRequestWaitMs - el)));
-                            EventQueue.invokeLater(new Runnable() {
-                                public void run() {
-                                    XRLog.general(Level.FINE, "--> running queued repaint request");
-                                    repaintRequested(doLayout);
-                                    repaintRequestPending = false;
-                                }
-                            });
-                        } catch (InterruptedException e) {
-                            // swallow
-                        }
-                    }
-                }).start();
-            } else {
-                pendingRepaintCount++;
-                XRLog.general("hmm... repaint request, but already have one");
+            REPAINT_SCHEDULER.schedule(new Runnable() {
+                public void run() {
+                    EventQueue.invokeLater(repaintTask);
+                }
+            }, delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void runScheduledRepaint() {
+        boolean relayout;
+        Rectangle region;
+        synchronized (repaintLock) {
+            relayout = pendingRelayout;
+            region = pendingRegion;
+            pendingRelayout = false;
+            pendingRegion = null;
+            repaintScheduled = false;
+            lastRepaintRunAt = System.currentTimeMillis();
+        }
+        if (relayout) {
+            XRLog.general(Level.FINE, "*** Relayout of panel, by request");
+            relayout();
+        } else if (region != null) {
+            if (enclosingScrollPane == null) {
+                Insets insets = getInsets();
+                region.translate(insets.left, insets.top);
             }
+            invalidateTiles(region);
+            repaint(region);
         }
     }
 
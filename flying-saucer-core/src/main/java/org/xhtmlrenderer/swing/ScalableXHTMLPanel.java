@@ -155,6 +155,13 @@ public class ScalableXHTMLPanel extends XHTMLPanel {
 		}
 	}
 
+	/**
+	 * The scale may change on any paint, so tiles can't be cached
+	 */
+	protected boolean isTileCacheUsable(Graphics2D g, Layer root) {
+		return false;
+	}
+
 	/**
 	 * Renders according to scale factor
 	 *
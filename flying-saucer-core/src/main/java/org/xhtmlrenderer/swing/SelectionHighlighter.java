@@ -362,6 +362,7 @@ public class SelectionHighlighter implements MouseMotionListener, MouseListener
         StringBuffer hlText = new StringBuffer();
         if (this.dotInfo == null) {
             getComponent().getRootBox().clearSelection(modified);
+            getComponent().invalidateTiles();
             getComponent().repaint();
             lastHighlightedString = "";
             return;
@@ -449,6 +450,7 @@ public class SelectionHighlighter implements MouseMotionListener, MouseListener
             }
         }
         String s = normalizeSpaces(hlText.toString());
+        getComponent().invalidateTiles();
         getComponent().repaint();
         lastHighlightedString = Util.replace(s, PARA_EQUIV, "\n\n");
         // lastModified = modified;
@@ -38,6 +38,7 @@ import javax.swing.*;
 import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.logging.Level;
@@ -284,6 +285,32 @@ public class SwingReplacedElementFactory implements ReplacedElementFactory {
     public void reset() {
         forms = null;
         //imageComponents = null;
+        cancelImageLoads();
+    }
+
+    /**
+     * Stops the pending background loads of the images created so far, e.g. because a new document is shown.
+     * Images which are requested again are queued again.
+     */
+    protected void cancelImageLoads() {
+        if (imageComponents == null) {
+            return;
+        }
+        for (Iterator it = imageComponents.values().iterator(); it.hasNext(); ) {
+            Object re = it.next();
+            if (re instanceof DeferredImageReplacedElement) {
+                ImageResource imageResource = ((DeferredImageReplacedElement) re).getImageResource();
+                if (! imageResource.isLoaded()) {
+                    // a new element picks up the image from the loader's cache if it is still being loaded
+                    imageResourceLoader.cancel(imageResource);
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    public ImageResourceLoader getImageResourceLoader() {
+        return imageResourceLoader;
     }
 
     public void remove(Element e) {
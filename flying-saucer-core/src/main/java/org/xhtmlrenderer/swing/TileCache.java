@@ -0,0 +1,184 @@
+package org.xhtmlrenderer.swing;
+
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.Transparency;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A cache of rendered square tiles of a panel, in panel coordinates.  Once
+ * a tile has been painted, exposing or scrolling it into view again only
+ * copies the tile.  The tiles must be invalidated whenever the rendering of
+ * the document changes.  When more than the maximum number of tiles are
+ * cached, the least recently painted ones are dropped (and their images
+ * reused for new tiles).
+ * <p>
+ * Tiles are rendered at the scale of the device the panel is painted on, so
+ * they stay sharp on high resolution screens.  All methods must be called
+ * on the event dispatch thread, except for the <code>invalidate</code>
+ * methods.
+ */
+class TileCache {
+    public static final int TILE_SIZE = 256;
+
+    private final int _maxTiles;
+
+    // Point (tile column and row) -> BufferedImage, least recently painted first
+    private final Map _tiles = new LinkedHashMap(16, 0.75f, true);
+
+    // the images of dropped tiles, to be reused
+    private final List _spareImages = new ArrayList();
+
+    private double _scale = 1.0;
+
+    private Dimension _panelSize;
+
+    // counts invalidations, so tiles rendered meanwhile are not cached
+    private int _generation;
+
+    public TileCache(int maxTiles) {
+        _maxTiles = Math.max(1, maxTiles);
+    }
+
+    /**
+     * Paints the tiles intersecting <code>clip</code> to <code>g</code>,
+     * rendering the ones which aren't cached with <code>renderer</code>.
+     * All tiles are dropped if the size of the panel has changed.
+     */
+    public void paint(Graphics2D g, Rectangle clip, Dimension panelSize, TileRenderer renderer) {
+        double scale = g.getTransform().getScaleX();
+        List rendered = new ArrayList();
+        int generation;
+        synchronized (this) {
+            if (scale != _scale || ! panelSize.equals(_panelSize)) {
+                clear();
+                _scale = scale;
+                _panelSize = new Dimension(panelSize);
+            }
+            generation = _generation;
+        }
+
+        int minCol = floorDiv(clip.x);
+        int maxCol = floorDiv(clip.x + clip.width - 1);
+        int minRow = floorDiv(clip.y);
+        int maxRow = floorDiv(clip.y + clip.height - 1);
+        for (int row = minRow; row <= maxRow; row++) {
+            for (int col = minCol; col <= maxCol; col++) {
+                Point key = new Point(col, row);
+                BufferedImage tile;
+                synchronized (this) {
+                    tile = (BufferedImage) _tiles.get(key);
+                }
+                if (tile == null) {
+                    tile = render(g.getDeviceConfiguration(), col, row, scale, renderer);
+                    rendered.add(key);
+                    rendered.add(tile);
+                }
+                g.drawImage(tile, col * TILE_SIZE, row * TILE_SIZE, TILE_SIZE, TILE_SIZE, null);
+            }
+        }
+
+        synchronized (this) {
+            if (generation != _generation) {
+                return;
+            }
+            for (int i = 0; i < rendered.size(); i += 2) {
+                _tiles.put(rendered.get(i), rendered.get(i + 1));
+            }
+            for (Iterator i = _tiles.values().iterator(); _tiles.size() > _maxTiles && i.hasNext(); ) {
+                _spareImages.add(i.next());
+                i.remove();
+            }
+            while (_spareImages.size() > _maxTiles / 4 + 1) {
+                _spareImages.remove(_spareImages.size() - 1);
+            }
+        }
+    }
+
+    private BufferedImage render(
+            GraphicsConfiguration gc, int col, int row, double scale, TileRenderer renderer) {
+        int size = (int) Math.ceil(TILE_SIZE * scale);
+        BufferedImage result = null;
+        synchronized (this) {
+            if (! _spareImages.isEmpty()) {
+                result = (BufferedImage) _spareImages.remove(_spareImages.size() - 1);
+                if (result.getWidth() != size) {
+                    result = null;
+                }
+            }
+        }
+        if (result == null) {
+            result = gc == null ?
+                    new BufferedImage(size, size, BufferedImage.TYPE_INT_RGB) :
+                    gc.createCompatibleImage(size, size, Transparency.OPAQUE);
+        }
+
+        Rectangle bounds = new Rectangle(col * TILE_SIZE, row * TILE_SIZE, TILE_SIZE, TILE_SIZE);
+        Graphics2D g = result.createGraphics();
+        try {
+            g.transform(AffineTransform.getScaleInstance(scale, scale));
+            g.translate(-bounds.x, -bounds.y);
+            g.setClip(bounds);
+            renderer.renderTile(g, bounds);
+        } finally {
+            g.dispose();
+        }
+        return result;
+    }
+
+    private static int floorDiv(int x) {
+        return x >= 0 ? x / TILE_SIZE : -((-x + TILE_SIZE - 1) / TILE_SIZE);
+    }
+
+    /**
+     * Drops all tiles.
+     */
+    public synchronized void invalidate() {
+        clear();
+    }
+
+    /**
+     * Drops the tiles intersecting <code>r</code> (in panel coordinates).
+     */
+    public synchronized void invalidate(Rectangle r) {
+        if (r.isEmpty()) {
+            return;
+        }
+        _generation++;
+        int minCol = floorDiv(r.x);
+        int maxCol = floorDiv(r.x + r.width - 1);
+        int minRow = floorDiv(r.y);
+        int maxRow = floorDiv(r.y + r.height - 1);
+        for (Iterator i = _tiles.entrySet().iterator(); i.hasNext(); ) {
+            Map.Entry entry = (Map.Entry) i.next();
+            Point key = (Point) entry.getKey();
+            if (key.x >= minCol && key.x <= maxCol && key.y >= minRow && key.y <= maxRow) {
+                _spareImages.add(entry.getValue());
+                i.remove();
+            }
+        }
+    }
+
+    private void clear() {
+        _generation++;
+        _tiles.clear();
+        _spareImages.clear();
+    }
+
+    public interface TileRenderer {
+        /**
+         * Renders the part of the panel within <code>bounds</code> to
+         * <code>g</code>, which is clipped to the bounds already.
+         */
+        void renderTile(Graphics2D g, Rectangle bounds);
+    }
+}
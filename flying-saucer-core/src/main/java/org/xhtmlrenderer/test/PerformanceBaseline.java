@@ -0,0 +1,212 @@
+package org.xhtmlrenderer.test;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Method;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+
+
+/**
+ * Per-document timings of a regression run, stored next to the reference files by {@link Regress} and compared
+ * against by {@link ReferenceComparison}. The file is plain text, one document per line:
+ * <pre>
+ * file name TAB layout millis TAB paint millis TAB allocated bytes
+ * </pre>
+ * Times are the CPU time of the rendering thread, so documents rendered in parallel don't inflate each other's
+ * figures. If the JVM can't measure the CPU time of a thread, they are wall clock times, which are only comparable
+ * when documents are rendered one at a time. Allocated bytes are -1 if the JVM can't measure the allocations of a
+ * thread.
+ */
+public class PerformanceBaseline {
+    public static final String FILE_NAME = "performance-baseline.txt";
+
+    private static final Method GET_THREAD_ALLOCATED_BYTES = findGetThreadAllocatedBytes();
+    private static final boolean CPU_TIME_SUPPORTED = enableCpuTime();
+
+    private final Map timings = new TreeMap();
+
+    public synchronized void put(Timing timing) {
+        timings.put(timing.getName(), timing);
+    }
+
+    public synchronized Timing get(String name) {
+        return (Timing) timings.get(name);
+    }
+
+    /**
+     * Reads the baseline in <code>dir</code>; returns an empty baseline if there is none.
+     */
+    public static PerformanceBaseline read(File dir) throws IOException {
+        PerformanceBaseline result = new PerformanceBaseline();
+        File file = new File(dir, FILE_NAME);
+        if (!file.exists()) {
+            return result;
+        }
+        BufferedReader rdr = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+        try {
+            String line;
+            while ((line = rdr.readLine()) != null) {
+                String[] fields = line.split("\t");
+                if (fields.length != 4) {
+                    continue;
+                }
+                try {
+                    result.put(new Timing(fields[0],
+                            Long.parseLong(fields[1]), Long.parseLong(fields[2]), Long.parseLong(fields[3])));
+                } catch (NumberFormatException e) {
+                    // skip the line
+                }
+            }
+        } finally {
+            try {
+                rdr.close();
+            } catch (IOException e) {
+                // swallow
+            }
+        }
+        return result;
+    }
+
+    public synchronized void write(File dir) throws IOException {
+        PrintWriter pw = new PrintWriter(new BufferedWriter(
+                new OutputStreamWriter(new FileOutputStream(new File(dir, FILE_NAME)), "UTF-8")));
+        try {
+            for (Iterator it = timings.values().iterator(); it.hasNext();) {
+                Timing timing = (Timing) it.next();
+                pw.print(timing.getName() + "\t" + timing.getLayoutMillis() + "\t" + timing.getPaintMillis() + "\t" +
+                        timing.getAllocatedBytes() + "\n");
+            }
+            pw.flush();
+        } finally {
+            pw.close();
+        }
+    }
+
+    /**
+     * Returns the number of bytes allocated by the current thread so far, or -1 if the JVM doesn't support it.
+     */
+    public static long getAllocatedBytes() {
+        if (GET_THREAD_ALLOCATED_BYTES == null) {
+            return -1;
+        }
+        try {
+            Long result = (Long) GET_THREAD_ALLOCATED_BYTES.invoke(
+                    ManagementFactory.getThreadMXBean(), new Object[]{new Long(Thread.currentThread().getId())});
+            return result.longValue();
+        } catch (Exception e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Returns the CPU time used by the current thread so far in nanoseconds, or the wall clock time in nanoseconds
+     * if the JVM doesn't support measuring it.
+     */
+    public static long getTime() {
+        if (CPU_TIME_SUPPORTED) {
+            return ManagementFactory.getThreadMXBean().getCurrentThreadCpuTime();
+        }
+        return System.nanoTime();
+    }
+
+    /**
+     * Returns the milliseconds of CPU time the current thread used since {@link #getTime()} returned
+     * <code>start</code> and the bytes it allocated since {@link #getAllocatedBytes()} returned
+     * <code>allocated</code> (-1 if unknown).
+     */
+    public static long[] measured(long start, long allocated) {
+        long elapsed = (getTime() - start) / 1000000;
+        if (allocated >= 0) {
+            allocated = getAllocatedBytes() - allocated;
+        }
+        return new long[]{elapsed, allocated};
+    }
+
+    private static boolean enableCpuTime() {
+        try {
+            ThreadMXBean mxBean = ManagementFactory.getThreadMXBean();
+            if (!mxBean.isCurrentThreadCpuTimeSupported()) {
+                return false;
+            }
+            if (!mxBean.isThreadCpuTimeEnabled()) {
+                mxBean.setThreadCpuTimeEnabled(true);
+            }
+            return true;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    // com.sun.management.ThreadMXBean isn't available on all JVMs
+    private static Method findGetThreadAllocatedBytes() {
+        try {
+            Class mxBean = Class.forName("com.sun.management.ThreadMXBean");
+            if (!mxBean.isInstance(ManagementFactory.getThreadMXBean())) {
+                return null;
+            }
+            return mxBean.getMethod("getThreadAllocatedBytes", new Class[]{long.class});
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    public static class Timing {
+        private final String name;
+        private final long layoutMillis;
+        private final long paintMillis;
+        private final long allocatedBytes;
+
+        public Timing(String name, long layoutMillis, long paintMillis, long allocatedBytes) {
+            this.name = name;
+            this.layoutMillis = layoutMillis;
+            this.paintMillis = paintMillis;
+            this.allocatedBytes = allocatedBytes;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getLayoutMillis() {
+            return layoutMillis;
+        }
+
+        public long getPaintMillis() {
+            return paintMillis;
+        }
+
+        public long getAllocatedBytes() {
+            return allocatedBytes;
+        }
+
+        /**
+         * Returns true if this run took (or allocated) more than <code>threshold</code> (e.g. 0.25 for 25%) above
+         * the baseline. Differences in time of less than <code>minMillis</code> are ignored as noise.
+         */
+        public boolean isRegressionOf(Timing baseline, double threshold, long minMillis) {
+            long total = layoutMillis + paintMillis;
+            long baselineTotal = baseline.layoutMillis + baseline.paintMillis;
+            if (total - baselineTotal >= minMillis && total > baselineTotal * (1 + threshold)) {
+                return true;
+            }
+            return allocatedBytes >= 0 && baseline.allocatedBytes >= 0 &&
+                    allocatedBytes > baseline.allocatedBytes * (1 + threshold);
+        }
+
+        public String toString() {
+            return "layout " + layoutMillis + "ms, paint " + paintMillis + "ms" +
+                    (allocatedBytes >= 0 ? ", allocated " + (allocatedBytes / 1024) + "KB" : "");
+        }
+    }
+}
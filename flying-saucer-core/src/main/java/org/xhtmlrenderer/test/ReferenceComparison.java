@@ -3,21 +3,35 @@ package org.xhtmlrenderer.test;
 import org.xhtmlrenderer.layout.LayoutContext;
 import org.xhtmlrenderer.render.Box;
 import org.xhtmlrenderer.swing.BoxRenderer;
+import org.xhtmlrenderer.util.FSImageWriter;
 import org.xhtmlrenderer.util.IOUtil;
 
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
 import java.io.*;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 
 /**
- * ReferenceComparison runs a comparison of rendering a set of source XHTML files against a 
+ * ReferenceComparison runs a comparison of rendering a set of source XHTML files against a set of reference files
+ * created by {@link Regress}: the layout and render dumps are compared line by line and the rendered image pixel by
+ * pixel. Files are compared in parallel. If the reference directory contains a {@link PerformanceBaseline}, files
+ * which take longer to render or allocate more memory than the threshold allows are reported as slow.
  */
 public class ReferenceComparison {
     private int width;
     private boolean isVerbose;
+    private int threads;
+    private double threshold = 0.25;
+    private long minMillis = 50;
     private static final String LINE_SEPARATOR = "\n";
 
     public static void main(String[] args) throws IOException {
@@ -36,29 +50,63 @@ public class ReferenceComparison {
      * @param verbose
      */
     public ReferenceComparison(int width, boolean verbose) {
+        this(width, verbose, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Initializes (does not launch) the reference comparison.
+     *
+     * @param width width at which pages should be rendered
+     * @param verbose
+     * @param threads number of files to compare at the same time
+     */
+    public ReferenceComparison(int width, boolean verbose, int threads) {
         this.width = width;
         this.isVerbose = verbose;
+        this.threads = Math.max(1, threads);
     }
 
-    public void compareDirectory(File sourceDirectory, File referenceDir, File failedDirectory) throws IOException {
+    /**
+     * Sets when a file is reported as slower than the baseline: if its render time or allocations exceed the
+     * baseline by more than <code>threshold</code> (0.25 by default, i.e. 25%). Differences in render time of less
+     * than <code>minMillis</code> (50 by default) are ignored.
+     */
+    public void setPerformanceThreshold(double threshold, long minMillis) {
+        this.threshold = threshold;
+        this.minMillis = minMillis;
+    }
+
+    public void compareDirectory(File sourceDirectory, final File referenceDir, final File failedDirectory) throws IOException {
         checkDirectories(sourceDirectory, referenceDir, failedDirectory);
         log("Starting comparison using width " + width);
         IOUtil.deleteAllFiles(failedDirectory);
 
         boolean wasEnabled = enableLogging(false);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
         try {
+            final PerformanceBaseline baseline = PerformanceBaseline.read(referenceDir);
+            final CompareStatistics stats = new CompareStatistics();
+            List futures = new ArrayList();
             Iterator fileIt = listSourceFiles(sourceDirectory);
-            CompareStatistics stats = new CompareStatistics();
             while (fileIt.hasNext()) {
-                File file = (File) fileIt.next();
-                try {
-                    compareFile(file, referenceDir, failedDirectory, stats);
-                } catch (IOException e) {
-                    stats.failedIOException(e);
-                }
+                final File file = (File) fileIt.next();
+                futures.add(executor.submit(new Callable() {
+                    public Object call() {
+                        CompareStatistics fileStats = new CompareStatistics();
+                        try {
+                            compareFile(file, referenceDir, failedDirectory, fileStats, baseline);
+                        } catch (IOException e) {
+                            fileStats.failedIOException(e);
+                        }
+                        stats.merge(fileStats);
+                        return null;
+                    }
+                }));
             }
+            Regress.waitFor(futures);
             stats.report();
         } finally {
+            executor.shutdownNow();
             enableLogging(wasEnabled);
         }
     }
@@ -104,14 +152,23 @@ public class ReferenceComparison {
     }
 
     public void compareFile(File source, File referenceDir, File failedDirectory, CompareStatistics stat) throws IOException {
+        compareFile(source, referenceDir, failedDirectory, stat, new PerformanceBaseline());
+    }
+
+    private void compareFile(File source, File referenceDir, File failedDirectory, CompareStatistics stat,
+                             PerformanceBaseline baseline) throws IOException {
         log("Comparing " + source.getPath());
         stat.checking(source);
         // TODO: reuse code from Regress
+        long allocated = PerformanceBaseline.getAllocatedBytes();
+        long start = PerformanceBaseline.getTime();
         BoxRenderer renderer = new BoxRenderer(source, width);
         Box box;
+        long[] layout;
         try {
             log("rendering");
-            box = renderer.render();
+            box = renderer.layout();
+            layout = PerformanceBaseline.measured(start, allocated);
             log("rendered");
         } catch (Exception e) {
             e.printStackTrace();
@@ -133,6 +190,64 @@ public class ReferenceComparison {
         if (!compareLines(refLaidOut, laidOut, stat)) {
             storeFailed(failedDirectory, new File(referenceDir, inputFileName), Regress.LAYOUT_SFX, laidOut);
         }
+
+        long[] paint = compareImage(source, renderer, referenceDir, failedDirectory, stat);
+        PerformanceBaseline.Timing reference = baseline.get(inputFileName);
+        if (reference != null && paint != null) {
+            PerformanceBaseline.Timing timing = new PerformanceBaseline.Timing(inputFileName, layout[0], paint[0],
+                    layout[1] >= 0 && paint[1] >= 0 ? layout[1] + paint[1] : -1);
+            if (timing.isRegressionOf(reference, threshold, minMillis)) {
+                stat.slowerThanBaseline(timing, reference);
+            }
+        }
+    }
+
+    /**
+     * Paints the laid out source to an image and compares it with the reference PNG, if there is one.
+     *
+     * @return the time taken to paint the image in milliseconds and the bytes allocated while doing so, or null if
+     *         it couldn't be painted
+     */
+    private long[] compareImage(File source, BoxRenderer renderer, File referenceDir, File failedDirectory,
+                                CompareStatistics stat) throws IOException {
+        BufferedImage img;
+        long[] result;
+        long allocated = PerformanceBaseline.getAllocatedBytes();
+        long start = PerformanceBaseline.getTime();
+        try {
+            img = renderer.paint();
+            result = PerformanceBaseline.measured(start, allocated);
+        } catch (Exception e) {
+            stat.failedToRender(e);
+            log("Could not render input file to image: " + source + " err: " + e.getMessage());
+            return null;
+        }
+
+        File refFile = new File(referenceDir, source.getName() + Regress.PNG_SFX);
+        if (refFile.exists()) {
+            BufferedImage refImg = ImageIO.read(refFile);
+            if (refImg != null && !sameImage(refImg, img)) {
+                stat.failedImageMismatch();
+                new FSImageWriter().write(img,
+                        new File(failedDirectory, source.getName() + ".err" + Regress.PNG_SFX).getPath());
+                copyToFailed(failedDirectory, new File(referenceDir, source.getName()), Regress.PNG_SFX);
+            }
+        }
+        return result;
+    }
+
+    private boolean sameImage(BufferedImage refImg, BufferedImage img) {
+        if (refImg.getWidth() != img.getWidth() || refImg.getHeight() != img.getHeight()) {
+            return false;
+        }
+        for (int y = 0; y < img.getHeight(); y++) {
+            for (int x = 0; x < img.getWidth(); x++) {
+                if (refImg.getRGB(x, y) != img.getRGB(x, y)) {
+                    return false;
+                }
+            }
+        }
+        return true;
     }
 
     private String trimTrailingLS(String s) {
@@ -253,9 +368,16 @@ public class ReferenceComparison {
         private File currentFile;
         private static final Result OK = new ResultOK();
         private Map files;
+        private Map slowFiles;
 
         public CompareStatistics() {
             files = new HashMap();
+            slowFiles = new HashMap();
+        }
+
+        public synchronized void merge(CompareStatistics other) {
+            files.putAll(other.files);
+            slowFiles.putAll(other.slowFiles);
         }
 
         public void failedToRender(Exception e) {
@@ -278,6 +400,14 @@ public class ReferenceComparison {
             files.put(currentFile, new FailedIO(e));
         }
 
+        public void failedImageMismatch() {
+            files.put(currentFile, new ImageMismatch());
+        }
+
+        public void slowerThanBaseline(PerformanceBaseline.Timing timing, PerformanceBaseline.Timing baseline) {
+            slowFiles.put(currentFile, new SlowerThanBaseline(timing, baseline));
+        }
+
         public boolean failed() {
             return files.get(currentFile) instanceof FailedResult;
         }
@@ -291,7 +421,11 @@ public class ReferenceComparison {
             return files.get(currentFile) instanceof ResultOK;
         }
 
-        public void report() {
+        public synchronized void report() {
+            for (Iterator it = slowFiles.keySet().iterator(); it.hasNext();) {
+                File file = (File) it.next();
+                System.out.println(((Result) slowFiles.get(file)).describe(file));
+            }
             int failed = 0;
             for (Iterator it = files.keySet().iterator(); it.hasNext();) {
                 File file = (File) it.next();
@@ -302,7 +436,8 @@ public class ReferenceComparison {
                     System.out.println(result.describe(file));
                 }
             }
-            System.out.println("Checked " + files.keySet().size() + " files, " + (failed > 0 ? failed + " failed." : "all OK."));
+            System.out.println("Checked " + files.keySet().size() + " files, " + (failed > 0 ? failed + " failed." : "all OK.") +
+                    (slowFiles.size() > 0 ? " " + slowFiles.size() + " slower than the baseline." : ""));
         }
 
         private static class RenderFailed implements Result {
@@ -343,6 +478,26 @@ public class ReferenceComparison {
             }
         }
 
+        private static class ImageMismatch implements FailedResult {
+            public String describe(File file) {
+                return "FAIL: rendered image doesn't match the reference: " + file.getName();
+            }
+        }
+
+        private static class SlowerThanBaseline implements Result {
+            private final PerformanceBaseline.Timing timing;
+            private final PerformanceBaseline.Timing baseline;
+
+            public SlowerThanBaseline(PerformanceBaseline.Timing timing, PerformanceBaseline.Timing baseline) {
+                this.timing = timing;
+                this.baseline = baseline;
+            }
+
+            public String describe(File file) {
+                return "SLOW: " + file.getName() + " " + timing + " (baseline: " + baseline + ")";
+            }
+        }
+
         private static class FailedIO implements FailedResult {
             private final IOException exception;
 
@@ -21,7 +21,6 @@ package org.xhtmlrenderer.test;/*
 import org.xhtmlrenderer.layout.LayoutContext;
 import org.xhtmlrenderer.render.Box;
 import org.xhtmlrenderer.swing.BoxRenderer;
-import org.xhtmlrenderer.swing.Java2DRenderer;
 import org.xhtmlrenderer.util.FSImageWriter;
 import org.xhtmlrenderer.util.IOUtil;
 import org.xhtmlrenderer.util.Zipper;
@@ -29,8 +28,14 @@ import org.xhtmlrenderer.util.Zipper;
 import java.awt.image.BufferedImage;
 import java.io.*;
 import java.util.Arrays;
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 
 /**
@@ -51,6 +56,10 @@ import java.util.List;
  * <p/>
  * Files in the source directory with the following extensions are included: htm, html, xht, xhtml, and xml.
  * <p/>
+ * Files are rendered in parallel, by default on as many threads as there are processors. The CPU time taken to lay out
+ * and paint each file and the memory allocated while doing so are written to {@link PerformanceBaseline#FILE_NAME}
+ * in the output directory, for {@link ReferenceComparison} to compare later runs against.
+ * <p/>
  * You can also run this from the command line, passing in the source directory as argument 1, and the output file
  * name as argument 2. The output is created in the standard temp directory in a subdirectory called "reference". The
  * path to the output directory will be printed to the console when complete.
@@ -74,6 +83,9 @@ public class Regress {
     // width, in points, used to constrain layout
     private final int width;
 
+    // number of files rendered at the same time
+    private final int threads;
+
     // total files processed
     private int fileCount;
 
@@ -99,19 +111,41 @@ public class Regress {
      * @param width     width to constrain layou to
      */
     public Regress(File sourceDir, File outputDir, int width) {
+        this(sourceDir, outputDir, width, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Initialize to read from sourceDir and generate files to outputDir, using width points to constrain layout and
+     * rendering the given number of files at the same time.
+     *
+     * @param sourceDir directory to read from
+     * @param outputDir directory to write to
+     * @param width     width to constrain layou to
+     * @param threads   number of files to render at the same time
+     */
+    public Regress(File sourceDir, File outputDir, int width, int threads) {
         this.sourceDir = sourceDir;
         this.outputDir = outputDir;
         this.width = width;
+        this.threads = Math.max(1, threads);
     }
 
-    private int getFailedCount() {
+    private synchronized int getFailedCount() {
         return failedCount;
     }
 
-    private int getFileCount() {
+    private synchronized int getFileCount() {
         return fileCount;
     }
 
+    private synchronized void fileRendered(boolean failed) {
+        if (failed) {
+            failedCount++;
+        } else {
+            fileCount++;
+        }
+    }
+
     /**
      * For all files in the input directory, attempts to render and output a textual box model and a PNG file in the
      * output directory. Does not zip the contents of the output directory. Any single file that fails to render
@@ -125,25 +159,72 @@ public class Regress {
         fileCount = 0;
         failedCount = 0;
         final boolean wasLogging = enableLogging(false);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
         try {
+            final PerformanceBaseline baseline = new PerformanceBaseline();
+            List futures = new ArrayList();
             Iterator iter = listInputFiles(sourceDir);
             while (iter.hasNext()) {
-                File file = (File) iter.next();
-                saveBoxModel(file, outputDir, width);
-                saveImage(file, outputDir, width);
+                final File file = (File) iter.next();
+                futures.add(executor.submit(new Callable() {
+                    public Object call() throws IOException {
+                        snapshot(file, baseline);
+                        return null;
+                    }
+                }));
             }
+            waitFor(futures);
+            baseline.write(outputDir);
         } finally {
+            executor.shutdownNow();
             enableLogging(wasLogging);
         }
     }
 
-    private void saveImage(File page, File outputDir, int width) throws IOException {
+    private void snapshot(File file, PerformanceBaseline baseline) throws IOException {
+        BoxRenderer renderer = new BoxRenderer(file, width);
+        long[] layout = saveBoxModel(renderer, file, outputDir);
+        long[] paint = layout != null ? saveImage(renderer, file, outputDir) : null;
+        if (layout != null && paint != null) {
+            long allocated = layout[1] >= 0 && paint[1] >= 0 ? layout[1] + paint[1] : -1;
+            baseline.put(new PerformanceBaseline.Timing(file.getName(), layout[0], paint[0], allocated));
+        }
+    }
+
+    static void waitFor(List futures) throws IOException {
         try {
-            Java2DRenderer j2d = new Java2DRenderer(page, width);
+            for (Iterator it = futures.iterator(); it.hasNext();) {
+                ((Future) it.next()).get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while rendering");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            } else {
+                throw new RuntimeException(cause.getMessage(), cause);
+            }
+        }
+    }
 
-            // this renders and returns the image, which is stored in the J2R; will not
-            // be re-rendered, calls to getImage() return the same instance
-            BufferedImage img = j2d.getImage();
+    /**
+     * Paints the page laid out by <code>renderer</code>.
+     *
+     * @return the time taken to paint the image in milliseconds and the bytes allocated while doing so, or null if
+     *         it couldn't be painted
+     */
+    private long[] saveImage(BoxRenderer renderer, File page, File outputDir) throws IOException {
+        try {
+            long allocated = PerformanceBaseline.getAllocatedBytes();
+            long start = PerformanceBaseline.getTime();
+            BufferedImage img = renderer.paint();
+            long[] result = PerformanceBaseline.measured(start, allocated);
 
             // write it out, full size, PNG
             // FSImageWriter instance can be reused for different ../images,
@@ -158,26 +239,35 @@ public class Regress {
             }
             String fileName = outputFile.getPath();
             imageWriter.write(img, fileName);
+            return result;
         } catch (Exception e) {
             System.err.println("Could not render input file to image, skipping: " + page + " err: " + e.getMessage());
+            return null;
         }
     }
 
-    private void saveBoxModel(File page, File outputDir, int width) throws IOException {
-        BoxRenderer renderer = new BoxRenderer(page, width);
+    /**
+     * @return the time taken to lay out the page in milliseconds and the bytes allocated while doing so, or null if
+     *         it couldn't be laid out
+     */
+    private long[] saveBoxModel(BoxRenderer renderer, File page, File outputDir) throws IOException {
+        long allocated = PerformanceBaseline.getAllocatedBytes();
+        long start = PerformanceBaseline.getTime();
         Box box;
         try {
-            box = renderer.render();
+            box = renderer.layout();
         } catch (Exception e) {
             System.err.println("Could not render input file, skipping: " + page + " err: " + e.getMessage());
-            failedCount++;
-            return;
+            fileRendered(true);
+            return null;
         }
+        long[] result = PerformanceBaseline.measured(start, allocated);
         LayoutContext layoutContext = renderer.getLayoutContext();
         String inputFileName = page.getName();
         writeToFile(outputDir, inputFileName + RENDER_SFX, box.dump(layoutContext, "", Box.DUMP_RENDER));
         writeToFile(outputDir, inputFileName + LAYOUT_SFX, box.dump(layoutContext, "", Box.DUMP_LAYOUT));
-        fileCount++;
+        fileRendered(false);
+        return result;
     }
 
     private void writeToFile(File outputDir, String fileName, String output) throws IOException {
@@ -57,4 +57,18 @@ public class ContentTypeDetectingInputStreamWrapper extends BufferedInputStream
         return streamStartsWithMagicBytes(MAGIC_BYTES_PDF);
     }
     
+    protected final static byte[] MAGIC_BYTES_JPEG={(byte)0xFF, (byte)0xD8, (byte)0xFF};
+    public boolean isJpeg()
+    {
+        return streamStartsWithMagicBytes(MAGIC_BYTES_JPEG);
+    }
+    
+    // a JP2 file starts with a signature box, a raw codestream with SOC and SIZ markers
+    protected final static byte[] MAGIC_BYTES_JP2={0x00, 0x00, 0x00, 0x0C};
+    protected final static byte[] MAGIC_BYTES_J2K={(byte)0xFF, 0x4F, (byte)0xFF, 0x51};
+    public boolean isJpeg2000()
+    {
+        return streamStartsWithMagicBytes(MAGIC_BYTES_JP2) || streamStartsWithMagicBytes(MAGIC_BYTES_J2K);
+    }
+    
 }
@@ -29,7 +29,11 @@ import java.util.Iterator;
 import java.util.Map;
 import java.util.logging.Level;
 import javax.imageio.ImageIO;
-import javax.xml.bind.DatatypeConverter;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+
+import org.xhtmlrenderer.protocols.data.DataUriCache;
 
 /**
  * Static utility methods for working with images. Meant to suggest "best practices" for the most straightforward
@@ -281,16 +285,16 @@ public class ImageUtil {
     }
     
     /**
-     * Get the binary content of an embedded base 64 image.
+     * Get the binary content of an embedded base 64 image.  The content is
+     * decoded only once and cached (see {@link DataUriCache}), so the array
+     * is shared and must not be modified.
      *
      * @param imageDataUri URI of the embedded image
      * @return The binary content
      */
     public static byte[] getEmbeddedBase64Image(String imageDataUri) {
-        int b64Index = imageDataUri.indexOf("base64,");
-        if (b64Index != -1) {
-            String b64encoded = imageDataUri.substring(b64Index + "base64,".length());
-            return DatatypeConverter.parseBase64Binary(b64encoded);
+        if (imageDataUri.indexOf("base64,") != -1) {
+            return DataUriCache.getData(imageDataUri);
         } else {
             XRLog.load(Level.SEVERE, "Embedded XHTML images must be encoded in base 64.");
         }
@@ -315,6 +319,41 @@ public class ImageUtil {
         return null;
     }
     
+    /**
+     * Returns the size in pixels of the first image in <code>data</code>,
+     * read from the image header without decoding any pixels.
+     *
+     * @param data The content of an image file
+     * @return The size, or null if ImageIO can't read the format or the header
+     */
+    public static Dimension readImageSize(byte[] data) {
+        ImageInputStream iis = new MemoryCacheImageInputStream(new ByteArrayInputStream(data));
+        try {
+            Iterator readers = ImageIO.getImageReaders(iis);
+            if (!readers.hasNext()) {
+                return null;
+            }
+            ImageReader reader = (ImageReader) readers.next();
+            try {
+                reader.setInput(iis, true, true);
+                return new Dimension(reader.getWidth(0), reader.getHeight(0));
+            } finally {
+                reader.dispose();
+            }
+        } catch (IOException e) {
+            return null;
+        } catch (RuntimeException e) {
+            // some readers throw e.g. IndexOutOfBoundsException for a broken header
+            return null;
+        } finally {
+            try {
+                iis.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+    }
+
     interface Scaler {
         /**
          * Convenience method that returns a scaled instance of the
@@ -42,7 +42,7 @@ import java.util.ArrayList;
 /**
  * An {@link XRLogger} interface that uses <code>java.util.logging</code>.
  */
-public class JDKXRLogger implements XRLogger {
+public class JDKXRLogger implements LevelCheckingXRLogger {
     private static boolean initPending = true;
     
     /** {@inheritdoc} */
@@ -68,6 +68,15 @@ public class JDKXRLogger implements XRLogger {
         getLogger(logger).setLevel(level);
     }
 
+    /** {@inheritdoc} */
+    public boolean isLogLevelEnabled(String where, Level level) {
+        if (initPending) {
+            init();
+        }
+
+        return getLogger(where).isLoggable(level);
+    }
+
     /**
      * Same purpose as Logger.getLogger(), except that the static initialization
      * for XRLog will initialize the LogManager with logging levels and other
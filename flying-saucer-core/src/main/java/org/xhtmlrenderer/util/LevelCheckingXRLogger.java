@@ -0,0 +1,16 @@
+package org.xhtmlrenderer.util;
+
+import java.util.logging.Level;
+
+/**
+ * An {@link XRLogger} which can tell whether a message would be output
+ * before it is built.  Loggers which don't implement it are assumed to
+ * output everything; see {@link XRLog#isLoggable(String, Level)}.
+ */
+public interface LevelCheckingXRLogger extends XRLogger {
+    /**
+     * Returns whether messages logged to <code>where</code> at
+     * <code>level</code> are output.
+     */
+    public boolean isLogLevelEnabled(String where, Level level);
+}
@@ -20,6 +20,7 @@
  */
 package org.xhtmlrenderer.util;
 
+import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.logging.Level;
@@ -52,10 +53,11 @@ public class XRLog {
         return loggerName;
     }
 
-    private static boolean initPending = true;
-    private static XRLogger loggerImpl;
+    // volatile so isLoggable() can be called without taking the lock
+    private static volatile boolean initPending = true;
+    private static volatile XRLogger loggerImpl;
 
-    private static boolean loggingEnabled = true;
+    private static volatile boolean loggingEnabled = true;
 
     /**
      * Returns a list of all loggers that will be accessed by XRLog. Each entry is a String with a logger
@@ -216,6 +218,36 @@ public class XRLog {
         }
     }
 
+    /**
+     * Returns whether a message logged to <code>where</code> at
+     * <code>level</code> would actually be output.  Use this to guard log
+     * statements whose message is expensive to build.  Unless the logger is
+     * a {@link LevelCheckingXRLogger}, this is true whenever logging is
+     * enabled.
+     */
+    public static boolean isLoggable(String where, Level level) {
+        if (initPending) {
+            init();
+        }
+        if (! loggingEnabled) {
+            return false;
+        }
+        XRLogger logger = loggerImpl;
+        return ! (logger instanceof LevelCheckingXRLogger) ||
+                ((LevelCheckingXRLogger) logger).isLogLevelEnabled(where, level);
+    }
+
+    /**
+     * Logs a message built from <code>pattern</code> and <code>args</code>
+     * (see {@link MessageFormat}).  The message is only formatted if it will
+     * be output.
+     */
+    public static void log(String where, Level level, String pattern, Object[] args) {
+        if (isLoggable(where, level)) {
+            log(where, level, MessageFormat.format(pattern, args));
+        }
+    }
+
     public static void main(String args[]) {
         try {
             XRLog.cascade("Cascade msg");
@@ -0,0 +1,67 @@
+package org.xhtmlrenderer.dom;
+
+import java.io.StringReader;
+
+import junit.framework.TestCase;
+
+import org.w3c.dom.DOMException;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.xml.sax.InputSource;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.XMLReaderFactory;
+
+public class CompactDocumentBuilderTest
+        extends TestCase
+{
+    private static Document parse(String xml) throws Exception
+    {
+        XMLReader xmlReader = XMLReaderFactory.createXMLReader();
+        xmlReader.setFeature("http://xml.org/sax/features/namespaces", true);
+        return new CompactDocumentBuilder().parse(xmlReader, new InputSource(new StringReader(xml)));
+    }
+
+    public void testStructure() throws Exception
+    {
+        Document doc = parse("<?xml-stylesheet href='a.css'?>" +
+                "<html xmlns='http://www.w3.org/1999/xhtml'>" +
+                "<p id='p1' class=' a  b '>one<![CDATA[ two]]> three<!--c--><b/></p><p/></html>");
+
+        assertEquals(Node.PROCESSING_INSTRUCTION_NODE, doc.getFirstChild().getNodeType());
+        Element html = doc.getDocumentElement();
+        assertEquals("html", html.getLocalName());
+        assertEquals("http://www.w3.org/1999/xhtml", html.getNamespaceURI());
+        assertEquals("http://www.w3.org/1999/xhtml", html.getAttribute("xmlns"));
+
+        CompactElement p1 = (CompactElement) doc.getElementById("p1");
+        assertSame(html.getFirstChild(), p1);
+        assertEquals(0, p1.getElementIndex());
+        assertTrue(p1.hasClassName("a"));
+        assertTrue(p1.hasClassName("b"));
+        assertFalse(p1.hasClassName("a  b"));
+        assertEquals("", p1.getAttribute("title"));
+
+        // text and CDATA are merged into one node
+        assertEquals(3, p1.getChildNodes().getLength());
+        assertEquals("one two three", p1.getFirstChild().getNodeValue());
+        assertEquals(Node.COMMENT_NODE, p1.getFirstChild().getNextSibling().getNodeType());
+
+        CompactElement p2 = (CompactElement) p1.getNextSibling();
+        assertEquals(1, p2.getElementIndex());
+        assertSame(p1, p2.getPreviousSibling());
+        assertNull(p2.getNextSibling());
+        assertEquals(2, doc.getElementsByTagName("p").getLength());
+    }
+
+    public void testReadOnly() throws Exception
+    {
+        Document doc = parse("<a/>");
+        try {
+            doc.getDocumentElement().setAttribute("b", "c");
+            fail();
+        } catch (DOMException e) {
+            assertEquals(DOMException.NO_MODIFICATION_ALLOWED_ERR, e.code);
+        }
+    }
+}
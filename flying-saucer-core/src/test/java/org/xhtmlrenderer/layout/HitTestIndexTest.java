@@ -0,0 +1,170 @@
+package org.xhtmlrenderer.layout;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.w3c.dom.Element;
+import org.xhtmlrenderer.css.style.CssContext;
+import org.xhtmlrenderer.extend.UserInterface;
+import org.xhtmlrenderer.render.Box;
+import org.xhtmlrenderer.render.InlineLayoutBox;
+import org.xhtmlrenderer.render.LineBox;
+import org.xhtmlrenderer.swing.BoxRenderer;
+import org.xhtmlrenderer.swing.RenderFixture;
+
+public class HitTestIndexTest
+        extends TestCase
+{
+    public void testOverlappingBoxes() throws Exception
+    {
+        assertSameAsBoxWalk(
+                "div { height: 40px; border: 1px solid black }" +
+                ".up { margin-top: -25px; margin-left: 30px }" +
+                ".float { float: left; width: 60px; height: 60px; margin-right: -30px }",
+                "<div class='float'>float</div><div>first</div><div class='up'>second</div>" +
+                "<div class='up'>third <span>with a span</span></div>" +
+                "<p>text flowing around the float, long enough to wrap onto a few lines of the paragraph</p>" +
+                "<div style='position: relative; top: -20px; left: 10px'>in a layer of its own</div>");
+    }
+
+
+    public void testNestedBoxes() throws Exception
+    {
+        assertSameAsBoxWalk(
+                "div { padding: 4px; margin: 2px; border: 1px solid black }",
+                "<div><div><div>innermost <span>a <b>nested <i>inline</i></b></span> text</div>" +
+                "anonymous text <div>sibling</div></div></div>" +
+                "<div style='overflow: hidden'><div style='float: right; width: 30px'>f</div>" +
+                "<div><span><span>deep</span></span></div></div>");
+    }
+
+
+    public void testEmptyBoxes() throws Exception
+    {
+        assertSameAsBoxWalk(
+                "div { margin: 3px }",
+                "<div></div><div style='height: 0; padding: 0'></div><span></span>" +
+                "<div style='width: 0; height: 20px'></div><div><span></span>text</div>" +
+                "<div style='visibility: hidden; height: 20px'>hidden</div><p></p>");
+    }
+
+
+    public void testRestyleWhileSearching() throws Exception
+    {
+        BoxRenderer renderer = render(
+                "div { margin: 2px; border: 1px solid black }" +
+                "p:hover { color: red }" +
+                "div.grow:hover { padding: 6px }" +
+                "span:hover { visibility: hidden }",
+                "<div><p>plain <span>hidden on hover</span> text</p></div>" +
+                "<div class='grow'><p>more text <span>and a span</span></p></div>" +
+                "<div style='position: relative; left: 5px'><p>in a layer</p><div class='grow'>grows</div></div>");
+        Box root = renderer.render();
+        LayoutContext c = renderer.getLayoutContext();
+
+        final Element[] hovered = new Element[1];
+        SharedContext sharedContext = renderer.getSharedContext();
+        sharedContext.getCss().setDocumentContext(sharedContext, sharedContext.getNamespaceHandler(),
+                root.getElement().getOwnerDocument(), new UserInterface() {
+            public boolean isHover(Element e) {
+                return e == hovered[0];
+            }
+
+            public boolean isActive(Element e) {
+                return false;
+            }
+
+            public boolean isFocus(Element e) {
+                return false;
+            }
+        });
+
+        List boxes = new ArrayList();
+        collectElementBoxes(root, boxes);
+        assertSameAsBoxWalk(c, root.getLayer(), root.getWidth(), root.getHeight());
+
+        // hovers every element in turn, like HoverListener does
+        Box previous = null;
+        for (int i = 0; i < boxes.size(); i++) {
+            Box box = (Box) boxes.get(i);
+            HitTestIndex index = root.getLayer().getHitTestIndex(c);
+            if (previous != null) {
+                previous.restyle(c);
+            }
+            hovered[0] = box.getElement();
+            previous = box.getRestyleTarget();
+            previous.restyle(c);
+
+            if (box.getElement().getNodeName().equals("p")) {
+                // only the color changes
+                assertSame(index, root.getLayer().getHitTestIndex(c));
+            }
+            assertSameAsBoxWalk(c, root.getLayer(), root.getWidth(), root.getHeight());
+        }
+    }
+
+
+    private void collectElementBoxes(Box box, List result)
+    {
+        if (box.getElement() != null && ! box.isAnonymous() && ! (box instanceof LineBox)) {
+            result.add(box);
+        }
+        for (int i = 0; i < box.getChildCount(); i++) {
+            collectElementBoxes(box.getChild(i), result);
+        }
+        if (box instanceof InlineLayoutBox) {
+            InlineLayoutBox iB = (InlineLayoutBox) box;
+            for (int i = 0; i < iB.getInlineChildCount(); i++) {
+                if (iB.getInlineChild(i) instanceof Box) {
+                    collectElementBoxes((Box) iB.getInlineChild(i), result);
+                }
+            }
+        }
+    }
+
+    private BoxRenderer render(String css, String body)
+    {
+        return RenderFixture.newRenderer(
+                "<html xmlns=\"http://www.w3.org/1999/xhtml\"><head><style type=\"text/css\">" + css +
+                "</style></head><body>" + body + "</body></html>", 200);
+    }
+
+    private void assertSameAsBoxWalk(String css, String body) throws Exception
+    {
+        BoxRenderer renderer = render(css, body);
+        Box root = renderer.render();
+        CssContext c = renderer.getLayoutContext();
+        assertSameAsBoxWalk(c, root.getLayer(), root.getWidth(), root.getHeight());
+    }
+
+    private void assertSameAsBoxWalk(CssContext c, Layer layer, int width, int height)
+    {
+        HitTestIndex index = layer.getHitTestIndex(c);
+        for (int x = -2; x < width + 2; x++) {
+            for (int y = -2; y < height + 2; y++) {
+                assertSame("(" + x + ", " + y + ")", find(c, layer, x, y, true), index.find(c, x, y, true));
+                assertSame("(" + x + ", " + y + ")", find(c, layer, x, y, false), index.find(c, x, y, false));
+            }
+        }
+
+        List children = layer.getChildren();
+        for (int i = 0; i < children.size(); i++) {
+            assertSameAsBoxWalk(c, (Layer) children.get(i), width, height);
+        }
+    }
+
+    // the search of Layer.find() without the index
+    private Box find(CssContext c, Layer layer, int x, int y, boolean findAnonymous)
+    {
+        List floats = layer.getFloats();
+        for (int i = 0; i < floats.size(); i++) {
+            Box result = ((Box) floats.get(i)).find(c, x, y, findAnonymous);
+            if (result != null) {
+                return result;
+            }
+        }
+        return layer.getMaster().find(c, x, y, findAnonymous);
+    }
+}
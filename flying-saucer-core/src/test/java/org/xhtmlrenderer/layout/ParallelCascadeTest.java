@@ -0,0 +1,108 @@
+package org.xhtmlrenderer.layout;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.xhtmlrenderer.render.Box;
+import org.xhtmlrenderer.swing.BoxRenderer;
+import org.xhtmlrenderer.swing.RenderFixture;
+
+public class ParallelCascadeTest
+        extends TestCase
+{
+    private String _document;
+
+    protected void setUp() throws Exception
+    {
+        // more elements than xr.layout.parallel-cascade-threshold, with
+        // selectors depending on ancestors, siblings and inherited values
+        StringBuffer document = new StringBuffer();
+        document.append("<html xmlns=\"http://www.w3.org/1999/xhtml\"><head><style type=\"text/css\">");
+        document.append("body { font-size: 12px; color: #333 }");
+        document.append(".section { margin: 0.5em; font-size: 1.1em }");
+        document.append(".section:first-child { border-top: 1px solid black }");
+        document.append(".section > ul li { list-style-type: square; padding-left: 1ex }");
+        document.append("li + li { color: blue }");
+        document.append("li.odd span { font-weight: bold; font-size: 80% }");
+        document.append(".hidden { display: none }");
+        document.append("div div p em { text-decoration: underline; letter-spacing: 1px }");
+        document.append("</style></head><body>");
+        for (int i = 0; i < 60; i++) {
+            document.append("<div class=\"section\"><p>Section <em>").append(i).append("</em></p><ul>");
+            for (int j = 0; j < 30; j++) {
+                document.append("<li class=\"").append(j % 2 == 0 ? "even" : "odd").append("\">");
+                document.append("item <span>").append(j).append("</span> <em>of</em> ").append(i);
+                document.append("</li>");
+            }
+            document.append("</ul><div><p>nested <em>text</em></p></div>");
+            document.append("<div class=\"hidden\"><p>hidden <em>text</em></p></div></div>");
+        }
+        document.append("</body></html>");
+
+        _document = document.toString();
+    }
+
+    public void testSameStylesOnExecutor() throws Exception
+    {
+        BoxRenderer expected = RenderFixture.newRenderer(_document, 800);
+        Box expectedRoot = expected.render();
+
+        CountingExecutor executor = new CountingExecutor();
+        try {
+            BoxRenderer actual = RenderFixture.newRenderer(_document, 800);
+            actual.getSharedContext().setLayoutExecutor(executor);
+            Box actualRoot = actual.render();
+
+            assertTrue(executor.cascadeTasks.get() > 1);
+            assertSameStyles(expected.getSharedContext(), expectedRoot.getElement(),
+                    actual.getSharedContext(), actualRoot.getElement());
+            assertEquals(expectedRoot.dump(expected.getLayoutContext(), "", Box.DUMP_LAYOUT),
+                    actualRoot.dump(actual.getLayoutContext(), "", Box.DUMP_LAYOUT));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private void assertSameStyles(SharedContext expectedContext, Element expected,
+            SharedContext actualContext, Element actual)
+    {
+        assertEquals(expected.getNodeName(), actual.getNodeName());
+        assertEquals(expectedContext.getStyle(expected).toString(), actualContext.getStyle(actual).toString());
+
+        Node e = expected.getFirstChild();
+        Node a = actual.getFirstChild();
+        while (e != null && a != null) {
+            if (e.getNodeType() == Node.ELEMENT_NODE) {
+                assertSameStyles(expectedContext, (Element) e, actualContext, (Element) a);
+            }
+            e = e.getNextSibling();
+            a = a.getNextSibling();
+        }
+        assertNull(e);
+        assertNull(a);
+    }
+
+    // counts the batches of styles computed by ParallelCascade
+    private static class CountingExecutor extends ThreadPoolExecutor {
+        final AtomicInteger cascadeTasks = new AtomicInteger();
+
+        public CountingExecutor() {
+            super(4, 4, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue());
+        }
+
+        protected RunnableFuture newTaskFor(Callable callable) {
+            if (callable.getClass().getEnclosingClass() == ParallelCascade.class) {
+                cascadeTasks.incrementAndGet();
+            }
+            return super.newTaskFor(callable);
+        }
+    }
+}
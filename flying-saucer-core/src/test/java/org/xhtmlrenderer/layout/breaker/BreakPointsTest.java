@@ -0,0 +1,83 @@
+package org.xhtmlrenderer.layout.breaker;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+
+public class BreakPointsTest extends TestCase {
+
+    public void testSort_KeepsFirstPointAtSamePosition() throws Exception {
+        BreakPoints points = new BreakPoints();
+        points.add(6);
+        points.add(12);
+        points.addHyphenated(3);
+        points.addHyphenated(6);
+        points.addHyphenated(9);
+        points.sort();
+
+        assertEquals("BreakPoints [3-, 6, 9-, 12]", points.toString());
+        assertEquals("-", points.getHyphen(0));
+        assertEquals("", points.getHyphen(1));
+    }
+
+
+    public void testClear_ResetsPointsAndHyphens() throws Exception {
+        BreakPoints points = new BreakPoints();
+        for (int i = 0; i < 100; i++) {
+            points.addHyphenated(i);
+        }
+        points.clear();
+        points.add(4);
+
+        assertEquals(1, points.size());
+        assertFalse(points.isHyphenated(0));
+    }
+
+
+    public void testSort_KeepsHyphenOfEachPoint() throws Exception {
+        BreakPoints points = new BreakPoints();
+        points.add(8, "=");
+        points.add(2);
+        points.addHyphenated(5);
+        points.sort();
+
+        assertEquals("BreakPoints [2, 5-, 8=]", points.toString());
+        assertEquals("=", points.getHyphen(2));
+    }
+
+
+    public void testAddAll_CopiesProvider() throws Exception {
+        List<BreakPoint> list = new ArrayList<BreakPoint>();
+        list.add(new BreakPoint(3));
+        BreakPoint hyphenated = new BreakPoint(7);
+        hyphenated.setHyphen("\u2010");
+        list.add(hyphenated);
+        BreakPoints points = new BreakPoints();
+        points.addAll(new ListBreakPointsProvider(list));
+
+        assertEquals(2, points.size());
+        assertFalse(points.isHyphenated(0));
+        assertEquals("\u2010", points.getHyphen(1));
+    }
+
+
+    public void testFill_SameAsProvider() throws Exception {
+        String text = "See http://www.example.com/a/b for the long-winded details.";
+        DefaultLineBreakingStrategy strategy = new DefaultLineBreakingStrategy();
+        BreakPoints points = new BreakPoints();
+        strategy.fillBreakPoints(text, "en", null, points);
+
+        BreakPointsProvider provider = strategy.getBreakPointsProvider(text, "en", null);
+        for (int i = 0; i < points.size(); i++) {
+            assertEquals(provider.next().getPosition(), points.getPosition(i));
+        }
+        assertEquals(-1, provider.next().getPosition());
+
+        // the iterator is reused
+        points.clear();
+        strategy.fillBreakPoints("two words", "en", null, points);
+        assertEquals("BreakPoints [4, 9]", points.toString());
+    }
+}
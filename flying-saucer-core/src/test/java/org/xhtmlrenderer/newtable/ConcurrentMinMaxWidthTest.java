@@ -0,0 +1,65 @@
+package org.xhtmlrenderer.newtable;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import junit.framework.TestCase;
+
+import org.xhtmlrenderer.render.Box;
+import org.xhtmlrenderer.swing.BoxRenderer;
+import org.xhtmlrenderer.swing.RenderFixture;
+
+public class ConcurrentMinMaxWidthTest
+        extends TestCase
+{
+    private String _document;
+
+    protected void setUp() throws Exception
+    {
+        // enough cells for CellMinMaxWidthCalculator, all sharing a few styles
+        StringBuffer document = new StringBuffer();
+        document.append("<html xmlns=\"http://www.w3.org/1999/xhtml\"><head><style type=\"text/css\">");
+        document.append("td { padding: 0.2em; border: 1px solid black; line-height: 1.4 }");
+        document.append(".a { font-size: 1.2em; letter-spacing: 1px }");
+        document.append(".b { white-space: nowrap; text-transform: uppercase }");
+        document.append("span { font-weight: bold; margin: 0 0.5ex }");
+        document.append("</style></head><body><table>");
+        for (int i = 0; i < 60; i++) {
+            document.append("<tr>");
+            for (int j = 0; j < 8; j++) {
+                document.append("<td class=\"").append(j % 2 == 0 ? "a" : "b").append("\">");
+                document.append("cell ").append(i * j).append(" <span>text ").append(i).append("</span>");
+                if (j == 3) {
+                    document.append("<div>a longer block of words in the cell</div>");
+                }
+                document.append("</td>");
+            }
+            document.append("</tr>");
+        }
+        document.append("</table></body></html>");
+
+        _document = document.toString();
+    }
+
+    private String layout(ExecutorService executor) throws Exception
+    {
+        BoxRenderer renderer = RenderFixture.newRenderer(_document, 800);
+        renderer.getSharedContext().setLayoutExecutor(executor);
+        Box root = renderer.render();
+        return root.dump(renderer.getLayoutContext(), "", Box.DUMP_LAYOUT);
+    }
+
+    public void testSameLayoutOnExecutor() throws Exception
+    {
+        String expected = layout(null);
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            for (int i = 0; i < 5; i++) {
+                assertEquals(expected, layout(executor));
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package org.xhtmlrenderer.protocols.data;
+
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+
+public class Base64InputStreamTest extends TestCase {
+
+    public void testDecode_Padding() throws Exception {
+        assertEquals("", decode(""));
+        assertEquals("f", decode("Zg=="));
+        assertEquals("fo", decode("Zm8="));
+        assertEquals("foo", decode("Zm9v"));
+        assertEquals("foob", decode("Zm9vYg=="));
+        // missing padding
+        assertEquals("fooba", decode("Zm9vYmE"));
+    }
+
+
+    public void testDecode_SkipsWhitespaceAndStopsAtPadding() throws Exception {
+        assertEquals("foobar", decode(" Zm9v\n  YmFy\r\n"));
+        assertEquals("fo", decode("Zm8=Zm9v"));
+    }
+
+
+    public void testDecode_Range() throws Exception {
+        String uri = "data:text/plain;base64,Zm9vYmFy";
+        byte[] data = Base64InputStream.decode(uri, uri.indexOf(',') + 1, uri.length());
+        assertEquals("foobar", new String(data, "US-ASCII"));
+    }
+
+
+    public void testRead_SingleBytes() throws Exception {
+        Base64InputStream in = new Base64InputStream("/+8=");
+        assertEquals(0xFF, in.read());
+        assertEquals(0xEF, in.read());
+        assertEquals(-1, in.read());
+    }
+
+
+    public void testDataUriCache_SharesContent() throws Exception {
+        String uri = "data:image/png;base64,Zm9vYmFy";
+        byte[] data = DataUriCache.getData(uri);
+        assertTrue(Arrays.equals("foobar".getBytes("US-ASCII"), data));
+        assertSame(data, DataUriCache.getData(new String(uri)));
+        assertEquals("a b", new String(DataUriCache.getData("data:,a%20b"), "US-ASCII"));
+    }
+
+
+    private static String decode(String s) throws Exception {
+        return new String(Base64InputStream.decode(s, 0, s.length()), "US-ASCII");
+    }
+}
@@ -0,0 +1,104 @@
+package org.xhtmlrenderer.resource;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+import junit.framework.TestCase;
+
+public class FileResourceCacheTest
+        extends TestCase
+{
+    private File _directory;
+
+    protected void setUp() throws Exception
+    {
+        _directory = File.createTempFile("resource-cache", "");
+        _directory.delete();
+    }
+
+    protected void tearDown() throws Exception
+    {
+        File[] files = _directory.listFiles();
+        for (int i = 0; files != null && i < files.length; i++) {
+            files[i].delete();
+        }
+        _directory.delete();
+    }
+
+    private static void store(ResourceCache cache, String uri, String body, int read) throws IOException
+    {
+        CachedResource resource = new CachedResource(uri, "\"" + uri + "\"", null, Long.MAX_VALUE, -1);
+        InputStream in = cache.put(resource, new ByteArrayInputStream(body.getBytes("UTF-8")));
+        byte[] buf = new byte[read];
+        int length = 0;
+        int count;
+        while (length < read && (count = in.read(buf, length, read - length)) != -1) {
+            length += count;
+        }
+        if (length == read) {
+            in.read();
+        }
+        in.close();
+    }
+
+    private static String read(ResourceCache cache, String uri) throws IOException
+    {
+        InputStream in = cache.openStream(cache.get(uri));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) != -1) {
+            out.write(b);
+        }
+        in.close();
+        return out.toString("UTF-8");
+    }
+
+    public void testStoreAndReload() throws Exception
+    {
+        FileResourceCache cache = new FileResourceCache(_directory, 1024);
+        store(cache, "http://example.com/a.css", "p { color: red }", 16);
+        assertNull(cache.get("http://example.com/b.css"));
+        assertEquals("p { color: red }", read(cache, "http://example.com/a.css"));
+
+        cache.update(cache.get("http://example.com/a.css").withExpires(42));
+
+        cache = new FileResourceCache(_directory, 1024);
+        CachedResource resource = cache.get("http://example.com/a.css");
+        assertEquals("\"http://example.com/a.css\"", resource.getETag());
+        assertEquals(42, resource.getExpires());
+        assertEquals(16, resource.getLength());
+        assertEquals("p { color: red }", read(cache, "http://example.com/a.css"));
+    }
+
+    public void testEviction() throws Exception
+    {
+        FileResourceCache cache = new FileResourceCache(_directory, 25);
+        store(cache, "http://example.com/1", "0123456789", 10);
+        store(cache, "http://example.com/2", "0123456789", 10);
+        read(cache, "http://example.com/1");
+        store(cache, "http://example.com/3", "0123456789", 10);
+
+        assertNotNull(cache.get("http://example.com/1"));
+        assertNull(cache.get("http://example.com/2"));
+        assertNotNull(cache.get("http://example.com/3"));
+        assertEquals(20, cache.getSize());
+
+        // too large to be stored
+        store(cache, "http://example.com/4", "01234567890123456789012345", 26);
+        assertNull(cache.get("http://example.com/4"));
+        assertEquals(20, cache.getSize());
+    }
+
+    public void testClosedEarly() throws Exception
+    {
+        FileResourceCache cache = new FileResourceCache(_directory, 1024);
+        // closed before the end, so the body is incomplete
+        store(cache, "http://example.com/a.css", "p { color: red }", 2);
+        assertNull(cache.get("http://example.com/a.css"));
+        assertEquals(0, cache.getSize());
+        assertEquals(0, _directory.listFiles().length);
+    }
+}
@@ -0,0 +1,118 @@
+package org.xhtmlrenderer.resource;
+
+import java.io.StringReader;
+
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMResult;
+import javax.xml.transform.sax.SAXSource;
+
+import junit.framework.TestCase;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.xml.sax.InputSource;
+import org.xml.sax.XMLReader;
+
+public class HTMLEntityFilterTest
+        extends TestCase
+{
+    private static final String XHTML_DOCTYPE =
+            "<!DOCTYPE html PUBLIC \"-//W3C//DTD XHTML 1.0 Strict//EN\" " +
+            "\"http://www.w3.org/TR/xhtml1/DTD/xhtml1-strict.dtd\">";
+
+    private static final String XHTML_NS = "http://www.w3.org/1999/xhtml";
+
+    private static String page(String body)
+    {
+        return XHTML_DOCTYPE +
+                "<html xmlns=\"" + XHTML_NS + "\"><head><title>t</title></head>" +
+                "<body>" + body + "</body></html>";
+    }
+
+    private static Document parseFiltered(String xml) throws Exception
+    {
+        XMLReader reader = new XMLResource.HTMLEntityFilter(XMLResource.newXMLReader());
+        reader.setEntityResolver(FSEntityResolver.instance());
+        reader.setFeature("http://xml.org/sax/features/namespaces", true);
+        reader.setFeature("http://xml.org/sax/features/use-entity-resolver2", true);
+
+        Transformer transformer = TransformerFactory.newInstance().newTransformer();
+        DOMResult result = new DOMResult();
+        transformer.transform(new SAXSource(reader, new InputSource(new StringReader(xml))), result);
+        return (Document) result.getNode();
+    }
+
+    private static Document parseWithDTD(String xml)
+    {
+        return XMLResource.load(new StringReader(xml)).getDocument();
+    }
+
+    private static Element byId(Document doc, String id)
+    {
+        return byId(doc.getDocumentElement(), id);
+    }
+
+    private static Element byId(Element element, String id)
+    {
+        if (id.equals(element.getAttribute("id"))) {
+            return element;
+        }
+        for (org.w3c.dom.Node n = element.getFirstChild(); n != null; n = n.getNextSibling()) {
+            if (n instanceof Element) {
+                Element found = byId((Element) n, id);
+                if (found != null) {
+                    return found;
+                }
+            }
+        }
+        return null;
+    }
+
+    public void testNamedReferencesInText() throws Exception
+    {
+        String xml = page("<p id=\"p\">a&nbsp;b&eacute;&mdash;&amp;&lt;</p>");
+
+        assertEquals("a bé—&<", byId(parseFiltered(xml), "p").getTextContent());
+        assertEquals(byId(parseWithDTD(xml), "p").getTextContent(),
+                byId(parseFiltered(xml), "p").getTextContent());
+    }
+
+
+    public void testNumericReferences() throws Exception
+    {
+        String xml = page("<p id=\"p\" title=\"x&#160;y&#xA0;z\">x&#160;y&#xA0;z</p>");
+        Element p = byId(parseFiltered(xml), "p");
+
+        assertEquals("x y z", p.getTextContent());
+        assertEquals("x y z", p.getAttribute("title"));
+    }
+
+
+    public void testNamedReferencesInAttributesAreDropped() throws Exception
+    {
+        String xml = page("<p id=\"p\" title=\"a&nbsp;b\">text</p>");
+
+        assertEquals("a b", byId(parseWithDTD(xml), "p").getAttribute("title"));
+        assertEquals("ab", byId(parseFiltered(xml), "p").getAttribute("title"));
+    }
+
+
+    public void testUnknownReferenceIsSkipped() throws Exception
+    {
+        String xml = page("<p id=\"p\">a&nosuchentity;b</p>");
+
+        assertEquals("ab", byId(parseFiltered(xml), "p").getTextContent());
+    }
+
+
+    public void testOtherDoctypesAreUnaffected() throws Exception
+    {
+        String xml = "<!DOCTYPE doc [<!ENTITY greeting \"hello\">]>" +
+                "<doc id=\"d\" title=\"&greeting;\">&greeting;</doc>";
+        Document doc = parseFiltered(xml);
+
+        assertEquals("hello", doc.getDocumentElement().getTextContent());
+        assertEquals("hello", doc.getDocumentElement().getAttribute("title"));
+    }
+}
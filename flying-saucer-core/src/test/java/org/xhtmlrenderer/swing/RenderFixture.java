@@ -0,0 +1,32 @@
+package org.xhtmlrenderer.swing;
+
+import java.io.StringReader;
+
+import org.w3c.dom.Document;
+import org.xhtmlrenderer.resource.XMLResource;
+
+/**
+ * Builds {@link BoxRenderer}s for documents given inline in a test, without
+ * writing them to a file first.
+ */
+public class RenderFixture
+{
+    private RenderFixture()
+    {
+    }
+
+    public static Document parse(String xhtml)
+    {
+        return XMLResource.load(new StringReader(xhtml)).getDocument();
+    }
+
+    public static BoxRenderer newRenderer(String xhtml, int width)
+    {
+        return newRenderer(parse(xhtml), width);
+    }
+
+    public static BoxRenderer newRenderer(Document doc, int width)
+    {
+        return new BoxRenderer(doc, null, width);
+    }
+}
@@ -0,0 +1,174 @@
+package org.xhtmlrenderer.swing;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public class TileCacheTest
+        extends TestCase
+{
+    private static final int SIZE = TileCache.TILE_SIZE;
+
+    private static final Dimension PANEL_SIZE = new Dimension(4 * SIZE, 4 * SIZE);
+
+    private static class CountingRenderer implements TileCache.TileRenderer
+    {
+        final List rendered = new ArrayList();
+
+        // paints squares of 16 pixels in colors depending on their position
+        public void renderTile(Graphics2D g, Rectangle bounds)
+        {
+            rendered.add(new Rectangle(bounds));
+            paint(g, bounds);
+        }
+
+        static void paint(Graphics2D g, Rectangle bounds)
+        {
+            for (int x = bounds.x; x < bounds.x + bounds.width; x += 16) {
+                for (int y = bounds.y; y < bounds.y + bounds.height; y += 16) {
+                    g.setColor(new Color((x * 7 + y * 13) & 0xFFFFFF));
+                    g.fillRect(x, y, 16, 16);
+                }
+            }
+        }
+    }
+
+    private static BufferedImage paint(TileCache cache, Rectangle clip, Dimension panelSize,
+            double scale, TileCache.TileRenderer renderer)
+    {
+        BufferedImage result = new BufferedImage(
+                (int) (PANEL_SIZE.width * scale), (int) (PANEL_SIZE.height * scale), BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = result.createGraphics();
+        try {
+            g.scale(scale, scale);
+            g.setClip(clip);
+            cache.paint(g, clip, panelSize, renderer);
+        } finally {
+            g.dispose();
+        }
+        return result;
+    }
+
+    private static void assertSameImage(BufferedImage expected, BufferedImage actual, Rectangle clip)
+    {
+        for (int x = clip.x; x < clip.x + clip.width; x++) {
+            for (int y = clip.y; y < clip.y + clip.height; y++) {
+                assertEquals("(" + x + ", " + y + ")", expected.getRGB(x, y), actual.getRGB(x, y));
+            }
+        }
+    }
+
+    public void testPaintsLikeRenderer()
+    {
+        Rectangle clip = new Rectangle(100, 200, 300, 400);
+        BufferedImage expected = new BufferedImage(PANEL_SIZE.width, PANEL_SIZE.height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = expected.createGraphics();
+        CountingRenderer.paint(g, new Rectangle(PANEL_SIZE));
+        g.dispose();
+
+        TileCache cache = new TileCache(16);
+        CountingRenderer renderer = new CountingRenderer();
+        assertSameImage(expected, paint(cache, clip, PANEL_SIZE, 1.0, renderer), clip);
+        // columns 0 and 1, rows 0 to 2
+        assertEquals(6, renderer.rendered.size());
+        assertTrue(renderer.rendered.contains(new Rectangle(SIZE, 2 * SIZE, SIZE, SIZE)));
+
+        // painted from the cached tiles
+        renderer.rendered.clear();
+        assertSameImage(expected, paint(cache, clip, PANEL_SIZE, 1.0, renderer), clip);
+        assertEquals(0, renderer.rendered.size());
+    }
+
+
+    public void testInvalidate()
+    {
+        TileCache cache = new TileCache(16);
+        CountingRenderer renderer = new CountingRenderer();
+        Rectangle clip = new Rectangle(0, 0, 2 * SIZE, 2 * SIZE);
+        paint(cache, clip, PANEL_SIZE, 1.0, renderer);
+        assertEquals(4, renderer.rendered.size());
+
+        // only the tiles intersecting the rectangle are rendered again
+        renderer.rendered.clear();
+        cache.invalidate(new Rectangle(SIZE - 10, 10, 20, 20));
+        paint(cache, clip, PANEL_SIZE, 1.0, renderer);
+        assertEquals(2, renderer.rendered.size());
+        assertTrue(renderer.rendered.contains(new Rectangle(0, 0, SIZE, SIZE)));
+        assertTrue(renderer.rendered.contains(new Rectangle(SIZE, 0, SIZE, SIZE)));
+
+        renderer.rendered.clear();
+        cache.invalidate(new Rectangle());
+        paint(cache, clip, PANEL_SIZE, 1.0, renderer);
+        assertEquals(0, renderer.rendered.size());
+
+        cache.invalidate();
+        paint(cache, clip, PANEL_SIZE, 1.0, renderer);
+        assertEquals(4, renderer.rendered.size());
+    }
+
+
+    public void testNotCachedIfInvalidatedWhileRendering()
+    {
+        final TileCache cache = new TileCache(16);
+        Rectangle clip = new Rectangle(0, 0, SIZE, SIZE);
+        paint(cache, clip, PANEL_SIZE, 1.0, new TileCache.TileRenderer() {
+            public void renderTile(Graphics2D g, Rectangle bounds) {
+                cache.invalidate(bounds);
+            }
+        });
+
+        CountingRenderer renderer = new CountingRenderer();
+        paint(cache, clip, PANEL_SIZE, 1.0, renderer);
+        assertEquals(1, renderer.rendered.size());
+    }
+
+
+    public void testDropsLeastRecentlyPainted()
+    {
+        TileCache cache = new TileCache(2);
+        CountingRenderer renderer = new CountingRenderer();
+        Rectangle first = new Rectangle(0, 0, SIZE, SIZE);
+        Rectangle second = new Rectangle(SIZE, 0, SIZE, SIZE);
+        Rectangle third = new Rectangle(2 * SIZE, 0, SIZE, SIZE);
+        paint(cache, first, PANEL_SIZE, 1.0, renderer);
+        paint(cache, second, PANEL_SIZE, 1.0, renderer);
+        paint(cache, first, PANEL_SIZE, 1.0, renderer);
+        paint(cache, third, PANEL_SIZE, 1.0, renderer);
+        assertEquals(3, renderer.rendered.size());
+
+        // the second tile was dropped, the first one is still cached
+        renderer.rendered.clear();
+        paint(cache, first, PANEL_SIZE, 1.0, renderer);
+        assertEquals(0, renderer.rendered.size());
+        paint(cache, second, PANEL_SIZE, 1.0, renderer);
+        assertEquals(1, renderer.rendered.size());
+    }
+
+
+    public void testDropsTilesWhenSizeOrScaleChanges()
+    {
+        TileCache cache = new TileCache(16);
+        CountingRenderer renderer = new CountingRenderer();
+        Rectangle clip = new Rectangle(0, 0, SIZE, SIZE);
+        paint(cache, clip, PANEL_SIZE, 1.0, renderer);
+        paint(cache, clip, new Dimension(PANEL_SIZE.width, PANEL_SIZE.height + 1), 1.0, renderer);
+        assertEquals(2, renderer.rendered.size());
+
+        // tiles are rendered at the device scale
+        BufferedImage expected = new BufferedImage(2 * SIZE, 2 * SIZE, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = expected.createGraphics();
+        g.scale(2.0, 2.0);
+        CountingRenderer.paint(g, clip);
+        g.dispose();
+
+        BufferedImage actual = paint(cache, clip, PANEL_SIZE, 2.0, renderer);
+        assertEquals(3, renderer.rendered.size());
+        assertSameImage(expected, actual, new Rectangle(0, 0, 2 * SIZE, 2 * SIZE));
+    }
+}
@@ -19,8 +19,8 @@
 package org.xhtmlrenderer.fop;
 
 import java.text.BreakIterator;
-import java.util.Arrays;
-import java.util.TreeSet;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.apache.fop.hyphenation.Hyphenation;
 import org.apache.fop.hyphenation.HyphenationTree;
@@ -29,61 +29,70 @@ import org.xhtmlrenderer.css.constants.IdentValue;
 import org.xhtmlrenderer.css.style.CalculatedStyle;
 import org.xhtmlrenderer.fop.nbsp.NonBreakPointsEnhancer;
 import org.xhtmlrenderer.layout.breaker.BreakPoint;
+import org.xhtmlrenderer.layout.breaker.BreakPoints;
 import org.xhtmlrenderer.layout.breaker.BreakPointsProvider;
-import org.xhtmlrenderer.layout.breaker.LineBreakingStrategy;
+import org.xhtmlrenderer.layout.breaker.FillingLineBreakingStrategy;
 import org.xhtmlrenderer.layout.breaker.ListBreakPointsProvider;
 import org.xhtmlrenderer.layout.breaker.UrlAwareLineBreakIterator;
 
 /**
  * @author Lukas Zaruba, lukas.zaruba@gmail.com
  */
-public class FOPLineBreakingStrategy implements LineBreakingStrategy {
+public class FOPLineBreakingStrategy implements FillingLineBreakingStrategy {
 	
 	private static final int SOFT_HYPHEN = '\u00AD';
-	
-	private TreeSet<BreakPoint> getPoints(String text, String lang, CalculatedStyle style) {
+
+	private static final String HYPHEN = "\u002D";
+
+	private static final ThreadLocal<UrlAwareLineBreakIterator> ITERATOR = new ThreadLocal<UrlAwareLineBreakIterator>() {
+		@Override
+		protected UrlAwareLineBreakIterator initialValue() {
+			return new UrlAwareLineBreakIterator();
+		}
+	};
+
+	@Override
+	public void fillBreakPoints(String text, String lang, CalculatedStyle style, BreakPoints result) {
 		text = new NonBreakPointsEnhancer().enhance(text, lang);
-		BreakIterator breakIt = new UrlAwareLineBreakIterator();
+		BreakIterator breakIt = ITERATOR.get();
 		breakIt.setText(text);
-		TreeSet<BreakPoint> points = new TreeSet<BreakPoint>();
 		int p = BreakIterator.DONE;
 		while ((p = breakIt.next()) != BreakIterator.DONE) {
-			points.add(new BreakPoint(p));
+			result.add(p);
 		}
 		if (style.getHyphens() == IdentValue.NONE) {
-			return points;
+			return;
 		}
 		if (style.getHyphens() == IdentValue.MANUAL) {
 			int index = text.indexOf(SOFT_HYPHEN);
 			while (index >= 0) {
-				BreakPoint point = new BreakPoint(index);
-				addHyphen(point);
-				points.add(point);
+				result.add(index, HYPHEN);
 			    index = text.indexOf(SOFT_HYPHEN, index + 1);
 			}
-			return points;
-		}
-		if (style.getHyphens() == IdentValue.AUTO) {
+		} else if (style.getHyphens() == IdentValue.AUTO) {
 			HyphenationTree tree = Hyphenator.getFopHyphenationTree(lang);
 			Hyphenation s = tree.hyphenate(text, 2, 2);
-			if (s == null) return points;
-			for (int i = 0; i < s.getHyphenationPoints().length; i++) {
-				int position = s.getHyphenationPoints()[i];
-				BreakPoint point = new BreakPoint(position);
-				addHyphen(point);
-				points.add(point);
+			if (s != null) {
+				int[] points = s.getHyphenationPoints();
+				for (int i = 0; i < points.length; i++) {
+					result.add(points[i], HYPHEN);
+				}
 			}
 		}
-		return points;
+		result.sort();
 	}
 
 	@Override
 	public BreakPointsProvider getBreakPointsProvider(String text, String lang, CalculatedStyle style) {
-		return new ListBreakPointsProvider(Arrays.asList(getPoints(text, lang, style).toArray(new BreakPoint[0])));
-	}
-	
-	private void addHyphen(BreakPoint p) {
-		p.setHyphen("\u002D");
+		BreakPoints points = new BreakPoints();
+		fillBreakPoints(text, lang, style, points);
+		List<BreakPoint> result = new ArrayList<BreakPoint>(points.size());
+		for (int i = 0; i < points.size(); i++) {
+			BreakPoint point = new BreakPoint(points.getPosition(i));
+			point.setHyphen(points.getHyphen(i));
+			result.add(point);
+		}
+		return new ListBreakPointsProvider(result);
 	}
-	
+
 }
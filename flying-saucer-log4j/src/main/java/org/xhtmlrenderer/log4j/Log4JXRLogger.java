@@ -24,10 +24,10 @@ import java.util.Map;
 import java.util.logging.Level;
 
 import org.apache.log4j.Logger;
+import org.xhtmlrenderer.util.LevelCheckingXRLogger;
 import org.xhtmlrenderer.util.XRLog;
-import org.xhtmlrenderer.util.XRLogger;
 
-public class Log4JXRLogger implements XRLogger {
+public class Log4JXRLogger implements LevelCheckingXRLogger {
     private static final String DEFAULT_LOGGER_NAME = "org.xhtmlrenderer.other";
     
     private static final Map LOGGER_NAME_MAP;
@@ -59,6 +59,10 @@ public class Log4JXRLogger implements XRLogger {
         Logger.getLogger(getLoggerName(where)).log(toLog4JLevel(level), msg, th);
     }
     
+    public boolean isLogLevelEnabled(String where, Level level) {
+        return Logger.getLogger(getLoggerName(where)).isEnabledFor(toLog4JLevel(level));
+    }
+    
     private org.apache.log4j.Level toLog4JLevel(Level level) {
         if (level == Level.SEVERE) {
             return org.apache.log4j.Level.ERROR;
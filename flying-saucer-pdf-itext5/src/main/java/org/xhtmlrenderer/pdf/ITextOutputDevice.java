@@ -32,9 +32,11 @@ import java.awt.geom.Line2D;
 import java.awt.geom.NoninvertibleTransformException;
 import java.awt.geom.PathIterator;
 import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
 import java.io.IOException;
 import java.net.URI;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
@@ -87,6 +89,7 @@ import com.itextpdf.text.pdf.PdfDestination;
 import com.itextpdf.text.pdf.PdfImportedPage;
 import com.itextpdf.text.pdf.PdfName;
 import com.itextpdf.text.pdf.PdfOutline;
+import com.itextpdf.text.pdf.PdfPatternPainter;
 import com.itextpdf.text.pdf.PdfReader;
 import com.itextpdf.text.pdf.PdfTextArray;
 import com.itextpdf.text.pdf.PdfWriter;
@@ -100,6 +103,11 @@ public class ITextOutputDevice extends AbstractOutputDevice implements OutputDev
     private static final int FILL = 1;
     private static final int STROKE = 2;
     private static final int CLIP = 3;
+    private static final int TILE_FILL = 4;
+
+    // Drawing an image takes a few bytes of (compressed) page content, so a
+    // pattern, which is a separate object, only pays off for many copies
+    private static final int MIN_PATTERN_TILES = 64;
 
     private static AffineTransform IDENTITY = new AffineTransform();
 
@@ -125,13 +133,29 @@ public class ITextOutputDevice extends AbstractOutputDevice implements OutputDev
 
     private Area _clip;
 
+    // A filled rectangle which hasn't been written yet, in page coordinates,
+    // so that adjacent rectangles of the same color, like the borders of
+    // neighbouring table cells, can be written as one.  Everything else that
+    // writes to the page has to call flushPendingRect() first.
+    private Color _pendingRectColor;
+    private float _pendingX1;
+    private float _pendingY1;
+    private float _pendingX2;
+    private float _pendingY2;
+
     private SharedContext _sharedContext;
     private float _dotsPerPoint;
 
+    private final boolean _replaceMissingCharacters;
+    private final char _missingCharacterReplacement;
+
     private PdfWriter _writer;
 
     private Map _readerCache = new HashMap();
 
+    // List of the image, its size and the pattern matrix -> PdfPatternPainter
+    private Map _tilePatterns = new HashMap();
+
     private PdfDestination _defaultDestination;
 
     private List _bookmarks = new ArrayList();
@@ -146,8 +170,13 @@ public class ITextOutputDevice extends AbstractOutputDevice implements OutputDev
 
     private Set _linkTargetAreas;
 
+    // Boxes whose link area has been calculated on the current page
+    private Set _linkBoxes;
+
     public ITextOutputDevice(float dotsPerPoint) {
         _dotsPerPoint = dotsPerPoint;
+        _replaceMissingCharacters = Configuration.isTrue("xr.renderer.replace-missing-characters", false);
+        _missingCharacterReplacement = Configuration.valueAsChar("xr.renderer.missing-character-replacement", '#');
     }
 
     public void setWriter(PdfWriter writer) {
@@ -183,9 +212,11 @@ public class ITextOutputDevice extends AbstractOutputDevice implements OutputDev
         }
 
         _linkTargetAreas = new HashSet();
+        _linkBoxes = new HashSet();
     }
 
     public void finishPage() {
+        flushPendingRect();
         _currentPage.restoreState();
     }
 
@@ -200,6 +231,11 @@ public class ITextOutputDevice extends AbstractOutputDevice implements OutputDev
         processLink(c, box);
     }
 
+    /**
+     * Returns the area of all adjacent sibling boxes of the link element of
+     * <code>box</code>.  The boxes are remembered so the area is only
+     * calculated once per page, when the first of them is painted.
+     */
     private com.itextpdf.text.Rectangle calcTotalLinkArea(RenderingContext c, Box box) {
         Box current = box;
         while (true) {
@@ -212,10 +248,12 @@ public class ITextOutputDevice extends AbstractOutputDevice implements OutputDev
         }
 
         com.itextpdf.text.Rectangle result = createLocalTargetArea(c, current, true);
+        _linkBoxes.add(current);
 
         current = current.getNextSibling();
         while (current != null && current.getElement() == box.getElement()) {
             result = add(result, createLocalTargetArea(c, current, true));
+            _linkBoxes.add(current);
 
             current = current.getNextSibling();
         }
@@ -232,23 +270,23 @@ public class ITextOutputDevice extends AbstractOutputDevice implements OutputDev
         return new com.itextpdf.text.Rectangle(llx, lly, urx, ury);
     }
 
-    private String createRectKey(com.itextpdf.text.Rectangle rect) {
-        return rect.getLeft() + ":" + rect.getBottom() + ":" + rect.getRight() + ":" + rect.getTop();
+    private Object createRectKey(com.itextpdf.text.Rectangle rect) {
+        return Arrays.asList(new Float[] {
+                new Float(rect.getLeft()), new Float(rect.getBottom()),
+                new Float(rect.getRight()), new Float(rect.getTop()) });
     }
 
     private com.itextpdf.text.Rectangle checkLinkArea(RenderingContext c, Box box) {
         com.itextpdf.text.Rectangle targetArea = calcTotalLinkArea(c, box);
-        String key = createRectKey(targetArea);
-        if (_linkTargetAreas.contains(key)) {
+        if (! _linkTargetAreas.add(createRectKey(targetArea))) {
             return null;
         }
-        _linkTargetAreas.add(key);
         return targetArea;
     }
 
     private void processLink(RenderingContext c, Box box) {
         Element elem = box.getElement();
-        if (elem != null) {
+        if (elem != null && ! _linkBoxes.contains(box)) {
             NamespaceHandler handler = _sharedContext.getNamespaceHandler();
             String uri = handler.getLinkUri(elem);
             if (uri != null) {
@@ -258,6 +296,11 @@ public class ITextOutputDevice extends AbstractOutputDevice implements OutputDev
                     if (target != null) {
                         PdfDestination dest = createDestination(c, target);
 
+                        com.itextpdf.text.Rectangle targetArea = checkLinkArea(c, box);
+                        if (targetArea == null) {
+                            return;
+                        }
+
                         PdfAction action = new PdfAction();
                         if (!"".equals(handler.getAttributeValue(elem, "onclick"))) {
                             action = PdfAction.javaScript(handler.getAttributeValue(elem, "onclick"), _writer);
@@ -266,11 +309,6 @@ public class ITextOutputDevice extends AbstractOutputDevice implements OutputDev
                             action.put(PdfName.D, dest);
                         }
 
-                        com.itextpdf.text.Rectangle targetArea = checkLinkArea(c, box);
-                        if (targetArea == null) {
-                            return;
-                        }
-
                         targetArea.setBorder(0);
                         targetArea.setBorderWidth(0);
 
@@ -430,7 +468,67 @@ public class ITextOutputDevice extends AbstractOutputDevice implements OutputDev
     }
 
     public void fill(Shape s) {
-        followPath(s, FILL);
+        if (s instanceof Rectangle2D && isRectilinear(_transform)) {
+            fillRectangle((Rectangle2D) s);
+        } else {
+            followPath(s, FILL);
+        }
+    }
+
+    private static boolean isRectilinear(AffineTransform transform) {
+        return (transform.getType() & (AffineTransform.TYPE_GENERAL_ROTATION |
+                AffineTransform.TYPE_QUADRANT_ROTATION | AffineTransform.TYPE_GENERAL_TRANSFORM)) == 0;
+    }
+
+    /**
+     * Fills a rectangle with a single <code>re</code> operator.  The
+     * rectangle is kept pending, and merged with the following ones if they
+     * have the same color and continue it horizontally or vertically.
+     */
+    private void fillRectangle(Rectangle2D rect) {
+        float[] corners = new float[] {
+                (float) rect.getMinX(), (float) rect.getMinY(),
+                (float) rect.getMaxX(), (float) rect.getMaxY() };
+        _transform.transform(corners, 0, corners, 0, 2);
+        float x1 = Math.min(corners[0], corners[2]);
+        float x2 = Math.max(corners[0], corners[2]);
+        float y1 = normalizeY(Math.max(corners[1], corners[3]));
+        float y2 = normalizeY(Math.min(corners[1], corners[3]));
+        if (x1 == x2 || y1 == y2) {
+            return;
+        }
+
+        if (_color.equals(_pendingRectColor)) {
+            if (y1 == _pendingY1 && y2 == _pendingY2 && x1 <= _pendingX2 && x2 >= _pendingX1) {
+                _pendingX1 = Math.min(x1, _pendingX1);
+                _pendingX2 = Math.max(x2, _pendingX2);
+                return;
+            }
+            if (x1 == _pendingX1 && x2 == _pendingX2 && y1 <= _pendingY2 && y2 >= _pendingY1) {
+                _pendingY1 = Math.min(y1, _pendingY1);
+                _pendingY2 = Math.max(y2, _pendingY2);
+                return;
+            }
+        }
+
+        flushPendingRect();
+        _pendingRectColor = _color;
+        _pendingX1 = x1;
+        _pendingY1 = y1;
+        _pendingX2 = x2;
+        _pendingY2 = y2;
+    }
+
+    private void flushPendingRect() {
+        if (_pendingRectColor != null) {
+            if (!_pendingRectColor.equals(_fillColor)) {
+                _fillColor = _pendingRectColor;
+                _currentPage.setColorFill(_fillColor);
+            }
+            _currentPage.rectangle(_pendingX1, _pendingY1, _pendingX2 - _pendingX1, _pendingY2 - _pendingY1);
+            _currentPage.fill();
+            _pendingRectColor = null;
+        }
     }
 
     public void fillRect(int x, int y, int width, int height) {
@@ -473,11 +571,12 @@ public class ITextOutputDevice extends AbstractOutputDevice implements OutputDev
     }
 
     public void drawString(String s, float x, float y, JustificationInfo info) {
-        if (Configuration.isTrue("xr.renderer.replace-missing-characters", false)) {
+        if (_replaceMissingCharacters) {
             s = replaceMissingCharacters(s);
         }
         if (s.length() == 0)
             return;
+        flushPendingRect();
         PdfContentByte cb = _currentPage;
         ensureFillColor();
         AffineTransform at = (AffineTransform) getTransform().clone();
@@ -528,13 +627,15 @@ public class ITextOutputDevice extends AbstractOutputDevice implements OutputDev
 
     private String replaceMissingCharacters(String string) {
         char[] charArr = string.toCharArray();
-        char replacementCharacter = Configuration.valueAsChar("xr.renderer.missing-character-replacement", '#');
+        char replacementCharacter = _missingCharacterReplacement;
 
         // first check to see if the replacement character even exists in the
         // given font. If not, then do nothing.
         if (!_font.getFontDescription().getFont().charExists(replacementCharacter)) {
-            XRLog.render(Level.INFO, "Missing replacement character [" + replacementCharacter + ":" + (int) replacementCharacter
-                    + "]. No replacement will occur.");
+            if (XRLog.isLoggable(XRLog.RENDER, Level.INFO)) {
+                XRLog.render(Level.INFO, "Missing replacement character [" + replacementCharacter + ":" + (int) replacementCharacter
+                        + "]. No replacement will occur.");
+            }
             return string;
         }
 
@@ -543,8 +644,10 @@ public class ITextOutputDevice extends AbstractOutputDevice implements OutputDev
         for (int i = 0; i < charArr.length; i++) {
             if (!(charArr[i] == ' ' || charArr[i] == '\u00a0' || charArr[i] == '\u3000' || _font.getFontDescription().getFont()
                     .charExists(charArr[i]))) {
-                XRLog.render(Level.INFO, "Missing character [" + charArr[i] + ":" + (int) charArr[i] + "] in string [" + string
-                        + "]. Replacing with '" + replacementCharacter + "'");
+                if (XRLog.isLoggable(XRLog.RENDER, Level.INFO)) {
+                    XRLog.render(Level.INFO, "Missing character [" + charArr[i] + ":" + (int) charArr[i] + "] in string [" + string
+                            + "]. Replacing with '" + replacementCharacter + "'");
+                }
                 charArr[i] = replacementCharacter;
             }
         }
@@ -590,6 +693,7 @@ public class ITextOutputDevice extends AbstractOutputDevice implements OutputDev
     }
 
     public PdfContentByte getCurrentPage() {
+        flushPendingRect();
         return _currentPage;
     }
 
@@ -598,6 +702,8 @@ public class ITextOutputDevice extends AbstractOutputDevice implements OutputDev
         if (s == null)
             return;
 
+        flushPendingRect();
+
         if (drawType == STROKE) {
             if (!(_stroke instanceof BasicStroke)) {
                 s = _stroke.createStrokedShape(s);
@@ -612,6 +718,9 @@ public class ITextOutputDevice extends AbstractOutputDevice implements OutputDev
         } else if (drawType == FILL) {
             ensureFillColor();
         }
+        if (drawType == TILE_FILL) {
+            drawType = FILL;
+        }
 
         PathIterator points;
         if (drawType == CLIP) {
@@ -797,6 +906,7 @@ public class ITextOutputDevice extends AbstractOutputDevice implements OutputDev
     }
 
     public void setClip(Shape s) {
+        flushPendingRect();
         PdfContentByte cb = _currentPage;
         cb.restoreState();
         cb.saveState();
@@ -823,7 +933,7 @@ public class ITextOutputDevice extends AbstractOutputDevice implements OutputDev
         } else {
             Image image = ((ITextFSImage) fsImage).getImage();
 
-            if (fsImage.getHeight() <= 0 || fsImage.getWidth() <= 0) {
+            if (image == null || fsImage.getHeight() <= 0 || fsImage.getWidth() <= 0) {
                 return;
             }
 
@@ -839,6 +949,7 @@ public class ITextOutputDevice extends AbstractOutputDevice implements OutputDev
             double[] mx = new double[6];
             inverse.getMatrix(mx);
 
+            flushPendingRect();
             try {
                 _currentPage.addImage(image, (float) mx[0], (float) mx[1], (float) mx[2], (float) mx[3], (float) mx[4], (float) mx[5]);
             } catch (DocumentException e) {
@@ -847,6 +958,68 @@ public class ITextOutputDevice extends AbstractOutputDevice implements OutputDev
         }
     }
 
+    protected boolean fillWithTiles(FSImage fsImage, int x, int y, Rectangle bounds) {
+        if (fsImage instanceof PDFAsImage) {
+            return false;
+        }
+        int width = fsImage.getWidth();
+        int height = fsImage.getHeight();
+        long columns = (bounds.width + width - 1) / width;
+        long rows = (bounds.height + height - 1) / height;
+        if (columns * rows < MIN_PATTERN_TILES) {
+            return false;
+        }
+        Image image = ((ITextFSImage) fsImage).getImage();
+        if (image == null) {
+            return true;
+        }
+
+        // pattern space is the image space flipped upright, with the origin
+        // at the bottom left corner of the tile at (x, y)
+        AffineTransform at = normalizeMatrix(_transform);
+        at.translate(x, y + height);
+        at.scale(1, -1);
+
+        double[] mx = new double[6];
+        at.getMatrix(mx);
+
+        // Move the origin to the tile nearest to the page origin, so
+        // backgrounds tiled in step share the pattern
+        if (mx[1] == 0 && mx[2] == 0) {
+            double stepX = Math.abs(width * mx[0]);
+            double stepY = Math.abs(height * mx[3]);
+            mx[4] = Math.round((mx[4] - Math.floor(mx[4] / stepX) * stepX) * 1000) / 1000.0;
+            mx[5] = Math.round((mx[5] - Math.floor(mx[5] / stepY) * stepY) * 1000) / 1000.0;
+        }
+
+        List key = new ArrayList(9);
+        key.add(image);
+        key.add(new Integer(width));
+        key.add(new Integer(height));
+        for (int i = 0; i < mx.length; i++) {
+            key.add(new Double(mx[i]));
+        }
+
+        PdfPatternPainter pattern = (PdfPatternPainter) _tilePatterns.get(key);
+        if (pattern == null) {
+            pattern = _currentPage.createPattern(width, height, width, height);
+            try {
+                pattern.addImage(image, width, 0, 0, height, 0, 0);
+            } catch (DocumentException e) {
+                throw new XRRuntimeException(e.getMessage(), e);
+            }
+            pattern.setPatternMatrix((float) mx[0], (float) mx[1], (float) mx[2], (float) mx[3], (float) mx[4], (float) mx[5]);
+            _tilePatterns.put(key, pattern);
+        }
+
+        flushPendingRect();
+        _currentPage.setPatternFill(pattern);
+        // the fill color has to be set again before the next solid fill
+        _fillColor = null;
+        followPath(bounds, TILE_FILL);
+        return true;
+    }
+
     private void drawPDFAsImage(PDFAsImage image, int x, int y) {
         URI uri = image.getURI();
         PdfReader reader = null;
@@ -874,6 +1047,7 @@ public class ITextOutputDevice extends AbstractOutputDevice implements OutputDev
         mx[0] = image.scaleWidth();
         mx[3] = image.scaleHeight();
 
+        flushPendingRect();
         _currentPage.restoreState();
         _currentPage.addTemplate(page, (float) mx[0], (float) mx[1], (float) mx[2], (float) mx[3], (float) mx[4], (float) mx[5]);
         _currentPage.saveState();
@@ -47,6 +47,7 @@ import org.w3c.dom.Node;
 import org.xhtmlrenderer.context.StyleReference;
 import org.xhtmlrenderer.css.style.CalculatedStyle;
 import org.xhtmlrenderer.css.style.derived.RectPropertySet;
+import org.xhtmlrenderer.event.RenderMetricsListener;
 import org.xhtmlrenderer.extend.NamespaceHandler;
 import org.xhtmlrenderer.extend.UserInterface;
 import org.xhtmlrenderer.layout.BoxBuilder;
@@ -135,7 +136,11 @@ public class ITextRenderer {
     }
 
     private Document loadDocument(final String uri) {
-        return _sharedContext.getUac().getXMLResource(uri).getDocument();
+        long start = System.nanoTime();
+        Document result = _sharedContext.getUac().getXMLResource(uri).getDocument();
+        _sharedContext.getMetricsListener().phaseCompleted(
+                RenderMetricsListener.PHASE_PARSE, System.nanoTime() - start);
+        return result;
     }
 
     public void setDocument(String uri) {
@@ -157,8 +162,11 @@ public class ITextRenderer {
     }
 
     public void setDocumentFromString(String content, String baseUrl) {
+        long start = System.nanoTime();
         InputSource is = new InputSource(new BufferedReader(new StringReader(content)));
         Document dom = XMLResource.load(is).getDocument();
+        _sharedContext.getMetricsListener().phaseCompleted(
+                RenderMetricsListener.PHASE_PARSE, System.nanoTime() - start);
 
         setDocument(dom, baseUrl);
     }
@@ -204,13 +212,19 @@ public class ITextRenderer {
     }
 
     public void layout() {
+        RenderMetricsListener metrics = _sharedContext.getMetricsListener();
+        long start = System.nanoTime();
         LayoutContext c = newLayoutContext();
         BlockBox root = BoxBuilder.createRootBox(c, _doc);
         root.setContainingBlock(new ViewportBox(getInitialExtents(c)));
         root.layout(c);
+        long end = System.nanoTime();
+        metrics.phaseCompleted(RenderMetricsListener.PHASE_LAYOUT, end - start);
         _dim = root.getLayer().getPaintingDimension(c);
         root.getLayer().trimEmptyPages(c, _dim.height);
         root.getLayer().layoutPages(c);
+        metrics.phaseCompleted(RenderMetricsListener.PHASE_PAGE_LAYOUT, System.nanoTime() - end);
+        metrics.count(RenderMetricsListener.COUNT_PAGES, root.getLayer().getPages().size());
         _root = root;
     }
 
@@ -285,6 +299,7 @@ public class ITextRenderer {
      * @throws IOException
      */
     public void createPDF(OutputStream os, boolean finish, int initialPageNo) throws DocumentException, IOException {
+        long start = System.nanoTime();
         List pages = _root.getLayer().getPages();
 
         RenderingContext c = newRenderingContext();
@@ -316,6 +331,9 @@ public class ITextRenderer {
             fireOnClose();
             doc.close();
         }
+
+        _sharedContext.getMetricsListener().phaseCompleted(
+                RenderMetricsListener.PHASE_PDF_WRITE, System.nanoTime() - start);
     }
     
     private int calculateWidth(RenderingContext c, PageBox firstPage) {
@@ -407,6 +425,7 @@ public class ITextRenderer {
     }
 
     private void paintPage(RenderingContext c, PdfWriter writer, PageBox page) throws IOException {
+        long start = System.nanoTime();
         provideMetadataToPage(writer, page);
 
         page.paintBackground(c, 0, Layer.PAGED_MODE_PRINT);
@@ -431,6 +450,9 @@ public class ITextRenderer {
         _outputDevice.translate(-left, -top);
 
         _outputDevice.setClip(working);
+
+        _sharedContext.getMetricsListener().phaseCompleted(
+                RenderMetricsListener.PHASE_PAINT, System.nanoTime() - start);
     }
 
     private void provideMetadataToPage(PdfWriter writer, PageBox page) throws IOException {
@@ -20,22 +20,46 @@
 package org.xhtmlrenderer.pdf;
 
 import org.xhtmlrenderer.extend.FSImage;
+import org.xhtmlrenderer.util.XRLog;
 
 import com.lowagie.text.Image;
 
 public class ITextFSImage implements FSImage, Cloneable {
     private Image _image;
 
+    // for an image which isn't decoded yet, the (shared) source and its size
+    private Source _source;
+    private float _plainWidth;
+    private float _plainHeight;
+
     public ITextFSImage(Image image) {
         _image = image;
     }
 
+    /**
+     * Creates an image of the given size which is only decoded when
+     * {@link #getImage()} is called, i.e. when it is painted.
+     *
+     * @param data The content of the image file
+     * @param plainWidth The width of the image, in dots
+     * @param plainHeight The height of the image, in dots
+     */
+    public ITextFSImage(byte[] data, float plainWidth, float plainHeight) {
+        this(new Source(data), plainWidth, plainHeight);
+    }
+
+    private ITextFSImage(Source source, float plainWidth, float plainHeight) {
+        _source = source;
+        _plainWidth = plainWidth;
+        _plainHeight = plainHeight;
+    }
+
     public int getWidth() {
-        return (int)_image.getPlainWidth();
+        return _image == null ? (int)_plainWidth : (int)_image.getPlainWidth();
     }
 
     public int getHeight() {
-        return (int)_image.getPlainHeight();
+        return _image == null ? (int)_plainHeight : (int)_image.getPlainHeight();
     }
 
     public void scale(int width, int height) {
@@ -54,16 +78,60 @@ public class ITextFSImage implements FSImage, Cloneable {
             }
 
             if (currentWith != targetWidth || currentHeight != targetHeight) {
-                _image.scaleAbsolute(targetWidth, targetHeight);
+                if (_image == null) {
+                    _plainWidth = targetWidth;
+                    _plainHeight = targetHeight;
+                } else {
+                    _image.scaleAbsolute(targetWidth, targetHeight);
+                }
             }
         }
     }
 
+    /**
+     * Returns the image, or null if it couldn't be decoded.
+     */
     public Image getImage() {
+        if (_image == null && _source != null) {
+            Image image = _source.getImage();
+            if (image != null) {
+                _image = Image.getInstance(image);
+                _image.scaleAbsolute(_plainWidth, _plainHeight);
+            }
+            _source = null;
+        }
         return _image;
     }
 
     public Object clone() {
+        if (_image == null) {
+            return new ITextFSImage(_source, _plainWidth, _plainHeight);
+        }
         return new ITextFSImage(Image.getInstance(_image));
     }
+
+    /**
+     * The content of an image file, decoded once for all the images
+     * sharing it.
+     */
+    private static class Source {
+        private byte[] _data;
+        private Image _image;
+
+        public Source(byte[] data) {
+            _data = data;
+        }
+
+        public synchronized Image getImage() {
+            if (_data != null) {
+                try {
+                    _image = Image.getInstance(_data);
+                } catch (Exception e) {
+                    XRLog.exception("Can't decode image", e);
+                }
+                _data = null;
+            }
+            return _image;
+        }
+    }
 }
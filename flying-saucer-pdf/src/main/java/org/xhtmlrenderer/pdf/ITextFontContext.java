@@ -20,7 +20,10 @@
 package org.xhtmlrenderer.pdf;
 
 import org.xhtmlrenderer.extend.FontContext;
+import org.xhtmlrenderer.extend.ForkableFontContext;
 
-public class ITextFontContext implements FontContext {
-
+public class ITextFontContext implements ForkableFontContext {
+    public FontContext fork() {
+        return new ITextFontContext();
+    }
 }
@@ -27,6 +27,7 @@ import org.xhtmlrenderer.css.sheet.FontFaceRule;
 import org.xhtmlrenderer.css.style.CalculatedStyle;
 import org.xhtmlrenderer.css.style.FSDerivedValue;
 import org.xhtmlrenderer.css.value.FontSpecification;
+import org.xhtmlrenderer.event.RenderMetricsListener;
 import org.xhtmlrenderer.extend.FontResolver;
 import org.xhtmlrenderer.layout.SharedContext;
 import org.xhtmlrenderer.render.FSFont;
@@ -399,9 +400,14 @@ public class ITextFontResolver implements FontResolver {
         FontDescription result = (FontDescription)_fontCache.get(cacheKey);
 
         if (result != null) {
+            _sharedContext.getMetricsListener().count(
+                    RenderMetricsListener.COUNT_FONT_CACHE_HITS, 1);
             return new ITextFSFont(result, size);
         }
 
+        _sharedContext.getMetricsListener().count(
+                RenderMetricsListener.COUNT_FONT_CACHE_MISSES, 1);
+
         FontFamily family = (FontFamily)_fontFamilies.get(normalizedFontFamily);
         if (family != null) {
             result = family.match(convertWeightToInt(weight), style);
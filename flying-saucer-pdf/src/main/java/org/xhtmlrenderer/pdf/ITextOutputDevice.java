@@ -33,9 +33,11 @@ import java.awt.geom.Line2D;
 import java.awt.geom.NoninvertibleTransformException;
 import java.awt.geom.PathIterator;
 import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
 import java.io.IOException;
 import java.net.URI;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
@@ -90,7 +92,9 @@ import com.lowagie.text.pdf.PdfDictionary;
 import com.lowagie.text.pdf.PdfImportedPage;
 import com.lowagie.text.pdf.PdfIndirectReference;
 import com.lowagie.text.pdf.PdfName;
+import com.lowagie.text.pdf.PdfObject;
 import com.lowagie.text.pdf.PdfOutline;
+import com.lowagie.text.pdf.PdfPatternPainter;
 import com.lowagie.text.pdf.PdfReader;
 import com.lowagie.text.pdf.PdfString;
 import com.lowagie.text.pdf.PdfTextArray;
@@ -105,11 +109,19 @@ public class ITextOutputDevice extends AbstractOutputDevice implements OutputDev
     private static final int FILL = 1;
     private static final int STROKE = 2;
     private static final int CLIP = 3;
+    private static final int TILE_FILL = 4;
+
+    // Drawing an image takes a few bytes of (compressed) page content, so a
+    // pattern, which is a separate object, only pays off for many copies
+    private static final int MIN_PATTERN_TILES = 64;
 
     private static AffineTransform IDENTITY = new AffineTransform();
 
     private static final BasicStroke STROKE_ONE = new BasicStroke(1);
 
+    // The maximum number of entries or kids of a name tree node
+    private static final int NAME_TREE_NODE_SIZE = 64;
+
     private static final boolean ROUND_RECT_DIMENSIONS_DOWN = Configuration.isTrue("xr.pdf.round.rect.dimensions.down", false);
 
     private PdfContentByte _currentPage;
@@ -130,13 +142,29 @@ public class ITextOutputDevice extends AbstractOutputDevice implements OutputDev
 
     private Area _clip;
 
+    // A filled rectangle which hasn't been written yet, in page coordinates,
+    // so that adjacent rectangles of the same color, like the borders of
+    // neighbouring table cells, can be written as one.  Everything else that
+    // writes to the page has to call flushPendingRect() first.
+    private Color _pendingRectColor;
+    private float _pendingX1;
+    private float _pendingY1;
+    private float _pendingX2;
+    private float _pendingY2;
+
     private SharedContext _sharedContext;
     private float _dotsPerPoint;
 
+    private final boolean _replaceMissingCharacters;
+    private final char _missingCharacterReplacement;
+
     private PdfWriter _writer;
 
     private Map _readerCache = new HashMap();
 
+    // List of the image, its size and the pattern matrix -> PdfPatternPainter
+    private Map _tilePatterns = new HashMap();
+
     private PdfDestination _defaultDestination;
 
     private List _bookmarks = new ArrayList();
@@ -151,8 +179,13 @@ public class ITextOutputDevice extends AbstractOutputDevice implements OutputDev
 
     private Set _linkTargetAreas;
 
+    // Boxes whose link area has been calculated on the current page
+    private Set _linkBoxes;
+
     public ITextOutputDevice(float dotsPerPoint) {
         _dotsPerPoint = dotsPerPoint;
+        _replaceMissingCharacters = Configuration.isTrue("xr.renderer.replace-missing-characters", false);
+        _missingCharacterReplacement = Configuration.valueAsChar("xr.renderer.missing-character-replacement", '#');
     }
 
     public void setWriter(PdfWriter writer) {
@@ -188,9 +221,11 @@ public class ITextOutputDevice extends AbstractOutputDevice implements OutputDev
         }
 
         _linkTargetAreas = new HashSet();
+        _linkBoxes = new HashSet();
     }
 
     public void finishPage() {
+        flushPendingRect();
         _currentPage.restoreState();
     }
 
@@ -205,6 +240,11 @@ public class ITextOutputDevice extends AbstractOutputDevice implements OutputDev
         processLink(c, box);
     }
 
+    /**
+     * Returns the area of all adjacent sibling boxes of the link element of
+     * <code>box</code>.  The boxes are remembered so the area is only
+     * calculated once per page, when the first of them is painted.
+     */
     private com.lowagie.text.Rectangle calcTotalLinkArea(RenderingContext c, Box box) {
         Box current = box;
         while (true) {
@@ -217,10 +257,12 @@ public class ITextOutputDevice extends AbstractOutputDevice implements OutputDev
         }
 
         com.lowagie.text.Rectangle result = createLocalTargetArea(c, current, true);
+        _linkBoxes.add(current);
 
         current = current.getNextSibling();
         while (current != null && current.getElement() == box.getElement()) {
             result = add(result, createLocalTargetArea(c, current, true));
+            _linkBoxes.add(current);
 
             current = current.getNextSibling();
         }
@@ -237,23 +279,23 @@ public class ITextOutputDevice extends AbstractOutputDevice implements OutputDev
         return new com.lowagie.text.Rectangle(llx, lly, urx, ury);
     }
 
-    private String createRectKey(com.lowagie.text.Rectangle rect) {
-        return rect.getLeft() + ":" + rect.getBottom() + ":" + rect.getRight() + ":" + rect.getTop();
+    private Object createRectKey(com.lowagie.text.Rectangle rect) {
+        return Arrays.asList(new Float[] {
+                new Float(rect.getLeft()), new Float(rect.getBottom()),
+                new Float(rect.getRight()), new Float(rect.getTop()) });
     }
 
     private com.lowagie.text.Rectangle checkLinkArea(RenderingContext c, Box box) {
         com.lowagie.text.Rectangle targetArea = calcTotalLinkArea(c, box);
-        String key = createRectKey(targetArea);
-        if (_linkTargetAreas.contains(key)) {
+        if (! _linkTargetAreas.add(createRectKey(targetArea))) {
             return null;
         }
-        _linkTargetAreas.add(key);
         return targetArea;
     }
 
     private void processLink(RenderingContext c, Box box) {
         Element elem = box.getElement();
-        if (elem != null) {
+        if (elem != null && ! _linkBoxes.contains(box)) {
             NamespaceHandler handler = _sharedContext.getNamespaceHandler();
             String uri = handler.getLinkUri(elem);
             if (uri != null) {
@@ -264,6 +306,11 @@ public class ITextOutputDevice extends AbstractOutputDevice implements OutputDev
                         PdfDestination dest = createDestination(c, target);
 
                         if (dest != null) {
+                            com.lowagie.text.Rectangle targetArea = checkLinkArea(c, box);
+                            if (targetArea == null) {
+                                return;
+                            }
+
                             PdfAction action = new PdfAction();
                             if (!"".equals(handler.getAttributeValue(elem, "onclick"))) {
                                 action = PdfAction.javaScript(handler.getAttributeValue(elem, "onclick"), _writer);
@@ -272,11 +319,6 @@ public class ITextOutputDevice extends AbstractOutputDevice implements OutputDev
                                 action.put(PdfName.D, dest);
                             }
 
-                            com.lowagie.text.Rectangle targetArea = checkLinkArea(c, box);
-                            if (targetArea == null) {
-                                return;
-                            }
-
                             targetArea.setBorder(0);
                             targetArea.setBorderWidth(0);
 
@@ -432,7 +474,67 @@ public class ITextOutputDevice extends AbstractOutputDevice implements OutputDev
     }
 
     public void fill(Shape s) {
-        followPath(s, FILL);
+        if (s instanceof Rectangle2D && isRectilinear(_transform)) {
+            fillRectangle((Rectangle2D) s);
+        } else {
+            followPath(s, FILL);
+        }
+    }
+
+    private static boolean isRectilinear(AffineTransform transform) {
+        return (transform.getType() & (AffineTransform.TYPE_GENERAL_ROTATION |
+                AffineTransform.TYPE_QUADRANT_ROTATION | AffineTransform.TYPE_GENERAL_TRANSFORM)) == 0;
+    }
+
+    /**
+     * Fills a rectangle with a single <code>re</code> operator.  The
+     * rectangle is kept pending, and merged with the following ones if they
+     * have the same color and continue it horizontally or vertically.
+     */
+    private void fillRectangle(Rectangle2D rect) {
+        float[] corners = new float[] {
+                (float) rect.getMinX(), (float) rect.getMinY(),
+                (float) rect.getMaxX(), (float) rect.getMaxY() };
+        _transform.transform(corners, 0, corners, 0, 2);
+        float x1 = Math.min(corners[0], corners[2]);
+        float x2 = Math.max(corners[0], corners[2]);
+        float y1 = normalizeY(Math.max(corners[1], corners[3]));
+        float y2 = normalizeY(Math.min(corners[1], corners[3]));
+        if (x1 == x2 || y1 == y2) {
+            return;
+        }
+
+        if (_color.equals(_pendingRectColor)) {
+            if (y1 == _pendingY1 && y2 == _pendingY2 && x1 <= _pendingX2 && x2 >= _pendingX1) {
+                _pendingX1 = Math.min(x1, _pendingX1);
+                _pendingX2 = Math.max(x2, _pendingX2);
+                return;
+            }
+            if (x1 == _pendingX1 && x2 == _pendingX2 && y1 <= _pendingY2 && y2 >= _pendingY1) {
+                _pendingY1 = Math.min(y1, _pendingY1);
+                _pendingY2 = Math.max(y2, _pendingY2);
+                return;
+            }
+        }
+
+        flushPendingRect();
+        _pendingRectColor = _color;
+        _pendingX1 = x1;
+        _pendingY1 = y1;
+        _pendingX2 = x2;
+        _pendingY2 = y2;
+    }
+
+    private void flushPendingRect() {
+        if (_pendingRectColor != null) {
+            if (!_pendingRectColor.equals(_fillColor)) {
+                _fillColor = _pendingRectColor;
+                _currentPage.setColorFill(_fillColor);
+            }
+            _currentPage.rectangle(_pendingX1, _pendingY1, _pendingX2 - _pendingX1, _pendingY2 - _pendingY1);
+            _currentPage.fill();
+            _pendingRectColor = null;
+        }
     }
 
     public void fillRect(int x, int y, int width, int height) {
@@ -475,11 +577,12 @@ public class ITextOutputDevice extends AbstractOutputDevice implements OutputDev
     }
 
     public void drawString(String s, float x, float y, JustificationInfo info) {
-        if (Configuration.isTrue("xr.renderer.replace-missing-characters", false)) {
+        if (_replaceMissingCharacters) {
             s = replaceMissingCharacters(s);
         }
         if (s.length() == 0)
             return;
+        flushPendingRect();
         PdfContentByte cb = _currentPage;
         ensureFillColor();
         AffineTransform at = (AffineTransform) getTransform().clone();
@@ -531,13 +634,15 @@ public class ITextOutputDevice extends AbstractOutputDevice implements OutputDev
 
     private String replaceMissingCharacters(String string) {
         char[] charArr = string.toCharArray();
-        char replacementCharacter = Configuration.valueAsChar("xr.renderer.missing-character-replacement", '#');
+        char replacementCharacter = _missingCharacterReplacement;
 
         // first check to see if the replacement character even exists in the
         // given font. If not, then do nothing.
         if (!_font.getFontDescription().getFont().charExists(replacementCharacter)) {
-            XRLog.render(Level.INFO, "Missing replacement character [" + replacementCharacter + ":" + (int) replacementCharacter
-                    + "]. No replacement will occur.");
+            if (XRLog.isLoggable(XRLog.RENDER, Level.INFO)) {
+                XRLog.render(Level.INFO, "Missing replacement character [" + replacementCharacter + ":" + (int) replacementCharacter
+                        + "]. No replacement will occur.");
+            }
             return string;
         }
 
@@ -546,8 +651,10 @@ public class ITextOutputDevice extends AbstractOutputDevice implements OutputDev
         for (int i = 0; i < charArr.length; i++) {
             if (!(charArr[i] == ' ' || charArr[i] == '\u00a0' || charArr[i] == '\u3000' || _font.getFontDescription().getFont()
                     .charExists(charArr[i]))) {
-                XRLog.render(Level.INFO, "Missing character [" + charArr[i] + ":" + (int) charArr[i] + "] in string [" + string
-                        + "]. Replacing with '" + replacementCharacter + "'");
+                if (XRLog.isLoggable(XRLog.RENDER, Level.INFO)) {
+                    XRLog.render(Level.INFO, "Missing character [" + charArr[i] + ":" + (int) charArr[i] + "] in string [" + string
+                            + "]. Replacing with '" + replacementCharacter + "'");
+                }
                 charArr[i] = replacementCharacter;
             }
         }
@@ -593,6 +700,7 @@ public class ITextOutputDevice extends AbstractOutputDevice implements OutputDev
     }
 
     public PdfContentByte getCurrentPage() {
+        flushPendingRect();
         return _currentPage;
     }
 
@@ -601,6 +709,8 @@ public class ITextOutputDevice extends AbstractOutputDevice implements OutputDev
         if (s == null)
             return;
 
+        flushPendingRect();
+
         if (drawType == STROKE) {
             if (!(_stroke instanceof BasicStroke)) {
                 s = _stroke.createStrokedShape(s);
@@ -615,6 +725,9 @@ public class ITextOutputDevice extends AbstractOutputDevice implements OutputDev
         } else if (drawType == FILL) {
             ensureFillColor();
         }
+        if (drawType == TILE_FILL) {
+            drawType = FILL;
+        }
 
         PathIterator points;
         if (drawType == CLIP) {
@@ -801,6 +914,7 @@ public class ITextOutputDevice extends AbstractOutputDevice implements OutputDev
     }
 
     public void setClip(Shape s) {
+        flushPendingRect();
         PdfContentByte cb = _currentPage;
         cb.restoreState();
         cb.saveState();
@@ -827,7 +941,7 @@ public class ITextOutputDevice extends AbstractOutputDevice implements OutputDev
         } else {
             Image image = ((ITextFSImage) fsImage).getImage();
 
-            if (fsImage.getHeight() <= 0 || fsImage.getWidth() <= 0) {
+            if (image == null || fsImage.getHeight() <= 0 || fsImage.getWidth() <= 0) {
                 return;
             }
 
@@ -843,6 +957,7 @@ public class ITextOutputDevice extends AbstractOutputDevice implements OutputDev
             double[] mx = new double[6];
             inverse.getMatrix(mx);
 
+            flushPendingRect();
             try {
                 _currentPage.addImage(image, (float) mx[0], (float) mx[1], (float) mx[2], (float) mx[3], (float) mx[4], (float) mx[5]);
             } catch (DocumentException e) {
@@ -851,6 +966,68 @@ public class ITextOutputDevice extends AbstractOutputDevice implements OutputDev
         }
     }
 
+    protected boolean fillWithTiles(FSImage fsImage, int x, int y, Rectangle bounds) {
+        if (fsImage instanceof PDFAsImage) {
+            return false;
+        }
+        int width = fsImage.getWidth();
+        int height = fsImage.getHeight();
+        long columns = (bounds.width + width - 1) / width;
+        long rows = (bounds.height + height - 1) / height;
+        if (columns * rows < MIN_PATTERN_TILES) {
+            return false;
+        }
+        Image image = ((ITextFSImage) fsImage).getImage();
+        if (image == null) {
+            return true;
+        }
+
+        // pattern space is the image space flipped upright, with the origin
+        // at the bottom left corner of the tile at (x, y)
+        AffineTransform at = normalizeMatrix(_transform);
+        at.translate(x, y + height);
+        at.scale(1, -1);
+
+        double[] mx = new double[6];
+        at.getMatrix(mx);
+
+        // Move the origin to the tile nearest to the page origin, so
+        // backgrounds tiled in step share the pattern
+        if (mx[1] == 0 && mx[2] == 0) {
+            double stepX = Math.abs(width * mx[0]);
+            double stepY = Math.abs(height * mx[3]);
+            mx[4] = Math.round((mx[4] - Math.floor(mx[4] / stepX) * stepX) * 1000) / 1000.0;
+            mx[5] = Math.round((mx[5] - Math.floor(mx[5] / stepY) * stepY) * 1000) / 1000.0;
+        }
+
+        List key = new ArrayList(9);
+        key.add(image);
+        key.add(new Integer(width));
+        key.add(new Integer(height));
+        for (int i = 0; i < mx.length; i++) {
+            key.add(new Double(mx[i]));
+        }
+
+        PdfPatternPainter pattern = (PdfPatternPainter) _tilePatterns.get(key);
+        if (pattern == null) {
+            pattern = _currentPage.createPattern(width, height, width, height);
+            try {
+                pattern.addImage(image, width, 0, 0, height, 0, 0);
+            } catch (DocumentException e) {
+                throw new XRRuntimeException(e.getMessage(), e);
+            }
+            pattern.setPatternMatrix((float) mx[0], (float) mx[1], (float) mx[2], (float) mx[3], (float) mx[4], (float) mx[5]);
+            _tilePatterns.put(key, pattern);
+        }
+
+        flushPendingRect();
+        _currentPage.setPatternFill(pattern);
+        // the fill color has to be set again before the next solid fill
+        _fillColor = null;
+        followPath(bounds, TILE_FILL);
+        return true;
+    }
+
     private void drawPDFAsImage(PDFAsImage image, int x, int y) {
         URI uri = image.getURI();
         PdfReader reader = null;
@@ -878,6 +1055,7 @@ public class ITextOutputDevice extends AbstractOutputDevice implements OutputDev
         mx[0] = image.scaleWidth();
         mx[3] = image.scaleHeight();
 
+        flushPendingRect();
         _currentPage.restoreState();
         _currentPage.addTemplate(page, (float) mx[0], (float) mx[1], (float) mx[2], (float) mx[3], (float) mx[4], (float) mx[5]);
         _currentPage.saveState();
@@ -926,7 +1104,8 @@ public class ITextOutputDevice extends AbstractOutputDevice implements OutputDev
     private void writeNamedDestinations(RenderingContext c) {
         Map idMap = getSharedContext().getIdMap();
         if ((idMap != null) && (!idMap.isEmpty())) {
-            PdfArray dests = new PdfArray();
+            List keys = new ArrayList();
+            List dests = new ArrayList();
             try {
                 Iterator it = idMap.entrySet().iterator();
                 while (it.hasNext()) {
@@ -936,23 +1115,18 @@ public class ITextOutputDevice extends AbstractOutputDevice implements OutputDev
 
                     if (targetBox.getStyle().isIdent(CSSName.FS_NAMED_DESTINATION, IdentValue.CREATE)) {
                         String anchorName = (String) entry.getKey();
-                        dests.add(new PdfString(anchorName, PdfString.TEXT_UNICODE));
 
                         PdfDestination dest = createDestination(c, targetBox);
                         if (dest != null) {
-                            PdfIndirectReference ref = _writer.addToBody(dest).getIndirectReference();
-                            dests.add(ref);
+                            keys.add(new PdfString(anchorName, PdfString.TEXT_UNICODE));
+                            dests.add(_writer.addToBody(dest).getIndirectReference());
                         }
                     }
                 }
 
-                if (!dests.isEmpty()) {
-                    PdfDictionary nametree = new PdfDictionary();
-                    nametree.put(PdfName.NAMES, dests);
-                    PdfIndirectReference nameTreeRef = _writer.addToBody(nametree).getIndirectReference();
-
+                if (!keys.isEmpty()) {
                     PdfDictionary names = new PdfDictionary();
-                    names.put(PdfName.DESTS, nameTreeRef);
+                    names.put(PdfName.DESTS, writeNameTree(keys, dests));
                     PdfIndirectReference destinationsRef = _writer.addToBody(names).getIndirectReference();
 
                     _writer.getExtraCatalog().put(PdfName.NAMES, destinationsRef);
@@ -963,6 +1137,102 @@ public class ITextOutputDevice extends AbstractOutputDevice implements OutputDev
         }
     }
 
+    /**
+     * Writes a balanced name tree whose leaves hold at most
+     * <code>NAME_TREE_NODE_SIZE</code> entries and returns a reference to its
+     * root.  As required by the PDF specification, the keys are sorted by
+     * the bytes of the encoded strings.
+     */
+    private PdfIndirectReference writeNameTree(List keys, List values) throws IOException {
+        final int count = keys.size();
+        Integer[] order = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = new Integer(i);
+        }
+        final PdfString[] strings = (PdfString[]) keys.toArray(new PdfString[count]);
+        Arrays.sort(order, new Comparator() {
+            public int compare(Object o1, Object o2) {
+                byte[] b1 = strings[((Integer) o1).intValue()].getBytes();
+                byte[] b2 = strings[((Integer) o2).intValue()].getBytes();
+                int length = Math.min(b1.length, b2.length);
+                for (int i = 0; i < length; i++) {
+                    int diff = (b1[i] & 0xff) - (b2[i] & 0xff);
+                    if (diff != 0) {
+                        return diff;
+                    }
+                }
+                return b1.length - b2.length;
+            }
+        });
+
+        // The leaves
+        int nodeCount = (count + NAME_TREE_NODE_SIZE - 1) / NAME_TREE_NODE_SIZE;
+        PdfObject[] nodes = new PdfObject[nodeCount];
+        PdfString[] firstKeys = new PdfString[nodeCount];
+        PdfString[] lastKeys = new PdfString[nodeCount];
+        for (int n = 0; n < nodeCount; n++) {
+            int start = n * NAME_TREE_NODE_SIZE;
+            int end = Math.min(start + NAME_TREE_NODE_SIZE, count);
+            PdfArray entries = new PdfArray();
+            for (int i = start; i < end; i++) {
+                int index = order[i].intValue();
+                entries.add(strings[index]);
+                entries.add((PdfObject) values.get(index));
+            }
+            firstKeys[n] = strings[order[start].intValue()];
+            lastKeys[n] = strings[order[end - 1].intValue()];
+            if (nodeCount == 1) {
+                PdfDictionary root = new PdfDictionary();
+                root.put(PdfName.NAMES, entries);
+                return _writer.addToBody(root).getIndirectReference();
+            }
+            PdfDictionary leaf = new PdfDictionary();
+            leaf.put(PdfName.LIMITS, createLimits(firstKeys[n], lastKeys[n]));
+            leaf.put(PdfName.NAMES, entries);
+            nodes[n] = _writer.addToBody(leaf).getIndirectReference();
+        }
+
+        // Intermediate nodes until the remaining nodes fit into the root
+        while (nodes.length > NAME_TREE_NODE_SIZE) {
+            int parentCount = (nodes.length + NAME_TREE_NODE_SIZE - 1) / NAME_TREE_NODE_SIZE;
+            PdfObject[] parents = new PdfObject[parentCount];
+            PdfString[] parentFirstKeys = new PdfString[parentCount];
+            PdfString[] parentLastKeys = new PdfString[parentCount];
+            for (int n = 0; n < parentCount; n++) {
+                int start = n * NAME_TREE_NODE_SIZE;
+                int end = Math.min(start + NAME_TREE_NODE_SIZE, nodes.length);
+                PdfArray kids = new PdfArray();
+                for (int i = start; i < end; i++) {
+                    kids.add(nodes[i]);
+                }
+                parentFirstKeys[n] = firstKeys[start];
+                parentLastKeys[n] = lastKeys[end - 1];
+                PdfDictionary node = new PdfDictionary();
+                node.put(PdfName.LIMITS, createLimits(parentFirstKeys[n], parentLastKeys[n]));
+                node.put(PdfName.KIDS, kids);
+                parents[n] = _writer.addToBody(node).getIndirectReference();
+            }
+            nodes = parents;
+            firstKeys = parentFirstKeys;
+            lastKeys = parentLastKeys;
+        }
+
+        PdfArray kids = new PdfArray();
+        for (int i = 0; i < nodes.length; i++) {
+            kids.add(nodes[i]);
+        }
+        PdfDictionary root = new PdfDictionary();
+        root.put(PdfName.KIDS, kids);
+        return _writer.addToBody(root).getIndirectReference();
+    }
+
+    private PdfArray createLimits(PdfString first, PdfString last) {
+        PdfArray result = new PdfArray();
+        result.add(first);
+        result.add(last);
+        return result;
+    }
+
     private int getPageRefY(Box box) {
         if (box instanceof InlineLayoutBox) {
             InlineLayoutBox iB = (InlineLayoutBox) box;
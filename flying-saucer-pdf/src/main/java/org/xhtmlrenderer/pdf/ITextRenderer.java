@@ -46,6 +46,7 @@ import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 import org.xhtmlrenderer.context.StyleReference;
 import org.xhtmlrenderer.css.style.CalculatedStyle;
+import org.xhtmlrenderer.event.RenderMetricsListener;
 import org.xhtmlrenderer.extend.NamespaceHandler;
 import org.xhtmlrenderer.extend.UserInterface;
 import org.xhtmlrenderer.layout.BoxBuilder;
@@ -145,7 +146,11 @@ public class ITextRenderer {
     }
 
     private Document loadDocument(final String uri) {
-        return _sharedContext.getUac().getXMLResource(uri).getDocument();
+        long start = System.nanoTime();
+        Document result = _sharedContext.getUac().getXMLResource(uri).getDocument();
+        _sharedContext.getMetricsListener().phaseCompleted(
+                RenderMetricsListener.PHASE_PARSE, System.nanoTime() - start);
+        return result;
     }
 
     public void setDocument(String uri) {
@@ -167,8 +172,11 @@ public class ITextRenderer {
     }
 
     public void setDocumentFromString(String content, String baseUrl) {
+        long start = System.nanoTime();
         InputSource is = new InputSource(new BufferedReader(new StringReader(content)));
         Document dom = XMLResource.load(is).getDocument();
+        _sharedContext.getMetricsListener().phaseCompleted(
+                RenderMetricsListener.PHASE_PARSE, System.nanoTime() - start);
 
         setDocument(dom, baseUrl);
     }
@@ -223,13 +231,19 @@ public class ITextRenderer {
 
 
     public void layout() {
+        RenderMetricsListener metrics = _sharedContext.getMetricsListener();
+        long start = System.nanoTime();
         LayoutContext c = newLayoutContext();
         BlockBox root = BoxBuilder.createRootBox(c, _doc);
         root.setContainingBlock(new ViewportBox(getInitialExtents(c)));
         root.layout(c);
+        long end = System.nanoTime();
+        metrics.phaseCompleted(RenderMetricsListener.PHASE_LAYOUT, end - start);
         Dimension dim = root.getLayer().getPaintingDimension(c);
         root.getLayer().trimEmptyPages(c, dim.height);
         root.getLayer().layoutPages(c);
+        metrics.phaseCompleted(RenderMetricsListener.PHASE_PAGE_LAYOUT, System.nanoTime() - end);
+        metrics.count(RenderMetricsListener.COUNT_PAGES, root.getLayer().getPages().size());
         _root = root;
     }
 
@@ -302,6 +316,7 @@ public class ITextRenderer {
      * something goes wrong.
      */
     public void createPDF(OutputStream os, boolean finish, int initialPageNo) throws DocumentException {
+        long start = System.nanoTime();
         List pages = _root.getLayer().getPages();
 
         RenderingContext c = newRenderingContext();
@@ -336,6 +351,9 @@ public class ITextRenderer {
             fireOnClose();
             doc.close();
         }
+
+        _sharedContext.getMetricsListener().phaseCompleted(
+                RenderMetricsListener.PHASE_PDF_WRITE, System.nanoTime() - start);
     }
 
     private void firePreOpen() {
@@ -413,6 +431,7 @@ public class ITextRenderer {
     }
 
     private void paintPage(RenderingContext c, PdfWriter writer, PageBox page) {
+        long start = System.nanoTime();
         provideMetadataToPage(writer, page);
 
         page.paintBackground(c, 0, Layer.PAGED_MODE_PRINT);
@@ -433,6 +452,9 @@ public class ITextRenderer {
         _outputDevice.translate(-left, -top);
 
         _outputDevice.setClip(working);
+
+        _sharedContext.getMetricsListener().phaseCompleted(
+                RenderMetricsListener.PHASE_PAINT, System.nanoTime() - start);
     }
 
     private void provideMetadataToPage(PdfWriter writer, PageBox page) {
@@ -20,11 +20,14 @@
  */
 package org.xhtmlrenderer.pdf;
 
+import java.awt.Dimension;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
 
+import org.xhtmlrenderer.event.RenderMetricsListener;
 import org.xhtmlrenderer.extend.FSImage;
 import org.xhtmlrenderer.layout.SharedContext;
 import org.xhtmlrenderer.resource.ImageResource;
@@ -63,10 +66,13 @@ public class ITextUserAgent extends NaiveUserAgent {
 
     public ImageResource getImageResource(String uriStr) {
         ImageResource resource;
-        if (!ImageUtil.isEmbeddedBase64Image(uriStr)) {
+        if (! ImageUtil.isEmbeddedBase64Image(uriStr)) {
             uriStr = resolveURI(uriStr);
         }
         resource = (ImageResource) _imageCache.get(uriStr);
+        getMetricsListener().count(resource == null ?
+                RenderMetricsListener.COUNT_IMAGE_CACHE_MISSES :
+                RenderMetricsListener.COUNT_IMAGE_CACHE_HITS, 1);
 
         if (resource == null) {
             if (ImageUtil.isEmbeddedBase64Image(uriStr)) {
@@ -87,9 +93,7 @@ public class ITextUserAgent extends NaiveUserAgent {
                             image.setInitialHeight(rect.getHeight() * _outputDevice.getDotsPerPoint());
                             resource = new ImageResource(uriStr, image);
                         } else {
-                            Image image = Image.getInstance(readStream(is));
-                            scaleToOutputResolution(image);
-                            resource = new ImageResource(uriStr, new ITextFSImage(image));
+                            resource = new ImageResource(uriStr, createImage(readStream(is)));
                         }
                         _imageCache.put(uriStr, resource);
                     } catch (Exception e) {
@@ -119,15 +123,35 @@ public class ITextUserAgent extends NaiveUserAgent {
     private ImageResource loadEmbeddedBase64ImageResource(final String uri) {
         try {
             byte[] buffer = ImageUtil.getEmbeddedBase64Image(uri);
-            Image image = Image.getInstance(buffer);
-            scaleToOutputResolution(image);
-            return new ImageResource(null, new ITextFSImage(image));
+            return new ImageResource(null, createImage(buffer));
         } catch (Exception e) {
             XRLog.exception("Can't read XHTML embedded image.", e);
         }
         return new ImageResource(null, null);
     }
 
+    /**
+     * Creates the image for the content of an image file.  Layout only needs
+     * the size of an image, so images which iText would have to decode are
+     * only decoded when they are drawn, and until then their size is read from
+     * the image header.  JPEG and JPEG 2000 images are embedded as they are,
+     * so iText only reads their headers anyway.
+     */
+    private FSImage createImage(byte[] data) throws Exception {
+        ContentTypeDetectingInputStreamWrapper cis =
+                new ContentTypeDetectingInputStreamWrapper(new ByteArrayInputStream(data));
+        if (!cis.isJpeg() && !cis.isJpeg2000()) {
+            Dimension size = ImageUtil.readImageSize(data);
+            if (size != null) {
+                float factor = _sharedContext.getDotsPerPixel();
+                return new ITextFSImage(data, size.width * factor, size.height * factor);
+            }
+        }
+        Image image = Image.getInstance(data);
+        scaleToOutputResolution(image);
+        return new ITextFSImage(image);
+    }
+
     private void scaleToOutputResolution(Image image) {
         float factor = _sharedContext.getDotsPerPixel();
         if (factor != 1.0f) {
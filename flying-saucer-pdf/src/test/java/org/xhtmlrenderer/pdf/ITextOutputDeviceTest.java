@@ -0,0 +1,116 @@
+package org.xhtmlrenderer.pdf;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+
+import junit.framework.TestCase;
+
+import org.xhtmlrenderer.css.parser.FSRGBColor;
+import org.xhtmlrenderer.pdf.ITextFontResolver.FontDescription;
+
+import com.lowagie.text.Document;
+import com.lowagie.text.Image;
+import com.lowagie.text.pdf.BaseFont;
+import com.lowagie.text.pdf.PdfContentByte;
+import com.lowagie.text.pdf.PdfWriter;
+
+public class ITextOutputDeviceTest extends TestCase {
+    private static final FSRGBColor BLACK = new FSRGBColor(0, 0, 0);
+    private static final FSRGBColor RED = new FSRGBColor(255, 0, 0);
+
+    private Document _document;
+    private PdfContentByte _page;
+    private ITextOutputDevice _outputDevice;
+
+    protected void setUp() throws Exception {
+        _document = new Document();
+        PdfWriter writer = PdfWriter.getInstance(_document, new ByteArrayOutputStream());
+        _document.open();
+
+        _page = writer.getDirectContent();
+        _outputDevice = new ITextOutputDevice(1.0f);
+        _outputDevice.setWriter(writer);
+        _outputDevice.initializePage(_page, 800);
+        _outputDevice.setColor(BLACK);
+    }
+
+    protected void tearDown() throws Exception {
+        _document.close();
+    }
+
+    private String finishPage() {
+        _outputDevice.finishPage();
+        return _page.toString();
+    }
+
+    private static int count(String content, String operator) {
+        int result = 0;
+        for (int i = content.indexOf(operator); i != -1; i = content.indexOf(operator, i + 1)) {
+            result++;
+        }
+        return result;
+    }
+
+    public void testMergesContinuingRectangles() {
+        // the top border of three cells, then the left border of two rows
+        _outputDevice.fillRect(0, 0, 10, 2);
+        _outputDevice.fillRect(10, 0, 10, 2);
+        _outputDevice.fillRect(15, 0, 20, 2);
+        _outputDevice.fillRect(0, 100, 2, 10);
+        _outputDevice.fillRect(0, 110, 2, 10);
+
+        String content = finishPage();
+        assertEquals(2, count(content, " re\n"));
+        assertTrue(content, content.indexOf("0 798 35 2 re\n") != -1);
+        assertTrue(content, content.indexOf("0 680 2 20 re\n") != -1);
+    }
+
+
+    public void testKeepsSeparateRectangles() {
+        _outputDevice.fillRect(0, 0, 10, 2);
+        // a gap
+        _outputDevice.fillRect(11, 0, 10, 2);
+        // another color
+        _outputDevice.setColor(RED);
+        _outputDevice.fillRect(21, 0, 10, 2);
+        // not in line
+        _outputDevice.fillRect(31, 1, 10, 2);
+
+        assertEquals(4, count(finishPage(), " re\n"));
+    }
+
+
+    public void testFlushesBeforeText() throws Exception {
+        _outputDevice.fillRect(0, 0, 10, 2);
+        BaseFont font = BaseFont.createFont();
+        _outputDevice.setFont(new ITextFSFont(new FontDescription(font), 12));
+        _outputDevice.drawString("text", 0, 20, null);
+        _outputDevice.fillRect(10, 0, 10, 2);
+
+        String content = finishPage();
+        assertEquals(2, count(content, " re\n"));
+        assertTrue(content, content.indexOf(" re\n") < content.indexOf("BT\n"));
+    }
+
+
+    public void testFlushesBeforeClip() {
+        _outputDevice.fillRect(0, 0, 10, 2);
+        _outputDevice.setClip(new Rectangle(0, 0, 100, 100));
+
+        String content = finishPage();
+        assertTrue(content, content.indexOf(" re\n") != -1);
+        assertTrue(content, content.indexOf(" re\n") < content.indexOf("W\n"));
+    }
+
+
+    public void testFlushesBeforeImage() throws Exception {
+        _outputDevice.fillRect(0, 0, 10, 2);
+        Image image = Image.getInstance(new BufferedImage(4, 4, BufferedImage.TYPE_INT_RGB), null);
+        _outputDevice.drawImage(new ITextFSImage(image), 0, 10);
+
+        String content = finishPage();
+        assertTrue(content, content.indexOf(" re\n") != -1);
+        assertTrue(content, content.indexOf(" re\n") < content.indexOf(" Do"));
+    }
+}
@@ -31,6 +31,7 @@ import org.eclipse.swt.SWTException;
 import org.eclipse.swt.graphics.Device;
 import org.eclipse.swt.graphics.Image;
 import org.xhtmlrenderer.extend.UserAgentCallback;
+import org.xhtmlrenderer.protocols.data.DataUriCache;
 import org.xhtmlrenderer.resource.CSSResource;
 import org.xhtmlrenderer.resource.ImageResource;
 import org.xhtmlrenderer.resource.XMLResource;
@@ -93,7 +94,18 @@ public class NaiveUserAgent implements UserAgentCallback {
     public ImageResource getImageResource(String uri) {
         ImageResource ir = null;
         if (ImageUtil.isEmbeddedBase64Image(uri)) {
-            ir = loadEmbeddedBase64ImageResource(uri);
+            ir = (ImageResource) _imageCache.get(uri);
+            if (ir == null) {
+                ir = loadEmbeddedBase64ImageResource(uri);
+                if (ir.getImage() != null) {
+                    putImageResource(uri, ir);
+                }
+            }
+            if (ir.getImage() != null) {
+                // an image of its own, which may be scaled
+                ir = new ImageResource(ir.getImageUri(),
+                        new SWTFSImage((SWTFSImage) ir.getImage()));
+            }
         } else {
             uri = resolveURI(uri);
             ir = (ImageResource) _imageCache.get(uri);
@@ -103,13 +115,7 @@ public class NaiveUserAgent implements UserAgentCallback {
                 if (is != null) {
                     try {
                         ir = createImageResource(uri, is);
-                        if (_imageCache.size() >= _imageCacheCapacity) {
-                            // prevent the cache from growing too big
-                            ImageResource old = (ImageResource) _imageCache
-                                    .remove(_imageCache.keySet().iterator().next());
-                            ((SWTFSImage) old.getImage()).getImage().dispose();
-                        }
-                        _imageCache.put(uri, ir);
+                        putImageResource(uri, ir);
                     } catch (SWTException e) {
                         XRLog.exception(
                                 "Can't read image file; unexpected problem for URI '"
@@ -130,6 +136,16 @@ public class NaiveUserAgent implements UserAgentCallback {
         return ir;
     }
     
+    private void putImageResource(String key, ImageResource ir) {
+        if (_imageCache.size() >= _imageCacheCapacity) {
+            // prevent the cache from growing too big
+            ImageResource old = (ImageResource) _imageCache
+                    .remove(_imageCache.keySet().iterator().next());
+            ((SWTFSImage) old.getImage()).getImage().dispose();
+        }
+        _imageCache.put(key, ir);
+    }
+
     /**
      * Factory method to generate ImageResources from a given Image. May be
      * overridden in subclass.
@@ -258,6 +274,10 @@ public class NaiveUserAgent implements UserAgentCallback {
     }
 
     public byte[] getBinaryResource(String uri) {
+        if (DataUriCache.isDataUri(uri)) {
+            byte[] data = DataUriCache.getData(uri);
+            return data == null ? null : (byte[]) data.clone();
+        }
         InputStream is = getInputStream(uri);
         if (is==null) return null;
         try {
@@ -26,6 +26,7 @@ import java.awt.geom.Area;
 import java.awt.geom.PathIterator;
 
 import org.eclipse.swt.SWT;
+import org.eclipse.swt.SWTException;
 import org.eclipse.swt.graphics.*;
 import org.eclipse.swt.graphics.Image;
 import org.eclipse.swt.graphics.Rectangle;
@@ -171,6 +172,43 @@ public class SWTOutputDevice extends AbstractOutputDevice {
         }
     }
 
+    protected boolean fillWithTiles(FSImage image, int x, int y, java.awt.Rectangle bounds) {
+        Image img = ((SWTFSImage) image).getImage();
+        if (img == null) {
+            return false;
+        }
+        Rectangle imgBounds = img.getBounds();
+        if (imgBounds.width != image.getWidth() || imgBounds.height != image.getHeight()) {
+            return false;
+        }
+
+        // patterns start at the origin, so move the origin to (x, y)
+        Pattern pattern = null;
+        Transform transform = null;
+        try {
+            pattern = new Pattern(_gc.getDevice(), img);
+            transform = new Transform(_gc.getDevice());
+            _gc.getTransform(transform);
+            transform.translate(x, y);
+            _gc.setTransform(transform);
+            _gc.setBackgroundPattern(pattern);
+            _gc.fillRectangle(bounds.x - x, bounds.y - y, bounds.width, bounds.height);
+            _gc.setBackgroundPattern(null);
+            return true;
+        } catch (SWTException e) {
+            // no advanced graphics
+            return false;
+        } finally {
+            _gc.setTransform(_transform);
+            if (transform != null) {
+                transform.dispose();
+            }
+            if (pattern != null) {
+                pattern.dispose();
+            }
+        }
+    }
+
     public void drawOval(int x, int y, int width, int height) {
         _gc.drawOval(x, y, width, height);
     }